@@ -0,0 +1,118 @@
+package benchmark;
+
+import dominio.model.Cell;
+import dominio.model.References;
+import dominio.model.Sheet;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks del motor de cálculo sobre hojas generadas por SheetGenerator.
+ * Se ejecutan con el perfil benchmark de Maven (mvn -Pbenchmark verify), que guarda los resultados en JSON
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SheetBenchmark {
+
+    /**
+     * Representa el número de filas de la hoja generada
+     */
+    @Param({"1000", "10000"})
+    public int rows;
+
+    /**
+     * Representa la proporción de celdas de fórmulas con referencias
+     */
+    @Param({"0.1", "0.5"})
+    public double density;
+
+    private Sheet sheet;
+    private References references;
+    private Cell target;
+    private String formula;
+    private Cell chainStart;
+    private Cell chainEnd;
+    private ArrayList<Cell> sortBlock;
+    private ArrayList<Cell> searchBlock;
+    private int criterio;
+
+    /**
+     * Genera la hoja y prepara las celdas que usan los benchmarks
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        sheet = SheetGenerator.generate(rows, density, 42);
+        references = sheet.getReferences();
+        target = sheet.getCell(rows / 2, SheetGenerator.COLUMNS - 1);
+        formula = "=mean(A" + (rows / 4) + ":A" + (rows / 4 + 100) + ")";
+        chainStart = sheet.getCell(1, 1);
+        chainEnd = sheet.getCell(rows - 1, 1);
+        sortBlock = new ArrayList<>();
+        for (int i = 0; i < Math.min(rows, 1000); i++) sortBlock.add(sheet.getCell(i, 0));
+        searchBlock = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < SheetGenerator.COLUMNS; j++) searchBlock.add(sheet.getCell(i, j));
+        }
+        criterio = 1;
+    }
+
+    /**
+     * Escribe una fórmula con un rango de 101 celdas en una celda, como hace el controlador al modificar una celda
+     */
+    @Benchmark
+    public Cell executeInput() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        references.eraseAllReferencesOfACell(target);
+        sheet.executeInput(formula, target);
+        return target;
+    }
+
+    /**
+     * Recalcula todas las fórmulas de la hoja
+     */
+    @Benchmark
+    public int updateValues() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        return sheet.updateValues();
+    }
+
+    /**
+     * Inserta y borra una fila en medio de la hoja, dejándola igual que estaba. Para medirlo con el tamaño máximo de hoja:
+     * mvn -Pbenchmark verify -Djmh.args="-p rows=1000000 -p density=0.1 -jvmArgs -Xmx3g addDeleteRow"
+     */
+    @Benchmark
+    public int addDeleteRow() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        sheet.addRow(rows / 2);
+        sheet.deleteRow(rows / 2);
+        return sheet.getNRows();
+    }
+
+    /**
+     * Comprueba si la última celda de la cadena de la columna B crearía un ciclo al referenciarla desde la primera
+     */
+    @Benchmark
+    public boolean cyclicReference() {
+        return references.cyclicReference(chainStart, chainEnd);
+    }
+
+    /**
+     * Ordena hasta 1000 valores de la columna A, alternando el criterio para que el bloque nunca esté ya ordenado
+     */
+    @Benchmark
+    public Sheet sortContBloq() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        sheet.sortContBloq(sortBlock, criterio);
+        criterio = 3 - criterio;
+        return sheet;
+    }
+
+    /**
+     * Busca un texto en todas las celdas de la hoja
+     */
+    @Benchmark
+    public ArrayList<Cell> searchContBloq() {
+        return sheet.searchContBloq(searchBlock, "txt4");
+    }
+
+}
@@ -0,0 +1,45 @@
+package benchmark;
+
+import dominio.model.Sheet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+
+/**
+ * Genera hojas de cálculo sintéticas para los benchmarks: una columna de valores y columnas de fórmulas con referencias,
+ * con el número de filas y la densidad de referencias indicadas
+ */
+public class SheetGenerator {
+
+    /**
+     * Representa el número de columnas de las hojas generadas
+     */
+    public static final int COLUMNS = 4;
+
+    /**
+     * Genera una hoja con las columnas:
+     *      A: valores numéricos
+     *      B: con probabilidad density, "=A{i}+B{i-1}", que encadena la fila con la anterior; si no, un valor
+     *      C: con probabilidad density, "=mean(A{i-k}:A{i})", un rango de hasta 10 filas; si no, un valor
+     *      D: texto
+     * @param rows Número de filas de la hoja
+     * @param density Proporción de celdas de las columnas B y C que son fórmulas, entre 0 y 1
+     * @param seed Semilla de los números aleatorios, para generar siempre la misma hoja
+     * @return Hoja generada, con los valores ya calculados
+     */
+    public static Sheet generate(int rows, double density, long seed) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        Random rnd = new Random(seed);
+        Sheet sheet = new Sheet("benchmark", rows, COLUMNS);
+        for (int i = 0; i < rows; i++) {
+            sheet.executeInput(String.valueOf(rnd.nextInt(1000)), sheet.getCell(i, 0));
+            if (i > 0 && rnd.nextDouble() < density) sheet.executeInput("=A" + i + "+B" + (i - 1), sheet.getCell(i, 1));
+            else sheet.executeInput(String.valueOf(rnd.nextInt(1000)), sheet.getCell(i, 1));
+            if (rnd.nextDouble() < density) sheet.executeInput("=mean(A" + Math.max(0, i - rnd.nextInt(10)) + ":A" + i + ")", sheet.getCell(i, 2));
+            else sheet.executeInput(String.valueOf(rnd.nextInt(1000)), sheet.getCell(i, 2));
+            sheet.executeInput("txt" + rnd.nextInt(100), sheet.getCell(i, 3));
+        }
+        sheet.updateValues();
+        return sheet;
+    }
+
+}
@@ -1,31 +1,66 @@
 package datos.controlador;
 
+import datos.documents.CellConsumer;
+import datos.documents.CsvDialect;
 import datos.documents.DocumentCSV;
+import datos.documents.DocumentMappedCSV;
+import datos.documents.DocumentNative;
+import datos.documents.DocumentParallelCSV;
 import datos.documents.DocumentXLSX;
+import datos.documents.EditJournal;
+import datos.documents.NativeSheet;
+import datos.documents.PersistanceDocument;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 import static datos.auxiliarclasses.DocumentType.formatType;
 
 /**
- * Representa el controlador de datos, capaz de cargar y guardar documentos con formato csv y xlsx
+ * Representa el controlador de datos, capaz de cargar y guardar documentos con formato csv, xlsx y con el formato nativo (prop)
  */
 
 public class CtrlPersistencia {
 
+    /**
+     * Representa el tamaño a partir del cual los documentos csv se leen proyectándolos en memoria
+     */
+    private static final long MAPPED_CSV_SIZE = 16L << 20;
+
     /**
      * Representa un documento Csv
      */
     private final DocumentCSV documentCSV;
+    /**
+     * Representa un documento Csv que se lee proyectado en memoria, para archivos grandes
+     */
+    private final DocumentMappedCSV documentMappedCSV;
+    /**
+     * Representa un documento Csv que se lee en paralelo, para archivos grandes cuando hay más de un procesador
+     */
+    private final DocumentParallelCSV documentParallelCSV;
     /**
      * Representa un documento XLSX
      */
     private final DocumentXLSX documentXLSX;
+    /**
+     * Representa un documento con el formato nativo
+     */
+    private final DocumentNative documentNative;
 
     public CtrlPersistencia() {
         documentCSV      = new DocumentCSV();
+        documentMappedCSV = new DocumentMappedCSV();
+        documentParallelCSV = new DocumentParallelCSV();
         documentXLSX    = new DocumentXLSX();
+        documentNative  = new DocumentNative();
 
     }
 
@@ -42,6 +77,162 @@ public class CtrlPersistencia {
         else if (format.equals("xlsx")) {
             documentXLSX.saveFile(path, data);
         }
+        else if (format.equals("prop")) {
+            documentNative.saveFile(path, data);
+        }
+    }
+
+    /**
+     * Guarda la copia de un documento de forma atómica: se escribe en un archivo temporal en la misma carpeta y después se renombra
+     * al path del documento, así que si el guardado falla el archivo que había no se modifica. Se escribe con documentos propios
+     * para poder llamarlo desde otro hilo
+     * @param snapshot Copia del documento
+     * @param listener Destino del progreso, puede ser null
+     * @throws IOException Si no se puede escribir el documento
+     */
+    public void writeSnapshot(DocumentSnapshot snapshot, SaveListener listener) throws IOException {
+        Path target = Paths.get(snapshot.getPath()).toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+        int total = snapshot.getTotal();
+        try {
+            if (snapshot.getFormat().equals("prop")) {
+                if (listener != null) listener.progress(snapshot.getPath(), 0, total);
+                new DocumentNative().saveSheets(temp.toString(), snapshot.getImages());
+            }
+            else {
+                PersistanceDocument document;
+                if (snapshot.getFormat().equals("csv")) document = new DocumentCSV();
+                else if (snapshot.getFormat().equals("xlsx")) {
+                    DocumentXLSX xlsx = new DocumentXLSX();
+                    xlsx.setRowWindow(documentXLSX.getRowWindow());
+                    document = xlsx;
+                }
+                else throw new IOException("Formato no soportado: " + snapshot.getFormat());
+                document.setNames(new ArrayList<>(snapshot.getNames()));
+                document.writeFile(temp.toString(), progressRows(snapshot, listener, total));
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (listener != null) listener.progress(snapshot.getPath(), total, total);
+    }
+
+    /**
+     * Retorna las filas de cada hoja de la copia de un documento, avisando al listener del progreso a medida que el documento las lee.
+     * Se avisa como mucho unas cien veces por documento
+     * @param snapshot Copia del documento
+     * @param listener Destino del progreso, puede ser null
+     * @param total Número de filas de todas las hojas
+     * @return Filas de cada hoja
+     */
+    private static List<List<ArrayList<String>>> progressRows(DocumentSnapshot snapshot, SaveListener listener, int total) {
+        if (listener == null) return snapshot.getRows();
+        int step = Math.max(1, total / 100);
+        int[] done = {0};
+        List<List<ArrayList<String>>> data = new ArrayList<>();
+        for (List<ArrayList<String>> rows : snapshot.getRows()) {
+            data.add(new AbstractList<ArrayList<String>>() {
+                @Override
+                public ArrayList<String> get(int index) {
+                    if (++done[0] % step == 0) listener.progress(snapshot.getPath(), done[0], total);
+                    return rows.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return rows.size();
+                }
+            });
+        }
+        return data;
+    }
+
+    /**
+     * Guarda un conjunto de hojas con el formato nativo en el path especificado, con las fórmulas, sus valores calculados y las referencias entre celdas
+     * @param path Path donde se guardará el documento
+     * @param sheets Hojas a guardar
+     * @throws IOException Si no se puede escribir el documento
+     */
+    public void saveNativeDocument(String path, List<NativeSheet> sheets) throws IOException {
+        documentNative.saveSheets(path, sheets);
+    }
+
+    /**
+     * Carga todas las hojas de un documento con el formato nativo
+     * @param path Path desde donde se cargará el documento
+     * @return Hojas cargadas
+     * @throws IOException Si no se encuentra el documento o no tiene el formato nativo
+     */
+    public List<NativeSheet> loadNativeDocument(String path) throws IOException {
+        return documentNative.loadSheets(path);
+    }
+
+    /**
+     * Retorna el path del diario de ediciones de un documento con el formato nativo
+     * @param path Path del documento
+     * @return String con el path del diario
+     */
+    public static String journalPath(String path) {
+        return path + ".journal";
+    }
+
+    /**
+     * Crea el diario de ediciones de un documento con el formato nativo que todavía no se ha guardado con diario. Los registros se guardan
+     * en memoria hasta que el documento se guarda entero
+     * @param path Path del documento
+     * @return Diario sin archivo
+     */
+    public EditJournal newJournal(String path) {
+        return new EditJournal(journalPath(path));
+    }
+
+    /**
+     * Abre el diario de ediciones de un documento con el formato nativo para seguir añadiendo registros, o lo crea si no existe
+     * @param path Path del documento
+     * @return Diario abierto
+     * @throws IOException Si no se puede leer o crear el diario
+     */
+    public EditJournal openJournal(String path) throws IOException {
+        return EditJournal.open(journalPath(path), path);
+    }
+
+    /**
+     * Lee los registros del diario de ediciones de un documento con el formato nativo
+     * @param path Path del documento
+     * @return Registros del diario, vacío si el documento no tiene diario o es de otra versión del documento
+     * @throws IOException Si no se puede leer el diario
+     */
+    public List<EditJournal.Record> readJournal(String path) throws IOException {
+        return EditJournal.readRecords(journalPath(path), path);
+    }
+
+    /**
+     * Guarda una o varias hojas con formato csv en el path especificado, con el formato de csv indicado. Si hay varias hojas, cada una se guarda
+     * en su propio archivo con el nombre de la hoja añadido al path
+     * @param path Path donde se guardará el documento
+     * @param data Hoja o conjunto de hojas a guardar
+     * @param names Nombres de las hojas
+     * @param dialect Separador, quote y salto de línea del csv
+     */
+    public void exportCsv(String path, List<List<ArrayList<String>>> data, ArrayList<String> names, CsvDialect dialect) {
+        DocumentCSV document = new DocumentCSV();
+        document.setDialect(dialect);
+        document.setNames(names);
+        document.saveFile(path, data);
+    }
+
+    /**
+     * Define el número de filas de cada hoja que se guardan en memoria al guardar un documento xlsx
+     * @param rowWindow Número de filas, al menos 1
+     */
+    public void setXlsxRowWindow(int rowWindow) {
+        documentXLSX.setRowWindow(rowWindow);
     }
 
     /**
@@ -53,14 +244,54 @@ public class CtrlPersistencia {
      */
     public List<List<List<String>>> loadDocument(String path, String format) throws IOException {
         if (format.equals("csv")) { //Only saves one sheet
-            return documentCSV.loadFile(path);
+            return csvReader(path).loadFile(path);
         }
         else if (format.equals("xlsx")) {
             return documentXLSX.loadFile(path);
         }
+        else if (format.equals("prop")) {
+            return documentNative.loadFile(path);
+        }
         else return null;
     }
 
+    /**
+     * Lee una hoja o conjunto de hojas del path especificado y entrega cada celda no vacía al consumidor a medida que la lee, sin cargar el documento
+     * entero en memoria. Si el formato es xlsx o prop, el consumidor recibe el nombre de cada hoja antes de sus celdas
+     * @param path Path desde donde se cargará el documento
+     * @param format Formato del documento
+     * @param consumer Destino de las celdas leídas
+     * @return true si el formato se puede leer así, false en caso contrario
+     * @throws IOException Si no se encuentra el documento
+     */
+    public boolean streamDocument(String path, String format, CellConsumer consumer) throws IOException {
+        if (format.equals("csv")) {
+            csvReader(path).streamFile(path, consumer);
+            return true;
+        }
+        else if (format.equals("xlsx")) {
+            documentXLSX.streamFile(path, consumer);
+            return true;
+        }
+        else if (format.equals("prop")) {
+            documentNative.streamFile(path, consumer);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Retorna el documento con el que se lee un csv según su tamaño: los archivos de 16 MB o más se proyectan en memoria,
+     * y se analizan en paralelo si hay más de un procesador
+     * @param path Path del documento
+     * @return Documento csv con el que leerlo
+     */
+    private PersistanceDocument csvReader(String path) {
+        if (new File(path).length() < MAPPED_CSV_SIZE) return documentCSV;
+        if (Runtime.getRuntime().availableProcessors() > 1) return documentParallelCSV;
+        return documentMappedCSV;
+    }
+
     /**
      * Define los nombres de las hojas al guardar o cargar un documento
      * @param names Nombres de las hojas
@@ -68,6 +299,7 @@ public class CtrlPersistencia {
      */
     public void setnames(String format, ArrayList<String> names) {
         if (format.equals("csv")) documentCSV.setNames(names);
+        else if (format.equals("prop")) documentNative.setNames(names);
         else documentXLSX.setNames(names); }
 
 }
@@ -0,0 +1,133 @@
+package datos.controlador;
+
+import datos.documents.NativeSheet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static datos.auxiliarclasses.DocumentType.formatType;
+
+/**
+ * Representa una copia inmutable de un documento preparada para guardarse: el path, el formato y el contenido de las hojas,
+ * ya sea como filas de texto (csv y xlsx) o como imágenes del formato nativo (prop). Como no comparte nada con el documento,
+ * se puede guardar en otro hilo mientras el usuario sigue editando
+ */
+public final class DocumentSnapshot {
+
+    // Attributes
+
+    /**
+     * Representa el path donde se guardará el documento
+     */
+    private final String path;
+
+    /**
+     * Representa el formato del documento
+     */
+    private final String format;
+
+    /**
+     * Representa los nombres de las hojas
+     */
+    private final List<String> names;
+
+    /**
+     * Representa las filas de cada hoja, null si el documento tiene el formato nativo
+     */
+    private final List<List<ArrayList<String>>> rows;
+
+    /**
+     * Representa la imagen de cada hoja, null si el documento no tiene el formato nativo
+     */
+    private final List<NativeSheet> images;
+
+
+    // Constructor
+
+    private DocumentSnapshot(String path, String format, List<String> names, List<List<ArrayList<String>>> rows, List<NativeSheet> images) {
+        this.path = path;
+        this.format = format;
+        this.names = Collections.unmodifiableList(new ArrayList<>(names));
+        this.rows = rows == null ? null : Collections.unmodifiableList(new ArrayList<>(rows));
+        this.images = images == null ? null : Collections.unmodifiableList(new ArrayList<>(images));
+    }
+
+    /**
+     * Crea la copia de un documento csv o xlsx a partir de las filas de sus hojas. Las filas no se pueden modificar después
+     * @param path Path donde se guardará el documento
+     * @param names Nombres de las hojas
+     * @param rows Filas de cada hoja
+     * @return Copia del documento
+     */
+    public static DocumentSnapshot ofRows(String path, List<String> names, List<List<ArrayList<String>>> rows) {
+        return new DocumentSnapshot(path, formatType(path), names, rows, null);
+    }
+
+    /**
+     * Crea la copia de un documento con el formato nativo a partir de la imagen de sus hojas. Las imágenes no se pueden modificar después
+     * @param path Path donde se guardará el documento
+     * @param images Imagen de cada hoja
+     * @return Copia del documento
+     */
+    public static DocumentSnapshot ofImages(String path, List<NativeSheet> images) {
+        List<String> names = new ArrayList<>();
+        for (NativeSheet image : images) names.add(image.getName());
+        return new DocumentSnapshot(path, "prop", names, null, images);
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el path donde se guardará el documento
+     * @return String con el path
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Retorna el formato del documento
+     * @return String con el formato
+     */
+    public String getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Retorna los nombres de las hojas
+     * @return Nombres de las hojas
+     */
+    public List<String> getNames() {
+        return this.names;
+    }
+
+    /**
+     * Retorna las filas de cada hoja
+     * @return Filas de cada hoja, null si el documento tiene el formato nativo
+     */
+    public List<List<ArrayList<String>>> getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Retorna la imagen de cada hoja
+     * @return Imagen de cada hoja, null si el documento no tiene el formato nativo
+     */
+    public List<NativeSheet> getImages() {
+        return this.images;
+    }
+
+    /**
+     * Retorna el trabajo total de guardar el documento: el número de filas de todas las hojas, o el número de hojas en el formato nativo
+     * @return int con el trabajo total
+     */
+    public int getTotal() {
+        if (images != null) return images.size();
+        int total = 0;
+        for (List<ArrayList<String>> sheet : rows) total += sheet.size();
+        return total;
+    }
+
+}
@@ -0,0 +1,147 @@
+package datos.controlador;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Representa el servicio que guarda documentos en segundo plano, en un único hilo de entrada/salida: los guardados se hacen de uno en uno
+ * y en el orden en que se piden. También lanza el autoguardado periódico
+ */
+public class PersistenceService {
+
+    /**
+     * Interfaz que representa una escritura que se hace en el hilo de entrada/salida
+     */
+    public interface IOTask {
+
+        /**
+         * Hace la escritura
+         * @throws IOException Si no se puede escribir
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Representa el tiempo máximo que se espera, al cerrar la aplicación, a que acaben los guardados pendientes
+     */
+    private static final long SHUTDOWN_TIMEOUT = 30;
+
+    // Attributes
+
+    /**
+     * Representa el controlador de datos con el que se escriben los documentos
+     */
+    private final CtrlPersistencia dataController;
+
+    /**
+     * Representa el hilo de entrada/salida, null hasta que se pide el primer guardado
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Representa el autoguardado periódico, null si no está activo
+     */
+    private ScheduledFuture<?> autosave;
+
+
+    // Constructor
+
+    /**
+     * Crea el servicio de guardado, sin lanzar todavía ningún hilo
+     * @param dataController Controlador de datos con el que se escriben los documentos
+     */
+    public PersistenceService(CtrlPersistencia dataController) {
+        this.dataController = dataController;
+    }
+
+
+    // Methods
+
+    /**
+     * Guarda la copia de un documento en segundo plano
+     * @param snapshot Copia del documento
+     * @param listener Destino del progreso y del resultado, puede ser null
+     * @return Future que acaba cuando el documento se ha guardado o ha fallado
+     */
+    public Future<?> save(DocumentSnapshot snapshot, SaveListener listener) {
+        return submit(snapshot.getPath(), () -> dataController.writeSnapshot(snapshot, listener), listener);
+    }
+
+    /**
+     * Hace una escritura en segundo plano, después de las que ya se han pedido
+     * @param path Path donde se escribe
+     * @param task Escritura
+     * @param listener Destino del resultado, puede ser null
+     * @return Future que acaba cuando la escritura ha acabado o ha fallado
+     */
+    public synchronized Future<?> submit(String path, IOTask task, SaveListener listener) {
+        return executor().submit(() -> {
+            IOException error = null;
+            try {
+                task.run();
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new IOException(e);
+            }
+            if (listener != null) listener.finished(path, error);
+            else if (error != null) error.printStackTrace();
+        });
+    }
+
+    /**
+     * Activa el autoguardado: cada periodo se llama a trigger, que debe pedir el guardado de una copia del documento.
+     * Si ya estaba activo, se sustituye
+     * @param period Tiempo entre dos autoguardados
+     * @param unit Unidad del periodo
+     * @param trigger Acción que pide el guardado
+     */
+    public synchronized void startAutosave(long period, TimeUnit unit, Runnable trigger) {
+        stopAutosave();
+        autosave = executor().scheduleWithFixedDelay(trigger, period, period, unit);
+    }
+
+    /**
+     * Desactiva el autoguardado
+     */
+    public synchronized void stopAutosave() {
+        if (autosave != null) autosave.cancel(false);
+        autosave = null;
+    }
+
+    /**
+     * Desactiva el autoguardado y espera a que acaben los guardados pendientes, como mucho SHUTDOWN_TIMEOUT segundos
+     */
+    public synchronized void shutdown() {
+        stopAutosave();
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Retorna el hilo de entrada/salida, creándolo si todavía no existe. El hilo no impide que la aplicación se cierre,
+     * pero al cerrarla se espera a que acaben los guardados pendientes
+     * @return Hilo de entrada/salida
+     */
+    private ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "document-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "document-io-shutdown"));
+        }
+        return executor;
+    }
+
+}
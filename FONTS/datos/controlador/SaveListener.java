@@ -0,0 +1,26 @@
+package datos.controlador;
+
+import java.io.IOException;
+
+/**
+ * Interfaz que representa quien sigue el guardado de un documento en segundo plano. Los métodos se llaman desde el hilo que guarda el documento
+ */
+public interface SaveListener {
+
+    /**
+     * Recibe el progreso del guardado
+     * @param path Path donde se guarda el documento
+     * @param done Trabajo hecho, en filas o en hojas
+     * @param total Trabajo total
+     */
+    default void progress(String path, int done, int total) {
+    }
+
+    /**
+     * Indica que el guardado ha acabado. Si ha fallado, el archivo que había en el path no se ha modificado
+     * @param path Path donde se guarda el documento
+     * @param error Error del guardado, null si el documento se ha guardado
+     */
+    void finished(String path, IOException error);
+
+}
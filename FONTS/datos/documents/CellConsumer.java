@@ -0,0 +1,24 @@
+package datos.documents;
+
+/**
+ * Interfaz que representa el destino de las celdas leídas de un documento a medida que se leen, sin guardar el documento entero en memoria
+ */
+public interface CellConsumer {
+
+    /**
+     * Recibe el contenido de una celda del documento. Solo se llama para las celdas que no están vacías
+     * @param row Fila de la celda en el documento, empezando por 0
+     * @param col Columna de la celda en el documento, empezando por 0
+     * @param value Contenido de la celda
+     */
+    void accept(int row, int col, String value);
+
+    /**
+     * Indica que empieza una hoja nueva en los documentos con varias hojas: las celdas que se reciban a continuación son de esa hoja.
+     * Los documentos con una sola hoja no lo llaman
+     * @param name Nombre de la hoja
+     */
+    default void startSheet(String name) {
+    }
+
+}
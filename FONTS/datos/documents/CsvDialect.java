@@ -0,0 +1,77 @@
+package datos.documents;
+
+/**
+ * Representa el formato concreto de un archivo csv: el separador entre los datos, el carácter con el que se delimitan los campos
+ * y el salto de línea entre filas
+ */
+public class CsvDialect {
+
+    /**
+     * Representa el formato por defecto: separado por comas, con comillas dobles y saltos de línea '\n'
+     */
+    public static final CsvDialect DEFAULT = new CsvDialect(',', '"', "\n");
+
+    // Attributes
+
+    /**
+     * Representa el separador entre los datos
+     */
+    private final char separator;
+
+    /**
+     * Representa el carácter con el que se delimitan los campos que contienen separadores, quotes o saltos de línea
+     */
+    private final char quote;
+
+    /**
+     * Representa el salto de línea entre filas
+     */
+    private final String lineSeparator;
+
+
+    // Constructor
+
+    /**
+     * Crea un formato csv
+     * @param separator Separador entre los datos
+     * @param quote Carácter con el que se delimitan los campos
+     * @param lineSeparator Salto de línea entre filas, "\n" o "\r\n"
+     * @throws IllegalArgumentException Si el separador y la quote coinciden o son saltos de línea
+     */
+    public CsvDialect(char separator, char quote, String lineSeparator) {
+        if (separator == quote || separator == '\n' || separator == '\r' || quote == '\n' || quote == '\r') {
+            throw new IllegalArgumentException("Invalid csv dialect");
+        }
+        this.separator = separator;
+        this.quote = quote;
+        this.lineSeparator = lineSeparator;
+    }
+
+
+    // Methods
+
+    /**
+     * Retorna el separador entre los datos
+     * @return char con el separador
+     */
+    public char getSeparator() {
+        return this.separator;
+    }
+
+    /**
+     * Retorna el carácter con el que se delimitan los campos
+     * @return char con la quote
+     */
+    public char getQuote() {
+        return this.quote;
+    }
+
+    /**
+     * Retorna el salto de línea entre filas
+     * @return String con el salto de línea
+     */
+    public String getLineSeparator() {
+        return this.lineSeparator;
+    }
+
+}
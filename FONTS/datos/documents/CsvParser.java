@@ -0,0 +1,226 @@
+package datos.documents;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Representa el análisis de un archivo csv codificado en UTF-8 directamente sobre sus bytes. Los bytes se reciben por bloques, que pueden cortar
+ * un campo o una fila por cualquier sitio, y solo se crea el String de un campo cuando no está vacío y se entrega al consumidor.
+ * Un campo entre quotes puede contener separadores, saltos de línea y quotes dobladas (""); una quote que no está al principio del campo
+ * se trata como un carácter más
+ */
+public class CsvParser {
+
+    // Attributes
+
+    /**
+     * Representa el separador entre los datos
+     */
+    private final byte separator;
+
+    /**
+     * Representa el carácter con el que se delimitan los campos que contienen separadores
+     */
+    private final byte quote;
+
+    /**
+     * Representa el destino de las celdas leídas
+     */
+    private final CellConsumer consumer;
+
+    /**
+     * Representa los bytes del campo actual que ya se han leído
+     */
+    private byte[] field;
+
+    /**
+     * Representa el número de bytes del campo actual
+     */
+    private int length;
+
+    /**
+     * Representa la fila del campo actual
+     */
+    private int row;
+
+    /**
+     * Representa la columna del campo actual
+     */
+    private int col;
+
+    /**
+     * Indica si estamos dentro de un campo entre quotes
+     */
+    private boolean inQuotes;
+
+    /**
+     * Indica si el campo actual empezaba con quote
+     */
+    private boolean quoted;
+
+    /**
+     * Indica si acabamos de cerrar quotes: si viene otra quote es una quote doblada
+     */
+    private boolean closedQuote;
+
+    /**
+     * Indica si la última línea ha acabado en '\r': si viene '\n' se ignora
+     */
+    private boolean carriageReturn;
+
+    /**
+     * Indica si todavía no se ha leído ningún byte, para saltar la marca de orden de bytes de UTF-8
+     */
+    private boolean first;
+
+
+    // Constructor
+
+    /**
+     * Crea el análisis de un archivo csv que empieza en la fila 0
+     * @param separator Separador entre los datos (por defecto es ',' al ser un csv)
+     * @param quote Carácter con el que se delimitan los campos que contienen separadores
+     * @param consumer Destino de las celdas leídas
+     */
+    public CsvParser(char separator, char quote, CellConsumer consumer) {
+        this(separator, quote, consumer, true);
+    }
+
+    /**
+     * Crea el análisis de una parte de un archivo csv que empieza al principio de una fila, que se numera como la fila 0
+     * @param separator Separador entre los datos (por defecto es ',' al ser un csv)
+     * @param quote Carácter con el que se delimitan los campos que contienen separadores
+     * @param consumer Destino de las celdas leídas
+     * @param start Indica si la parte empieza al principio del archivo, donde puede haber marca de orden de bytes
+     */
+    public CsvParser(char separator, char quote, CellConsumer consumer, boolean start) {
+        this.separator = (byte) separator;
+        this.quote = (byte) quote;
+        this.consumer = consumer;
+        this.field = new byte[256];
+        this.length = 0;
+        this.row = 0;
+        this.col = 0;
+        this.first = start;
+    }
+
+
+    // Methods
+
+    /**
+     * Retorna la fila que se está leyendo
+     * @return int con el número de filas acabadas hasta ahora
+     */
+    public int getRow() {
+        return this.row;
+    }
+
+    /**
+     * Lee un bloque de bytes del archivo, que continúa justo donde acabó el bloque anterior. Cambia la posición del buffer
+     * @param buffer Bytes del archivo
+     * @param from Posición del primer byte del bloque
+     * @param to Posición siguiente al último byte del bloque
+     */
+    public void feed(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        if (first && i < to) {
+            first = false;
+            if (to - i >= 3 && buffer.get(i) == (byte) 0xEF && buffer.get(i + 1) == (byte) 0xBB && buffer.get(i + 2) == (byte) 0xBF) i += 3;
+        }
+        while (i < to) {
+            byte b = buffer.get(i);
+            if (carriageReturn) {
+                carriageReturn = false;
+                if (b == '\n') {
+                    ++i;
+                    continue;
+                }
+            }
+            if (inQuotes) {
+                // copiamos de golpe todo hasta la siguiente quote
+                int j = i;
+                while (j < to && buffer.get(j) != quote) ++j;
+                append(buffer, i, j);
+                if (j < to) {
+                    inQuotes = false;
+                    closedQuote = true;
+                    ++j;
+                }
+                i = j;
+                continue;
+            }
+            if (closedQuote) {
+                closedQuote = false;
+                if (b == quote) {
+                    append(buffer, i, i + 1);
+                    inQuotes = true;
+                    ++i;
+                    continue;
+                }
+            }
+            if (b == separator) {
+                emit();
+                ++col;
+                ++i;
+            }
+            else if (b == '\n' || b == '\r') {
+                emit();
+                ++row;
+                col = 0;
+                carriageReturn = b == '\r';
+                ++i;
+            }
+            else if (b == quote && !quoted && length == 0) {
+                inQuotes = true;
+                quoted = true;
+                ++i;
+            }
+            else {
+                // copiamos de golpe todo hasta el siguiente separador o salto de línea
+                int j = i + 1;
+                while (j < to) {
+                    byte c = buffer.get(j);
+                    if (c == separator || c == '\n' || c == '\r') break;
+                    ++j;
+                }
+                append(buffer, i, j);
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Acaba el análisis entregando el último campo, si el archivo no acaba en salto de línea
+     */
+    public void finish() {
+        emit();
+    }
+
+    /**
+     * Añade bytes del archivo al campo actual
+     * @param buffer Bytes del archivo
+     * @param from Posición del primer byte a añadir
+     * @param to Posición siguiente al último byte a añadir
+     */
+    private void append(ByteBuffer buffer, int from, int to) {
+        int n = to - from;
+        if (n == 0) return;
+        if (length + n > field.length) field = Arrays.copyOf(field, Math.max(length + n, field.length * 2));
+        buffer.position(from);
+        buffer.get(field, length, n);
+        length += n;
+    }
+
+    /**
+     * Entrega el campo actual al consumidor si no está vacío y empieza el siguiente
+     */
+    private void emit() {
+        if (length > 0) {
+            consumer.accept(row, col, new String(field, 0, length, StandardCharsets.UTF_8));
+            length = 0;
+        }
+        quoted = false;
+    }
+
+}
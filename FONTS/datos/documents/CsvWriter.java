@@ -0,0 +1,164 @@
+package datos.documents;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Representa la escritura de un archivo csv por filas. Los campos se escriben en un buffer propio de 64 KB que solo se vuelca al archivo cuando
+ * está lleno, y cada campo se recorre una sola vez: se copia doblando las quotes y, si al acabar resulta que no hacía falta ponerlo entre quotes,
+ * se quita el hueco reservado para la quote inicial
+ */
+public class CsvWriter implements Closeable {
+
+    // Attributes
+
+    /**
+     * Representa el archivo donde se escribe
+     */
+    private final Writer out;
+
+    /**
+     * Representa el separador entre los datos
+     */
+    private final char separator;
+
+    /**
+     * Representa el carácter con el que se delimitan los campos
+     */
+    private final char quote;
+
+    /**
+     * Representa el salto de línea entre filas
+     */
+    private final String lineSeparator;
+
+    /**
+     * Representa los caracteres escritos que todavía no se han volcado al archivo
+     */
+    private char[] buffer;
+
+    /**
+     * Representa el número de caracteres del buffer
+     */
+    private int length;
+
+    /**
+     * Indica si el siguiente campo es el primero de la fila
+     */
+    private boolean rowStart;
+
+
+    // Constructor
+
+    /**
+     * Crea la escritura de un archivo csv con el formato indicado
+     * @param out Archivo donde se escribe
+     * @param dialect Formato del archivo
+     */
+    public CsvWriter(Writer out, CsvDialect dialect) {
+        this.out = out;
+        this.separator = dialect.getSeparator();
+        this.quote = dialect.getQuote();
+        this.lineSeparator = dialect.getLineSeparator();
+        this.buffer = new char[1 << 16];
+        this.length = 0;
+        this.rowStart = true;
+    }
+
+
+    // Methods
+
+    /**
+     * Escribe un campo en la fila actual, entre quotes si contiene el separador, la quote o un salto de línea
+     * @param value Contenido del campo
+     * @throws IOException Si no se puede escribir en el archivo
+     */
+    public void writeField(String value) throws IOException {
+        int n = value.length();
+        reserve(2 * n + 3);
+        if (!rowStart) buffer[length++] = separator;
+        rowStart = false;
+        int start = length++;
+        boolean quoted = false;
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c == quote) {
+                buffer[length++] = c;
+                quoted = true;
+            }
+            else if (c == separator || c == '\n' || c == '\r') quoted = true;
+            buffer[length++] = c;
+        }
+        if (quoted) {
+            buffer[start] = quote;
+            buffer[length++] = quote;
+        }
+        else {
+            System.arraycopy(buffer, start + 1, buffer, start, n);
+            --length;
+        }
+    }
+
+    /**
+     * Acaba la fila actual
+     * @throws IOException Si no se puede escribir en el archivo
+     */
+    public void endRow() throws IOException {
+        reserve(lineSeparator.length());
+        lineSeparator.getChars(0, lineSeparator.length(), buffer, length);
+        length += lineSeparator.length();
+        rowStart = true;
+    }
+
+    /**
+     * Escribe una fila entera
+     * @param row Campos de la fila
+     * @throws IOException Si no se puede escribir en el archivo
+     */
+    public void writeRow(List<String> row) throws IOException {
+        for (String value : row) writeField(value == null ? "" : value);
+        endRow();
+    }
+
+    /**
+     * Se asegura de que caben los caracteres indicados en el buffer, volcándolo al archivo o ampliándolo si hace falta
+     * @param n Número de caracteres que se van a escribir
+     * @throws IOException Si no se puede escribir en el archivo
+     */
+    private void reserve(int n) throws IOException {
+        if (length + n <= buffer.length) return;
+        flushBuffer();
+        if (n > buffer.length) buffer = new char[n];
+    }
+
+    /**
+     * Vuelca el buffer al archivo
+     * @throws IOException Si no se puede escribir en el archivo
+     */
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, length);
+        length = 0;
+    }
+
+    /**
+     * Vuelca al archivo todo lo escrito
+     * @throws IOException Si no se puede escribir en el archivo
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Vuelca al archivo todo lo escrito y lo cierra
+     * @throws IOException Si no se puede escribir en el archivo
+     */
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+
+}
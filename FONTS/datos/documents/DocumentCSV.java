@@ -1,9 +1,16 @@
 package datos.documents;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,24 +19,56 @@ import java.util.List;
  */
 public class DocumentCSV implements PersistanceDocument {
 
+    /**
+     * Representa el formato con el que se guardan los documentos
+     */
+    private CsvDialect dialect = CsvDialect.DEFAULT;
+
+    /**
+     * Representa los nombres de las hojas a guardar
+     */
+    private ArrayList<String> sheetNames = new ArrayList<>();
+
 
     /**
-     * Guarda una hoja en el path especificado con formato csv
+     * Guarda una hoja en el path especificado con formato csv. Si se guardan varias hojas, cada una va a su propio archivo,
+     * con el nombre de la hoja añadido al path (por ejemplo datos_Hoja1.csv)
      * @param path Path donde se guardará el documento
-     * @param data Hoja a guardar
+     * @param data Hoja u hojas a guardar
+     * @throws IOException Si no se puede escribir el documento
      */
     @Override
-    public void saveFile(String path, List<List<ArrayList<String>>> data) {
-        try {
-            FileWriter outputFile = new FileWriter(path);
-            convertToCsv(outputFile, data.get(0)); //solo una sheet
-            outputFile.flush();
-            outputFile.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    public void writeFile(String path, List<List<ArrayList<String>>> data) throws IOException {
+        for (int i = 0; i < data.size(); i++) {
+            String sheetPath = data.size() == 1 ? path : sheetPath(path, i);
+            try (CsvWriter writer = new CsvWriter(new OutputStreamWriter(new FileOutputStream(sheetPath), StandardCharsets.UTF_8), dialect)) {
+                for (ArrayList<String> row : data.get(i)) writer.writeRow(row);
+            }
         }
     }
 
+    /**
+     * Retorna el path del archivo de una hoja cuando se guardan varias
+     * @param path Path donde se guardará el documento
+     * @param i Índice de la hoja
+     * @return String con el path, con el nombre de la hoja (o su índice si no tiene) antes de la extensión
+     */
+    private String sheetPath(String path, int i) {
+        String name = i < sheetNames.size() ? sheetNames.get(i) : String.valueOf(i);
+        name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        int dotIndex = path.lastIndexOf('.');
+        if (dotIndex <= path.lastIndexOf(File.separatorChar)) return path + "_" + name;
+        return path.substring(0, dotIndex) + "_" + name + path.substring(dotIndex);
+    }
+
+    /**
+     * Define el formato con el que se guardan los documentos
+     * @param dialect Separador, quote y salto de línea del csv
+     */
+    public void setDialect(CsvDialect dialect) {
+        this.dialect = dialect;
+    }
+
     /**
      * Carga una hoja del path especificado con formato csv
      * @param path Path desde donde se cargará el documento
@@ -47,38 +86,26 @@ public class DocumentCSV implements PersistanceDocument {
     }
 
     /**
-     * Convierte una hoja de datos a formato csv para poder guardarla
-     * @param a Archivo donde guardará los datos de la hoja
-     * @param data Hoja de datos a guardar
+     * Lee una hoja del path especificado con formato csv por bloques de 64 KB y entrega cada celda no vacía al consumidor a medida que la lee,
+     * sin guardar el documento en memoria
+     * @param path Path desde donde se cargará el documento
+     * @param consumer Destino de las celdas leídas
      * @throws IOException Si no se encuentra el documento
      */
-    private static void convertToCsv(FileWriter a, List<ArrayList<String>> data) throws IOException {
-        for (ArrayList<String> arrayList : data) {
-            for (String word2Add : arrayList) {
-                if (word2Add.contains(",") && word2Add.contains("\"")) {
-                    a.append('"');
-                    for (int k = 0; k < word2Add.length(); k++) {
-                        if (word2Add.charAt(k) != '"') a.append(word2Add.charAt(k));
-                        else {
-                            a.append('"');
-                            a.append(word2Add.charAt(k));
-                        }
-                    }
-                    a.append('"');
-                } else if (word2Add.contains(",")) {
-                    a.append('"');
-                    a.append(word2Add);
-                    a.append('"');
-                } else {
-                    a.append(word2Add);
-                }
-                a.append(",");
+    @Override
+    public void streamFile(String path, CellConsumer consumer) throws IOException {
+        CsvParser parser = new CsvParser(',', '"', consumer);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                int n = buffer.position();
+                parser.feed(buffer, 0, n);
+                buffer.clear();
             }
-            a.append("\n");
         }
+        parser.finish();
     }
 
-
     /**
      * Convierte un archivo csv a una hoja de datos para poder cargarla
      * @param br Archivo desde donde se cargará la hoja
@@ -166,11 +193,11 @@ public class DocumentCSV implements PersistanceDocument {
 
 
     /**
-     * Define el nombre de las hoja al guardar un documento
+     * Define el nombre de las hojas al guardar un documento
      * @param names Nombres de las hojas
      */
     @Override
     public void setNames(ArrayList<String> names) {
-
+        this.sheetNames = names;
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package datos.documents;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Representa un documento con formato csv que se lee proyectando el archivo en memoria (memory-mapped) en lugar de copiarlo a buffers.
+ * El análisis recorre directamente los bytes proyectados, así que está pensado para archivos muy grandes; se guarda igual que DocumentCSV
+ */
+public class DocumentMappedCSV extends DocumentCSV {
+
+    /**
+     * Representa el tamaño máximo de cada parte del archivo que se proyecta a la vez
+     */
+    private static final long WINDOW = 1L << 30;
+
+    /**
+     * Carga una hoja del path especificado con formato csv
+     * @param path Path desde donde se cargará el documento
+     * @return Hoja cargada, con las celdas vacías como ""
+     * @throws IOException Si no se encuentra el documento
+     */
+    @Override
+    public List<List<List<String>>> loadFile(String path) throws IOException {
+        List<List<String>> aux = new ArrayList<>();
+        streamFile(path, (row, col, value) -> {
+            while (aux.size() <= row) aux.add(new ArrayList<>());
+            List<String> line = aux.get(row);
+            while (line.size() < col) line.add("");
+            line.add(value);
+        });
+        List<List<List<String>>> res = new ArrayList<>();
+        res.add(aux);
+        return res;
+    }
+
+    /**
+     * Lee una hoja del path especificado con formato csv proyectando el archivo en memoria por partes de como mucho 1 GB,
+     * y entrega cada celda no vacía al consumidor a medida que la lee
+     * @param path Path desde donde se cargará el documento
+     * @param consumer Destino de las celdas leídas
+     * @throws IOException Si no se encuentra el documento
+     */
+    @Override
+    public void streamFile(String path, CellConsumer consumer) throws IOException {
+        CsvParser parser = new CsvParser(',', '"', consumer);
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long offset = 0; offset < size; offset += WINDOW) {
+                int length = (int) Math.min(WINDOW, size - offset);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                parser.feed(buffer, 0, length);
+            }
+        }
+        parser.finish();
+    }
+
+}
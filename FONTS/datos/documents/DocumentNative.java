@@ -0,0 +1,429 @@
+package datos.documents;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Representa un documento con el formato nativo de la aplicación (.prop), un formato binario que guarda cada hoja por columnas:
+ * los números en arrays de double, los textos como índices de un diccionario de textos compartido por todo el documento,
+ * las fórmulas junto con su último valor calculado y las referencias entre celdas. Al abrirlo no hay que volver a calcular nada
+ */
+public class DocumentNative implements PersistanceDocument {
+
+    /**
+     * Representa los bytes con los que empieza el archivo ("PROP")
+     */
+    private static final int MAGIC = 0x50524F50;
+
+    /**
+     * Representa la versión del formato
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Representa el tamaño del buffer de lectura y escritura
+     */
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Representa la escritura del archivo a través de un buffer propio que se vuelca al canal cuando está lleno
+     */
+    private static final class Output implements Closeable {
+
+        final FileChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+
+        Output(String path) throws IOException {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void reserve(int n) throws IOException {
+            if (buffer.remaining() >= n) return;
+            flush();
+            if (buffer.capacity() < n) buffer = ByteBuffer.allocate(n);
+        }
+
+        void writeInt(int v) throws IOException {
+            reserve(4);
+            buffer.putInt(v);
+        }
+
+        void writeDouble(double v) throws IOException {
+            reserve(8);
+            buffer.putDouble(v);
+        }
+
+        void write(byte[] bytes, int from, int n) throws IOException {
+            reserve(n);
+            buffer.put(bytes, from, n);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Representa la lectura del archivo a través de un buffer propio que se vuelve a llenar desde el canal cuando se acaba
+     */
+    private static final class Input implements Closeable {
+
+        final FileChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+
+        Input(String path) throws IOException {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+            buffer.flip();
+        }
+
+        void require(int n) throws IOException {
+            if (buffer.remaining() >= n) return;
+            if (buffer.capacity() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(n);
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            else buffer.compact();
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) throw new EOFException();
+            }
+            buffer.flip();
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        double readDouble() throws IOException {
+            require(8);
+            return buffer.getDouble();
+        }
+
+        void readFully(byte[] bytes, int from, int n) throws IOException {
+            require(n);
+            buffer.get(bytes, from, n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Representa los nombres de las hojas a guardar
+     */
+    private ArrayList<String> sheetNames = new ArrayList<>();
+
+
+    /**
+     * Guarda una hoja o conjunto de hojas en el path especificado. Las fórmulas se guardan sin valor calculado, así que se calculan al abrir el documento
+     * @param path Path donde se guardará el documento
+     * @param data Hoja o conjunto de hojas a guardar
+     * @throws IOException Si no se puede escribir el documento
+     */
+    @Override
+    public void writeFile(String path, List<List<ArrayList<String>>> data) throws IOException {
+        List<NativeSheet> sheets = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            List<ArrayList<String>> rows = data.get(i);
+            int nColumns = 0;
+            for (ArrayList<String> row : rows) nColumns = Math.max(nColumns, row.size());
+            NativeSheet sheet = new NativeSheet(i < sheetNames.size() ? sheetNames.get(i) : String.valueOf(i), rows.size(), nColumns);
+            for (int r = 0; r < rows.size(); r++) {
+                for (int c = 0; c < rows.get(r).size(); c++) {
+                    String value = rows.get(r).get(c);
+                    if (value == null || value.isEmpty()) continue;
+                    if (value.length() > 1 && value.charAt(0) == '=') sheet.addFormula(r, c, value, null, (byte) 0, 0, null);
+                    else sheet.addValue(r, c, value);
+                }
+            }
+            sheets.add(sheet);
+        }
+        saveSheets(path, sheets);
+    }
+
+    /**
+     * Carga todas las hojas del path especificado con el input de cada celda
+     * @param path Path desde donde se cargará el documento
+     * @return Hojas cargadas, con las celdas vacías como ""
+     * @throws IOException Si no se encuentra el documento o no tiene el formato nativo
+     */
+    @Override
+    public List<List<List<String>>> loadFile(String path) throws IOException {
+        List<List<List<String>>> res = new ArrayList<>();
+        for (NativeSheet sheet : loadSheets(path)) {
+            List<List<String>> aux = new ArrayList<>();
+            for (int i = 0; i < sheet.getNRows(); i++) aux.add(new ArrayList<>());
+            sheet.accept(new NativeSheet.Visitor() {
+                @Override
+                public void value(int row, int col, String value) {
+                    put(row, col, value);
+                }
+
+                @Override
+                public void formula(int row, int col, String formula, String function, byte type, double number, String text) {
+                    put(row, col, formula);
+                }
+
+                private void put(int row, int col, String value) {
+                    while (aux.size() <= row) aux.add(new ArrayList<>());
+                    List<String> line = aux.get(row);
+                    while (line.size() <= col) line.add("");
+                    line.set(col, value);
+                }
+            });
+            res.add(aux);
+        }
+        return res;
+    }
+
+    /**
+     * Lee todas las hojas del path especificado y entrega al consumidor el nombre de cada hoja y el input de sus celdas no vacías
+     * @param path Path desde donde se cargará el documento
+     * @param consumer Destino de las celdas leídas
+     * @throws IOException Si no se encuentra el documento o no tiene el formato nativo
+     */
+    @Override
+    public void streamFile(String path, CellConsumer consumer) throws IOException {
+        for (NativeSheet sheet : loadSheets(path)) {
+            consumer.startSheet(sheet.getName());
+            sheet.accept(new NativeSheet.Visitor() {
+                @Override
+                public void value(int row, int col, String value) {
+                    consumer.accept(row, col, value);
+                }
+
+                @Override
+                public void formula(int row, int col, String formula, String function, byte type, double number, String text) {
+                    consumer.accept(row, col, formula);
+                }
+            });
+        }
+    }
+
+    /**
+     * Guarda las hojas indicadas en el path especificado
+     * @param path Path donde se guardará el documento
+     * @param sheets Hojas a guardar
+     * @throws IOException Si no se puede escribir el documento
+     */
+    public void saveSheets(String path, List<NativeSheet> sheets) throws IOException {
+        // el diccionario va antes que las hojas, así que primero se recogen todos los textos
+        HashMap<String, Integer> ids = new HashMap<>();
+        ArrayList<String> dictionary = new ArrayList<>();
+        for (NativeSheet sheet : sheets) {
+            intern(sheet.getName(), ids, dictionary);
+            for (int col = 0; col < sheet.getColumnCount(); col++) {
+                NativeSheet.Column column = sheet.getColumn(col);
+                if (column == null) continue;
+                for (int i = 0; i < column.size; i++) {
+                    intern(column.texts[i], ids, dictionary);
+                    intern(column.functions[i], ids, dictionary);
+                    intern(column.values[i], ids, dictionary);
+                }
+            }
+        }
+        try (Output out = new Output(path)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dictionary.size());
+            for (String s : dictionary) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+            out.writeInt(sheets.size());
+            for (NativeSheet sheet : sheets) writeSheet(out, sheet, ids);
+        }
+    }
+
+    /**
+     * Escribe una hoja: su nombre y tamaño, cada columna con sus arrays uno detrás de otro y las referencias entre celdas
+     * @param out Archivo donde se escribe
+     * @param sheet Hoja a escribir
+     * @param ids Índice de cada texto en el diccionario
+     * @throws IOException Si no se puede escribir el documento
+     */
+    private static void writeSheet(Output out, NativeSheet sheet, HashMap<String, Integer> ids) throws IOException {
+        out.writeInt(ids.get(sheet.getName()));
+        out.writeInt(sheet.getNRows());
+        out.writeInt(sheet.getNColumns());
+        int nColumns = 0;
+        for (int col = 0; col < sheet.getColumnCount(); col++) {
+            if (sheet.getColumn(col) != null) ++nColumns;
+        }
+        out.writeInt(nColumns);
+        for (int col = 0; col < sheet.getColumnCount(); col++) {
+            NativeSheet.Column column = sheet.getColumn(col);
+            if (column == null) continue;
+            int n = column.size;
+            out.writeInt(col);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) out.writeInt(column.rows[i]);
+            out.write(column.kinds, 0, n);
+            for (int i = 0; i < n; i++) {
+                if (hasNumber(column.kinds[i])) out.writeDouble(column.numbers[i]);
+            }
+            for (int i = 0; i < n; i++) {
+                if (hasText(column.kinds[i])) out.writeInt(ids.get(column.texts[i]));
+            }
+            for (int i = 0; i < n; i++) {
+                if (isFormula(column.kinds[i])) out.writeInt(id(column.functions[i], ids));
+            }
+            for (int i = 0; i < n; i++) {
+                if (isFormula(column.kinds[i])) out.writeInt(id(column.values[i], ids));
+            }
+        }
+        int[] references = sheet.getReferences();
+        out.writeInt(sheet.getReferenceCount());
+        for (int i = 0; i < 4 * sheet.getReferenceCount(); i++) out.writeInt(references[i]);
+    }
+
+    /**
+     * Carga todas las hojas del path especificado
+     * @param path Path desde donde se cargará el documento
+     * @return Hojas cargadas, en el orden en que se guardaron
+     * @throws IOException Si no se encuentra el documento o no tiene el formato nativo
+     */
+    public List<NativeSheet> loadSheets(String path) throws IOException {
+        try (Input in = new Input(path)) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a native document: " + path);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported native document version " + version);
+            String[] dictionary = new String[in.readInt()];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = in.readInt();
+                if (length > bytes.length) bytes = new byte[Math.max(length, 2 * bytes.length)];
+                in.readFully(bytes, 0, length);
+                dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            int nSheets = in.readInt();
+            List<NativeSheet> sheets = new ArrayList<>(nSheets);
+            for (int s = 0; s < nSheets; s++) sheets.add(readSheet(in, dictionary));
+            return sheets;
+        }
+    }
+
+    /**
+     * Lee una hoja escrita por writeSheet
+     * @param in Archivo desde donde se lee
+     * @param dictionary Diccionario de textos del documento
+     * @return Hoja leída
+     * @throws IOException Si no se puede leer el documento
+     */
+    private static NativeSheet readSheet(Input in, String[] dictionary) throws IOException {
+        NativeSheet sheet = new NativeSheet(dictionary[in.readInt()], in.readInt(), in.readInt());
+        int nColumns = in.readInt();
+        for (int c = 0; c < nColumns; c++) {
+            int col = in.readInt();
+            int n = in.readInt();
+            int[] rows = new int[n];
+            for (int i = 0; i < n; i++) rows[i] = in.readInt();
+            byte[] kinds = new byte[n];
+            in.readFully(kinds, 0, n);
+            double[] numbers = new double[n];
+            for (int i = 0; i < n; i++) {
+                if (hasNumber(kinds[i])) numbers[i] = in.readDouble();
+            }
+            String[] texts = new String[n];
+            for (int i = 0; i < n; i++) {
+                if (hasText(kinds[i])) texts[i] = dictionary[in.readInt()];
+            }
+            String[] functions = new String[n];
+            for (int i = 0; i < n; i++) {
+                if (isFormula(kinds[i])) functions[i] = entry(in.readInt(), dictionary);
+            }
+            String[] values = new String[n];
+            for (int i = 0; i < n; i++) {
+                if (isFormula(kinds[i])) values[i] = entry(in.readInt(), dictionary);
+            }
+            for (int i = 0; i < n; i++) sheet.add(rows[i], col, kinds[i], numbers[i], texts[i], functions[i], values[i]);
+        }
+        int nReferences = in.readInt();
+        for (int i = 0; i < nReferences; i++) sheet.addReference(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        return sheet;
+    }
+
+    /**
+     * Añade un texto al diccionario si todavía no está
+     * @param s Texto, no se añade si es null
+     * @param ids Índice de cada texto en el diccionario
+     * @param dictionary Textos del diccionario en orden
+     */
+    private static void intern(String s, HashMap<String, Integer> ids, ArrayList<String> dictionary) {
+        if (s == null || ids.containsKey(s)) return;
+        ids.put(s, dictionary.size());
+        dictionary.add(s);
+    }
+
+    /**
+     * Retorna el índice de un texto en el diccionario
+     * @return int con el índice, -1 si el texto es null
+     */
+    private static int id(String s, HashMap<String, Integer> ids) {
+        return s == null ? -1 : ids.get(s);
+    }
+
+    /**
+     * Retorna el texto del diccionario con el índice indicado
+     * @return String con el texto, null si el índice es -1
+     */
+    private static String entry(int id, String[] dictionary) {
+        return id < 0 ? null : dictionary[id];
+    }
+
+    /**
+     * Indica si una celda del tipo indicado guarda un número: los valores numéricos y el resultado numérico o booleano de las fórmulas
+     */
+    private static boolean hasNumber(byte kind) {
+        int type = kind & ~NativeSheet.FORMULA;
+        return type == NativeSheet.NUMBER || type == NativeSheet.INTEGER || type == NativeSheet.BOOLEAN || type == NativeSheet.NUMBER_TEXT;
+    }
+
+    /**
+     * Indica si una celda del tipo indicado guarda un texto: los valores de texto y la fórmula de las celdas con fórmula
+     */
+    private static boolean hasText(byte kind) {
+        return kind == NativeSheet.TEXT || isFormula(kind);
+    }
+
+    /**
+     * Indica si una celda del tipo indicado tiene una fórmula
+     */
+    private static boolean isFormula(byte kind) {
+        return (kind & NativeSheet.FORMULA) != 0;
+    }
+
+    /**
+     * Define el nombre de las hojas al guardar un documento
+     * @param names Nombres de las hojas
+     */
+    @Override
+    public void setNames(ArrayList<String> names) {
+        this.sheetNames = names;
+    }
+
+}
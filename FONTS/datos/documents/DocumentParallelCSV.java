@@ -0,0 +1,232 @@
+package datos.documents;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Representa un documento con formato csv que se lee en paralelo. El archivo se parte en trozos que acaban en un salto de línea que no está
+ * dentro de quotes, cada trozo se analiza en un hilo del fork-join pool común proyectándolo en memoria, y las filas se entregan al consumidor
+ * en orden, trozo a trozo. Solo hay unos pocos trozos analizados a la vez, así que la memoria no depende del tamaño del archivo
+ */
+public class DocumentParallelCSV extends DocumentMappedCSV {
+
+    /**
+     * Representa el resultado del análisis de un trozo: sus celdas, guardadas por columnas en arrays, y el número de filas que acaba
+     */
+    private static final class Chunk implements CellConsumer {
+
+        int[] rows = new int[1024];
+        int[] cols = new int[1024];
+        String[] values = new String[1024];
+        int size;
+        int nRows;
+
+        @Override
+        public void accept(int row, int col, String value) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                cols = Arrays.copyOf(cols, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            rows[size] = row;
+            cols[size] = col;
+            values[size] = value;
+            ++size;
+        }
+    }
+
+    // Estados del recorrido que busca los saltos de línea que acaban una fila: al principio de un campo, dentro de un campo sin quotes,
+    // dentro de quotes y justo después de cerrar quotes. Siguen las mismas reglas que CsvParser
+
+    private static final int START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int CLOSED = 3;
+    private static final int STATES = 4;
+
+    /**
+     * Representa el tamaño aproximado de cada trozo
+     */
+    private static final int CHUNK = 8 << 20;
+
+    /**
+     * Representa el separador entre los datos
+     */
+    private static final byte SEPARATOR = ',';
+
+    /**
+     * Representa el carácter con el que se delimitan los campos que contienen separadores
+     */
+    private static final byte QUOTE = '"';
+
+
+    /**
+     * Lee una hoja del path especificado con formato csv analizando sus trozos en paralelo, y entrega cada celda no vacía al consumidor
+     * en el mismo orden que la lectura secuencial
+     * @param path Path desde donde se cargará el documento
+     * @param consumer Destino de las celdas leídas
+     * @throws IOException Si no se encuentra el documento
+     */
+    @Override
+    public void streamFile(String path, CellConsumer consumer) throws IOException {
+        ExecutorService pool = ForkJoinPool.commonPool();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long[] bounds = rowBounds(channel, pool);
+            if (bounds == null) {
+                super.streamFile(path, consumer);
+                return;
+            }
+            int inFlight = 2 * ForkJoinPool.getCommonPoolParallelism();
+            ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            int next = 0;
+            int row = 0;
+            while (next < bounds.length - 1 || !pending.isEmpty()) {
+                while (next < bounds.length - 1 && pending.size() < inFlight) {
+                    long from = bounds[next];
+                    long to = bounds[next + 1];
+                    boolean start = next == 0;
+                    pending.add(pool.submit(() -> parse(channel, from, to, start)));
+                    ++next;
+                }
+                Chunk chunk = get(pending.poll());
+                for (int i = 0; i < chunk.size; i++) consumer.accept(row + chunk.rows[i], chunk.cols[i], chunk.values[i]);
+                row += chunk.nRows;
+            }
+        }
+    }
+
+    /**
+     * Analiza un trozo del archivo que empieza al principio de una fila
+     * @param channel Archivo
+     * @param from Posición del primer byte del trozo
+     * @param to Posición siguiente al último byte del trozo
+     * @param start Indica si el trozo es el principio del archivo
+     * @return Celdas del trozo, con las filas contadas desde el principio del trozo
+     * @throws IOException Si no se puede leer el archivo
+     */
+    private static Chunk parse(FileChannel channel, long from, long to, boolean start) throws IOException {
+        Chunk chunk = new Chunk();
+        CsvParser parser = new CsvParser((char) SEPARATOR, (char) QUOTE, chunk, start);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        parser.feed(buffer, 0, (int) (to - from));
+        parser.finish();
+        chunk.nRows = parser.getRow();
+        return chunk;
+    }
+
+    /**
+     * Parte el archivo en trozos que empiezan al principio de una fila. Primero se recorre en paralelo cada trozo de tamaño fijo desde
+     * todos los estados posibles, guardando en qué estado acaba y dónde acaba su primera fila; después se encadenan los trozos en orden
+     * para saber el estado real con el que empieza cada uno
+     * @param channel Archivo
+     * @param pool Pool donde se recorren los trozos
+     * @return Posiciones donde empieza cada trozo, seguidas del tamaño del archivo; null si algún trozo no se puede proyectar de una vez
+     * @throws IOException Si no se puede leer el archivo
+     */
+    private static long[] rowBounds(FileChannel channel, ExecutorService pool) throws IOException {
+        long size = channel.size();
+        int n = (int) ((size + CHUNK - 1) / CHUNK);
+        ArrayList<Future<long[]>> scans = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            long from = (long) k * CHUNK;
+            long to = Math.min(size, from + CHUNK);
+            scans.add(pool.submit(() -> scan(channel, from, to)));
+        }
+        long[] bounds = new long[n + 1];
+        int count = 0;
+        bounds[count++] = 0;
+        int state = START;
+        for (int k = 0; k < n; k++) {
+            long[] scan = get(scans.get(k));
+            long firstRow = scan[STATES + state];
+            if (k > 0 && firstRow >= 0 && firstRow < size) {
+                if (firstRow - bounds[count - 1] > Integer.MAX_VALUE) return null;
+                bounds[count++] = firstRow;
+            }
+            state = (int) scan[state];
+        }
+        if (size - bounds[count - 1] > Integer.MAX_VALUE) return null;
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Recorre un trozo del archivo desde los cuatro estados posibles a la vez
+     * @param channel Archivo
+     * @param from Posición del primer byte del trozo
+     * @param to Posición siguiente al último byte del trozo
+     * @return long[] con el estado final desde cada estado inicial, seguido de la posición siguiente al primer salto de línea
+     * que acaba una fila desde cada estado inicial (-1 si no hay ninguno)
+     * @throws IOException Si no se puede leer el archivo
+     */
+    private static long[] scan(FileChannel channel, long from, long to) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        int length = (int) (to - from);
+        int[] state = {START, UNQUOTED, QUOTED, CLOSED};
+        long[] result = new long[2 * STATES];
+        Arrays.fill(result, STATES, 2 * STATES, -1);
+        int found = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(i);
+            for (int s = 0; s < STATES; s++) {
+                int next = next(state[s], b);
+                if (b == '\n' && next == START && result[STATES + s] < 0) {
+                    result[STATES + s] = from + i + 1;
+                    ++found;
+                }
+                state[s] = next;
+            }
+            // cuando todos los estados coinciden, el resto del trozo acaba igual desde cualquiera de ellos
+            if (found == STATES && state[0] == state[1] && state[1] == state[2] && state[2] == state[3]) {
+                int last = state[0];
+                for (int j = i + 1; j < length; j++) last = next(last, buffer.get(j));
+                Arrays.fill(state, last);
+                break;
+            }
+        }
+        for (int s = 0; s < STATES; s++) result[s] = state[s];
+        return result;
+    }
+
+    /**
+     * Retorna el estado después de leer un byte
+     * @param state Estado actual
+     * @param b Byte leído
+     * @return int con el nuevo estado
+     */
+    private static int next(int state, byte b) {
+        if (state == QUOTED) return b == QUOTE ? CLOSED : QUOTED;
+        if (b == SEPARATOR || b == '\n' || b == '\r') return START;
+        if (b == QUOTE) {
+            if (state == START || state == CLOSED) return QUOTED;
+            return UNQUOTED;
+        }
+        return UNQUOTED;
+    }
+
+    /**
+     * Espera el resultado de una tarea del pool
+     * @param future Tarea
+     * @return Resultado de la tarea
+     * @throws IOException Si la tarea no ha podido leer el archivo
+     */
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+}
@@ -6,9 +6,26 @@ import java.util.Collections;
 import java.util.List;
 
 
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.formula.FormulaParseException;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaParsingWorkbook;
+import org.apache.poi.ss.formula.FormulaType;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.WorkbookUtil;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFEvaluationWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
 
 
 
@@ -23,76 +40,175 @@ public class DocumentXLSX implements PersistanceDocument {
     private ArrayList<String> sheetNames;
 
     /**
-     * Guarda una hoja o un conjunto de hojas en el path especificado con formato xlsx
+     * Representa el número de filas de cada hoja que se guardan en memoria mientras se escribe; las anteriores ya se han volcado a disco
+     */
+    private int rowWindow = 100;
+
+    /**
+     * Guarda una hoja o un conjunto de hojas en el path especificado con formato xlsx. Se escribe con un SXSSFWorkbook, que solo guarda en memoria
+     * las últimas rowWindow filas de cada hoja. Los números se guardan como celdas numéricas, las fórmulas que Excel entiende como fórmulas
+     * y el resto como texto; las celdas vacías no se escriben
      * @param path Path donde se guardará el documento
      * @param data Hoja/hojas a guardar
+     * @throws IOException Si no se puede escribir el documento
      */
     @Override
-    public void saveFile(String path, List<List<ArrayList<String>>> data) {
-        Workbook wb = new XSSFWorkbook();
-        int SheetSize = data.size();
-        for (int i = 0; i < SheetSize; i++) {
-            Sheet sheet = wb.createSheet(WorkbookUtil.createSafeSheetName(sheetNames.get(i)));
-            for (int j = 0; j < data.get(i).size(); j++) {
-                Row row = sheet.createRow(j);
-                for (int k = 0; k < data.get(i).get(j).size(); k++) {
-                    Cell cell = row.createCell(k);
-                    cell.setCellValue(data.get(i).get(j).get(k));
+    public void writeFile(String path, List<List<ArrayList<String>>> data) throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(rowWindow);
+        FormulaParsingWorkbook parsing = SXSSFEvaluationWorkbook.create(wb);
+        try {
+            for (int i = 0; i < data.size(); i++) {
+                Sheet sheet = wb.createSheet(WorkbookUtil.createSafeSheetName(sheetNames.get(i)));
+                for (int j = 0; j < data.get(i).size(); j++) {
+                    ArrayList<String> line = data.get(i).get(j);
+                    Row row = null;
+                    for (int k = 0; k < line.size(); k++) {
+                        String value = line.get(k);
+                        if (value == null || value.isEmpty()) continue;
+                        if (row == null) row = sheet.createRow(j);
+                        setCell(row.createCell(k), value, parsing, i);
+                    }
                 }
             }
-        }
-        OutputStream fileOut = null;
-        try   {
-             fileOut = new FileOutputStream(path);
-             wb.write(fileOut);
-        } catch (IOException e) {
-            e.printStackTrace();
+            wb.setForceFormulaRecalculation(true);
+            try (OutputStream fileOut = new FileOutputStream(path)) {
+                wb.write(fileOut);
+            }
         }
         finally {
+            wb.dispose();
+        }
+    }
+
+    /**
+     * Escribe el contenido de una celda con su tipo: número, fórmula si Excel la puede interpretar, o texto
+     * @param cell Celda del documento
+     * @param value Contenido de la celda
+     * @param parsing Libro con el que se comprueba que las fórmulas son válidas
+     * @param sheetIndex Índice de la hoja de la celda
+     */
+    private static void setCell(Cell cell, String value, FormulaParsingWorkbook parsing, int sheetIndex) {
+        if (isNumber(value)) cell.setCellValue(Double.parseDouble(value));
+        else if (value.length() > 1 && value.charAt(0) == '=') {
+            String formula = value.substring(1);
             try {
-                if (fileOut != null) fileOut.close();
-            }
-            catch (IOException e) {
-                e.printStackTrace();
-            }
+                FormulaParser.parse(formula, parsing, FormulaType.CELL, sheetIndex);
+                cell.setCellFormula(formula);
+            } catch (FormulaParseException e) {
+                cell.setCellValue(value);
             }
+        }
+        else cell.setCellValue(value);
+    }
+
+    /**
+     * Indica si un texto es un número que se puede guardar como double y volver a leer igual: sin ceros a la izquierda ni al final de los decimales,
+     * sin exponente y con 15 cifras como mucho
+     * @param value Texto a comprobar
+     * @return true si se puede guardar como número
+     */
+    private static boolean isNumber(String value) {
+        int i = value.charAt(0) == '-' ? 1 : 0;
+        int digits = 0;
+        boolean point = false;
+        if (i == value.length()) return false;
+        if (value.charAt(i) == '0' && i + 1 < value.length() && value.charAt(i + 1) != '.') return false;
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') ++digits;
+            else if (c == '.' && !point && digits > 0 && i + 1 < value.length()) point = true;
+            else return false;
+        }
+        if (point && value.charAt(value.length() - 1) == '0') return false;
+        return digits <= 15 && !value.equals("-0");
+    }
+
+    /**
+     * Define el número de filas de cada hoja que se guardan en memoria al guardar un documento
+     * @param rowWindow Número de filas, al menos 1
+     */
+    public void setRowWindow(int rowWindow) {
+        this.rowWindow = Math.max(1, rowWindow);
+    }
+
+    /**
+     * Retorna el número de filas de cada hoja que se guardan en memoria al guardar un documento
+     * @return int con el número de filas
+     */
+    public int getRowWindow() {
+        return this.rowWindow;
     }
 
     /**
-     * Carga una hoja o conjunto de hojas del path especificado con formato xlsx
+     * Carga todas las hojas del path especificado con formato xlsx. Cada fila de una hoja empieza con el nombre de la hoja,
+     * seguido del contenido de cada columna
      * @param path Path desde donde se cargará el documento
-     * @return Hoja o hojas cargadas
+     * @return Hoja o hojas cargadas, con al menos 26 filas y 26 columnas cada una
      * @throws IOException Si no se encuentra el documento
      */
     @Override
     public List<List<List<String>>> loadFile(String path) throws IOException {
         List<List<List<String>>> res = new ArrayList<>();
-        FileInputStream fis=new FileInputStream(path);
-        Workbook wb= new XSSFWorkbook(fis);
-        for (int i = 0; i < wb.getNumberOfSheets(); i++) {
-            Sheet sheet = wb.getSheetAt(0);
-            String name = sheet.getSheetName();
-            int rowsize = sheet.getLastRowNum();
-            if (rowsize < 26) rowsize = 26;
-            List<List<String>> aux = new ArrayList<>(Collections.nCopies(rowsize, new ArrayList<>()));
-            for (Row row : sheet) {
-                int colsize = row.getLastCellNum();
-                if (colsize < 26) colsize = 26;
-                List<String> aux2 = new ArrayList<>(Collections.nCopies(colsize +  1, ""));
-                aux2.set(0,name);
-                for (Cell cell: row) {
-                    DataFormatter dataFormatter = new DataFormatter();
-                    String formattedCellStr;
-                    if (cell.getCellType().equals(CellType.FORMULA)) formattedCellStr = "="+dataFormatter.formatCellValue(cell);
-                    else formattedCellStr = dataFormatter.formatCellValue(cell);
-                    aux2.set(cell.getColumnIndex() + 1, formattedCellStr);
+        streamFile(path, new CellConsumer() {
+            List<List<String>> aux;
+            String name;
 
+            @Override
+            public void startSheet(String sheetName) {
+                name = sheetName;
+                aux = new ArrayList<>();
+                for (int i = 0; i < 26; i++) aux.add(newRow(name));
+                res.add(aux);
+            }
+
+            @Override
+            public void accept(int row, int col, String value) {
+                while (aux.size() <= row) aux.add(newRow(name));
+                List<String> line = aux.get(row);
+                while (line.size() <= col + 1) line.add("");
+                line.set(col + 1, value);
+            }
+        });
+        return res;
+    }
+
+    /**
+     * Crea una fila vacía de una hoja cargada
+     * @param name Nombre de la hoja
+     * @return Fila con el nombre de la hoja y 26 columnas vacías
+     */
+    private static List<String> newRow(String name) {
+        List<String> row = new ArrayList<>(Collections.nCopies(27, ""));
+        row.set(0, name);
+        return row;
+    }
+
+    /**
+     * Lee todas las hojas del path especificado con formato xlsx por eventos, sin cargar el documento en memoria: los textos compartidos
+     * se leen una sola vez y el xml de cada hoja se recorre con un XlsxSheetHandler que entrega cada celda al consumidor
+     * @param path Path desde donde se cargará el documento
+     * @param consumer Destino de las celdas leídas, que recibe el nombre de cada hoja antes de sus celdas
+     * @throws IOException Si no se encuentra el documento o no es un xlsx válido
+     */
+    @Override
+    public void streamFile(String path, CellConsumer consumer) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(path, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new DataFormatter();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    consumer.startSheet(sheets.getSheetName());
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XlsxSheetHandler(sharedStrings, styles, formatter, consumer));
+                    parser.parse(new InputSource(sheet));
                 }
-                aux.set(row.getRowNum(), aux2);
             }
-            res.add(aux);
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException(e);
         }
-        return res;
     }
 
     /**
@@ -0,0 +1,381 @@
+package datos.documents;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Representa el diario de ediciones de un documento con el formato nativo: un archivo al que solo se añaden registros con los cambios hechos
+ * desde la última vez que se guardó el documento entero. Guardar el documento solo escribe y sincroniza con el disco los registros nuevos,
+ * y al abrirlo se vuelven a aplicar sobre el documento guardado.
+ * La cabecera identifica el documento sobre el que se aplican los registros (su tamaño y su fecha de modificación), así que un diario que
+ * no corresponde al documento se descarta. Cada registro lleva su longitud y un CRC32, de manera que un registro a medio escribir por un
+ * cierre inesperado se descarta junto con todo lo que le sigue
+ */
+public class EditJournal implements Closeable {
+
+    /**
+     * Representa un registro del diario: un código de operación, sus parámetros enteros y sus textos
+     */
+    public static final class Record {
+
+        private final byte op;
+        private final int[] ints;
+        private final String[] texts;
+
+        Record(byte op, int[] ints, String[] texts) {
+            this.op = op;
+            this.ints = ints;
+            this.texts = texts;
+        }
+
+        /**
+         * Retorna el código de operación del registro
+         * @return byte con el código
+         */
+        public byte getOp() {
+            return op;
+        }
+
+        /**
+         * Retorna los parámetros enteros del registro
+         * @return int[] con los parámetros
+         */
+        public int[] getInts() {
+            return ints;
+        }
+
+        /**
+         * Retorna los textos del registro
+         * @return String[] con los textos
+         */
+        public String[] getTexts() {
+            return texts;
+        }
+    }
+
+    /**
+     * Representa el principio de todo diario, "JRNL"
+     */
+    private static final int MAGIC = 0x4A524E4C;
+
+    /**
+     * Representa la versión del formato del diario
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Representa el tamaño de la cabecera: MAGIC, VERSION, tamaño y fecha de modificación del documento
+     */
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * Representa el tamaño mínimo del contenido de un registro: el código de operación y el número de enteros y de textos
+     */
+    private static final int MIN_BODY_SIZE = 9;
+
+    // Attributes
+
+    /**
+     * Representa el path del diario
+     */
+    private final Path path;
+
+    /**
+     * Representa el archivo del diario abierto para añadir registros, null hasta que se crea
+     */
+    private FileChannel channel;
+
+    /**
+     * Representa el tamaño del documento sobre el que se aplican los registros
+     */
+    private long snapshotSize;
+
+    /**
+     * Representa los registros que todavía no se han escrito en el archivo
+     */
+    private ByteArrayOutputStream pending;
+
+
+    // Constructor
+
+    /**
+     * Crea un diario sin archivo: los registros se guardan en memoria hasta que se llame a rebase
+     * @param path Path del diario
+     */
+    public EditJournal(String path) {
+        this.path = Paths.get(path).toAbsolutePath();
+        this.pending = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Abre el diario de un documento para seguir añadiendo registros. Si el diario corresponde al documento, se descarta el final
+     * a medio escribir; si no existe o no corresponde, se crea uno vacío
+     * @param path Path del diario
+     * @param snapshotPath Path del documento sobre el que se aplican los registros
+     * @return Diario abierto
+     * @throws IOException Si no se puede leer o crear el diario
+     */
+    public static EditJournal open(String path, String snapshotPath) throws IOException {
+        EditJournal journal = new EditJournal(path);
+        ByteBuffer data = read(journal.path, Paths.get(snapshotPath));
+        if (data == null) {
+            journal.rebase(snapshotPath, 0);
+            return journal;
+        }
+        long end = HEADER_SIZE;
+        while (next(data) != null) end = data.position();
+        journal.channel = FileChannel.open(journal.path, StandardOpenOption.WRITE);
+        journal.channel.truncate(end);
+        journal.channel.position(end);
+        journal.snapshotSize = Files.size(Paths.get(snapshotPath));
+        return journal;
+    }
+
+    /**
+     * Lee los registros completos del diario de un documento, en el orden en que se añadieron
+     * @param path Path del diario
+     * @param snapshotPath Path del documento sobre el que se aplican los registros
+     * @return Registros del diario, vacío si el diario no existe o no corresponde al documento
+     * @throws IOException Si no se puede leer el diario
+     */
+    public static List<Record> readRecords(String path, String snapshotPath) throws IOException {
+        List<Record> records = new ArrayList<>();
+        ByteBuffer data = read(Paths.get(path).toAbsolutePath(), Paths.get(snapshotPath));
+        if (data == null) return records;
+        Record record;
+        while ((record = next(data)) != null) records.add(record);
+        return records;
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el path del diario
+     * @return String con el path
+     */
+    public String getPath() {
+        return path.toString();
+    }
+
+    /**
+     * Retorna el tamaño del documento sobre el que se aplican los registros
+     * @return long con el tamaño en bytes, 0 si el diario todavía no tiene archivo
+     */
+    public synchronized long getSnapshotSize() {
+        return snapshotSize;
+    }
+
+    /**
+     * Indica si el diario tiene archivo
+     * @return true si ya se ha creado el archivo del diario
+     */
+    public synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * Retorna el tamaño del diario, contando los registros que todavía no se han escrito
+     * @return long con el tamaño en bytes
+     * @throws IOException Si no se puede consultar el tamaño del archivo
+     */
+    public synchronized long size() throws IOException {
+        return (channel == null ? 0 : channel.size()) + pending.size();
+    }
+
+
+    // Methods
+
+    /**
+     * Añade un registro al final del diario. El registro se guarda en memoria hasta que se llame a sync
+     * @param op Código de operación
+     * @param ints Parámetros enteros
+     * @param texts Textos
+     */
+    public synchronized void append(byte op, int[] ints, String... texts) {
+        ByteBuffer body = encode(op, ints, texts);
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, body.limit());
+        ByteBuffer record = ByteBuffer.allocate(body.limit() + 8);
+        record.putInt(body.limit()).put(body.array(), 0, body.limit()).putInt((int) crc.getValue());
+        pending.write(record.array(), 0, record.position());
+    }
+
+    /**
+     * Retorna la posición actual del diario entre los registros que todavía no se han escrito. Se usa al hacer una copia del documento
+     * para saber qué registros ya están incluidos en ella
+     * @return int con la posición
+     */
+    public synchronized int mark() {
+        return pending.size();
+    }
+
+    /**
+     * Escribe los registros que todavía no se habían escrito y espera a que estén en el disco
+     * @throws IOException Si el diario no tiene archivo o no se puede escribir
+     */
+    public synchronized void sync() throws IOException {
+        if (channel == null) throw new IOException("El diario no tiene archivo: " + path);
+        if (pending.size() == 0) return;
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        while (buffer.hasRemaining()) channel.write(buffer);
+        channel.force(false);
+        pending.reset();
+    }
+
+    // Pre: snapshotPath tiene el documento entero, con los cambios de todos los registros anteriores a mark
+    // Post: el diario está vacío y corresponde a snapshotPath, solo quedan pendientes los registros posteriores a mark
+
+    /**
+     * Vacía el diario después de guardar el documento entero. La cabecera nueva se escribe en un archivo temporal que sustituye al diario,
+     * así que un cierre inesperado deja el diario anterior, que ya no corresponde al documento y se descarta
+     * @param snapshotPath Path del documento guardado
+     * @param mark Posición devuelta por mark al hacer la copia del documento guardado
+     * @throws IOException Si no se puede escribir el diario
+     */
+    public synchronized void rebase(String snapshotPath, int mark) throws IOException {
+        Path snapshot = Paths.get(snapshotPath);
+        ByteBuffer header = header(Files.size(snapshot), Files.getLastModifiedTime(snapshot).toMillis());
+        if (channel != null) channel.close();
+        channel = null;
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName() + ".", ".tmp");
+        try {
+            Files.write(temp, header.array());
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        snapshotSize = Files.size(snapshot);
+        byte[] rest = pending.toByteArray();
+        pending = new ByteArrayOutputStream();
+        pending.write(rest, mark, rest.length - mark);
+    }
+
+    /**
+     * Cierra el archivo del diario. Los registros que no se han escrito se pierden
+     * @throws IOException Si no se puede cerrar el archivo
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+    }
+
+    /**
+     * Retorna el contenido del diario a partir del primer registro, si corresponde al documento
+     * @param path Path del diario
+     * @param snapshot Path del documento
+     * @return ByteBuffer con el contenido, null si el diario no existe o no corresponde al documento
+     */
+    private static ByteBuffer read(Path path, Path snapshot) throws IOException {
+        if (!Files.exists(path) || !Files.exists(snapshot)) return null;
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (data.remaining() < HEADER_SIZE) return null;
+        ByteBuffer expected = header(Files.size(snapshot), Files.getLastModifiedTime(snapshot).toMillis());
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            if (data.get(i) != expected.get(i)) return null;
+        }
+        data.position(HEADER_SIZE);
+        return data;
+    }
+
+    /**
+     * Lee el siguiente registro del diario. Un registro con una longitud imposible, un CRC que no coincide o un contenido que no se puede
+     * leer entero es el final a medio escribir de un cierre inesperado (también un final lleno de ceros, cuyo CRC coincide)
+     * @param data Contenido del diario, en la posición del registro
+     * @return Registro leído, null si no quedan registros completos y correctos
+     */
+    private static Record next(ByteBuffer data) {
+        if (data.remaining() < 4) return null;
+        int start = data.position();
+        int length = data.getInt();
+        if (length < MIN_BODY_SIZE || length > data.remaining() - 4) {
+            data.position(start);
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), data.position(), length);
+        Record record = null;
+        if (data.getInt(data.position() + length) == (int) crc.getValue()) record = decode(ByteBuffer.wrap(data.array(), data.position(), length));
+        if (record == null) data.position(start);
+        else data.position(data.position() + length + 4);
+        return record;
+    }
+
+    /**
+     * Lee el contenido de un registro escrito con encode
+     * @param body Contenido del registro
+     * @return Registro leído, null si el contenido no tiene el formato de encode
+     */
+    private static Record decode(ByteBuffer body) {
+        try {
+            byte op = body.get();
+            int nInts = body.getInt();
+            if (nInts < 0 || nInts > body.remaining() / 4) return null;
+            int[] ints = new int[nInts];
+            for (int i = 0; i < ints.length; i++) ints[i] = body.getInt();
+            int nTexts = body.getInt();
+            if (nTexts < 0 || nTexts > body.remaining() / 4) return null;
+            String[] texts = new String[nTexts];
+            for (int i = 0; i < texts.length; i++) {
+                int n = body.getInt();
+                if (n < 0 || n > body.remaining()) return null;
+                texts[i] = new String(body.array(), body.position(), n, StandardCharsets.UTF_8);
+                body.position(body.position() + n);
+            }
+            return body.hasRemaining() ? null : new Record(op, ints, texts);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Retorna el contenido de un registro: el código de operación, los enteros y los textos, cada grupo precedido por su número de elementos
+     */
+    private static ByteBuffer encode(byte op, int[] ints, String[] texts) {
+        byte[][] bytes = new byte[texts.length][];
+        int size = 1 + 4 + 4 * ints.length + 4;
+        for (int i = 0; i < texts.length; i++) {
+            bytes[i] = texts[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + bytes[i].length;
+        }
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.put(op).putInt(ints.length);
+        for (int value : ints) body.putInt(value);
+        body.putInt(texts.length);
+        for (byte[] text : bytes) body.putInt(text.length).put(text);
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Retorna la cabecera de un diario para el documento con el tamaño y la fecha de modificación indicados
+     */
+    private static ByteBuffer header(long snapshotSize, long snapshotModified) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(snapshotSize).putLong(snapshotModified);
+        return header;
+    }
+
+}
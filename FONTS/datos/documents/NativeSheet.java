@@ -0,0 +1,327 @@
+package datos.documents;
+
+import dominio.model.TypedValue;
+
+import java.util.Arrays;
+
+/**
+ * Representa una hoja tal y como se guarda en el formato nativo: sus celdas agrupadas por columnas, con arrays tipados para cada dato
+ * (los números como double y los textos como String), las fórmulas con su último valor calculado y las referencias entre celdas.
+ * Las posiciones son las de la hoja, empezando por 0
+ */
+public class NativeSheet {
+
+    // Tipos de las celdas. Las celdas con un valor son NUMBER, INTEGER o TEXT; las celdas con una fórmula llevan además FORMULA
+    // y el tipo de su valor calculado, o solo FORMULA si todavía no se ha calculado
+
+    /**
+     * Número que se muestra igual que String.valueOf(double)
+     */
+    public static final byte NUMBER = 1;
+
+    /**
+     * Número entero que se muestra sin decimales
+     */
+    public static final byte INTEGER = 2;
+
+    /**
+     * Booleano guardado como 1 o 0
+     */
+    public static final byte BOOLEAN = 3;
+
+    /**
+     * Texto
+     */
+    public static final byte TEXT = 4;
+
+    /**
+     * Código de error
+     */
+    public static final byte ERROR = 5;
+
+    /**
+     * Número que se muestra con su propio texto
+     */
+    public static final byte NUMBER_TEXT = 6;
+
+    /**
+     * Valor vacío
+     */
+    public static final byte EMPTY = 7;
+
+    /**
+     * Indica que la celda tiene una fórmula
+     */
+    public static final byte FORMULA = 0x10;
+
+    /**
+     * Representa las celdas de una columna, ordenadas como se han añadido
+     */
+    static final class Column {
+
+        int size;
+        int[] rows = new int[16];
+        byte[] kinds = new byte[16];
+        double[] numbers = new double[16];
+        String[] texts = new String[16];
+        String[] functions = new String[16];
+        String[] values = new String[16];
+
+        /**
+         * Añade una celda al final de la columna
+         * @return int con la posición de la celda en la columna
+         */
+        int add(int row, byte kind, double number, String text, String function, String value) {
+            if (size == rows.length) {
+                int capacity = size * 2;
+                rows = Arrays.copyOf(rows, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                numbers = Arrays.copyOf(numbers, capacity);
+                texts = Arrays.copyOf(texts, capacity);
+                functions = Arrays.copyOf(functions, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            rows[size] = row;
+            kinds[size] = kind;
+            numbers[size] = number;
+            texts[size] = text;
+            functions[size] = function;
+            values[size] = value;
+            return size++;
+        }
+    }
+
+    /**
+     * Interfaz que representa el recorrido del contenido de una hoja
+     */
+    public interface Visitor {
+
+        /**
+         * Recibe una celda con un valor
+         * @param row Fila de la celda
+         * @param col Columna de la celda
+         * @param value Valor de la celda, tal y como lo escribió el usuario
+         */
+        void value(int row, int col, String value);
+
+        /**
+         * Recibe una celda con una fórmula
+         * @param row Fila de la celda
+         * @param col Columna de la celda
+         * @param formula Fórmula de la celda, empezando por "="
+         * @param function Nombre de la función que evalúa la fórmula, null si la fórmula no se ha calculado
+         * @param type Tipo del valor calculado (NUMBER, INTEGER, BOOLEAN, TEXT, ERROR, NUMBER_TEXT o EMPTY), 0 si no se ha calculado
+         * @param number Valor numérico calculado
+         * @param text Texto del valor calculado, null si es un número que se muestra sin texto propio
+         */
+        void formula(int row, int col, String formula, String function, byte type, double number, String text);
+
+        /**
+         * Recibe una referencia de una celda a otra
+         * @param row Fila de la celda que referencia
+         * @param col Columna de la celda que referencia
+         * @param refRow Fila de la celda referenciada
+         * @param refCol Columna de la celda referenciada
+         */
+        default void reference(int row, int col, int refRow, int refCol) {
+        }
+    }
+
+    // Attributes
+
+    /**
+     * Representa el nombre de la hoja
+     */
+    private final String name;
+
+    /**
+     * Representa el número de filas de la hoja
+     */
+    private final int nRows;
+
+    /**
+     * Representa el número de columnas de la hoja
+     */
+    private final int nColumns;
+
+    /**
+     * Representa las celdas de cada columna, null en las columnas sin ninguna celda
+     */
+    private Column[] columns;
+
+    /**
+     * Representa las referencias entre celdas: para cada referencia, fila y columna de la celda que referencia y de la referenciada
+     */
+    private int[] references;
+
+    /**
+     * Representa el número de enteros usados en references
+     */
+    private int referencesSize;
+
+
+    // Constructor
+
+    /**
+     * Crea una hoja vacía con el nombre y tamaño indicados
+     * @param name Nombre de la hoja
+     * @param nRows Número de filas de la hoja
+     * @param nColumns Número de columnas de la hoja
+     */
+    public NativeSheet(String name, int nRows, int nColumns) {
+        this.name = name;
+        this.nRows = nRows;
+        this.nColumns = nColumns;
+        this.columns = new Column[0];
+        this.references = new int[64];
+        this.referencesSize = 0;
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el nombre de la hoja
+     * @return String con el nombre
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Retorna el número de filas de la hoja
+     * @return int con el número de filas
+     */
+    public int getNRows() {
+        return this.nRows;
+    }
+
+    /**
+     * Retorna el número de columnas de la hoja
+     * @return int con el número de columnas
+     */
+    public int getNColumns() {
+        return this.nColumns;
+    }
+
+    /**
+     * Retorna el número de columnas a partir del cual ya no hay ninguna celda
+     * @return int con la última columna con celdas más uno
+     */
+    int getColumnCount() {
+        return this.columns.length;
+    }
+
+    /**
+     * Retorna las celdas de una columna
+     * @param col Columna
+     * @return Celdas de la columna, null si no tiene ninguna
+     */
+    Column getColumn(int col) {
+        return col < columns.length ? columns[col] : null;
+    }
+
+    /**
+     * Retorna el número de referencias entre celdas
+     * @return int con el número de referencias
+     */
+    int getReferenceCount() {
+        return referencesSize / 4;
+    }
+
+    /**
+     * Retorna las referencias entre celdas, cuatro enteros por referencia
+     * @return int[] con las referencias
+     */
+    int[] getReferences() {
+        return references;
+    }
+
+
+    // Methods
+
+    /**
+     * Añade una celda con un valor. Los números que se vuelven a escribir igual se guardan como double, el resto como texto
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @param value Valor de la celda, tal y como lo escribió el usuario
+     */
+    public void addValue(int row, int col, String value) {
+        if (TypedValue.isCanonicalInteger(value)) column(col).add(row, INTEGER, Long.parseLong(value), null, null, null);
+        else if (TypedValue.isCanonicalNumber(value)) column(col).add(row, NUMBER, Double.parseDouble(value), null, null, null);
+        else column(col).add(row, TEXT, 0, value, null, null);
+    }
+
+    /**
+     * Añade una celda con una fórmula y su valor calculado
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @param formula Fórmula de la celda, empezando por "="
+     * @param function Nombre de la función que evalúa la fórmula, null si la fórmula no se ha calculado
+     * @param type Tipo del valor calculado, 0 si no se ha calculado
+     * @param number Valor numérico calculado
+     * @param text Texto del valor calculado, null si es un número que se muestra sin texto propio
+     */
+    public void addFormula(int row, int col, String formula, String function, byte type, double number, String text) {
+        column(col).add(row, (byte) (FORMULA | (function == null ? 0 : type)), number, formula, function, text);
+    }
+
+    /**
+     * Añade una referencia de una celda a otra
+     * @param row Fila de la celda que referencia
+     * @param col Columna de la celda que referencia
+     * @param refRow Fila de la celda referenciada
+     * @param refCol Columna de la celda referenciada
+     */
+    public void addReference(int row, int col, int refRow, int refCol) {
+        if (referencesSize + 4 > references.length) references = Arrays.copyOf(references, references.length * 2);
+        references[referencesSize++] = row;
+        references[referencesSize++] = col;
+        references[referencesSize++] = refRow;
+        references[referencesSize++] = refCol;
+    }
+
+    /**
+     * Recorre el contenido de la hoja: primero todas las celdas, columna a columna, y después todas las referencias
+     * @param visitor Destino del recorrido
+     */
+    public void accept(Visitor visitor) {
+        for (int col = 0; col < columns.length; col++) {
+            Column column = columns[col];
+            if (column == null) continue;
+            for (int i = 0; i < column.size; i++) {
+                byte kind = column.kinds[i];
+                int row = column.rows[i];
+                if ((kind & FORMULA) != 0) {
+                    byte type = (byte) (kind & ~FORMULA);
+                    visitor.formula(row, col, column.texts[i], column.functions[i], type, column.numbers[i], column.values[i]);
+                }
+                else if (kind == TEXT) visitor.value(row, col, column.texts[i]);
+                else if (kind == INTEGER) visitor.value(row, col, String.valueOf((long) column.numbers[i]));
+                else visitor.value(row, col, String.valueOf(column.numbers[i]));
+            }
+        }
+        for (int i = 0; i < referencesSize; i += 4) {
+            visitor.reference(references[i], references[i + 1], references[i + 2], references[i + 3]);
+        }
+    }
+
+    /**
+     * Retorna las celdas de una columna, creándolas si todavía no tenía ninguna
+     * @param col Columna
+     * @return Celdas de la columna
+     */
+    private Column column(int col) {
+        if (col >= columns.length) columns = Arrays.copyOf(columns, Math.max(col + 1, columns.length * 2));
+        if (columns[col] == null) columns[col] = new Column();
+        return columns[col];
+    }
+
+    /**
+     * Añade una celda ya leída del archivo
+     */
+    void add(int row, int col, byte kind, double number, String text, String function, String value) {
+        column(col).add(row, kind, number, text, function, value);
+    }
+
+}
@@ -11,12 +11,26 @@ import java.util.List;
  */
 public interface PersistanceDocument {
 
+    /**
+     * Guarda una hoja o conjunto de hojas en el path especificado. Si no se puede escribir el documento se muestra el error
+     * @param path Path donde se guardará el documento
+     * @param data Hoja o conjunto de hojas a guardar
+     */
+    default void saveFile(String path, List<List<ArrayList<String>>> data) {
+        try {
+            writeFile(path, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Guarda una hoja o conjunto de hojas en el path especificado
      * @param path Path donde se guardará el documento
      * @param data Hoja o conjunto de hojas a guardar
+     * @throws IOException Si no se puede escribir el documento
      */
-    void saveFile(String path, List<List<ArrayList<String>>> data);
+    void writeFile(String path, List<List<ArrayList<String>>> data) throws IOException;
 
     /**
      * Carga una hoja o conjunto de hojas del path especificado
@@ -25,6 +39,23 @@ public interface PersistanceDocument {
      */
     List<List<List<String>>> loadFile(String path) throws IOException;
 
+    /**
+     * Lee la primera hoja del path especificado y entrega cada celda no vacía al consumidor. Por defecto carga el documento entero con loadFile;
+     * los documentos que se pueden leer por partes lo hacen sin guardarlo en memoria
+     * @param path Path desde donde se cargará el documento
+     * @param consumer Destino de las celdas leídas
+     * @throws IOException Si no se encuentra el documento
+     */
+    default void streamFile(String path, CellConsumer consumer) throws IOException {
+        List<List<String>> sheet = loadFile(path).get(0);
+        for (int i = 0; i < sheet.size(); i++) {
+            for (int j = 0; j < sheet.get(i).size(); j++) {
+                String value = sheet.get(i).get(j);
+                if (value != null && !value.isEmpty()) consumer.accept(i, j, value);
+            }
+        }
+    }
+
     void setNames(ArrayList<String> names);
 
 }
@@ -0,0 +1,199 @@
+package datos.documents;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.math.BigDecimal;
+
+/**
+ * Representa la lectura por eventos (SAX) del xml de una hoja de un documento xlsx. Cada celda se entrega al consumidor al acabar de leerla,
+ * sin construir la hoja en memoria: las fórmulas como "=" seguido de la fórmula y los valores con el mismo formato que les da Excel
+ */
+public class XlsxSheetHandler extends DefaultHandler {
+
+    // Attributes
+
+    /**
+     * Representa los textos compartidos del documento
+     */
+    private final SharedStrings sharedStrings;
+
+    /**
+     * Representa los estilos del documento, con los formatos de los números
+     */
+    private final StylesTable styles;
+
+    /**
+     * Representa el formateador de los valores numéricos, uno para todo el documento
+     */
+    private final DataFormatter formatter;
+
+    /**
+     * Representa el destino de las celdas leídas
+     */
+    private final CellConsumer consumer;
+
+    /**
+     * Representa el contenido del elemento de texto que se está leyendo (valor, fórmula o texto en línea)
+     */
+    private final StringBuilder text;
+
+    /**
+     * Representa la fórmula de la celda actual
+     */
+    private final StringBuilder formula;
+
+    /**
+     * Representa el valor guardado de la celda actual
+     */
+    private final StringBuilder value;
+
+    /**
+     * Indica si se está guardando el contenido de un elemento de texto
+     */
+    private boolean reading;
+
+    /**
+     * Representa la fila actual
+     */
+    private int row;
+
+    /**
+     * Representa la columna de la celda actual
+     */
+    private int col;
+
+    /**
+     * Representa el tipo de la celda actual (atributo t), null si es un número
+     */
+    private String type;
+
+    /**
+     * Representa el índice del estilo de la celda actual (atributo s), -1 si no tiene
+     */
+    private int style;
+
+
+    // Constructor
+
+    /**
+     * Crea la lectura de una hoja
+     * @param sharedStrings Textos compartidos del documento
+     * @param styles Estilos del documento
+     * @param formatter Formateador de los valores numéricos
+     * @param consumer Destino de las celdas leídas
+     */
+    public XlsxSheetHandler(SharedStrings sharedStrings, StylesTable styles, DataFormatter formatter, CellConsumer consumer) {
+        this.sharedStrings = sharedStrings;
+        this.styles = styles;
+        this.formatter = formatter;
+        this.consumer = consumer;
+        this.text = new StringBuilder();
+        this.formula = new StringBuilder();
+        this.value = new StringBuilder();
+        this.row = -1;
+        this.col = -1;
+    }
+
+
+    // Methods
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        switch (localName) {
+            case "row":
+                String r = attributes.getValue("r");
+                row = r != null ? Integer.parseInt(r) - 1 : row + 1;
+                col = -1;
+                break;
+            case "c":
+                String ref = attributes.getValue("r");
+                col = ref != null ? new CellReference(ref).getCol() : col + 1;
+                type = attributes.getValue("t");
+                String s = attributes.getValue("s");
+                style = s != null ? Integer.parseInt(s) : -1;
+                formula.setLength(0);
+                value.setLength(0);
+                break;
+            case "v":
+            case "f":
+            case "t":
+                text.setLength(0);
+                reading = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (reading) text.append(ch, start, length);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        switch (localName) {
+            case "v":
+            case "t":
+                // en los textos en línea el texto puede venir en varios trozos <t>
+                value.append(text);
+                reading = false;
+                break;
+            case "f":
+                formula.append(text);
+                reading = false;
+                break;
+            case "c":
+                String content = cellContent();
+                if (content != null && !content.isEmpty()) consumer.accept(row, col, content);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Retorna el contenido de la celda que se acaba de leer. Las celdas de una fórmula compartida que no son la primera no llevan la fórmula,
+     * así que se usa su valor guardado
+     * @return String con el contenido de la celda
+     */
+    private String cellContent() {
+        if (formula.length() > 0) return "=" + formula;
+        if (value.length() == 0) return null;
+        String v = value.toString();
+        if (type == null || type.equals("n")) {
+            XSSFCellStyle cellStyle = style < 0 || styles == null ? null : styles.getStyleAt(style);
+            if (cellStyle == null || cellStyle.getDataFormat() == 0) return generalNumber(v);
+            return formatter.formatRawCellContents(Double.parseDouble(v), cellStyle.getDataFormat(), cellStyle.getDataFormatString());
+        }
+        switch (type) {
+            case "s":
+                return sharedStrings.getItemAt(Integer.parseInt(v)).getString();
+            case "b":
+                return v.equals("1") ? "TRUE" : "FALSE";
+            default:
+                // inlineStr, str (texto resultado de una fórmula) y e (error)
+                return v;
+        }
+    }
+
+    /**
+     * Retorna un número con formato general. Si tiene 15 cifras como mucho se escribe entero, sin exponente ni ceros al final, para que se lea
+     * igual que se guardó; si no, se redondea como lo muestra Excel
+     * @param v Valor guardado en el xml
+     * @return String con el número
+     */
+    private String generalNumber(String v) {
+        BigDecimal number = new BigDecimal(v).stripTrailingZeros();
+        String plain = number.toPlainString();
+        if (number.precision() <= 15 && plain.length() <= 17) return plain;
+        return formatter.formatRawCellContents(Double.parseDouble(v), 0, "General");
+    }
+
+}
@@ -31,33 +31,65 @@ public class ReferenceConverter {
         return new Pair(referenciaNumber, col);
     }
 
+    /**
+     * Convierte el índice de una columna (empezando por 0) en sus letras: 0 es "A", 25 es "Z", 26 es "AA" y 16383 es "XFD"
+     * @param par Índice de la columna
+     * @return String con las letras de la columna
+     * @throws IllegalArgumentException Si el índice es negativo
+     */
     public static String number2Letter(int par) {
-        if(par < 0) {
-            return "-"+number2Letter(par-1);
+        if (par < 0) throw new IllegalArgumentException("Negative column index: " + par);
+        char[] letters = new char[8];
+        int pos = letters.length;
+        long n = par + 1L;
+        while (n > 0) {
+            --n;
+            letters[--pos] = (char) ('A' + (int) (n % 26));
+            n /= 26;
         }
+        return new String(letters, pos, letters.length - pos);
+    }
 
-        int quot = par / 26;
-        int rem = par % 26;
-        char letter = (char)((int)'A' + rem);
-        if(quot == 0) {
-            return "" + letter;
-        } else {
-            return number2Letter(quot - 1) + letter;
+    /**
+     * Convierte las letras de una columna en su índice (empezando por 0): "A" es 0, "Z" es 25, "AA" es 26 y "XFD" es 16383
+     * @param s String con las letras de la columna
+     * @return int con el índice de la columna, Integer.MAX_VALUE si no cabe en un int
+     */
+    public static int letterToNumber(String s) {
+        long result = 0;
+        for (int i = 0; i < s.length(); i++) {
+            result = result * 26 + (s.charAt(i) - 'A' + 1);
+            if (result > Integer.MAX_VALUE) return Integer.MAX_VALUE;
         }
+        return (int) (result - 1);
     }
-    public static int letterToNumber(String s) {
-        int result = 0;
-        int j = 0;
-        for (int i = s.length() - 1; i >= 0; i--){  // la primera letra a mirar es la ultima
-            char e = s.charAt(i);
-            int aux = Character.hashCode(e) - Character.hashCode('A');
 
-            if (i == s.length()-1) result += aux;   // si es la primera letra entonces hay que sumar solo
-            else result += Math.pow(26, j) * (aux + 1); // si es alguna otra letra entonces no va de 1 en 1 sino que depende la posicion (si esta en la segunda posicion salta de 26 en 26)
+    /**
+     * Empaqueta una posición (fila, columna) en un único long, para usarla como clave de tablas hash
+     * @param row Fila de la posición
+     * @param col Columna de la posición
+     * @return long con la fila en los 32 bits altos y la columna en los 32 bits bajos
+     */
+    public static long packPosition(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
 
-            j++;
-        }
-        return result;
+    /**
+     * Retorna la fila de una posición empaquetada con packPosition
+     * @param key Posición empaquetada
+     * @return Fila de la posición
+     */
+    public static int unpackRow(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * Retorna la columna de una posición empaquetada con packPosition
+     * @param key Posición empaquetada
+     * @return Columna de la posición
+     */
+    public static int unpackColumn(long key) {
+        return (int) key;
     }
 
     public static ArrayList<Pair> cellToPair(ArrayList<Cell> cells) {
@@ -1,6 +1,13 @@
 package dominio.controlador;
 
 import datos.controlador.CtrlPersistencia;
+import datos.controlador.DocumentSnapshot;
+import datos.controlador.PersistenceService;
+import datos.controlador.SaveListener;
+import datos.documents.CellConsumer;
+import datos.documents.CsvDialect;
+import datos.documents.EditJournal;
+import datos.documents.NativeSheet;
 import dominio.auxiliarclasses.MyException;
 import dominio.auxiliarclasses.Pair;
 import dominio.model.*;
@@ -13,6 +20,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static datos.auxiliarclasses.DocumentType.formatType;
 import static dominio.auxiliarclasses.ReferenceConverter.cellToPair;
@@ -26,6 +35,8 @@ public class CtrlDominio {
     private Sheet sheet;
     private Document d;
     private final CtrlPersistencia dataController;
+    private final PersistenceService persistenceService;
+    private DocumentJournal journal;
 
 
     //Constructor
@@ -37,6 +48,7 @@ public class CtrlDominio {
         this.d = new Document("Documento 1");
         this.sheet = d.getCjtSheet().get(0);
         this.dataController = new CtrlPersistencia();
+        this.persistenceService = new PersistenceService(dataController);
     }
 
     /**
@@ -47,6 +59,8 @@ public class CtrlDominio {
         this.d = cd.getD();
         this.sheet = cd.getSheetAct();
         this.dataController = cd.getDataController();
+        this.persistenceService = cd.getPersistenceService();
+        this.journal = cd.getJournal();
     }
 
     //Getters
@@ -78,26 +92,30 @@ public class CtrlDominio {
     }
 
     public int getNRows() {
-        return this.sheet.getCjt_cells().size();
+        return this.sheet.getNRows();
     }
 
     public int getNColumns() {
-        return this.sheet.getCjt_cells().get(0).size();
+        return this.sheet.getNColumns();
     }
 
     public CtrlPersistencia getDataController() { return this.dataController; }
 
+    public PersistenceService getPersistenceService() { return this.persistenceService; }
+
+    public DocumentJournal getJournal() { return this.journal; }
+
     public int getNSheets() { return this.d.getCjtSheet().size(); }
 
     public int getMaxSheets() { return this.d.getMaxSheets(); }
 
 
     public String getValue(int r, int c) throws MyException {
-        return selectCell(r, c).getCellValue().tryGetValue();
+        return selectCellValue(r, c).tryGetValue();
     }
 
     public String getInput(int r, int c) throws MyException {
-        return selectCell(r, c).getCellValue().getUserInput();
+        return selectCellValue(r, c).getUserInput();
     }
 
     public String getInput(Cell c) {
@@ -107,62 +125,81 @@ public class CtrlDominio {
 
 
     /**
-     * Carga un documento con formato csv o xlsx
+     * Carga un documento con formato csv, xlsx o con el formato nativo (prop)
      * @param path String con el camino del documento
      * @throws IOException Si no se encuentra el documento
-     * @throws MyException Si la sheet añadida no se puede seleccionar
+     * @throws MyException Si la sheet añadida no se puede seleccionar, o si no se han podido repetir todos los cambios del diario
+     * de un documento nativo (el documento queda cargado sin esos cambios)
      */
     //Controlador dades
     public void loadData(String path) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException, MyException, IOException {
         String format = formatType(path);
         if (format.equals("csv")) {
-            List<List<String>> data = dataController.loadDocument(path, format).get(0);
-            int rows = data.size() + 1;
-            int cols = data.get(0).size();
-            if (rows < 26) rows = 27;
-            if (cols < 26) cols = 26;
+            //las celdas cargadas no pasan por el diario
+            if (journal != null) journal.invalidate();
             File f = new File(path);
             String fileName = FilenameUtils.removeExtension(f.getName());
-            if (!addSheet(fileName, rows,cols)) {
+            //los documentos cargados suelen tener muchos datos, así que sus números se guardan por columnas
+            if (!addSheet(fileName, 27, 26, true)) {
                 for (int i = 0; i < getMaxSheets() - getNSheets(); i++) {
                     String numero = String.valueOf(i);
-                    if (addSheet(fileName + numero, rows, cols)) break;
-                }
-            }
-            for (int i = 1; i < data.size(); i++) {
-                for (int j = 0; j < data.get(0).size(); j++) {
-                    try {
-                        sheet.executeInput(data.get(i - 1).get(j), sheet.getCell(i, j));
-                    } catch (InputMismatchException | NumberFormatException e) {
-                        break;
-                    }
+                    if (addSheet(fileName + numero, 27, 26, true)) break;
                 }
             }
-            sheet.updateValues();
+            //la hoja crece a medida que se leen las filas; la fila i del documento va a la fila i + 1 de la hoja
+            SheetLoader loader = new SheetLoader(sheet);
+            dataController.streamDocument(path, format, (row, col, value) -> loader.put(row + 1, col, value));
+            loader.finish();
         }
         else if (format.equals("xlsx")) {
+            closeJournal();
             d = new Document("Document xlsx", 0);
-            List<List<List<String>>> data = dataController.loadDocument(path, format);
-            for (List<List<String>> datum : data) { // num sheets
-                int row = datum.size() + 1;
-                if (row < 26) row = 27;
-                int col = datum.get(0).size() - 1;
-                if (col < 26) col = 26;
-                if (!addSheet(datum.get(0).get(0), row, col)) return;
-                Sheet sh = getSheet(this.d.getCjtSheet().size() - 1);
-                selectSheet(sh);
-                for (int j = 1; j < datum.size(); j++) {
-                    for (int k = 1; k < datum.get(0).size(); k++) {
-                        if (datum.get(j - 1).size() != 0) {
-                            try {
-                                sheet.executeInput(datum.get(j - 1).get(k), sheet.getCell(j, k - 1));
-                            } catch (InputMismatchException | NumberFormatException e) {
-                                break;
-                            }
-                        }
+            //cada hoja del documento se carga en una hoja nueva; las hojas repetidas o que no caben se descartan
+            ArrayList<SheetLoader> loaders = new ArrayList<>();
+            dataController.streamDocument(path, format, new CellConsumer() {
+                SheetLoader loader;
+
+                @Override
+                public void startSheet(String name) {
+                    loader = null;
+                    if (getNSheets() < getMaxSheets() && d.addSheet(name, 27, 26, true)) {
+                        loader = new SheetLoader(getSheet(getNSheets() - 1));
+                        loaders.add(loader);
                     }
                 }
-                sheet.updateValues();
+
+                @Override
+                public void accept(int row, int col, String value) {
+                    if (loader != null) loader.put(row + 1, col, value);
+                }
+            });
+            for (SheetLoader loader : loaders) loader.finish();
+            if (getNSheets() > 0) selectSheet(getNSheets() - 1);
+        }
+        else if (format.equals("prop")) {
+            //las hojas se restauran con los valores calculados y las referencias guardados, sin volver a evaluar las fórmulas
+            List<NativeSheet> images = dataController.loadNativeDocument(path);
+            closeJournal();
+            d = new Document("Document prop", 0);
+            for (NativeSheet image : images) {
+                if (getNSheets() < getMaxSheets() && d.addSheet(image.getName(), image.getNRows(), image.getNColumns(), true)) {
+                    SheetArchiver.load(image, getSheet(getNSheets() - 1));
+                }
+            }
+            if (getNSheets() > 0) selectSheet(getNSheets() - 1);
+            //después se repiten los cambios guardados en el diario desde la última vez que se guardó el documento entero
+            //si no se pueden repetir todos, el documento se carga igualmente y se avisa de los cambios perdidos
+            List<EditJournal.Record> records = dataController.readJournal(path);
+            MyException lost = null;
+            try {
+                DocumentJournal.replay(records, this);
+            } catch (MyException e) {
+                lost = e;
+            }
+            journal = new DocumentJournal(path, dataController.openJournal(path));
+            if (lost != null) {
+                journal.invalidate();
+                throw lost;
             }
         }
     }
@@ -170,10 +207,115 @@ public class CtrlDominio {
     /**
      * Guarda una sheet o un conjunto de sheets en el path indicado
      * @param path String que representa el camino donde guardará el documento y su formato
+     * @throws IOException Si no se puede escribir el documento o su diario
+     */
+
+    public void saveData(String path) throws IOException {
+        if (formatType(path).equals("prop")) {
+            nativeSave(path, null).run();
+            return;
+        }
+        DocumentSnapshot snapshot = snapshot(path);
+        if (snapshot != null) dataController.writeSnapshot(snapshot, null);
+    }
+
+    /**
+     * Guarda una sheet o un conjunto de sheets en el path indicado en segundo plano. La copia del documento se hace al llamarlo,
+     * así que se puede seguir editando el documento mientras se guarda
+     * @param path String que representa el camino donde guardará el documento y su formato
+     * @param listener Destino del progreso y del resultado del guardado, sus métodos se llaman desde el hilo que guarda el documento
+     * @return Future que acaba cuando el documento se ha guardado, null si el formato no se puede guardar
      */
+    public Future<?> saveDataAsync(String path, SaveListener listener) {
+        if (formatType(path).equals("prop")) return persistenceService.submit(path, nativeSave(path, listener), listener);
+        return saveCopyAsync(path, listener);
+    }
 
-    public void saveData(String path) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+    /**
+     * Guarda una copia del documento en el path indicado en segundo plano, siempre entera y sin diario de ediciones, como el autoguardado
+     * @param path String que representa el camino donde guardará la copia y su formato
+     * @param listener Destino del progreso y del resultado del guardado, sus métodos se llaman desde el hilo que guarda el documento
+     * @return Future que acaba cuando la copia se ha guardado, null si el formato no se puede guardar
+     */
+    public Future<?> saveCopyAsync(String path, SaveListener listener) {
+        DocumentSnapshot snapshot = snapshot(path);
+        if (snapshot == null) return null;
+        return persistenceService.save(snapshot, listener);
+    }
+
+    /**
+     * Prepara el guardado de un documento con el formato nativo. Si el documento ya tiene diario en ese path, solo hay que escribir
+     * en el diario los cambios nuevos; si no, o si el diario ha crecido demasiado, se hace ahora una copia del documento entero para
+     * guardarla y después se vacía el diario
+     * @param path String que representa el camino donde guardará el documento
+     * @param listener Destino del progreso del guardado, puede ser null
+     * @return Escritura que guarda el documento, se puede hacer en otro hilo
+     */
+    private PersistenceService.IOTask nativeSave(String path, SaveListener listener) {
+        if (journal != null && !journal.getPath().equals(path)) closeJournal();
+        if (journal != null && !journal.needsCompaction()) return journal.getJournal()::sync;
+        if (journal == null) journal = new DocumentJournal(path, dataController.newJournal(path));
+        DocumentJournal compacted = journal;
+        int mark = compacted.mark();
+        DocumentSnapshot snapshot = snapshot(path);
+        return () -> {
+            try {
+                dataController.writeSnapshot(snapshot, listener);
+                compacted.getJournal().rebase(path, mark);
+            } catch (IOException | RuntimeException e) {
+                compacted.invalidate();
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Deja de guardar los cambios del documento en su diario. El archivo se cierra en el hilo de guardado, después de los guardados pendientes
+     */
+    private void closeJournal() {
+        if (journal == null) return;
+        persistenceService.submit(journal.getPath(), journal.getJournal()::close, null);
+        journal = null;
+    }
+
+    /**
+     * Retorna el índice de la hoja actual en el documento
+     * @return int con el índice
+     */
+    private int sheetIndex() {
+        return d.getCjtSheet().indexOf(sheet);
+    }
+
+    /**
+     * Activa el autoguardado del documento: cada periodo se llama a trigger desde el hilo de guardado
+     * @param period Tiempo entre dos autoguardados
+     * @param unit Unidad del periodo
+     * @param trigger Acción que pide el guardado
+     */
+    public void startAutosave(long period, TimeUnit unit, Runnable trigger) {
+        persistenceService.startAutosave(period, unit, trigger);
+    }
+
+    /**
+     * Desactiva el autoguardado del documento
+     */
+    public void stopAutosave() {
+        persistenceService.stopAutosave();
+    }
+
+    /**
+     * Crea una copia del documento con el contenido que se guardaría en el path indicado: la hoja actual si es csv, todas las hojas si es xlsx
+     * y la imagen de todas las hojas si es prop
+     * @param path String que representa el camino donde guardará el documento y su formato
+     * @return Copia del documento, null si el formato no se puede guardar
+     */
+    public DocumentSnapshot snapshot(String path) {
         String format = formatType(path);
+        if (format.equals("prop")) {
+            List<NativeSheet> images = new ArrayList<>();
+            for (int i = 0; i < getNSheets(); i++) images.add(SheetArchiver.save(getSheet(i)));
+            return DocumentSnapshot.ofImages(path, images);
+        }
         ArrayList<String> names = new ArrayList<>();
         boolean xlsx = false;
         List<List<ArrayList<String>>> data = new ArrayList<>();
@@ -183,23 +325,42 @@ public class CtrlDominio {
             nsheets = getNSheets();
             xlsx = true;
         }
-        else return;
-        sheet.addRow(0);
+        else return null;
+        //las fórmulas se escriben con la primera fila como la fila 1, igual que al cargar un documento
         for (int i = 0; i < nsheets; i++) {
-            if (xlsx) names.add(getSheet(i).getName());
+            Sheet sh = xlsx ? getSheet(i) : sheet;
+            if (xlsx) names.add(sh.getName());
             ArrayList<ArrayList<String>> aux = new ArrayList<>();
-            for (int j = 1; j < getNRows(); j++) {
-                ArrayList<String> line = new ArrayList<>();
-                for (int k = 0; k < getNColumns(); k++) {
-                    line.add(getInput(sheet.getCell(j, k))); //LINEA
-                }
-                aux.add(line);
-            }
+            sh.exportRows(1, true, aux::add);
+            data.add(aux);
+        }
+        return DocumentSnapshot.ofRows(path, names, data);
+    }
+
+
+
+    /**
+     * Exporta la hoja actual, o todas las hojas, con formato csv. Si se exportan varias hojas, cada una va a su propio archivo
+     * con el nombre de la hoja añadido al path
+     * @param path String que representa el camino donde se guardará el documento
+     * @param separator Separador entre los datos
+     * @param quote Carácter con el que se delimitan los campos que contienen el separador, la quote o saltos de línea
+     * @param lineSeparator Salto de línea entre filas, "\n" o "\r\n"
+     * @param formulas Indica si se guarda el input de las celdas (con las fórmulas) o su valor calculado
+     * @param allSheets Indica si se exportan todas las hojas del documento o solo la hoja actual
+     */
+    public void exportCsv(String path, char separator, char quote, String lineSeparator, boolean formulas, boolean allSheets) {
+        ArrayList<String> names = new ArrayList<>();
+        List<List<ArrayList<String>>> data = new ArrayList<>();
+        List<Sheet> sheets = allSheets ? d.getCjtSheet() : List.of(sheet);
+        //las fórmulas se escriben con la primera fila como la fila 1, igual que al guardar y al cargar un documento
+        for (Sheet sh : sheets) {
+            names.add(sh.getName());
+            ArrayList<ArrayList<String>> aux = new ArrayList<>();
+            sh.exportRows(1, formulas, aux::add);
             data.add(aux);
         }
-        sheet.deleteRow(0);
-        dataController.setnames(format, names);
-        dataController.saveDocument(path, data);
+        dataController.exportCsv(path, data, names, new CsvDialect(separator, quote, lineSeparator));
     }
 
 
@@ -217,6 +378,18 @@ public class CtrlDominio {
         return sheet.getCell(r, c);
     }
 
+    /**
+     * Retorna el contenido de la celda de fila y columna indicadas si está dentro de la hoja, sin crear la celda si está vacía
+     * @param r Número de fila de la cual se quiere obtener el contenido
+     * @param c Número de columna de la cual se quiere obtener el contenido
+     * @return Contenido de la celda en la posición indicada
+     * @throws MyException Si la celda no existe
+     */
+    public CellValueInterface selectCellValue(int r, int c) throws MyException {
+        if (r < 0 || r > getNRows() || c < 0 || c > getNColumns()) throw new MyException("Cell does not exist");
+        return sheet.getCellValue(r, c);
+    }
+
     /**
      * Selecciona la hoja sh donde estamos trabajando en el excel si existe
      * @param sh Hoja a seleccionar
@@ -251,8 +424,9 @@ public class CtrlDominio {
                 sheet.getReferences().eraseReference(oldRef, cell);
             }
             sheet.executeInput(input, cell);
-            sheet.updateRecursiveValues(cell);
         }
+        sheet.recalculate(cells);
+        if (journal != null) journal.modifyCells(sheetIndex(), cellsaux, input);
     }
 
 
@@ -262,6 +436,7 @@ public class CtrlDominio {
      */
     public void addRow(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
         if (getNRows() < getMaxRow()) sheet.addRow(a);
+        if (journal != null) journal.addRow(sheetIndex(), a);
     }
 
     /**
@@ -270,6 +445,7 @@ public class CtrlDominio {
      */
     public void addColumn(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
         if (getNColumns() < getMaxCol()) sheet.addColumn(a);
+        if (journal != null) journal.addColumn(sheetIndex(), a);
     }
 
     /**
@@ -277,8 +453,9 @@ public class CtrlDominio {
      * @param a Número de fila que se quiere borrar
      */
     public void deleteRow(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException{
-        if (a < 0 || a > getNRows() - 1 || sheet.getCjt_cells().size() == 1) return;
+        if (a < 0 || a > getNRows() - 1 || getNRows() == 1) return;
         sheet.deleteRow(a);
+        if (journal != null) journal.deleteRow(sheetIndex(), a);
     }
 
     /**
@@ -286,8 +463,9 @@ public class CtrlDominio {
      * @param a Número de columna que se quiere borrar
      */
     public void deleteColumn(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException{
-        if (a < 0 || a > getNColumns() - 1 || sheet.getCjt_cells().get(0).size() == 1) return;
+        if (a < 0 || a > getNColumns() - 1 || getNColumns() == 1) return;
         sheet.deleteColumn(a);
+        if (journal != null) journal.deleteColumn(sheetIndex(), a);
     }
 
 
@@ -299,6 +477,7 @@ public class CtrlDominio {
     public void deleteContBloq(ArrayList<Pair> cellsaux) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException, MyException {
         ArrayList<Cell> cells = sheet.pairToCell(cellsaux);
         sheet.deleteContBloq(cells);
+        if (journal != null) journal.deleteBlock(sheetIndex(), cellsaux);
     }
 
     /**
@@ -315,6 +494,7 @@ public class CtrlDominio {
         fixOuterCells(where.get(0));
         ArrayList<Cell> where2 = sheet.pairToCell(where);
         sheet.moveContBloq(move2, where2);
+        if (journal != null) journal.moveBlock(sheetIndex(), move, where);
     }
 
     /**
@@ -331,6 +511,7 @@ public class CtrlDominio {
         fixOuterCells(where.get(0));
         ArrayList<Cell> where2 = sheet.pairToCell(where);
         sheet.copyContBloq(copy2, where2);
+        if (journal != null) journal.copyBlock(sheetIndex(), copy, where);
     }
 
     /**
@@ -343,6 +524,7 @@ public class CtrlDominio {
     public void sortContBloq(ArrayList<Pair> cellsaux, int criterio) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException, MyException {
         ArrayList<Cell> cells = sheet.pairToCell(cellsaux);
         sheet.sortContBloq(cells, criterio);
+        if (journal != null) journal.sortBlock(sheetIndex(), cellsaux, criterio);
     }
 
     /**
@@ -355,6 +537,7 @@ public class CtrlDominio {
     public void replaceContBloq(ArrayList<Pair> cellsaux, String replacee, String replacer) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException, MyException {
         ArrayList<Cell> cells = sheet.pairToCell(cellsaux);
         sheet.replaceContBloq(cells, replacee, replacer);
+        if (journal != null) journal.replaceBlock(sheetIndex(), cellsaux, replacee, replacer);
     }
 
     /**
@@ -378,6 +561,7 @@ public class CtrlDominio {
         if (d.getCjtSheet().size() < d.getMaxSheets()) {
             if (!d.addSheet(name)) return false;
             else {
+                if (journal != null) journal.addSheet(name, -1, -1);
                 selectSheet(d.getCjtSheet().size() - 1);
                 return true;
             }
@@ -393,9 +577,22 @@ public class CtrlDominio {
      * @return True si se ha añadido, falso en caso contrario
      */
     public boolean addSheet(String name, int rows, int columns) throws MyException {
+        return addSheet(name, rows, columns, false);
+    }
+
+    /**
+     * Añade una hoja con el nombre, el número de filas y columnas y la forma de guardar las celdas especificados. En caso de que no exista una hoja con el mismo nombre
+     * @param name Un string que representa el nombre de la hoja
+     * @param rows Un int que representa el número de filas de la hoja
+     * @param columns Un int que representa el número de columnas de la hoja
+     * @param columnar Indica si la hoja guarda los números por columnas, para hojas con muchos datos numéricos
+     * @return True si se ha añadido, falso en caso contrario
+     */
+    public boolean addSheet(String name, int rows, int columns, boolean columnar) throws MyException {
         if (d.getCjtSheet().size() < d.getMaxSheets()) {
-            if (!d.addSheet(name, rows, columns)) return false;
+            if (!d.addSheet(name, rows, columns, columnar)) return false;
             else {
+                if (journal != null) journal.addSheet(name, rows, columns);
                 selectSheet(d.getCjtSheet().size() - 1);
                 return true;
             }
@@ -410,7 +607,9 @@ public class CtrlDominio {
      * @return True si se ha eliminado, falso en caso contrario
      */
     public boolean deleteSheet(int sheet) {
-        return d.deleteSheet(sheet);
+        if (!d.deleteSheet(sheet)) return false;
+        if (journal != null) journal.deleteSheet(sheet);
+        return true;
     }
 
 
@@ -423,7 +622,9 @@ public class CtrlDominio {
      */
     public boolean renameSheet(int index, String newname) throws MyException {
         if (index < 0 || index > d.getCjtSheet().size() - 1) throw new MyException("Sheet no existe");
-        return d.setName(index, newname);
+        if (!d.setName(index, newname)) return false;
+        if (journal != null) journal.renameSheet(index, newname);
+        return true;
     }
 
 
@@ -436,7 +637,8 @@ public class CtrlDominio {
 
     public void calculateDerivateData(ArrayList<Pair> cellsaux, String input) throws MyException, InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
         ArrayList<Cell> cells = sheet.pairToCell(cellsaux);
-         sheet.calculateDerivateData(cells, input);
+        sheet.calculateDerivateData(cells, input);
+        if (journal != null) journal.derivedData(sheetIndex(), cellsaux, input);
     }
 
    /**
@@ -444,12 +646,7 @@ public class CtrlDominio {
      * @param pair Coordenadas de la ultima celda que tiene que existir
      */
    private void fixOuterCells(Pair pair) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        while (pair.getX() >= getNRows()) {
-            addRow(getNRows());
-        }
-        while (pair.getY() >= getNColumns()) {
-            addColumn(getNColumns());
-        }
+        sheet.expand(pair.getX() + 1, pair.getY() + 1);
     }
 
 
@@ -0,0 +1,365 @@
+package dominio.controlador;
+
+import datos.documents.EditJournal;
+import dominio.auxiliarclasses.MyException;
+import dominio.auxiliarclasses.Pair;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Representa el diario de ediciones de un documento guardado con el formato nativo: cada operación del controlador de dominio que modifica
+ * el documento se guarda como un registro con la hoja sobre la que se hizo y sus parámetros, y al abrir el documento se vuelven a hacer
+ * las mismas operaciones en el mismo orden. Las posiciones de las celdas se guardan como pares fila, columna
+ */
+public class DocumentJournal {
+
+    // Códigos de operación de los registros
+
+    private static final byte MODIFY_CELLS = 1;
+    private static final byte ADD_ROW = 2;
+    private static final byte ADD_COLUMN = 3;
+    private static final byte DELETE_ROW = 4;
+    private static final byte DELETE_COLUMN = 5;
+    private static final byte DELETE_BLOCK = 6;
+    private static final byte MOVE_BLOCK = 7;
+    private static final byte COPY_BLOCK = 8;
+    private static final byte SORT_BLOCK = 9;
+    private static final byte REPLACE_BLOCK = 10;
+    private static final byte DERIVED_DATA = 11;
+    private static final byte ADD_SHEET = 12;
+    private static final byte DELETE_SHEET = 13;
+    private static final byte RENAME_SHEET = 14;
+
+    /**
+     * Representa el tamaño mínimo del diario a partir del cual se vuelve a guardar el documento entero
+     */
+    private static final long COMPACT_SIZE = 1L << 20;
+
+    // Attributes
+
+    /**
+     * Representa el path del documento
+     */
+    private final String path;
+
+    /**
+     * Representa el archivo del diario
+     */
+    private final EditJournal journal;
+
+    /**
+     * Indica si el documento ha cambiado de una manera que el diario no puede repetir, así que hay que guardarlo entero
+     */
+    private volatile boolean invalid;
+
+
+    // Constructor
+
+    /**
+     * Crea el diario de un documento
+     * @param path Path del documento
+     * @param journal Archivo del diario
+     */
+    public DocumentJournal(String path, EditJournal journal) {
+        this.path = path;
+        this.journal = journal;
+        this.invalid = false;
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el path del documento
+     * @return String con el path
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Retorna el archivo del diario
+     * @return Archivo del diario
+     */
+    public EditJournal getJournal() {
+        return this.journal;
+    }
+
+
+    // Methods
+
+    /**
+     * Indica si al guardar el documento hay que guardarlo entero en lugar de añadir los registros nuevos al diario: si el diario todavía
+     * no tiene archivo, si el documento ha cambiado sin pasar por el diario o si el diario ocupa más de 1 MB y más de la mitad del documento
+     * @return true si hay que guardar el documento entero, también si no se puede consultar el tamaño del diario
+     */
+    public boolean needsCompaction() {
+        try {
+            return invalid || !journal.isOpen() || journal.size() > Math.max(COMPACT_SIZE, journal.getSnapshotSize() / 2);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Indica que el documento ha cambiado sin pasar por el diario, así que la próxima vez hay que guardarlo entero
+     */
+    public void invalidate() {
+        this.invalid = true;
+    }
+
+    /**
+     * Marca la posición del diario al hacer una copia del documento entero, que ya incluye todos los registros anteriores
+     * @return int con la posición
+     */
+    public int mark() {
+        this.invalid = false;
+        return journal.mark();
+    }
+
+    /**
+     * Guarda que se ha modificado el contenido de unas celdas
+     * @param sheet Índice de la hoja
+     * @param cells Posiciones de las celdas
+     * @param input Input de las celdas
+     */
+    public void modifyCells(int sheet, ArrayList<Pair> cells, String input) {
+        journal.append(MODIFY_CELLS, ints(sheet, null, cells), input);
+    }
+
+    /**
+     * Guarda que se ha insertado una fila
+     * @param sheet Índice de la hoja
+     * @param row Posición de la fila
+     */
+    public void addRow(int sheet, int row) {
+        journal.append(ADD_ROW, new int[]{sheet, row});
+    }
+
+    /**
+     * Guarda que se ha insertado una columna
+     * @param sheet Índice de la hoja
+     * @param column Posición de la columna
+     */
+    public void addColumn(int sheet, int column) {
+        journal.append(ADD_COLUMN, new int[]{sheet, column});
+    }
+
+    /**
+     * Guarda que se ha borrado una fila
+     * @param sheet Índice de la hoja
+     * @param row Posición de la fila
+     */
+    public void deleteRow(int sheet, int row) {
+        journal.append(DELETE_ROW, new int[]{sheet, row});
+    }
+
+    /**
+     * Guarda que se ha borrado una columna
+     * @param sheet Índice de la hoja
+     * @param column Posición de la columna
+     */
+    public void deleteColumn(int sheet, int column) {
+        journal.append(DELETE_COLUMN, new int[]{sheet, column});
+    }
+
+    /**
+     * Guarda que se ha borrado el contenido de un bloque de celdas
+     * @param sheet Índice de la hoja
+     * @param cells Posiciones de las celdas
+     */
+    public void deleteBlock(int sheet, ArrayList<Pair> cells) {
+        journal.append(DELETE_BLOCK, ints(sheet, null, cells));
+    }
+
+    /**
+     * Guarda que se ha movido el contenido de un bloque de celdas
+     * @param sheet Índice de la hoja
+     * @param move Posiciones de las celdas movidas
+     * @param where Posiciones donde se ha movido el contenido
+     */
+    public void moveBlock(int sheet, ArrayList<Pair> move, ArrayList<Pair> where) {
+        journal.append(MOVE_BLOCK, ints(sheet, null, move, where));
+    }
+
+    /**
+     * Guarda que se ha copiado el contenido de un bloque de celdas
+     * @param sheet Índice de la hoja
+     * @param copy Posiciones de las celdas copiadas
+     * @param where Posiciones donde se ha pegado el contenido
+     */
+    public void copyBlock(int sheet, ArrayList<Pair> copy, ArrayList<Pair> where) {
+        journal.append(COPY_BLOCK, ints(sheet, null, copy, where));
+    }
+
+    /**
+     * Guarda que se ha ordenado un bloque de celdas
+     * @param sheet Índice de la hoja
+     * @param cells Posiciones de las celdas
+     * @param criterio Criterio de ordenación, 1 creciente y 2 decreciente
+     */
+    public void sortBlock(int sheet, ArrayList<Pair> cells, int criterio) {
+        journal.append(SORT_BLOCK, ints(sheet, new int[]{criterio}, cells));
+    }
+
+    /**
+     * Guarda que se ha reemplazado un contenido en un bloque de celdas
+     * @param sheet Índice de la hoja
+     * @param cells Posiciones de las celdas
+     * @param replacee Contenido reemplazado
+     * @param replacer Contenido nuevo
+     */
+    public void replaceBlock(int sheet, ArrayList<Pair> cells, String replacee, String replacer) {
+        journal.append(REPLACE_BLOCK, ints(sheet, null, cells), replacee, replacer);
+    }
+
+    /**
+     * Guarda que se ha extendido una fórmula a un bloque de celdas
+     * @param sheet Índice de la hoja
+     * @param cells Posiciones de las celdas, la primera es la de la fórmula
+     * @param input Fórmula extendida
+     */
+    public void derivedData(int sheet, ArrayList<Pair> cells, String input) {
+        journal.append(DERIVED_DATA, ints(sheet, null, cells), input);
+    }
+
+    /**
+     * Guarda que se ha añadido una hoja
+     * @param name Nombre de la hoja
+     * @param rows Número de filas de la hoja, -1 si tiene el tamaño por defecto
+     * @param columns Número de columnas de la hoja, -1 si tiene el tamaño por defecto
+     */
+    public void addSheet(String name, int rows, int columns) {
+        journal.append(ADD_SHEET, new int[]{-1, rows, columns}, name);
+    }
+
+    /**
+     * Guarda que se ha borrado una hoja
+     * @param index Índice de la hoja
+     */
+    public void deleteSheet(int index) {
+        journal.append(DELETE_SHEET, new int[]{-1, index});
+    }
+
+    /**
+     * Guarda que se ha cambiado el nombre de una hoja
+     * @param index Índice de la hoja
+     * @param name Nombre nuevo
+     */
+    public void renameSheet(int index, String name) {
+        journal.append(RENAME_SHEET, new int[]{-1, index}, name);
+    }
+
+    // Pre: ctrl tiene el documento tal y como estaba al guardarlo entero, y no tiene diario
+    // Post: ctrl tiene el documento con todas las operaciones de records hechas
+
+    /**
+     * Vuelve a hacer las operaciones del diario sobre un documento, en el mismo orden. Si una operación falla, no se hace ninguna más
+     * @param records Registros del diario
+     * @param ctrl Controlador de dominio con el documento
+     * @throws MyException Si alguna operación falla, con cuántas operaciones se han perdido
+     */
+    public static void replay(List<EditJournal.Record> records, CtrlDominio ctrl) throws MyException {
+        for (int done = 0; done < records.size(); done++) {
+            try {
+                apply(records.get(done), ctrl);
+            } catch (MyException | ReflectiveOperationException | RuntimeException e) {
+                String cause = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                throw new MyException("Could not recover the last " + (records.size() - done) + " of " + records.size() + " edits saved in the journal: " + cause);
+            }
+        }
+    }
+
+    /**
+     * Hace la operación de un registro
+     * @param record Registro del diario
+     * @param ctrl Controlador de dominio con el documento
+     */
+    private static void apply(EditJournal.Record record, CtrlDominio ctrl) throws MyException, InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        int[] ints = record.getInts();
+        String[] texts = record.getTexts();
+        if (ints[0] >= 0) ctrl.selectSheet(ints[0]);
+        switch (record.getOp()) {
+            case MODIFY_CELLS:
+                ctrl.modifyCells(block(ints, 1), texts[0]);
+                break;
+            case ADD_ROW:
+                ctrl.addRow(ints[1]);
+                break;
+            case ADD_COLUMN:
+                ctrl.addColumn(ints[1]);
+                break;
+            case DELETE_ROW:
+                ctrl.deleteRow(ints[1]);
+                break;
+            case DELETE_COLUMN:
+                ctrl.deleteColumn(ints[1]);
+                break;
+            case DELETE_BLOCK:
+                ctrl.deleteContBloq(block(ints, 1));
+                break;
+            case MOVE_BLOCK:
+                ctrl.moveContBloq(block(ints, 1), block(ints, 2 + 2 * ints[1]));
+                break;
+            case COPY_BLOCK:
+                ctrl.copyContBloq(block(ints, 1), block(ints, 2 + 2 * ints[1]));
+                break;
+            case SORT_BLOCK:
+                ctrl.sortContBloq(block(ints, 2), ints[1]);
+                break;
+            case REPLACE_BLOCK:
+                ctrl.replaceContBloq(block(ints, 1), texts[0], texts[1]);
+                break;
+            case DERIVED_DATA:
+                ctrl.calculateDerivateData(block(ints, 1), texts[0]);
+                break;
+            case ADD_SHEET:
+                if (ints[1] < 0) ctrl.addSheet(texts[0]);
+                else ctrl.addSheet(texts[0], ints[1], ints[2]);
+                break;
+            case DELETE_SHEET:
+                ctrl.deleteSheet(ints[1]);
+                break;
+            case RENAME_SHEET:
+                ctrl.renameSheet(ints[1], texts[0]);
+                break;
+            default:
+                throw new MyException("Operación desconocida en el diario: " + record.getOp());
+        }
+    }
+
+    /**
+     * Retorna los enteros de un registro: la hoja, los parámetros y cada bloque de celdas precedido por su número de celdas
+     */
+    @SafeVarargs
+    private static int[] ints(int sheet, int[] params, ArrayList<Pair>... blocks) {
+        int size = 1 + (params == null ? 0 : params.length);
+        for (ArrayList<Pair> block : blocks) size += 1 + 2 * block.size();
+        int[] ints = new int[size];
+        int i = 0;
+        ints[i++] = sheet;
+        if (params != null) for (int param : params) ints[i++] = param;
+        for (ArrayList<Pair> block : blocks) {
+            ints[i++] = block.size();
+            for (Pair pair : block) {
+                ints[i++] = pair.getX();
+                ints[i++] = pair.getY();
+            }
+        }
+        return ints;
+    }
+
+    /**
+     * Retorna el bloque de celdas que empieza en la posición indicada de los enteros de un registro
+     */
+    private static ArrayList<Pair> block(int[] ints, int start) {
+        int n = ints[start];
+        ArrayList<Pair> block = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) block.add(new Pair(ints[start + 1 + 2 * i], ints[start + 2 + 2 * i]));
+        return block;
+    }
+
+}
@@ -0,0 +1,146 @@
+package dominio.controlador;
+
+import datos.documents.NativeSheet;
+import dominio.model.*;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Representa la conversión entre una hoja y su imagen en el formato nativo. Se guardan el input de cada celda, el último valor calculado
+ * de cada fórmula y las referencias entre celdas, de manera que al restaurar la hoja no hay que compilar las referencias a mano
+ * ni volver a evaluar ninguna fórmula. Las referencias a la celda de columna de una hoja por columnas se guardan con la fila -1
+ */
+public class SheetArchiver {
+
+    // Methods
+
+    /**
+     * Crea la imagen de una hoja sin modificarla. Las celdas se recorren por filas, así que cada columna queda ordenada por filas
+     * @param sheet Hoja que se quiere guardar
+     * @return Imagen de la hoja
+     */
+    public static NativeSheet save(Sheet sheet) {
+        NativeSheet image = new NativeSheet(sheet.getName(), sheet.getNRows(), sheet.getNColumns());
+        DependencyGraph graph = sheet.getReferences().getGraph();
+        for (Cell cell : sheet.getCjt_cells().cells()) {
+            int row = cell.getRow();
+            int col = cell.getColumn();
+            CellValueInterface value = cell.getCellValue();
+            if (value instanceof Function) saveFormula(image, row, col, (Function) value);
+            else if (!value.getUserInput().isEmpty()) image.addValue(row, col, value.getUserInput());
+            for (Cell referenced : graph.getPrecedents(cell)) image.addReference(row, col, referenced.getRow(), referenced.getColumn());
+        }
+        return image;
+    }
+
+    /**
+     * Añade a la imagen una celda con una fórmula, con el tipo de su valor calculado para poder restaurarlo tal y como se muestra
+     * @param image Imagen de la hoja
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @param function Función de la celda
+     */
+    private static void saveFormula(NativeSheet image, int row, int col, Function function) {
+        String formula = function.getUserInput();
+        String name = GetFunctionFactory.getName(function);
+        TypedValue value = function.getTypedValue();
+        String text = value.toString();
+        double number = value.getNumber();
+        switch (value.getType()) {
+            case NUMBER:
+                if (text.equals(String.valueOf(number))) image.addFormula(row, col, formula, name, NativeSheet.NUMBER, number, null);
+                else if (number % 1 == 0 && text.equals(String.valueOf((long) number))) image.addFormula(row, col, formula, name, NativeSheet.INTEGER, number, null);
+                else image.addFormula(row, col, formula, name, NativeSheet.NUMBER_TEXT, number, text);
+                break;
+            case BOOLEAN:
+                image.addFormula(row, col, formula, name, NativeSheet.BOOLEAN, number, null);
+                break;
+            case TEXT:
+                image.addFormula(row, col, formula, name, NativeSheet.TEXT, 0, text);
+                break;
+            case ERROR:
+                image.addFormula(row, col, formula, name, NativeSheet.ERROR, 0, text);
+                break;
+            default:
+                image.addFormula(row, col, formula, name, NativeSheet.EMPTY, 0, null);
+        }
+    }
+
+    // Pre: sheet está vacía y tiene el tamaño de la imagen
+    // Post: sheet tiene las celdas, los valores calculados y las referencias de la imagen
+
+    /**
+     * Restaura una hoja a partir de su imagen. Las fórmulas se compilan pero no se evalúan: recuperan su valor calculado y sus referencias.
+     * Solo se evalúan, con un único recálculo de la hoja, las fórmulas guardadas sin valor o cuya función ya no existe
+     * @param image Imagen de la hoja
+     * @param sheet Hoja donde se restaura la imagen
+     * @return int con el número de celdas recalculadas, 0 si no ha hecho falta evaluar ninguna fórmula
+     */
+    public static int load(NativeSheet image, Sheet sheet) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        SheetLoader loader = new SheetLoader(sheet);
+        boolean[] pending = {false};
+        image.accept(new NativeSheet.Visitor() {
+            @Override
+            public void value(int row, int col, String value) {
+                loader.put(row, col, value);
+            }
+
+            @Override
+            public void formula(int row, int col, String formula, String function, byte type, double number, String text) {
+                if (function != null && GetFunctionFactory.exists(function)) {
+                    try {
+                        Function f = GetFunctionFactory.getInstance(function);
+                        f.setFormula(formula);
+                        f.setCompiledFormula(FormulaCompiler.compile(formula, sheet.getCjt_cells().getIndex()));
+                        f.setTypedValue(typedValue(type, number, text));
+                        sheet.setCell(row, col, f);
+                        return;
+                    } catch (ReflectiveOperationException e) {
+                        // se evalúa como una fórmula nueva
+                    }
+                }
+                loader.put(row, col, formula);
+                pending[0] = true;
+            }
+
+            @Override
+            public void reference(int row, int col, int refRow, int refCol) {
+                if (refRow >= 0) sheet.setReferences(sheet.getCell(refRow, refCol), sheet.getCell(row, col));
+                else if (sheet.isColumnar()) sheet.setReferences(sheet.getColumnCell(refCol), sheet.getCell(row, col));
+                else {
+                    // una hoja que no guarda los números por columnas no tiene celdas de columna: la fórmula se vuelve a evaluar
+                    loader.put(row, col, sheet.getCell(row, col).getCellValue().getUserInput());
+                    pending[0] = true;
+                }
+            }
+        });
+        return pending[0] ? loader.finish() : 0;
+    }
+
+    /**
+     * Retorna el valor tipado guardado en la imagen
+     * @param type Tipo del valor
+     * @param number Valor numérico
+     * @param text Texto del valor
+     * @return Valor tipado
+     */
+    private static TypedValue typedValue(byte type, double number, String text) {
+        switch (type) {
+            case NativeSheet.NUMBER:
+                return TypedValue.number(number);
+            case NativeSheet.INTEGER:
+                return TypedValue.integer((long) number);
+            case NativeSheet.BOOLEAN:
+                return TypedValue.bool(number != 0);
+            case NativeSheet.TEXT:
+                return TypedValue.text(text);
+            case NativeSheet.ERROR:
+                return TypedValue.error(text);
+            case NativeSheet.NUMBER_TEXT:
+                return TypedValue.number(number, text);
+            default:
+                return TypedValue.EMPTY;
+        }
+    }
+
+}
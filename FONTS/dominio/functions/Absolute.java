@@ -1,5 +1,6 @@
 package dominio.functions;
 import dominio.model.Function;
+import dominio.model.TypedValue;
 
 /**
  * Representa la función Absolute de las posibles funciones que puede ejecutar el usuario
@@ -31,18 +32,18 @@ public class Absolute extends Function {
     /**
      * Función heredada de Function e implementada en Absolute, que retorna el valor
      * absoluto del número pasado por parámetro
-     * @return valor absoluto del parámetro en formato String
+     * @return valor absoluto del parámetro como valor tipado
      */
-    public String getValue() {
+    public TypedValue evaluate() {
 
         String result = "#NAME?";
         try {
             double parameter = parameters.get(1).getDouble();
-            if (parameter < 0) return String.valueOf(parameter * -1);
-            else return String.valueOf(parameter);
+            if (parameter < 0) return TypedValue.number(parameter * -1);
+            else return TypedValue.number(parameter);
         }
         catch (NullPointerException e) {
-            return result;
+            return TypedValue.error(result);
         }
     }
 
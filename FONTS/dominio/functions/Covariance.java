@@ -1,7 +1,8 @@
 package dominio.functions;
 import dominio.model.Function;
-
-import java.util.*;
+import dominio.model.TypedValue;
+import dominio.parameter.CoStatistics;
+import dominio.parameter.Parameter;
 
 /**
  * Representa la función Covariance de las posibles funciones que puede ejecutar el usuario
@@ -25,17 +26,14 @@ public class Covariance extends Function{
 
 
     /**
-     * Retorna la media de los elementos de v
-     * @param v Array con los elementos a los cuales se le aplica la media
-     * @param n tamaño de v
-     * @return la media de los valores de v en formato double
+     * Retorna los valores de un parámetro: los del vector, o el double si no es un vector
+     * @param p Parámetro
+     * @return Array con los valores, null si el parámetro no es un vector ni un double
      */
-    private double mean(ArrayList<Double> v, double n) {
-        double sum = 0;
-        for (int i = 0; i < n; i++) {
-            sum += v.get(i);
-        }
-        return sum /n;
+    private double[] values(Parameter p) {
+        double[] values = p.getValues();
+        if (values == null && p.getDouble() != null) values = new double[]{p.getDouble()};
+        return values;
     }
 
     /**
@@ -47,51 +45,22 @@ public class Covariance extends Function{
 
     /**
      * Función heredada de Function e implementada en Covariance, que retorna
-     * la covarianza de las dos variables pasadas por parámetro
-     * @return covarianza de las dos variables en formato string
+     * la covarianza de las dos variables pasadas por parámetro, calculada en una sola pasada con su co-momento
+     * @return covarianza de las dos variables como valor tipado
      */
-    public String getValue() {
-        ArrayList<Double> vectorX = new ArrayList<>();
+    public TypedValue evaluate() {
         String result = "NULL";
-
-        try {
-            if (parameters.get(1).getArray() == null) {
-                vectorX.add(parameters.get(1).getDouble());
-                if (vectorX.get(0) == null) return result;
-            } else {
-                vectorX = parameters.get(1).getArray();
-            }
-        }
-        catch (IndexOutOfBoundsException e) {
-            return "#NAME?";
-        }
-
-        ArrayList<Double> vectorY = new ArrayList<>();
-
+        double[] vectorX, vectorY;
         try {
-            if (parameters.get(2).getArray() == null) {
-                vectorY.add(parameters.get(1).getDouble());
-                if (vectorY.get(0) == null) return result;
-            } else {
-                vectorY = parameters.get(2).getArray();
-            }
+            vectorX = values(parameters.get(1));
+            vectorY = values(parameters.get(2));
         }
         catch (IndexOutOfBoundsException e) {
-            return "#NAME?";
+            return TypedValue.error("#NAME?");
         }
+        if (vectorX == null || vectorY == null) return TypedValue.text(result);
 
-        double res = 0;
-        int sizeX = vectorX.size();
-        int sizeY = vectorY.size();
-        if(sizeX == sizeY) {
-            double meanX = mean(vectorX, sizeX);
-            double meanY = mean(vectorY, sizeY);
-            for (int i = 0; i < sizeX; i++) {
-                res += ((vectorX.get(i) - meanX) * (vectorY.get(i) - meanY));
-            }
-            res = res / (sizeX);
-            return String.valueOf(res);
-        }
-        else return "#NAME?";
+        if (vectorX.length == vectorY.length) return TypedValue.number(CoStatistics.of(vectorX, vectorY).getCovariance());
+        else return TypedValue.error("#NAME?");
     }
 }
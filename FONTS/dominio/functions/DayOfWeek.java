@@ -2,6 +2,7 @@ package dominio.functions;
 
 import java.text.SimpleDateFormat;
 import dominio.model.Function;
+import dominio.model.TypedValue;
 import java.util.*;
 
 /**
@@ -31,19 +32,19 @@ public class DayOfWeek extends Function{
 
     /**
      * Función heredada de Function e implementada en DayOfWeek, que retorna el dia de la semana de la fecha indicada
-     * @return dia de la semana  en formato string
+     * @return dia de la semana como valor tipado
      */
-    public String getValue() {
+    public TypedValue evaluate() {
         try {
-            if (parameters.get(1).getString() == null) return "NULL";
+            if (parameters.get(1).getString() == null) return TypedValue.text("NULL");
             String date = parameters.get(1).getString();
             SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy", Locale.ENGLISH);
             Date aux = sdf.parse(date);
             sdf.applyPattern("EEEE");
-            return sdf.format(aux);
+            return TypedValue.text(sdf.format(aux));
         }
         catch(Exception e) {
-            return "#NAME?";
+            return TypedValue.error("#NAME?");
         }
 
     }
@@ -2,6 +2,7 @@ package dominio.functions;
 
 
 import dominio.model.Function;
+import dominio.model.TypedValue;
 
 /**
  * Representa la función ElementExtraction de las posibles funciones que puede ejecutar el usuario
@@ -63,16 +64,16 @@ public class ElementExtraction extends Function {
 
     /**
      * Función heredada de Function e implementada en ElementExtraction, que calcula el elemento extraído de la fecha
-     * @return el elemento extraído de la fecha en formato string
+     * @return el elemento extraído de la fecha como valor tipado
      */
-    public String getValue() {
+    public TypedValue evaluate() {
         try {
             String extraction = parameters.get(1).getString();
             String date = parameters.get(2).getString();
-            return getDate(date, extraction);
+            return TypedValue.parse(getDate(date, extraction));
         }
         catch (NullPointerException e) {
-            return "#NAME?";
+            return TypedValue.error("#NAME?");
         }
 
     }
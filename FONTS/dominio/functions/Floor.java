@@ -1,6 +1,7 @@
 package dominio.functions;
 
 import dominio.model.Function;
+import dominio.model.TypedValue;
 import java.lang.Math;
 
 /**
@@ -30,17 +31,17 @@ public class Floor extends Function {
 
     /**
      * Función heredada de Function e implementada en Floor, que devuelve el número sin decimales
-     * redondeando a la baja en formato string
-     * @return el parámetro de entrada redondeada a la baja en formato String
+     * redondeando a la baja
+     * @return el parámetro de entrada redondeada a la baja como valor tipado
      */
 
-    public String getValue() {
+    public TypedValue evaluate() {
         try {
             double parameter = parameters.get(1).getDouble();
-            return String.valueOf(Math.floor(parameter));
+            return TypedValue.number(Math.floor(parameter));
         }
         catch (NullPointerException e) {
-            return "#NAME?";
+            return TypedValue.error("#NAME?");
         }
     }
 
@@ -1,6 +1,7 @@
 package dominio.functions;
 
 import dominio.model.Function;
+import dominio.model.TypedValue;
 
 /**
  * Representa la función Identity de las posibles funciones que puede ejecutar el usuario
@@ -29,10 +30,11 @@ public class Identity extends Function {
 
     /**
      * Función heredada de Function e implementada en Identity, que devuelve el mismo parámetro de entrada
-     * @return el mismo parámetro de la entrada  en formato string
+     * @return el mismo parámetro de la entrada como valor tipado
      */
-    public String getValue() {
-        return parameters.get(1).getString();
+    public TypedValue evaluate() {
+        if (parameters.get(1).getDouble() != null) return TypedValue.number(parameters.get(1).getDouble());
+        return TypedValue.parse(parameters.get(1).getString());
     }
 
 
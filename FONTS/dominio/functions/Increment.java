@@ -2,6 +2,7 @@ package dominio.functions;
 
 import java.math.BigDecimal;
 import dominio.model.Function;
+import dominio.model.TypedValue;
 
 /**
  * Representa la función Increment de las posibles funciones que puede ejecutar el usuario
@@ -30,23 +31,23 @@ public class Increment extends Function{
 
     /**
      * Función heredada de Function e implementada en Increment, que devuelve el parámetro de entrada incrementado
-     * @return parámetro de entrada incrementado en uno en formato string
+     * @return parámetro de entrada incrementado en uno como valor tipado
      */
-    public String getValue(){
+    public TypedValue evaluate() {
         String result = "#NAME?";
         try {
             double aux = parameters.get(1).getDouble();
             if(aux >= 0) {
-                return String.valueOf(++aux);
+                return TypedValue.number(++aux);
             }
             else {
                 BigDecimal a = BigDecimal.valueOf(aux).add(BigDecimal.valueOf(1));
-                return String.valueOf(a);
+                return TypedValue.number(a.doubleValue(), String.valueOf(a));
             }
 
         }
         catch (NullPointerException e) {
-            return result;
+            return TypedValue.error(result);
         }
     }
 }
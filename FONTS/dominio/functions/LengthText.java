@@ -1,5 +1,6 @@
 package dominio.functions;
 import dominio.model.Function;
+import dominio.model.TypedValue;
 
 /**
  * Representa la función LengthText de las posibles funciones que puede ejecutar el usuario
@@ -28,14 +29,14 @@ public class LengthText extends Function {
 
     /**
      * Función heredada de Function e implementada en LengthText, que devuelve la longitud del texto dado por parámetro
-     * @return longitud del texto en formato string
+     * @return longitud del texto como valor tipado
      */
-    public String getValue() {
+    public TypedValue evaluate() {
         try {
-            return String.valueOf(parameters.get(1).getString().length());
+            return TypedValue.integer(parameters.get(1).getString().length());
         }
         catch (NullPointerException e) {
-            return "#NAME?";
+            return TypedValue.error("#NAME?");
         }
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package dominio.functions;
 import dominio.model.Function;
-import java.util.*;
+import dominio.model.TypedValue;
+import dominio.parameter.Statistics;
 
 /**
  * Representa la función Mean de las posibles funciones que puede ejecutar el usuario
@@ -28,26 +29,21 @@ public class Mean extends Function{
     public int getNParameters() { return nParameters; }
 
     /**
-     * Función heredada de Function e implementada en Mean, que devuelve la media de los parámetros indicados
-     * @return la media de los elementos pasados por parámetro en formato string
+     * Función heredada de Function e implementada en Mean, que devuelve la media de los parámetros indicados.
+     * La media sale de los estadísticos del vector, sin volver a recorrer sus valores
+     * @return la media de los elementos pasados por parámetro como valor tipado
      */
-    public String getValue() {
-        ArrayList<Double> aux = new ArrayList<>();
+    public TypedValue evaluate() {
+        Statistics statistics = parameters.get(1).getStatistics();
 
-        if (parameters.get(1).getArray() == null) {
-            if ((parameters.get(1).getDouble() == null)) return "#NAME?";
-            else aux.add(parameters.get(1).getDouble());
+        if (statistics == null) {
+            if ((parameters.get(1).getDouble() == null)) return TypedValue.error("#NAME?");
+            statistics = new Statistics();
+            statistics.add(parameters.get(1).getDouble());
         }
-        else {
-            aux = parameters.get(1).getArray();
-        }
-        Double resu = 0.0;
-        for (Double value : aux) {
-            resu += value;
-        }
-        resu = resu/aux.size();
-        if (resu % 1 == 0) return String.valueOf(resu.intValue());
-        return String.valueOf(resu);
+        Double resu = statistics.getMean();
+        if (resu % 1 == 0) return TypedValue.integer(resu.intValue());
+        return TypedValue.number(resu);
     }
 
 }
\ No newline at end of file
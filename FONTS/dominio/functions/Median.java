@@ -1,7 +1,9 @@
 package dominio.functions;
 
-import java.util.*;
 import dominio.model.Function;
+import dominio.model.TypedValue;
+import dominio.parameter.OrderStatistics;
+import dominio.parameter.QuickSelect;
 
 /**
  * Representa la función Median de las posibles funciones que puede ejecutar el usuario
@@ -30,25 +32,16 @@ public class Median extends Function{
     public int getNParameters() { return nParameters; }
 
     /**
-     * Función heredada de Function e implementada en Median, que devuelve la mediana de los parámetros indicados
-     * @return la mediana del vector en formato string
+     * Función heredada de Function e implementada en Median, que devuelve la mediana de los parámetros indicados. La mediana se
+     * busca por posición en los valores del vector, sin ordenarlos enteros
+     * @return la mediana del vector como valor tipado
      */
-    public String getValue() {
-        ArrayList<Double> vector = new ArrayList<>();
-
-        if (parameters.get(1).getArray() == null) {
-            if ((parameters.get(1).getDouble() == null)) return "#NAME?";
-            else vector.add(parameters.get(1).getDouble());
-        }
-        else {
-            vector = parameters.get(1).getArray();
+    public TypedValue evaluate() {
+        OrderStatistics values = parameters.get(1).getOrderStatistics();
+        if (values == null) {
+            if ((parameters.get(1).getDouble() == null)) return TypedValue.error("#NAME?");
+            values = new QuickSelect(new double[]{parameters.get(1).getDouble()});
         }
-        Collections.sort(vector);
-        double aux;
-        int size = vector.size();
-        if (size % 2 == 1) aux = vector.get(((size + 1) / 2) - 1);
-        else aux = (vector.get(size / 2 - 1) + vector.get(size / 2)) / 2;
-
-        return String.valueOf(aux);
+        return TypedValue.number(values.median());
     }
 }
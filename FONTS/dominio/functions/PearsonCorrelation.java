@@ -1,8 +1,9 @@
 package dominio.functions;
 
-import java.util.*;
-import java.lang.Math;
 import dominio.model.Function;
+import dominio.model.TypedValue;
+import dominio.parameter.CoStatistics;
+import dominio.parameter.Parameter;
 
 /**
  * Representa la función PearsonCorrelation de las posibles funciones que puede ejecutar el usuario
@@ -25,29 +26,14 @@ public class PearsonCorrelation extends Function {
 
 
     /**
-     * Retorna la media de los elementos de vectorX
-     * @param vectorX vector con los elementos a calcular su media
-     * @return media de los elementos de vectorX en formato double
+     * Retorna los valores de un parámetro: los del vector, o el double si no es un vector
+     * @param p Parámetro
+     * @return Array con los valores
      */
-    private double meanX(ArrayList<Double> vectorX) {
-        double sum = 0;
-        for (int i = 0; i < vectorX.size(); i++) {
-            sum += vectorX.get(i);
-        }
-        return sum / vectorX.size();
-    }
-
-    /**
-     * Retorna la media de los elementos de vectorY
-     * @param vectorY vector con los elementos a calcular su media
-     * @return media de los elementos de vectorY en formato double
-     */
-    private double meanY(ArrayList<Double> vectorY) {
-        double sum = 0;
-        for (int i = 0; i < vectorY.size(); i++) {
-            sum += vectorY.get(i);
-        }
-        return sum / vectorY.size();
+    private double[] values(Parameter p) {
+        double[] values = p.getValues();
+        if (values == null) values = new double[]{p.getDouble()};
+        return values;
     }
 
 
@@ -61,42 +47,20 @@ public class PearsonCorrelation extends Function {
 
     /**
      * Función heredada de Function e implementada en PearsonCorrelation, que retorna el coeficiente
-     * de correlación de Pearson de las dos variables pasadas por parámetro
-     * @return coeficiente de Pearson de las dos variables  en formato string
+     * de correlación de Pearson de las dos variables pasadas por parámetro, calculado en una sola pasada con su co-momento
+     * @return coeficiente de Pearson de las dos variables como valor tipado
      */
-    public String getValue() {
-
-        ArrayList<Double> vectorX = new ArrayList<>();
+    public TypedValue evaluate() {
 
-        if (parameters.get(1).getArray() == null) {
-            vectorX.add(parameters.get(1).getDouble());
-        }
-        else {
-            vectorX = parameters.get(1).getArray();
-        }
-
-        ArrayList<Double> vectorY = new ArrayList<>();
-
-        if (parameters.get(2).getArray() == null) {
-            vectorY.add(parameters.get(2).getDouble());
-        }
-        else {
-            vectorY = parameters.get(2).getArray();
-        }
+        double[] vectorX = values(parameters.get(1));
+        double[] vectorY = values(parameters.get(2));
 
-        double sumXdotY = 0, sumXsquare = 0, sumYsquare = 0;
-        if (vectorX.size() == vectorY.size()) {
-            for (int i = 0; i < vectorX.size(); i++) {
-                double x = vectorX.get(i);
-                double y = vectorY.get(i);
-                sumXdotY += (x - meanX(vectorX)) * (y - meanY(vectorY));
-                sumXsquare += (x - meanX(vectorX)) * (x - meanX(vectorX));
-                sumYsquare += (y - meanY(vectorY)) * (y - meanY(vectorY));
-                if (sumXsquare == 0 || sumYsquare == 0) return "#NAME?";
-            }
-            return String.valueOf(sumXdotY / Math.sqrt(sumXsquare * sumYsquare));
+        if (vectorX.length == vectorY.length) {
+            CoStatistics statistics = CoStatistics.of(vectorX, vectorY);
+            if (statistics.getX().getM2() == 0 || statistics.getY().getM2() == 0) return TypedValue.error("#NAME?");
+            return TypedValue.number(statistics.getCorrelation());
         }
-        else return "#NAME?";
+        else return TypedValue.error("#NAME?");
 
     }
 
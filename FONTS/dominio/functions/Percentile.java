@@ -0,0 +1,49 @@
+package dominio.functions;
+
+import dominio.model.Function;
+import dominio.model.TypedValue;
+import dominio.parameter.OrderStatistics;
+import dominio.parameter.QuickSelect;
+
+/**
+ * Representa la función Percentile de las posibles funciones que puede ejecutar el usuario
+ */
+public class Percentile extends Function{
+
+    // Attributes
+    /**
+     * Representa el int con el número de parámetros que necesita la función
+     */
+    private final int nParameters;
+
+    /**
+     * Constructora
+     */
+    public Percentile() {
+        nParameters = 2;
+    }
+
+    // Public methods
+
+    /**
+     * Retorna el número de parámetros que necesita la función
+     * @return int con el número de parámetros que necesita la función
+     */
+    public int getNParameters() { return nParameters; }
+
+    /**
+     * Función heredada de Function e implementada en Percentile, que devuelve el percentil indicado, entre 0 y 1, de los valores
+     * del vector, interpolando entre los dos valores más cercanos. El valor se busca por posición, sin ordenar el vector entero
+     * @return el percentil del vector como valor tipado
+     */
+    public TypedValue evaluate() {
+        Double p = parameters.get(2).getDouble();
+        if (p == null || p < 0 || p > 1) return TypedValue.error("#NAME?");
+        OrderStatistics values = parameters.get(1).getOrderStatistics();
+        if (values == null) {
+            if ((parameters.get(1).getDouble() == null)) return TypedValue.error("#NAME?");
+            values = new QuickSelect(new double[]{parameters.get(1).getDouble()});
+        }
+        return TypedValue.number(values.percentile(p));
+    }
+}
@@ -1,6 +1,7 @@
 package dominio.functions;
 
 import dominio.model.Function;
+import dominio.model.TypedValue;
 
 /**
  * Representa la función ReplaceText de las posibles funciones que puede ejecutar el usuario
@@ -30,16 +31,16 @@ public class ReplaceText extends Function {
 
     /**
      * Función heredada de Function e implementada en ReplaceText, que reemplaza la parte replacee de texto por replacer
-     * @return el texto con la parte indicada reemplazada en formato string
+     * @return el texto con la parte indicada reemplazada como valor tipado
      */
-    public String getValue() {
+    public TypedValue evaluate() {
         String text = parameters.get(1).getString();
         if (text == null) text = String.valueOf(parameters.get(1).getDouble());
         String replacee = parameters.get(2).getString();
         if (replacee == null) replacee = String.valueOf(parameters.get(2).getDouble());
         String replacer = parameters.get(3).getString();
         if (replacer == null) replacer = String.valueOf(parameters.get(3).getDouble());
-        return text.replaceAll(replacee,replacer);
+        return TypedValue.parse(text.replaceAll(replacee,replacer));
 
 
     }
@@ -2,6 +2,8 @@ package dominio.functions;
 
 import java.util.*;
 import dominio.model.Function;
+import dominio.model.TypedValue;
+import dominio.parameter.Statistics;
 
 /**
  * Representa la función StandardDeviation de las posibles funciones que puede ejecutar el usuario
@@ -29,36 +31,24 @@ public class StandardDeviation extends Function {
 
     /**
      * Función heredada de Function e implementada en StandardDeviation, que retorna la
-     * desviación estándar poblacional o muestral de los parámetros indicados
-     * @return la desviación estándar en formato String
+     * desviación estándar poblacional o muestral de los parámetros indicados, a partir de los estadísticos del vector
+     * @return la desviación estándar como valor tipado
      */
-    public String getValue() {
+    public TypedValue evaluate() {
 
         String type = parameters.get(1).getString();
-        ArrayList<Double> values = new ArrayList<>();
+        Statistics statistics = parameters.get(2).getStatistics();
 
-        if (parameters.get(2).getArray() == null) {
-            values.add(parameters.get(2).getDouble());
+        if (statistics == null) {
+            statistics = new Statistics();
+            statistics.add(parameters.get(2).getDouble());
         }
-        else {
-            values = parameters.get(2).getArray();
-        }
-
-
 
-        double sum = 0.0, standardDeviation = 0.0;
-        for(double num : values) {
-            sum += num;
-        }
-        double mean = sum/values.size();
-
-        for(double num: values) {
-            standardDeviation += Math.pow(num - mean, 2);
-        }
-        if (Objects.equals(type, "population")) standardDeviation = Math.sqrt(standardDeviation/values.size());
-        else if (Objects.equals(type, "sample")) standardDeviation = Math.sqrt(standardDeviation/(values.size()-1));
-        else return "#NAME?";
-        return Double.toString(standardDeviation);
+        double standardDeviation = statistics.getM2();
+        if (Objects.equals(type, "population")) standardDeviation = Math.sqrt(standardDeviation/statistics.getCount());
+        else if (Objects.equals(type, "sample")) standardDeviation = Math.sqrt(standardDeviation/(statistics.getCount()-1));
+        else return TypedValue.error("#NAME?");
+        return TypedValue.number(standardDeviation);
     }
 
 
@@ -2,6 +2,7 @@ package dominio.functions;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import dominio.model.Function;
+import dominio.model.TypedValue;
 
 /**
  * Representa la función Truncate de las posibles funciones que puede ejecutar el usuario
@@ -32,9 +33,9 @@ public class Truncate extends Function {
     /**
      * Función heredada de Function e implementada en Truncate, que devuelve el valor truncado
      * del parámetro de la entrada
-     * @return devuelve el valor truncado "positions" dígitos en formato string
+     * @return devuelve el valor truncado "positions" dígitos como valor tipado
      */
-    public String getValue() {
+    public TypedValue evaluate() {
         Double value = parameters.get(1).getDouble();
         Double aux = parameters.get(2).getDouble();
         int positions = aux.intValue();
@@ -53,7 +54,7 @@ public class Truncate extends Function {
            finalvalue = new BigDecimal(String.valueOf(value)).setScale(positions, RoundingMode.CEILING);
         }
 
-        return String.valueOf(finalvalue);
+        return TypedValue.number(finalvalue.doubleValue(), String.valueOf(finalvalue));
 
     }
 
@@ -1,7 +1,8 @@
 package dominio.functions;
 
-import java.util.*;
 import dominio.model.Function;
+import dominio.model.TypedValue;
+import dominio.parameter.Statistics;
 
 /**
  * Representa la función Variance de las posibles funciones que puede ejecutar el usuario
@@ -31,33 +32,22 @@ public class Variance extends Function{
 
     /**
      * Función heredada de Function e implementada en Variance, que retorna la varianza
-     * poblacional o muestral de los parámetros indicados
-     * @return la varianza en formato string de los valores del vector
+     * poblacional o muestral de los parámetros indicados, a partir de los estadísticos del vector
+     * @return la varianza de los valores del vector como valor tipado
      */
-    public String getValue(){
-        ArrayList<Double> aux = new ArrayList<>();
+    public TypedValue evaluate() {
         String type = parameters.get(1).getString();
-        if (parameters.get(2).getArray() == null) {
-            aux.add(parameters.get(2).getDouble());
-        }
-        else {
-            aux = parameters.get(2).getArray();
-        }
-        double mean = 0.0;
-        double res = 0.0;
-        int size = aux.size();
-        for (Double value : aux) {
-            mean += value;
-        }
-        mean = mean / size;
-
-        for (Double value : aux) {
-            res += (value - mean) * (value - mean);
+        Statistics statistics = parameters.get(2).getStatistics();
+        if (statistics == null) {
+            statistics = new Statistics();
+            statistics.add(parameters.get(2).getDouble());
         }
+        double res = statistics.getM2();
+        int size = statistics.getCount();
         if(type.equals("population")) res = res / size;
         else if (type.equals("sample")) res = res /(size-1);
         else res = 0.0;
-        return String.valueOf(res);
+        return TypedValue.number(res);
     }
 
 }
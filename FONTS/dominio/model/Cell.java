@@ -10,15 +10,20 @@ public class Cell {
 
     //Attributes
     /**
-     * Representa la fila en la que se encuentra la celda
+     * Representa la fila en la que se encuentra la celda (su identificador físico si la celda pertenece a una hoja)
      */
     private int row;
 
     /**
-     * Representa la columna en la que se encuentra la celda
+     * Representa la columna en la que se encuentra la celda (su identificador físico si la celda pertenece a una hoja)
      */
     private int column;
 
+    /**
+     * Representa la correspondencia entre posiciones e identificadores de la hoja a la que pertenece la celda, null si no pertenece a ninguna
+     */
+    private final SheetIndex index;
+
     /**
      * Representa el tipo de celda que es (una función o simplemente un valor)
      */
@@ -34,6 +39,20 @@ public class Cell {
     public Cell(int r, int c) {
         this.row = r;
         this.column = c;
+        this.index = null;
+        this.cellValue = new CellValue("");
+    }
+
+    /**
+     * Crea una celda de una hoja identificada por la fila y columna físicas indicadas
+     * @param index Correspondencia entre posiciones e identificadores de la hoja
+     * @param rowId Identificador físico de la fila
+     * @param columnId Identificador físico de la columna
+     */
+    Cell(SheetIndex index, int rowId, int columnId) {
+        this.row = rowId;
+        this.column = columnId;
+        this.index = index;
         this.cellValue = new CellValue("");
     }
 
@@ -42,8 +61,9 @@ public class Cell {
      * @param cell Celda con la cual se quiere crear la nueva celda
      */
     public Cell(Cell cell) {
-        this.row = cell.getRow();
-        this.column = cell.getColumn();
+        this.row = cell.row;
+        this.column = cell.column;
+        this.index = cell.index;
         this.cellValue = cell.getCellValue();
     }
 
@@ -68,31 +88,47 @@ public class Cell {
 
     /**
      * Retorna la fila en la que se encuentra la celda
-     * @return Fila de la celda
+     * @return Fila de la celda, -1 si se ha borrado de la hoja
      */
     public int getRow() {
-        return row;
+        return index == null ? row : index.logicalRow(row);
     }
 
     /**
      * Retorna la columna en la que se encuentra la celda
-     * @return Columna de la celda
+     * @return Columna de la celda, -1 si se ha borrado de la hoja
      */
     public int getColumn() {
+        return index == null ? column : index.logicalColumn(column);
+    }
+
+    /**
+     * Retorna el identificador físico de la fila de la celda, que no cambia al insertar o borrar filas
+     * @return int con el identificador de la fila
+     */
+    int getRowId() {
+        return row;
+    }
+
+    /**
+     * Retorna el identificador físico de la columna de la celda, que no cambia al insertar o borrar columnas
+     * @return int con el identificador de la columna
+     */
+    int getColumnId() {
         return column;
     }
 
     //Public Methods
 
-    // Pre:
-    // Post: cambia el contenido content de la celda por cont
+    // Pre: Si la celda pertenece a una hoja, r está dentro de la hoja
+    // Post: cambia la fila de la celda por r
 
     /**
      * Inserta en la celda la nueva fila en la que se encuentra
      * @param r Fila en la que se quiere insertar la celda
      */
     public void setRow(int r) {
-        this.row = r;
+        this.row = index == null ? r : index.physicalRow(r);
     }
 
     /**
@@ -100,7 +136,7 @@ public class Cell {
      * @param c Columna en la que se quiere insertar la celda
      */
     public void setColumn(int c) {
-        this.column = c;
+        this.column = index == null ? c : index.physicalColumn(c);
     }
 
 }
@@ -0,0 +1,125 @@
+package dominio.model;
+
+import java.util.*;
+
+/**
+ * Interfaz que representa el almacén de las celdas de una hoja: guarda las celdas por su posición (fila, columna)
+ * y conoce el número de filas y columnas de la hoja
+ */
+public interface CellStore {
+
+    /**
+     * Retorna el número de filas de la hoja
+     * @return int con el número de filas
+     */
+    int getNRows();
+
+    /**
+     * Retorna el número de columnas de la hoja
+     * @return int con el número de columnas
+     */
+    int getNColumns();
+
+    /**
+     * Retorna la correspondencia entre las posiciones de la hoja y los identificadores físicos de sus filas y columnas
+     * @return Correspondencia de la hoja
+     */
+    SheetIndex getIndex();
+
+    /**
+     * Retorna la celda de la posición indicada, creándola si todavía no existe
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @return Celda en la posición indicada
+     * @throws IndexOutOfBoundsException Si la posición está fuera de la hoja
+     */
+    Cell get(int row, int col);
+
+    /**
+     * Retorna la celda de la posición indicada sin crearla
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @return Celda en la posición indicada, null si no se ha creado
+     * @throws IndexOutOfBoundsException Si la posición está fuera de la hoja
+     */
+    Cell find(int row, int col);
+
+    /**
+     * Retorna el contenido de la posición indicada sin crear la celda
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @return Contenido de la celda, un valor vacío si la celda no existe
+     * @throws IndexOutOfBoundsException Si la posición está fuera de la hoja
+     */
+    default CellValueInterface value(int row, int col) {
+        Cell cell = find(row, col);
+        return cell == null ? new CellValue("") : cell.getCellValue();
+    }
+
+    /**
+     * Retorna el valor tipado de la posición indicada sin crear la celda
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @return Valor tipado de la celda, TypedValue.EMPTY si la celda no existe
+     * @throws IndexOutOfBoundsException Si la posición está fuera de la hoja
+     */
+    default TypedValue typedValue(int row, int col) {
+        Cell cell = find(row, col);
+        return cell == null ? TypedValue.EMPTY : cell.getCellValue().getTypedValue();
+    }
+
+    /**
+     * Escribe un valor (no una fórmula) en la posición indicada, creando la celda si el almacén la necesita para guardarlo
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @param input Input de la celda
+     * @throws IndexOutOfBoundsException Si la posición está fuera de la hoja
+     */
+    default void put(int row, int col, String input) {
+        get(row, col).setCellValue(new CellValue(input));
+    }
+
+    /**
+     * Retorna las celdas creadas en el almacén, ordenadas por filas y dentro de cada fila por columnas
+     * @return ArrayList con las celdas creadas
+     */
+    ArrayList<Cell> cells();
+
+    /**
+     * Retorna el número de celdas creadas en el almacén
+     * @return int con el número de celdas creadas
+     */
+    int size();
+
+    /**
+     * Amplía la hoja hasta el número de filas y columnas indicado, sin mover ninguna celda. Si la hoja ya es más grande no cambia
+     * @param nRows Número mínimo de filas
+     * @param nColumns Número mínimo de columnas
+     */
+    void ensureSize(int nRows, int nColumns);
+
+    /**
+     * Inserta una fila vacía en la posición indicada; las celdas de las filas siguientes pasan a estar una fila más abajo
+     * @param row Posición de la nueva fila
+     */
+    void insertRow(int row);
+
+    /**
+     * Borra la fila indicada con sus celdas; las celdas de las filas siguientes pasan a estar una fila más arriba
+     * @param row Fila que se quiere borrar
+     */
+    void deleteRow(int row);
+
+    /**
+     * Inserta una columna vacía en la posición indicada; las celdas de las columnas siguientes pasan a estar una columna más a la derecha
+     * @param col Posición de la nueva columna
+     */
+    void insertColumn(int col);
+
+    /**
+     * Borra la columna indicada con sus celdas; las celdas de las columnas siguientes pasan a estar una columna más a la izquierda
+     * @param col Columna que se quiere borrar
+     */
+    void deleteColumn(int col);
+
+}
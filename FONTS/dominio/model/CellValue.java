@@ -11,6 +11,11 @@ public class CellValue implements CellValueInterface {
      */
     String value;
 
+    /**
+     * Representa el valor tipado de la celda (null mientras no se haya clasificado el valor)
+     */
+    private TypedValue typed;
+
     /**
      * Crea el tipo de valor de la celda con el valor indicado
      * @param v Valor de la celda que se quiere insertar
@@ -26,6 +31,7 @@ public class CellValue implements CellValueInterface {
     @Override
     public void setValue(String v) {
         this.value = v;
+        this.typed = null;
     }
 
     @Override
@@ -56,6 +62,16 @@ public class CellValue implements CellValueInterface {
         return value;
     }
 
+    /**
+     * Retorna el valor tipado de la celda, que solo se clasifica la primera vez que se pide
+     * @return Valor tipado de la celda
+     */
+    @Override
+    public TypedValue getTypedValue() {
+        if (typed == null) typed = TypedValue.parse(value);
+        return typed;
+    }
+
     /**
      * Retorna el tipo de celda en String
      * @return String con el tipo de celda
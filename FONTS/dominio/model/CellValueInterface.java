@@ -23,6 +23,12 @@ public interface CellValueInterface {
      */
     String getValue();
 
+    /**
+     * Retorna el valor tipado de la celda, y en caso de que sea una función y sea nulo, lo calcula y luego lo retorna
+     * @return Valor tipado de la celda
+     */
+    TypedValue getTypedValue();
+
     /**
      * Inserta un valor en una celda de tipo Value
      * @param v String con el valor que se quiere insertar en la celda
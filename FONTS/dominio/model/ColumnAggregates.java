@@ -0,0 +1,168 @@
+package dominio.model;
+
+import dominio.parameter.Statistics;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Representa un árbol de segmentos con los estadísticos de los números de una columna de una hoja por columnas. Las filas de la hoja
+ * se agrupan en bloques de BLOCK_SIZE filas seguidas; cada hoja del árbol guarda cuántos números sin celda tiene un bloque, su suma y su M2,
+ * y cuántas celdas tiene, y cada nodo interno junta los de sus dos hijos. Así los estadísticos de los bloques enteros de un rango se obtienen
+ * juntando O(log n) nodos, y cambiar un número solo obliga a volver a calcular su bloque y los nodos por encima de él
+ */
+final class ColumnAggregates {
+
+    /**
+     * Representa el número de bits de la fila que indican su posición dentro de un bloque
+     */
+    static final int BLOCK_BITS = 6;
+
+    /**
+     * Representa el número de filas de cada bloque
+     */
+    static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    // Attributes
+
+    /**
+     * Representa el número de hojas del árbol, potencia de dos; la hoja del bloque b es el nodo leaves + b
+     */
+    private final int leaves;
+
+    /**
+     * Representa el número de números sin celda de cada nodo
+     */
+    private final int[] count;
+
+    /**
+     * Representa la suma de los números sin celda de cada nodo
+     */
+    private final double[] sum;
+
+    /**
+     * Representa el M2 de los números sin celda de cada nodo
+     */
+    private final double[] m2;
+
+    /**
+     * Representa el número de celdas de cada nodo
+     */
+    private final int[] objects;
+
+
+    // Constructor
+
+    /**
+     * Crea un árbol vacío para una columna con el número de filas indicado
+     * @param nRows Número de filas de la hoja
+     */
+    ColumnAggregates(int nRows) {
+        int blocks = Math.max(1, (nRows + BLOCK_SIZE - 1) >>> BLOCK_BITS);
+        this.leaves = Integer.highestOneBit(blocks) == blocks ? blocks : Integer.highestOneBit(blocks) << 1;
+        this.count = new int[2 * leaves];
+        this.sum = new double[2 * leaves];
+        this.m2 = new double[2 * leaves];
+        this.objects = new int[2 * leaves];
+    }
+
+
+    // Methods
+
+    /**
+     * Guarda los estadísticos de un bloque sin actualizar los nodos por encima. Al acabar de guardar todos los bloques hay que llamar a build
+     * @param block Bloque
+     * @param numbers Estadísticos de los números sin celda del bloque
+     * @param cells Número de celdas del bloque
+     */
+    void setLeaf(int block, Statistics numbers, int cells) {
+        int i = leaves + block;
+        count[i] = numbers.getCount();
+        sum[i] = numbers.getSum();
+        m2[i] = numbers.getM2();
+        objects[i] = cells;
+    }
+
+    /**
+     * Calcula todos los nodos internos a partir de las hojas
+     */
+    void build() {
+        for (int i = leaves - 1; i >= 1; i--) pull(i);
+    }
+
+    /**
+     * Cambia los estadísticos de un bloque y actualiza los nodos por encima de él
+     * @param block Bloque
+     * @param numbers Estadísticos de los números sin celda del bloque
+     * @param cells Número de celdas del bloque
+     */
+    void update(int block, Statistics numbers, int cells) {
+        setLeaf(block, numbers, cells);
+        for (int i = (leaves + block) >>> 1; i >= 1; i >>>= 1) pull(i);
+    }
+
+    /**
+     * Junta en out los estadísticos de los números sin celda de los bloques firstBlock a lastBlock
+     * @param firstBlock Primer bloque
+     * @param lastBlock Último bloque
+     * @param out Estadísticos donde se juntan los de los bloques
+     * @return int con el número de celdas de los bloques
+     */
+    int query(int firstBlock, int lastBlock, Statistics out) {
+        int cells = 0;
+        int l = leaves + firstBlock, r = leaves + lastBlock + 1;
+        while (l < r) {
+            if ((l & 1) == 1) {
+                out.merge(count[l], sum[l], m2[l]);
+                cells += objects[l];
+                ++l;
+            }
+            if ((r & 1) == 1) {
+                --r;
+                out.merge(count[r], sum[r], m2[r]);
+                cells += objects[r];
+            }
+            l >>>= 1;
+            r >>>= 1;
+        }
+        return cells;
+    }
+
+    /**
+     * Recorre los bloques entre firstBlock y lastBlock que tienen alguna celda, bajando solo por los nodos que tienen alguna
+     * @param firstBlock Primer bloque
+     * @param lastBlock Último bloque
+     * @param action Acción que recibe cada bloque con celdas, en orden
+     */
+    void forEachCellBlock(int firstBlock, int lastBlock, IntConsumer action) {
+        forEachCellBlock(1, 0, leaves - 1, firstBlock, lastBlock, action);
+    }
+
+    private void forEachCellBlock(int node, int lo, int hi, int firstBlock, int lastBlock, IntConsumer action) {
+        if (objects[node] == 0 || hi < firstBlock || lo > lastBlock) return;
+        if (node >= leaves) {
+            action.accept(node - leaves);
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        forEachCellBlock(2 * node, lo, mid, firstBlock, lastBlock, action);
+        forEachCellBlock(2 * node + 1, mid + 1, hi, firstBlock, lastBlock, action);
+    }
+
+    /**
+     * Calcula un nodo interno juntando sus dos hijos
+     * @param i Nodo
+     */
+    private void pull(int i) {
+        int l = 2 * i, r = 2 * i + 1;
+        int n = count[l] + count[r];
+        objects[i] = objects[l] + objects[r];
+        count[i] = n;
+        sum[i] = sum[l] + sum[r];
+        if (count[l] == 0 || count[r] == 0) m2[i] = m2[l] + m2[r];
+        else {
+            double delta = sum[r] / count[r] - sum[l] / count[l];
+            m2[i] = m2[l] + m2[r] + delta * delta * ((double) count[l] * count[r] / n);
+        }
+    }
+
+}
@@ -0,0 +1,733 @@
+package dominio.model;
+
+import dominio.parameter.OrderStatistics;
+import dominio.parameter.Statistics;
+
+import java.util.*;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Representa un almacén de celdas por columnas para hojas con muchos datos numéricos. Los números escritos como valor se guardan en arrays
+ * de double de su columna, por bloques de filas y con un mapa de bits que indica qué filas tienen número, sin crear ninguna celda.
+ * El resto de celdas (textos, fórmulas y cualquier celda que se pida con get para modificarla o referenciarla) se guardan en un almacén disperso.
+ * Un número pasa a ser una celda la primera vez que se pide con get, y vuelve a la columna con release cuando la celda ya no hace falta.
+ * Las fórmulas que leen un rango no crean las celdas de sus números: dependen de la celda de columna de cada columna del rango,
+ * que el grafo de dependencias trata como una celda más, así que cualquier cambio en esa columna vuelve a evaluarlas.
+ * Para no tener que leer todos los números de un rango cada vez que se evalúa, cada columna tiene un árbol de estadísticos por bloques
+ * de filas (ColumnAggregates) que se crea la primera vez que se resume un rango de la columna y se mantiene al escribir cada número.
+ * Del mismo modo, los rangos grandes de una columna cuyo orden se consulta más de una vez (la mediana de una columna, por ejemplo)
+ * tienen un árbol de orden con sus valores que también se mantiene al escribir cada número
+ */
+public class ColumnarCellStore implements CellStore {
+
+    /**
+     * Representa el identificador físico de fila de las celdas de columna, que no corresponde a ninguna fila de la hoja
+     */
+    static final int COLUMN_ROW_ID = Integer.MAX_VALUE;
+
+    /**
+     * Representa el número de bits de la fila que indican su posición dentro de un bloque
+     */
+    private static final int CHUNK_BITS = 10;
+
+    /**
+     * Representa el número de filas de cada bloque
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Representa el número mínimo de filas de un rango para que tenga árbol de orden; los rangos más pequeños se ordenan cada vez
+     */
+    private static final int ORDER_MIN_ROWS = 1024;
+
+    /**
+     * Representa el número máximo de rangos con árbol de orden; al pasarse se descarta el que hace más tiempo que no se usa
+     */
+    private static final int MAX_ORDERS = 16;
+
+    /**
+     * Representa los números de una columna, por bloques de CHUNK_SIZE filas indexados por identificador físico de fila.
+     * Un bloque solo se crea cuando se escribe el primer número de sus filas
+     */
+    static final class NumberColumn {
+
+        /**
+         * Valores de cada bloque
+         */
+        double[][] values = new double[0][];
+
+        /**
+         * Mapa de bits de cada bloque con las filas que tienen número
+         */
+        long[][] present = new long[0][];
+
+        /**
+         * Mapa de bits de cada bloque con las filas cuyo número se escribió como entero, sin decimales
+         */
+        long[][] integral = new long[0][];
+
+        /**
+         * Número de filas con número
+         */
+        int size;
+
+        boolean has(int rowId) {
+            int chunk = rowId >>> CHUNK_BITS;
+            if (chunk >= present.length || present[chunk] == null) return false;
+            int i = rowId & (CHUNK_SIZE - 1);
+            return (present[chunk][i >>> 6] & (1L << i)) != 0;
+        }
+
+        double get(int rowId) {
+            return values[rowId >>> CHUNK_BITS][rowId & (CHUNK_SIZE - 1)];
+        }
+
+        boolean isIntegral(int rowId) {
+            int i = rowId & (CHUNK_SIZE - 1);
+            return (integral[rowId >>> CHUNK_BITS][i >>> 6] & (1L << i)) != 0;
+        }
+
+        /**
+         * Guarda el número de una fila
+         * @return true si la fila no tenía número
+         */
+        boolean set(int rowId, double value, boolean isIntegral) {
+            int chunk = rowId >>> CHUNK_BITS;
+            if (chunk >= values.length) {
+                int capacity = Math.max(chunk + 1, values.length * 2);
+                values = Arrays.copyOf(values, capacity);
+                present = Arrays.copyOf(present, capacity);
+                integral = Arrays.copyOf(integral, capacity);
+            }
+            if (values[chunk] == null) {
+                values[chunk] = new double[CHUNK_SIZE];
+                present[chunk] = new long[CHUNK_SIZE / 64];
+                integral[chunk] = new long[CHUNK_SIZE / 64];
+            }
+            int i = rowId & (CHUNK_SIZE - 1);
+            long bit = 1L << i;
+            boolean added = (present[chunk][i >>> 6] & bit) == 0;
+            values[chunk][i] = value;
+            present[chunk][i >>> 6] |= bit;
+            if (isIntegral) integral[chunk][i >>> 6] |= bit;
+            else integral[chunk][i >>> 6] &= ~bit;
+            if (added) ++size;
+            return added;
+        }
+
+        /**
+         * Quita el número de una fila
+         * @return true si la fila tenía número
+         */
+        boolean clear(int rowId) {
+            if (!has(rowId)) return false;
+            int i = rowId & (CHUNK_SIZE - 1);
+            present[rowId >>> CHUNK_BITS][i >>> 6] &= ~(1L << i);
+            --size;
+            return true;
+        }
+
+        /**
+         * Retorna el texto con el que se escribió el número de una fila
+         */
+        String text(int rowId) {
+            double value = get(rowId);
+            return isIntegral(rowId) ? String.valueOf((long) value) : String.valueOf(value);
+        }
+
+        /**
+         * Retorna el valor tipado del número de una fila, el mismo que tendría una celda con su texto
+         */
+        TypedValue typedValue(int rowId) {
+            double value = get(rowId);
+            return isIntegral(rowId) ? TypedValue.integer((long) value) : TypedValue.number(value);
+        }
+    }
+
+    /**
+     * Representa el árbol de orden de un rango de una columna. Los números sin celda del rango se mantienen en el árbol al escribirlos;
+     * los valores de las celdas del rango se guardan aparte y se actualizan cada vez que se pide el árbol
+     */
+    private static final class RangeOrder {
+
+        /**
+         * Identificador físico de la columna
+         */
+        final int colId;
+
+        /**
+         * Primera y última fila del rango
+         */
+        final int firstRow, lastRow;
+
+        /**
+         * Valores del rango, null hasta la segunda vez que se pide
+         */
+        OrderStatisticTree tree;
+
+        /**
+         * Filas del rango con celda cuyos valores están en el árbol, en orden, y sus valores
+         */
+        int[] cellRows;
+        double[] cellValues;
+
+        RangeOrder(int colId, int firstRow, int lastRow) {
+            this.colId = colId;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+        }
+
+        /**
+         * Cambia en el árbol los valores de las celdas del rango por los indicados
+         * @param rows Filas del rango con celda, en orden
+         * @param values Valores de esas celdas
+         */
+        void sync(int[] rows, double[] values) {
+            int i = 0, j = 0;
+            while (i < cellRows.length || j < rows.length) {
+                if (j == rows.length || (i < cellRows.length && cellRows[i] < rows[j])) tree.remove(cellValues[i++]);
+                else if (i == cellRows.length || rows[j] < cellRows[i]) tree.add(values[j++]);
+                else {
+                    if (Double.compare(cellValues[i], values[j]) != 0) {
+                        tree.remove(cellValues[i]);
+                        tree.add(values[j]);
+                    }
+                    ++i;
+                    ++j;
+                }
+            }
+            cellRows = rows;
+            cellValues = values;
+        }
+    }
+
+    // Attributes
+
+    /**
+     * Representa las celdas que no son un número guardado en su columna
+     */
+    private final SparseCellStore cells;
+
+    /**
+     * Representa la correspondencia entre las posiciones de la hoja y los identificadores físicos de sus filas y columnas
+     */
+    private final SheetIndex index;
+
+    /**
+     * Representa los números de cada columna, indexados por identificador físico de columna, null si la columna no tiene ninguno
+     */
+    private NumberColumn[] columns;
+
+    /**
+     * Representa la celda de columna de cada columna, indexada por identificador físico de columna, null si ninguna fórmula la ha usado
+     */
+    private Cell[] columnCells;
+
+    /**
+     * Representa el número de números guardados en las columnas
+     */
+    private int numbers;
+
+    /**
+     * Representa el árbol de estadísticos de cada columna, indexado por identificador físico de columna, null si no se ha creado.
+     * Los árboles se descartan cuando cambian las filas de la hoja y se vuelven a crear la próxima vez que hacen falta
+     */
+    private ColumnAggregates[] aggregates;
+
+    /**
+     * Representa los rangos que tienen árbol de orden o que ya se han pedido una vez, del que hace más tiempo que no se usa al último
+     */
+    private final ArrayList<RangeOrder> orders;
+
+
+    // Constructor
+
+    /**
+     * Crea un almacén vacío para una hoja con el número de filas y columnas indicado
+     * @param nRows Número de filas de la hoja
+     * @param nColumns Número de columnas de la hoja
+     */
+    public ColumnarCellStore(int nRows, int nColumns) {
+        this.cells = new SparseCellStore(nRows, nColumns);
+        this.index = cells.getIndex();
+        this.columns = new NumberColumn[0];
+        this.columnCells = new Cell[0];
+        this.numbers = 0;
+        this.aggregates = new ColumnAggregates[0];
+        this.orders = new ArrayList<>();
+    }
+
+
+    // Methods
+
+    @Override
+    public int getNRows() {
+        return cells.getNRows();
+    }
+
+    @Override
+    public int getNColumns() {
+        return cells.getNColumns();
+    }
+
+    @Override
+    public SheetIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Retorna el número de celdas guardadas, contando los números guardados en las columnas
+     * @return int con el número de celdas
+     */
+    @Override
+    public int size() {
+        return cells.size() + numbers;
+    }
+
+    /**
+     * Retorna el número de números guardados en las columnas sin crear su celda
+     * @return int con el número de números
+     */
+    public int getNumberCount() {
+        return this.numbers;
+    }
+
+    /**
+     * Retorna la celda de la posición indicada, creándola si todavía no existe. Si la posición tiene un número guardado en su columna,
+     * el número pasa a ser el valor de la nueva celda
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @return Celda en la posición indicada
+     */
+    @Override
+    public Cell get(int row, int col) {
+        Cell cell = cells.find(row, col);
+        if (cell != null) return cell;
+        cell = cells.get(row, col);
+        NumberColumn column = column(index.physicalColumn(col));
+        int rowId = index.physicalRow(row);
+        if (column != null && column.has(rowId)) {
+            double old = column.get(rowId);
+            cell.setCellValue(new CellValue(column.text(rowId)));
+            column.clear(rowId);
+            --numbers;
+            changed(row, col, true, old, false, 0);
+        }
+        else changed(row, col, false, 0, false, 0);
+        return cell;
+    }
+
+    /**
+     * Retorna la celda de la posición indicada sin crearla. Los números guardados en su columna no tienen celda
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @return Celda en la posición indicada, null si no se ha creado
+     */
+    @Override
+    public Cell find(int row, int col) {
+        return cells.find(row, col);
+    }
+
+    @Override
+    public CellValueInterface value(int row, int col) {
+        Cell cell = cells.find(row, col);
+        if (cell != null) return cell.getCellValue();
+        NumberColumn column = column(index.physicalColumn(col));
+        int rowId = index.physicalRow(row);
+        return new CellValue(column != null && column.has(rowId) ? column.text(rowId) : "");
+    }
+
+    @Override
+    public TypedValue typedValue(int row, int col) {
+        Cell cell = cells.find(row, col);
+        if (cell != null) return cell.getCellValue().getTypedValue();
+        NumberColumn column = column(index.physicalColumn(col));
+        int rowId = index.physicalRow(row);
+        return column != null && column.has(rowId) ? column.typedValue(rowId) : TypedValue.EMPTY;
+    }
+
+    /**
+     * Escribe el input de una celda. Si la posición no tiene celda y el input es un número que se vuelve a escribir igual,
+     * se guarda en su columna sin crear la celda
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @param input Input de la celda, que no es una fórmula
+     */
+    @Override
+    public void put(int row, int col, String input) {
+        Cell cell = cells.find(row, col);
+        if (cell == null) {
+            boolean integral = TypedValue.isCanonicalInteger(input);
+            if (integral || TypedValue.isCanonicalNumber(input)) {
+                int colId = index.physicalColumn(col);
+                if (colId >= columns.length) columns = Arrays.copyOf(columns, Math.max(colId + 1, columns.length * 2));
+                if (columns[colId] == null) columns[colId] = new NumberColumn();
+                NumberColumn column = columns[colId];
+                int rowId = index.physicalRow(row);
+                boolean had = column.has(rowId);
+                double old = had ? column.get(rowId) : 0;
+                double value = integral ? Long.parseLong(input) : Double.parseDouble(input);
+                if (column.set(rowId, value, integral)) ++numbers;
+                changed(row, col, had, old, true, value);
+                return;
+            }
+            cell = get(row, col);
+        }
+        cell.setCellValue(new CellValue(input));
+    }
+
+    // Pre: cell no forma parte del grafo de dependencias
+    // Post: si cell es la celda de su posición y tiene un número como valor, la posición ya no tiene celda y el número está en su columna
+
+    /**
+     * Devuelve a su columna el número de una celda que ya no hace falta como celda: una celda con un valor numérico que se vuelve
+     * a escribir igual y que no referencia ni es referenciada por ninguna otra. La celda deja de formar parte del almacén
+     * @param cell Celda
+     * @return true si el número ha vuelto a la columna
+     */
+    public boolean release(Cell cell) {
+        int row = cell.getRow(), col = cell.getColumn();
+        if (row < 0 || col < 0 || cells.find(row, col) != cell || cell.getCellValue().getClass() != CellValue.class) return false;
+        String input = cell.getCellValue().getUserInput();
+        if (!TypedValue.isCanonicalInteger(input) && !TypedValue.isCanonicalNumber(input)) return false;
+        cells.remove(row, col);
+        put(row, col, input);
+        return true;
+    }
+
+    /**
+     * Indica si una posición tiene un número guardado en su columna
+     * @param row Fila de la posición
+     * @param col Columna de la posición
+     * @return true si tiene un número sin celda
+     */
+    public boolean hasNumber(int row, int col) {
+        NumberColumn column = column(index.physicalColumn(col));
+        return column != null && column.has(index.physicalRow(row));
+    }
+
+    /**
+     * Retorna el número guardado en la columna de una posición
+     * @param row Fila de la posición
+     * @param col Columna de la posición
+     * @return double con el número
+     */
+    public double getNumber(int row, int col) {
+        return columns[index.physicalColumn(col)].get(index.physicalRow(row));
+    }
+
+    // Pre: firstRow y lastRow están dentro de la hoja
+    // Post: out ha recibido los números de las filas firstRow, firstRow + 1, ... hasta la primera fila sin número guardado en la columna
+
+    /**
+     * Lee los números guardados en una columna a partir de una fila, recorriendo directamente los arrays de sus bloques,
+     * hasta la última fila indicada o hasta la primera fila que no tiene un número sin celda
+     * @param col Columna
+     * @param firstRow Primera fila
+     * @param lastRow Última fila
+     * @param out Destino de los números, en orden de filas
+     * @return int con el número de filas leídas
+     */
+    public int readColumn(int col, int firstRow, int lastRow, DoubleConsumer out) {
+        NumberColumn column = column(index.physicalColumn(col));
+        if (column == null) return 0;
+        int row = firstRow;
+        while (row <= lastRow) {
+            int rowId = index.physicalRow(row);
+            if (!column.has(rowId)) break;
+            out.accept(column.get(rowId));
+            ++row;
+        }
+        return row - firstRow;
+    }
+
+    // Pre: firstRow <= lastRow, las dos dentro de la hoja
+    // Post: cellRows tiene al final las filas del rango que tienen celda, en orden
+
+    /**
+     * Resume un rango de una columna: junta los estadísticos de sus números sin celda y añade a cellRows las filas que tienen celda,
+     * para que quien lo pide lea esas celdas una a una. Los bloques enteros del rango se leen del árbol de la columna y solo se recorren
+     * fila a fila los bloques de los extremos y los que tienen alguna celda
+     * @param col Columna
+     * @param firstRow Primera fila
+     * @param lastRow Última fila
+     * @param cellRows Lista donde se añaden las filas con celda
+     * @return Estadísticos de los números sin celda, null si alguna fila del rango está vacía
+     */
+    public Statistics summarize(int col, int firstRow, int lastRow, ArrayList<Integer> cellRows) {
+        NumberColumn column = column(index.physicalColumn(col));
+        Statistics numbers = new Statistics();
+        int found = cellRows.size();
+        int firstBlock = firstRow >>> ColumnAggregates.BLOCK_BITS, lastBlock = lastRow >>> ColumnAggregates.BLOCK_BITS;
+        if (lastBlock - firstBlock < 2) scanRows(column, col, firstRow, lastRow, numbers, cellRows::add);
+        else {
+            scanRows(column, col, firstRow, ((firstBlock + 1) << ColumnAggregates.BLOCK_BITS) - 1, numbers, cellRows::add);
+            ColumnAggregates tree = aggregates(col);
+            if (tree.query(firstBlock + 1, lastBlock - 1, numbers) > 0) {
+                tree.forEachCellBlock(firstBlock + 1, lastBlock - 1, block -> scanRows(column, col, block << ColumnAggregates.BLOCK_BITS,
+                        ((block + 1) << ColumnAggregates.BLOCK_BITS) - 1, null, cellRows::add));
+            }
+            scanRows(column, col, lastBlock << ColumnAggregates.BLOCK_BITS, lastRow, numbers, cellRows::add);
+        }
+        return numbers.getCount() + cellRows.size() - found == lastRow - firstRow + 1 ? numbers : null;
+    }
+
+    // Pre: el rango está dentro de la hoja y todas sus posiciones tienen un valor numérico
+    // Post: out ha recibido los valores del rango recorriéndolo por filas
+
+    /**
+     * Lee los valores numéricos de un rango, recorriéndolo por filas: los números sin celda directamente de sus columnas
+     * y el resto del valor de su celda
+     * @param firstRow Primera fila
+     * @param lastRow Última fila
+     * @param firstCol Primera columna
+     * @param lastCol Última columna
+     * @param out Destino de los valores
+     */
+    public void readNumbers(int firstRow, int lastRow, int firstCol, int lastCol, DoubleConsumer out) {
+        if (firstCol == lastCol) {
+            int row = firstRow;
+            while (row <= lastRow) {
+                int n = readColumn(firstCol, row, lastRow, out);
+                if (n == 0) out.accept(typedValue(row++, firstCol).getNumber());
+                else row += n;
+            }
+            return;
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                if (hasNumber(row, col)) out.accept(getNumber(row, col));
+                else out.accept(typedValue(row, col).getNumber());
+            }
+        }
+    }
+
+    // Pre: el rango está dentro de la hoja y todas sus posiciones tienen un valor numérico; cellRows son sus filas con celda, en orden
+    // Post: si el rango tiene árbol de orden, el árbol tiene los valores actuales del rango
+
+    /**
+     * Retorna el árbol de orden de un rango de una columna, para consultar sus valores por posición sin ordenarlos. El árbol se crea
+     * la segunda vez que se pide el mismo rango, así que los rangos que solo se evalúan una vez no lo tienen
+     * @param col Columna
+     * @param firstRow Primera fila
+     * @param lastRow Última fila
+     * @param cellRows Filas del rango que tienen celda, en orden
+     * @param cellValues Valores de esas celdas
+     * @return Árbol de orden del rango, null si el rango es pequeño o es la primera vez que se pide
+     */
+    public synchronized OrderStatistics orderStatistics(int col, int firstRow, int lastRow, int[] cellRows, double[] cellValues) {
+        if (lastRow - firstRow + 1 < ORDER_MIN_ROWS) return null;
+        int colId = index.physicalColumn(col);
+        RangeOrder order = null;
+        for (int i = 0; i < orders.size() && order == null; i++) {
+            RangeOrder o = orders.get(i);
+            if (o.colId == colId && o.firstRow == firstRow && o.lastRow == lastRow) order = orders.remove(i);
+        }
+        if (order == null) {
+            if (orders.size() == MAX_ORDERS) orders.remove(0);
+            orders.add(new RangeOrder(colId, firstRow, lastRow));
+            return null;
+        }
+        orders.add(order);
+        if (order.tree == null) {
+            double[] values = new double[lastRow - firstRow + 1];
+            int[] next = {0};
+            readNumbers(firstRow, lastRow, col, col, value -> values[next[0]++] = value);
+            order.tree = new OrderStatisticTree(values);
+            order.cellRows = cellRows;
+            order.cellValues = cellValues;
+        }
+        else order.sync(cellRows, cellValues);
+        return order.tree;
+    }
+
+    /**
+     * Retorna la celda de columna de una columna, creándola si todavía no existe. Representa en el grafo de dependencias
+     * los números de la columna que las fórmulas leen sin crear su celda
+     * @param col Columna
+     * @return Celda de columna
+     */
+    public Cell columnCell(int col) {
+        int colId = index.physicalColumn(col);
+        if (colId >= columnCells.length) columnCells = Arrays.copyOf(columnCells, Math.max(colId + 1, columnCells.length * 2));
+        if (columnCells[colId] == null) columnCells[colId] = new Cell(index, COLUMN_ROW_ID, colId);
+        return columnCells[colId];
+    }
+
+    /**
+     * Retorna la celda de columna de una columna sin crearla
+     * @param col Columna
+     * @return Celda de columna, null si no se ha creado
+     */
+    public Cell findColumnCell(int col) {
+        int colId = index.physicalColumn(col);
+        return colId < columnCells.length ? columnCells[colId] : null;
+    }
+
+    /**
+     * Retorna las celdas del almacén ordenadas por filas y dentro de cada fila por columnas. Los números guardados en las columnas
+     * se entregan como celdas nuevas que no forman parte del almacén: se pueden leer, pero modificarlas no cambia la hoja
+     * @return ArrayList con las celdas
+     */
+    @Override
+    public ArrayList<Cell> cells() {
+        ArrayList<Cell> all = cells.cells();
+        if (numbers == 0) return all;
+        all.ensureCapacity(all.size() + numbers);
+        for (int colId = 0; colId < columns.length; colId++) {
+            NumberColumn column = columns[colId];
+            if (column == null || column.size == 0) continue;
+            for (int chunk = 0; chunk < column.present.length; chunk++) {
+                long[] bits = column.present[chunk];
+                if (bits == null) continue;
+                for (int w = 0; w < bits.length; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        int rowId = (chunk << CHUNK_BITS) | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        Cell cell = new Cell(index, rowId, colId);
+                        cell.setCellValue(new CellValue(column.text(rowId)));
+                        all.add(cell);
+                    }
+                }
+            }
+        }
+        all.sort(Comparator.comparingInt(Cell::getRow).thenComparingInt(Cell::getColumn));
+        return all;
+    }
+
+    @Override
+    public void ensureSize(int nRows, int nColumns) {
+        if (nRows > getNRows()) discardIndexes();
+        cells.ensureSize(nRows, nColumns);
+    }
+
+    @Override
+    public void insertRow(int row) {
+        discardIndexes();
+        cells.insertRow(row);
+    }
+
+    @Override
+    public void deleteRow(int row) {
+        discardIndexes();
+        int rowId = row >= 0 && row < getNRows() ? index.physicalRow(row) : -1;
+        cells.deleteRow(row);
+        for (NumberColumn column : columns) {
+            if (column != null && column.clear(rowId)) --numbers;
+        }
+    }
+
+    @Override
+    public void insertColumn(int col) {
+        cells.insertColumn(col);
+    }
+
+    @Override
+    public void deleteColumn(int col) {
+        int colId = col >= 0 && col < getNColumns() ? index.physicalColumn(col) : -1;
+        cells.deleteColumn(col);
+        if (colId < 0) return;
+        if (colId < columns.length && columns[colId] != null) {
+            numbers -= columns[colId].size;
+            columns[colId] = null;
+        }
+        if (colId < columnCells.length) columnCells[colId] = null;
+        synchronized (this) {
+            if (colId < aggregates.length) aggregates[colId] = null;
+            orders.removeIf(order -> order.colId == colId);
+        }
+    }
+
+    /**
+     * Retorna los números de una columna
+     * @param colId Identificador físico de la columna
+     * @return Números de la columna, null si no tiene ninguno
+     */
+    private NumberColumn column(int colId) {
+        return colId < columns.length ? columns[colId] : null;
+    }
+
+    /**
+     * Recorre las filas de un tramo de una columna, juntando los números sin celda y avisando de las filas que tienen celda
+     * @param column Números de la columna, null si no tiene ninguno
+     * @param col Columna
+     * @param firstRow Primera fila
+     * @param lastRow Última fila
+     * @param numbers Estadísticos donde se juntan los números, null si no hacen falta
+     * @param cellRows Destino de las filas que tienen celda, null si no hacen falta
+     * @return int con el número de filas que tienen celda
+     */
+    private int scanRows(NumberColumn column, int col, int firstRow, int lastRow, Statistics numbers, IntConsumer cellRows) {
+        int found = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            int rowId = index.physicalRow(row);
+            if (column != null && column.has(rowId)) {
+                if (numbers != null) numbers.add(column.get(rowId));
+            }
+            else if (cells.find(row, col) != null) {
+                ++found;
+                if (cellRows != null) cellRows.accept(row);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Retorna el árbol de estadísticos de una columna, creándolo a partir de sus filas si todavía no existe
+     * @param col Columna
+     * @return Árbol de la columna
+     */
+    private synchronized ColumnAggregates aggregates(int col) {
+        int colId = index.physicalColumn(col);
+        if (colId >= aggregates.length) aggregates = Arrays.copyOf(aggregates, Math.max(colId + 1, aggregates.length * 2));
+        if (aggregates[colId] == null) {
+            NumberColumn column = column(colId);
+            int nRows = getNRows();
+            ColumnAggregates tree = new ColumnAggregates(nRows);
+            for (int first = 0; first < nRows; first += ColumnAggregates.BLOCK_SIZE) {
+                Statistics numbers = new Statistics();
+                int found = scanRows(column, col, first, Math.min(nRows, first + ColumnAggregates.BLOCK_SIZE) - 1, numbers, null);
+                tree.setLeaf(first >>> ColumnAggregates.BLOCK_BITS, numbers, found);
+            }
+            tree.build();
+            aggregates[colId] = tree;
+        }
+        return aggregates[colId];
+    }
+
+    /**
+     * Actualiza los árboles de una posición que ha cambiado: vuelve a calcular su bloque de filas en el árbol de estadísticos de su columna,
+     * si existe, y cambia su número en los árboles de orden de los rangos que la contienen
+     * @param row Fila de la posición
+     * @param col Columna de la posición
+     * @param removed Indica si la posición tenía un número sin celda
+     * @param old Número que tenía la posición
+     * @param added Indica si la posición tiene ahora un número sin celda
+     * @param value Número que tiene ahora la posición
+     */
+    private synchronized void changed(int row, int col, boolean removed, double old, boolean added, double value) {
+        int colId = index.physicalColumn(col);
+        if (colId < aggregates.length && aggregates[colId] != null) {
+            int first = row & -ColumnAggregates.BLOCK_SIZE;
+            Statistics numbers = new Statistics();
+            int found = scanRows(column(colId), col, first, Math.min(getNRows(), first + ColumnAggregates.BLOCK_SIZE) - 1, numbers, null);
+            aggregates[colId].update(row >>> ColumnAggregates.BLOCK_BITS, numbers, found);
+        }
+        for (RangeOrder order : orders) {
+            if (order.tree == null || order.colId != colId || row < order.firstRow || row > order.lastRow) continue;
+            if (removed) order.tree.remove(old);
+            if (added) order.tree.add(value);
+        }
+    }
+
+    /**
+     * Descarta los árboles de estadísticos y de orden de todas las columnas, cuando las filas de la hoja cambian de posición
+     */
+    private synchronized void discardIndexes() {
+        if (aggregates.length > 0) aggregates = new ColumnAggregates[0];
+        orders.clear();
+    }
+
+}
@@ -0,0 +1,495 @@
+package dominio.model;
+
+import java.util.*;
+
+import static dominio.auxiliarclasses.ReferenceConverter.*;
+
+/**
+ * Representa una fórmula ya compilada por FormulaCompiler. Guarda la estructura de la fórmula (función, operandos, referencias y rangos),
+ * de manera que para volver a evaluarla solo hay que leer los valores de las celdas referenciadas, sin volver a recorrer el texto.
+ * Las referencias guardan los identificadores físicos de la fila y la columna, así que siguen apuntando a la misma celda cuando se insertan
+ * o borran filas y columnas, y el texto de la fórmula solo se vuelve a generar cuando se consulta
+ */
+public class CompiledFormula {
+
+    /**
+     * Representa los tipos de fórmula: un error detectado al compilar, una llamada a función o una operación aritmética
+     */
+    public enum Kind { ERROR, FUNCTION, ARITHMETIC }
+
+    /**
+     * Representa una referencia a una celda escrita en la fórmula, junto con la parte del texto de la fórmula que ocupa.
+     * Si al compilar la celda estaba dentro de la hoja se guarda por identificador físico; si no, se guarda la posición escrita tal cual.
+     * Una posición negativa representa una referencia inválida, que se escribe como "#REF!"
+     */
+    static class Reference {
+
+        /**
+         * Representa la correspondencia entre posiciones e identificadores de la hoja
+         */
+        final SheetIndex index;
+
+        /**
+         * Indica si la referencia se guarda por identificador físico
+         */
+        final boolean anchored;
+
+        /**
+         * Representa el identificador físico de la fila, o la fila escrita si la referencia no se guarda por identificador
+         */
+        final int rowId;
+
+        /**
+         * Representa el identificador físico de la columna, o la columna escrita si la referencia no se guarda por identificador
+         */
+        final int colId;
+
+        /**
+         * Representa la generación de los identificadores de la fila y la columna al compilar. Si la fila o la columna se borra,
+         * su identificador cambia de generación y la referencia queda inválida aunque el identificador pase a otra fila o columna
+         */
+        final int rowGeneration;
+        final int colGeneration;
+
+        /**
+         * Representa la fila y la columna escritas en la fórmula
+         */
+        final int writtenRow;
+        final int writtenCol;
+
+        /**
+         * Representa el texto de la referencia tal y como está escrito (null si no se ha escrito, sino que se ha desplazado),
+         * y su posición en el texto de la fórmula
+         */
+        final String text;
+        final int start;
+        final int end;
+
+        Reference(SheetIndex index, int row, int col, String text, int start, int end) {
+            this.index = index;
+            this.anchored = index != null && row >= 0 && row < index.getNRows() && col >= 0 && col < index.getNColumns();
+            this.rowId = anchored ? index.physicalRow(row) : row;
+            this.colId = anchored ? index.physicalColumn(col) : col;
+            this.rowGeneration = anchored ? index.rowGeneration(rowId) : 0;
+            this.colGeneration = anchored ? index.columnGeneration(colId) : 0;
+            this.writtenRow = row;
+            this.writtenCol = col;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Retorna una copia de la referencia desplazada desde la posición actual de la celda referenciada.
+         * Si la referencia ya era inválida o queda fuera de la hoja por arriba o por la izquierda, la copia es inválida
+         * @param dRow Filas que se desplaza
+         * @param dCol Columnas que se desplaza
+         * @return Referencia desplazada, que ocupa la misma parte del texto de la fórmula
+         */
+        Reference shift(int dRow, int dCol) {
+            int row = row();
+            int col = col();
+            if (row < 0 || col < 0) return new Reference(index, -1, -1, null, start, end);
+            row += dRow;
+            col += dCol;
+            if (row < 0 || col < 0) return new Reference(index, -1, -1, null, start, end);
+            return new Reference(index, row, col, null, start, end);
+        }
+
+        /**
+         * Indica si la referencia apunta a una celda que existe o que puede llegar a existir
+         * @return false si se ha borrado la celda referenciada o la referencia se ha desplazado fuera de la hoja
+         */
+        boolean isValid() {
+            return row() >= 0 && col() >= 0;
+        }
+
+        /**
+         * Retorna la fila a la que apunta la referencia
+         * @return int con la fila actual de la celda referenciada, -1 si se ha borrado
+         */
+        int row() {
+            if (!anchored) return rowId;
+            return index.rowGeneration(rowId) == rowGeneration ? index.logicalRow(rowId) : -1;
+        }
+
+        /**
+         * Retorna la columna a la que apunta la referencia
+         * @return int con la columna actual de la celda referenciada, -1 si se ha borrado
+         */
+        int col() {
+            if (!anchored) return colId;
+            return index.columnGeneration(colId) == colGeneration ? index.logicalColumn(colId) : -1;
+        }
+
+        /**
+         * Retorna el texto de la referencia según la posición actual de la celda referenciada
+         * @return String con la referencia, el texto escrito si no se ha movido y "#REF!" si se ha borrado
+         */
+        String render() {
+            return render(0);
+        }
+
+        /**
+         * Retorna el texto de la referencia como si se hubieran insertado filas al principio de la hoja: las referencias a celdas
+         * de la hoja se desplazan, las que apuntan fuera de la hoja no
+         * @param dRow Número de filas insertadas
+         * @return String con la referencia, el texto escrito si queda en la misma posición y "#REF!" si se ha borrado
+         */
+        String render(int dRow) {
+            int row = row();
+            int col = col();
+            if (anchored && row >= 0) row += dRow;
+            if (text != null && row == writtenRow && col == writtenCol) return text;
+            if (row < 0 || col < 0) return "#REF!";
+            return number2Letter(col) + row;
+        }
+    }
+
+    /**
+     * Representa un operando de una llamada a función, junto con el separador que lo cierra (',', ';' o ')')
+     */
+    static class Operand {
+
+        /**
+         * Representa los tipos de operando: el nombre de la función, un texto entre corchetes, un número, una referencia, un rango o un error
+         */
+        enum Type { NAME, TEXT, NUMBER, REF, RANGE, ERROR }
+
+        final Type type;
+        final String text;
+        final double number;
+        final Reference ref;
+        final Reference ref2;
+        final boolean validEnd;
+        final char delimiter;
+
+        private Operand(Type type, String text, double number, Reference ref, Reference ref2, boolean validEnd, char delimiter) {
+            this.type = type;
+            this.text = text;
+            this.number = number;
+            this.ref = ref;
+            this.ref2 = ref2;
+            this.validEnd = validEnd;
+            this.delimiter = delimiter;
+        }
+
+        static Operand name(String function) {
+            return new Operand(Type.NAME, function, 0, null, null, true, ' ');
+        }
+
+        static Operand text(String text) {
+            return new Operand(Type.TEXT, text, 0, null, null, true, ' ');
+        }
+
+        static Operand number(double number, char delimiter) {
+            return new Operand(Type.NUMBER, null, number, null, null, true, delimiter);
+        }
+
+        static Operand reference(Reference ref, char delimiter) {
+            return new Operand(Type.REF, null, 0, ref, ref, true, delimiter);
+        }
+
+        static Operand range(Reference ref, Reference ref2, char delimiter) {
+            return new Operand(Type.RANGE, null, 0, ref, ref2, true, delimiter);
+        }
+
+        static Operand brokenRange(Reference ref) {
+            return new Operand(Type.RANGE, null, 0, ref, null, false, ' ');
+        }
+
+        static Operand error(String error) {
+            return new Operand(Type.ERROR, error, 0, null, null, true, ' ');
+        }
+    }
+
+    /**
+     * Representa un término de una operación aritmética: el operador que lo precede (0 para el primero) y un literal o una referencia
+     */
+    static class Term {
+
+        final char operator;
+        final boolean valid;
+        final Reference ref;
+        final TypedValue literal;
+
+        private Term(char operator, boolean valid, Reference ref, TypedValue literal) {
+            this.operator = operator;
+            this.valid = valid;
+            this.ref = ref;
+            this.literal = literal;
+        }
+
+        static Term literal(char operator, TypedValue literal) {
+            return new Term(operator, true, null, literal);
+        }
+
+        static Term reference(char operator, Reference ref) {
+            return new Term(operator, true, ref, null);
+        }
+
+        static Term invalid(char operator) {
+            return new Term(operator, false, null, null);
+        }
+    }
+
+    // Attributes
+
+    /**
+     * Representa el texto de la fórmula tal y como lo ha escrito el usuario
+     */
+    private final String source;
+
+    /**
+     * Representa el tipo de fórmula
+     */
+    private final Kind kind;
+
+    /**
+     * Representa el error detectado al compilar, si la fórmula es de tipo ERROR
+     */
+    private final String error;
+
+    /**
+     * Representa el nombre de la función aplicada, "nofunction" si no se ha llegado a escribir
+     */
+    private final String function;
+
+    /**
+     * Representa los operandos de la llamada a función, en el orden en que aparecen
+     */
+    private final ArrayList<Operand> operands;
+
+    /**
+     * Indica si el último carácter de la fórmula es ')'
+     */
+    private final boolean closed;
+
+    /**
+     * Representa los términos de la operación aritmética, en el orden en que aparecen
+     */
+    private final ArrayList<Term> terms;
+
+    /**
+     * Indica si la operación aritmética contiene algún operador
+     */
+    private final boolean hasOperator;
+
+    /**
+     * Representa las referencias de la fórmula en el orden en que aparecen en el texto
+     */
+    private final ArrayList<Reference> references;
+
+    /**
+     * Representa el último texto generado de la fórmula y la versión de la hoja con la que se ha generado
+     */
+    private String text;
+    private int textVersion;
+
+
+    // Constructor
+
+    private CompiledFormula(String source, Kind kind, String error, String function, ArrayList<Operand> operands, boolean closed, ArrayList<Term> terms, boolean hasOperator, ArrayList<Reference> references) {
+        this.source = source;
+        this.kind = kind;
+        this.error = error;
+        this.function = function;
+        this.operands = operands;
+        this.closed = closed;
+        this.terms = terms;
+        this.hasOperator = hasOperator;
+        this.references = references;
+        this.text = null;
+        this.textVersion = -1;
+    }
+
+    /**
+     * Crea una fórmula compilada que siempre produce el error indicado
+     * @param source Texto de la fórmula
+     * @param error Error que produce la fórmula
+     * @return Fórmula compilada de tipo ERROR
+     */
+    static CompiledFormula error(String source, String error) {
+        return new CompiledFormula(source, Kind.ERROR, error, "nofunction", new ArrayList<>(), false, new ArrayList<>(), false, new ArrayList<>());
+    }
+
+    /**
+     * Crea una fórmula compilada que aplica una función
+     * @param source Texto de la fórmula
+     * @param function Nombre de la función
+     * @param operands Operandos de la función
+     * @param closed true si el último carácter de la fórmula es ')'
+     * @param references Referencias de la fórmula en el orden del texto
+     * @return Fórmula compilada de tipo FUNCTION
+     */
+    static CompiledFormula function(String source, String function, ArrayList<Operand> operands, boolean closed, ArrayList<Reference> references) {
+        return new CompiledFormula(source, Kind.FUNCTION, null, function, operands, closed, new ArrayList<>(), false, references);
+    }
+
+    /**
+     * Crea una fórmula compilada que aplica una operación aritmética
+     * @param source Texto de la fórmula
+     * @param terms Términos de la operación
+     * @param hasOperator true si la operación contiene algún operador
+     * @param references Referencias de la fórmula en el orden del texto
+     * @return Fórmula compilada de tipo ARITHMETIC
+     */
+    static CompiledFormula arithmetic(String source, ArrayList<Term> terms, boolean hasOperator, ArrayList<Reference> references) {
+        return new CompiledFormula(source, Kind.ARITHMETIC, null, "nofunction", new ArrayList<>(), false, terms, hasOperator, references);
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el texto de la fórmula tal y como lo ha escrito el usuario
+     * @return String con la fórmula
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    /**
+     * Retorna el texto de la fórmula con las referencias escritas según la posición actual de las celdas referenciadas.
+     * Solo se genera la primera vez que se consulta y cuando se ha insertado o borrado alguna fila o columna desde la última vez
+     * @return String con la fórmula
+     */
+    public String getText() {
+        if (references.isEmpty()) return this.source;
+        SheetIndex index = references.get(0).index;
+        int version = index == null ? 0 : index.getVersion();
+        if (this.text == null || version != textVersion) {
+            StringBuilder sb = new StringBuilder(source.length() + 8);
+            int last = 0;
+            for (Reference ref : references) {
+                sb.append(source, last, ref.start).append(ref.render());
+                last = ref.end;
+            }
+            sb.append(source, last, source.length());
+            this.text = sb.toString();
+            this.textVersion = version;
+        }
+        return this.text;
+    }
+
+    /**
+     * Retorna el texto de la fórmula como si se hubieran insertado filas al principio de la hoja, sin modificar la hoja ni la fórmula.
+     * Sirve para escribir las referencias con la primera fila como la fila 1, como en los documentos
+     * @param rowShift Número de filas insertadas
+     * @return String con la fórmula
+     */
+    public String getText(int rowShift) {
+        if (rowShift == 0 || references.isEmpty()) return getText();
+        StringBuilder sb = new StringBuilder(source.length() + 8);
+        int last = 0;
+        for (Reference ref : references) {
+            sb.append(source, last, ref.start).append(ref.render(rowShift));
+            last = ref.end;
+        }
+        sb.append(source, last, source.length());
+        return sb.toString();
+    }
+
+    /**
+     * Retorna una copia de la fórmula con todas sus referencias desplazadas, como al rellenar celdas a partir de una fórmula.
+     * Solo se desplazan las referencias ya compiladas, sin volver a recorrer el texto, y el nuevo texto no se genera hasta que se consulta.
+     * Si alguna referencia queda fuera de la hoja pasa a ser "#REF!" y la fórmula produce el error "Ref error"
+     * @param dRow Filas que se desplazan las referencias
+     * @param dCol Columnas que se desplazan las referencias
+     * @return Fórmula compilada desplazada
+     */
+    public CompiledFormula shift(int dRow, int dCol) {
+        if (references.isEmpty()) return this;
+        IdentityHashMap<Reference, Reference> shifted = new IdentityHashMap<>();
+        ArrayList<Reference> newReferences = new ArrayList<>(references.size());
+        boolean valid = true;
+        for (Reference ref : references) {
+            Reference moved = ref.shift(dRow, dCol);
+            shifted.put(ref, moved);
+            newReferences.add(moved);
+            if (!moved.isValid()) valid = false;
+        }
+        if (!valid || kind == Kind.ERROR) {
+            return new CompiledFormula(source, Kind.ERROR, kind == Kind.ERROR ? error : "Ref error", "nofunction", new ArrayList<>(), false, new ArrayList<>(), false, newReferences);
+        }
+        ArrayList<Operand> newOperands = new ArrayList<>(operands.size());
+        for (Operand op : operands) {
+            if (op.ref == null) newOperands.add(op);
+            else newOperands.add(new Operand(op.type, op.text, op.number, shifted.get(op.ref), op.ref2 == null ? null : shifted.get(op.ref2), op.validEnd, op.delimiter));
+        }
+        ArrayList<Term> newTerms = new ArrayList<>(terms.size());
+        for (Term term : terms) {
+            if (term.ref == null) newTerms.add(term);
+            else newTerms.add(Term.reference(term.operator, shifted.get(term.ref)));
+        }
+        return new CompiledFormula(source, kind, error, function, newOperands, closed, newTerms, hasOperator, newReferences);
+    }
+
+    /**
+     * Indica si algún rango de la fórmula tiene filas a los dos lados de la fila indicada, o también si contiene la propia fila
+     * @param row Fila de la hoja
+     * @param inclusive true para contar también los rangos que empiezan o acaban en la fila
+     * @return true si algún rango válido de la fórmula cubre la fila
+     */
+    public boolean spansRow(int row, boolean inclusive) {
+        for (Operand op : operands) {
+            if (op.type == Operand.Type.RANGE && op.ref2 != null && spans(op.ref.row(), op.ref2.row(), row, inclusive)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indica si algún rango de la fórmula tiene columnas a los dos lados de la columna indicada, o también si contiene la propia columna
+     * @param col Columna de la hoja
+     * @param inclusive true para contar también los rangos que empiezan o acaban en la columna
+     * @return true si algún rango válido de la fórmula cubre la columna
+     */
+    public boolean spansColumn(int col, boolean inclusive) {
+        for (Operand op : operands) {
+            if (op.type == Operand.Type.RANGE && op.ref2 != null && spans(op.ref.col(), op.ref2.col(), col, inclusive)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indica si la línea line está entre las líneas a y b, que pueden estar en cualquier orden; -1 indica una línea borrada
+     */
+    private static boolean spans(int a, int b, int line, boolean inclusive) {
+        if (a < 0 || b < 0) return false;
+        int first = Math.min(a, b), last = Math.max(a, b);
+        return inclusive ? first <= line && line <= last : first < line && line < last;
+    }
+
+    /**
+     * Retorna el tipo de la fórmula
+     * @return Tipo de la fórmula
+     */
+    public Kind getKind() {
+        return this.kind;
+    }
+
+    String getError() {
+        return this.error;
+    }
+
+    String getFunction() {
+        return this.function;
+    }
+
+    ArrayList<Operand> getOperands() {
+        return this.operands;
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    ArrayList<Term> getTerms() {
+        return this.terms;
+    }
+
+    boolean hasOperator() {
+        return this.hasOperator;
+    }
+
+}
@@ -0,0 +1,192 @@
+package dominio.model;
+
+import java.util.*;
+
+import static dominio.auxiliarclasses.ReferenceConverter.*;
+
+/**
+ * Representa la comprobación de referencias cíclicas de una fórmula. La primera vez que se consulta recorre el grafo de dependencias
+ * de manera iterativa desde la celda de la fórmula, visitando cada celda una sola vez, y guarda todas las celdas que dependen de ella
+ * (directa o indirectamente). A partir de ahí comprobar una referencia o un rango entero no vuelve a recorrer el grafo
+ */
+public class CycleDetector {
+
+    // Attributes
+
+    /**
+     * Representa el grafo de dependencias de la hoja
+     */
+    private final DependencyGraph graph;
+
+    /**
+     * Representa la celda que contiene la fórmula
+     */
+    private final Cell origin;
+
+    /**
+     * Representa las celdas que dependen de origin, cada una con la celda a la que referencia en el camino hacia origin.
+     * Es null mientras no se haya hecho el recorrido
+     */
+    private HashMap<Cell, Cell> reached;
+
+    /**
+     * Representa las celdas que origin ya referenciaba antes de volver a evaluar la fórmula. Como el grafo no tiene ciclos, no pueden crear uno
+     */
+    private final Set<Cell> known;
+
+
+    // Constructor
+
+    /**
+     * Crea la comprobación de referencias cíclicas de la fórmula de una celda
+     * @param graph Grafo de dependencias de la hoja
+     * @param origin Celda que contiene la fórmula
+     */
+    public CycleDetector(DependencyGraph graph, Cell origin) {
+        this(graph, origin, Collections.emptySet());
+    }
+
+    /**
+     * Crea la comprobación de referencias cíclicas de la fórmula de una celda que se vuelve a evaluar
+     * @param graph Grafo de dependencias de la hoja
+     * @param origin Celda que contiene la fórmula
+     * @param known Celdas que origin ya referenciaba antes de volver a evaluar la fórmula
+     */
+    public CycleDetector(DependencyGraph graph, Cell origin, Set<Cell> known) {
+        this.graph = graph;
+        this.origin = origin;
+        this.known = known;
+        this.reached = null;
+    }
+
+
+    // Methods
+
+    /**
+     * Recorre en anchura los dependientes de origin, si todavía no se ha hecho
+     */
+    private void explore() {
+        if (reached != null) return;
+        reached = new HashMap<>();
+        ArrayDeque<Cell> pending = new ArrayDeque<>();
+        pending.add(origin);
+        while (!pending.isEmpty()) {
+            Cell cell = pending.poll();
+            for (Cell dependent : graph.getDependents(cell)) {
+                if (!reached.containsKey(dependent)) {
+                    reached.put(dependent, cell);
+                    pending.add(dependent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indica si hacer que origin referencie a la celda indicada crea una referencia cíclica, es decir, si la celda ya depende de origin
+     * @param reference Celda a la que se quiere referenciar
+     * @return true si la referencia crea un ciclo, false en caso contrario
+     */
+    public boolean createsCycle(Cell reference) {
+        if (reference != origin && known.contains(reference)) return false;
+        explore();
+        return reached.containsKey(reference);
+    }
+
+    /**
+     * Busca, en una sola pasada, una celda de un rango que cree una referencia cíclica o que sea la propia origin.
+     * Recorre las celdas del rango o las celdas que dependen de origin, las que sean menos
+     * @param store Almacén de celdas de la hoja
+     * @param firstRow Primera fila del rango
+     * @param lastRow Última fila del rango
+     * @param firstCol Primera columna del rango
+     * @param lastCol Última columna del rango
+     * @return La primera celda encontrada que crea un ciclo, null si no hay ninguna
+     */
+    public Cell findInRange(CellStore store, int firstRow, int lastRow, int firstCol, int lastCol) {
+        if (inside(origin, firstRow, lastRow, firstCol, lastCol)) return origin;
+        long area = (long) (lastRow - firstRow + 1) * (lastCol - firstCol + 1);
+        if (area <= known.size() && allKnown(store, firstRow, lastRow, firstCol, lastCol)) return null;
+        explore();
+        if (area <= reached.size()) {
+            for (int i = firstRow; i <= lastRow; i++) {
+                for (int j = firstCol; j <= lastCol; j++) {
+                    Cell cell = store.find(i, j);
+                    if (cell != null && reached.containsKey(cell)) return cell;
+                }
+            }
+        }
+        else {
+            for (Cell cell : reached.keySet()) {
+                if (inside(cell, firstRow, lastRow, firstCol, lastCol)) return cell;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indica si todas las celdas creadas de un rango son celdas que origin ya referenciaba
+     * @param store Almacén de celdas de la hoja
+     * @param firstRow Primera fila del rango
+     * @param lastRow Última fila del rango
+     * @param firstCol Primera columna del rango
+     * @param lastCol Última columna del rango
+     * @return true si ninguna celda del rango es nueva
+     */
+    private boolean allKnown(CellStore store, int firstRow, int lastRow, int firstCol, int lastCol) {
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstCol; j <= lastCol; j++) {
+                Cell cell = store.find(i, j);
+                if (cell != null && !known.contains(cell)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indica si una celda está dentro de un rango
+     * @param cell Celda a comprobar
+     * @param firstRow Primera fila del rango
+     * @param lastRow Última fila del rango
+     * @param firstCol Primera columna del rango
+     * @param lastCol Última columna del rango
+     * @return true si la celda está dentro del rango
+     */
+    private static boolean inside(Cell cell, int firstRow, int lastRow, int firstCol, int lastCol) {
+        int r = cell.getRow();
+        int c = cell.getColumn();
+        return r >= firstRow && r <= lastRow && c >= firstCol && c <= lastCol;
+    }
+
+    /**
+     * Retorna el ciclo que se crearía si origin referenciase a la celda indicada
+     * @param reference Celda que crea el ciclo, origin o una celda para la que createsCycle retorna true
+     * @return ArrayList con el ciclo: origin, reference, las celdas a las que referencia hasta volver a origin, y origin otra vez
+     */
+    public ArrayList<Cell> cyclePath(Cell reference) {
+        explore();
+        ArrayList<Cell> path = new ArrayList<>();
+        path.add(origin);
+        Cell cell = reference;
+        while (cell != origin && cell != null && path.size() <= reached.size() + 1) {
+            path.add(cell);
+            cell = reached.get(cell);
+        }
+        path.add(origin);
+        return path;
+    }
+
+    /**
+     * Escribe un ciclo con las referencias de sus celdas
+     * @param path Ciclo retornado por cyclePath
+     * @return String con el ciclo, por ejemplo "A1 -> B2 -> A1"
+     */
+    public static String describe(ArrayList<Cell> path) {
+        StringBuilder sb = new StringBuilder();
+        for (Cell cell : path) {
+            if (sb.length() > 0) sb.append(" -> ");
+            sb.append(number2Letter(cell.getColumn())).append(cell.getRow());
+        }
+        return sb.toString();
+    }
+
+}
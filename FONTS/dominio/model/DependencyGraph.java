@@ -0,0 +1,274 @@
+package dominio.model;
+
+import java.util.*;
+
+import static dominio.auxiliarclasses.ReferenceConverter.*;
+
+/**
+ * Representa el grafo de dependencias entre las celdas de una hoja. Cada nodo se identifica por los identificadores físicos (fila, columna) de su celda empaquetados en un long,
+ * y guarda tanto las celdas a las que referencia (precedentes) como las celdas que le referencian (dependientes), de manera que ambas consultas son O(1).
+ * Como los identificadores físicos no cambian al insertar filas o columnas, el grafo solo se modifica cuando se borra una fila o columna
+ */
+public class DependencyGraph {
+
+    // Attributes
+
+    /**
+     * Representa un nodo del grafo: una celda con sus precedentes y sus dependientes
+     */
+    private static class Node {
+
+        /**
+         * Representa los identificadores físicos empaquetados de la celda
+         */
+        final long key;
+
+        /**
+         * Representa la celda del nodo
+         */
+        final Cell cell;
+
+        /**
+         * Representa los nodos a los que referencia la celda, en el orden en que se han añadido
+         */
+        final LinkedHashSet<Node> precedents = new LinkedHashSet<>();
+
+        /**
+         * Representa los nodos que referencian a la celda, en el orden en que se han añadido
+         */
+        final LinkedHashSet<Node> dependents = new LinkedHashSet<>();
+
+        Node(long key, Cell cell) {
+            this.key = key;
+            this.cell = cell;
+        }
+    }
+
+    /**
+     * Representa los nodos del grafo indexados por los identificadores físicos empaquetados de su celda
+     */
+    private final LinkedHashMap<Long, Node> nodes;
+
+
+    // Constructor
+
+    /**
+     * Crea un grafo de dependencias vacío
+     */
+    public DependencyGraph() {
+        this.nodes = new LinkedHashMap<>();
+    }
+
+
+    // Methods
+
+    /**
+     * Retorna el nodo de la celda indicada, creándolo si no existe
+     * @param cell Celda de la cual se quiere el nodo
+     * @return Nodo de la celda
+     */
+    private Node nodeOf(Cell cell) {
+        long key = packPosition(cell.getRowId(), cell.getColumnId());
+        Node n = nodes.get(key);
+        if (n == null) {
+            n = new Node(key, cell);
+            nodes.put(key, n);
+        }
+        return n;
+    }
+
+    /**
+     * Retorna el nodo de la celda indicada, o null si la celda no forma parte del grafo
+     * @param cell Celda de la cual se quiere el nodo
+     * @return Nodo de la celda o null
+     */
+    private Node findNode(Cell cell) {
+        return nodes.get(packPosition(cell.getRowId(), cell.getColumnId()));
+    }
+
+    /**
+     * Elimina el nodo del grafo si ya no tiene ni precedentes ni dependientes
+     * @param n Nodo a revisar
+     */
+    private void pruneNode(Node n) {
+        if (n.precedents.isEmpty() && n.dependents.isEmpty()) nodes.remove(n.key);
+    }
+
+    /**
+     * Convierte un conjunto de nodos en un ArrayList con sus celdas
+     * @param set Conjunto de nodos
+     * @return ArrayList con las celdas de los nodos en el mismo orden
+     */
+    private static ArrayList<Cell> cellsOf(Collection<Node> set) {
+        ArrayList<Cell> r = new ArrayList<>(set.size());
+        for (Node n : set) r.add(n.cell);
+        return r;
+    }
+
+    /**
+     * Añade una arista del grafo: la celda referencing referencia a la celda referenced
+     * @param referenced Celda que es referenciada
+     * @param referencing Celda que referencia
+     */
+    public void addEdge(Cell referenced, Cell referencing) {
+        Node to = nodeOf(referenced);
+        Node from = nodeOf(referencing);
+        to.dependents.add(from);
+        from.precedents.add(to);
+    }
+
+    /**
+     * Elimina la arista del grafo que indica que la celda referencing referencia a la celda referenced, si existe
+     * @param referenced Celda que es referenciada
+     * @param referencing Celda que referencia
+     */
+    public void removeEdge(Cell referenced, Cell referencing) {
+        Node to = findNode(referenced);
+        Node from = findNode(referencing);
+        if (to == null || from == null) return;
+        to.dependents.remove(from);
+        from.precedents.remove(to);
+        pruneNode(to);
+        pruneNode(from);
+    }
+
+    /**
+     * Elimina todas las aristas que salen de la celda indicada, es decir, todas las referencias que hace
+     * @param referencing Celda que referencia
+     */
+    public void removePrecedents(Cell referencing) {
+        Node from = findNode(referencing);
+        if (from == null) return;
+        for (Node to : from.precedents) {
+            to.dependents.remove(from);
+            pruneNode(to);
+        }
+        from.precedents.clear();
+        pruneNode(from);
+    }
+
+    /**
+     * Elimina todas las aristas que llegan a la celda indicada, es decir, todas las referencias que se le hacen
+     * @param referenced Celda referenciada
+     */
+    public void removeDependents(Cell referenced) {
+        Node to = findNode(referenced);
+        if (to == null) return;
+        for (Node from : to.dependents) {
+            from.precedents.remove(to);
+            pruneNode(from);
+        }
+        to.dependents.clear();
+        pruneNode(to);
+    }
+
+    /**
+     * Retorna las celdas a las que referencia la celda indicada
+     * @param cell Celda de la cual se quieren los precedentes
+     * @return ArrayList con las celdas referenciadas por cell, en el orden en que se han añadido
+     */
+    public ArrayList<Cell> getPrecedents(Cell cell) {
+        Node n = findNode(cell);
+        if (n == null) return new ArrayList<>();
+        return cellsOf(n.precedents);
+    }
+
+    /**
+     * Retorna las celdas que referencian a la celda indicada
+     * @param cell Celda de la cual se quieren los dependientes
+     * @return ArrayList con las celdas que referencian a cell, en el orden en que se han añadido
+     */
+    public ArrayList<Cell> getDependents(Cell cell) {
+        Node n = findNode(cell);
+        if (n == null) return new ArrayList<>();
+        return cellsOf(n.dependents);
+    }
+
+    /**
+     * Indica si la celda indicada referencia a alguna otra celda
+     * @param cell Celda a consultar
+     * @return true si la celda tiene precedentes, false en caso contrario
+     */
+    public boolean hasPrecedents(Cell cell) {
+        Node n = findNode(cell);
+        return n != null && !n.precedents.isEmpty();
+    }
+
+    /**
+     * Indica si la celda indicada forma parte del grafo, es decir, si referencia o es referenciada por alguna otra celda
+     * @param cell Celda a consultar
+     * @return true si la celda tiene precedentes o dependientes, false en caso contrario
+     */
+    public boolean contains(Cell cell) {
+        return findNode(cell) != null;
+    }
+
+    /**
+     * Retorna todas las celdas que referencian a alguna otra celda, es decir, las fórmulas que forman parte del grafo
+     * @return ArrayList con las celdas que referencian
+     */
+    public ArrayList<Cell> getReferencingCells() {
+        ArrayList<Cell> r = new ArrayList<>();
+        for (Node n : nodes.values()) {
+            if (!n.precedents.isEmpty()) r.add(n.cell);
+        }
+        return r;
+    }
+
+    /**
+     * Retorna todas las celdas que son referenciadas por alguna otra celda
+     * @return ArrayList con las celdas referenciadas
+     */
+    public ArrayList<Cell> getReferencedCells() {
+        ArrayList<Cell> r = new ArrayList<>();
+        for (Node n : nodes.values()) {
+            if (!n.dependents.isEmpty()) r.add(n.cell);
+        }
+        return r;
+    }
+
+    /**
+     * Elimina los nodos de las celdas indicadas junto con todas sus aristas. Se tiene que llamar antes de borrar las celdas de la hoja
+     * @param cells Celdas que se eliminan, las que no forman parte del grafo se ignoran
+     * @return ArrayList con las celdas que no se eliminan y referenciaban a alguna celda eliminada
+     */
+    private ArrayList<Cell> removeCells(Collection<Cell> cells) {
+        ArrayList<Node> removed = new ArrayList<>();
+        for (Cell cell : cells) {
+            Node n = nodes.remove(packPosition(cell.getRowId(), cell.getColumnId()));
+            if (n != null) removed.add(n);
+        }
+        LinkedHashSet<Cell> orphans = new LinkedHashSet<>();
+        for (Node n : removed) {
+            for (Node to : n.precedents) to.dependents.remove(n);
+            for (Node from : n.dependents) {
+                from.precedents.remove(n);
+                if (nodes.containsKey(from.key)) orphans.add(from.cell);
+            }
+        }
+        for (Node n : removed) {
+            for (Node to : n.precedents) pruneNode(to);
+            for (Node from : n.dependents) pruneNode(from);
+        }
+        return new ArrayList<>(orphans);
+    }
+
+    /**
+     * Actualiza el grafo cuando se va a eliminar una fila: elimina los nodos de sus celdas con sus aristas
+     * @param rowCells Celdas de la fila que se elimina
+     * @return ArrayList con las celdas de otras filas que referenciaban a alguna celda de la fila
+     */
+    public ArrayList<Cell> rowDeleted(Collection<Cell> rowCells) {
+        return removeCells(rowCells);
+    }
+
+    /**
+     * Actualiza el grafo cuando se va a eliminar una columna: elimina los nodos de sus celdas con sus aristas
+     * @param columnCells Celdas de la columna que se elimina, incluida su celda de columna si la hoja guarda los números por columnas
+     * @return ArrayList con las celdas de otras columnas que referenciaban a alguna celda de la columna
+     */
+    public ArrayList<Cell> columnDeleted(Collection<Cell> columnCells) {
+        return removeCells(columnCells);
+    }
+
+}
@@ -21,7 +21,7 @@ public class Document {
     /**
      * Representa el máximo número de hojas en un documento
      */
-    private final int maxSheets = 20;
+    private final int maxSheets = 255;
 
     //Constructora
 
@@ -105,8 +105,20 @@ public class Document {
      * @return True si se ha añadido, falso en caso contrario
      */
     public boolean addSheet(String name, int rows, int cols) {
+        return addSheet(name, rows, cols, false);
+    }
+
+    /**
+     * Añade una hoja con el nombre, el número de filas y columnas y la forma de guardar las celdas especificados. En caso de que no exista una hoja con el mismo nombre
+     * @param name Un string que representa el nombre de la hoja
+     * @param rows Un int que representa el número de filas de la hoja
+     * @param cols Un int que representa el número de columnas de la hoja
+     * @param columnar Indica si la hoja guarda los números por columnas
+     * @return True si se ha añadido, falso en caso contrario
+     */
+    public boolean addSheet(String name, int rows, int cols, boolean columnar) {
         if (notexistsSheet(name)) {
-            Sheet sh = new Sheet(name, rows, cols);
+            Sheet sh = new Sheet(name, rows, cols, columnar);
             cjtSheet.add(sh);
             return true;
         }
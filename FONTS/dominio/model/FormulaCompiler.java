@@ -0,0 +1,253 @@
+package dominio.model;
+
+import dominio.auxiliarclasses.Pair;
+import dominio.model.CompiledFormula.Operand;
+import dominio.model.CompiledFormula.Reference;
+import dominio.model.CompiledFormula.Term;
+
+import java.util.*;
+
+import static dominio.auxiliarclasses.ReferenceConverter.*;
+
+/**
+ * Representa el compilador de fórmulas: convierte una sola vez el texto "=func(A1:B3;...)" o "=A1+B2" en una CompiledFormula
+ * que la hoja puede volver a evaluar sin volver a recorrer el texto. Las referencias se guardan por el identificador físico de su fila y columna
+ */
+public class FormulaCompiler {
+
+    // Attributes
+
+    /**
+     * Representa el texto original de la fórmula
+     */
+    private final String input;
+
+    /**
+     * Representa el texto de la fórmula sin espacios
+     */
+    private final String formula;
+
+    /**
+     * Representa, para cada carácter de formula, su posición en input
+     */
+    private final int[] positions;
+
+    /**
+     * Representa la correspondencia entre posiciones e identificadores de la hoja donde se escribe la fórmula
+     */
+    private final SheetIndex index;
+
+    /**
+     * Representa las referencias encontradas, en el orden del texto
+     */
+    private final ArrayList<Reference> references = new ArrayList<>();
+
+
+    // Constructor
+
+    private FormulaCompiler(String input, SheetIndex index) {
+        this.input = input;
+        this.positions = new int[input.length()];
+        this.formula = stringTrimer(input, positions);
+        this.index = index;
+    }
+
+
+    // Methods
+
+    /**
+     * Compila una fórmula escrita por el usuario
+     * @param input String con la fórmula, empezando por '='
+     * @param index Correspondencia entre posiciones e identificadores de la hoja donde se escribe la fórmula
+     * @return Fórmula compilada
+     */
+    public static CompiledFormula compile(String input, SheetIndex index) {
+        FormulaCompiler compiler = new FormulaCompiler(input, index);
+        String formula = compiler.formula;
+        if (formula.contains("#REF!") || formula.length() < 2) return CompiledFormula.error(input, "Ref error");
+        if (Character.isLowerCase(formula.charAt(1))) return compiler.compileFunction();
+        return compiler.compileArithmetic();
+    }
+
+    /**
+     * Crea una referencia a la posición indicada escrita entre los caracteres start (incluido) y end (excluido) de la fórmula sin espacios
+     * @param row Fila escrita
+     * @param col Columna escrita
+     * @param start Posición del primer carácter de la referencia
+     * @param end Posición siguiente al último carácter de la referencia
+     * @return Referencia creada
+     */
+    private Reference reference(int row, int col, int start, int end) {
+        int from = positions[start];
+        int to = positions[end - 1] + 1;
+        Reference ref = new Reference(index, row, col, input.substring(from, to), from, to);
+        references.add(ref);
+        return ref;
+    }
+
+    /**
+     * Compila una llamada a función
+     * @return Fórmula compilada de tipo FUNCTION
+     */
+    private CompiledFormula compileFunction() {
+        ArrayList<Operand> operands = new ArrayList<>();
+        String function = "nofunction";
+        StringBuilder func = new StringBuilder();
+        StringBuilder parameter = new StringBuilder();
+        boolean functionWritten = false;
+
+        for (int i = 1; i < formula.length(); i++) {
+            char c = formula.charAt(i);
+            if (c != '(' && !functionWritten) func.append(c);
+            else if (c == '(') {
+                function = String.valueOf(func);
+                functionWritten = true;
+                if (!GetFunctionFactory.exists(function)) {
+                    operands.add(Operand.error("incorrectfunction"));
+                    break;
+                }
+                operands.add(Operand.name(function));
+            }
+            else if (c == '[') {
+                i += 1;
+                while (i < formula.length() && formula.charAt(i) != ']') {
+                    parameter.append(formula.charAt(i));
+                    i++;
+                }
+                operands.add(Operand.text(String.valueOf(parameter)));
+                parameter = new StringBuilder();
+            }
+            else if (c == ';' || c == ')' || c == ',') {
+                if (parameter.length() == 0 && c != ',') continue;      // para evitar error de string
+                try {
+                    operands.add(Operand.number(Double.parseDouble(String.valueOf(parameter)), c));
+                } catch (NumberFormatException e) {
+                    operands.add(Operand.error(function + "N"));
+                    break;
+                }
+                parameter = new StringBuilder();
+            }
+            else if (c == ' ') ;
+            else if (Character.isUpperCase(c)) {
+                if (parameter.length() != 0) {
+                    operands.add(Operand.error(function + "N"));
+                    break;
+                }
+                int start = i;
+                int row;
+                int col;
+                try {
+                    StringBuilder letters = new StringBuilder();
+                    while (!Character.isDigit(formula.charAt(i))) {
+                        letters.append(formula.charAt(i));
+                        i++;
+                    }
+                    col = letterToNumber(String.valueOf(letters));
+                    row = 0;
+                    while (formula.charAt(i) != ')' && formula.charAt(i) != ';' && formula.charAt(i) != ',' && formula.charAt(i) != ':') {
+                        row *= 10;
+                        row += Integer.parseInt(String.valueOf(formula.charAt(i)));
+                        i++;
+                    }
+                } catch (StringIndexOutOfBoundsException | NumberFormatException e) {
+                    operands.add(Operand.error(function + "R"));
+                    break;
+                }
+                if (formula.charAt(i) != ':') {
+                    operands.add(Operand.reference(reference(row, col, start, i), formula.charAt(i)));
+                    continue;
+                }
+                Reference first = reference(row, col, start, i);
+                i++;
+                int start2 = i;
+                int row2;
+                int col2;
+                try {
+                    StringBuilder letters = new StringBuilder();
+                    while (!Character.isDigit(formula.charAt(i))) {
+                        letters.append(formula.charAt(i));
+                        i++;
+                    }
+                    col2 = letterToNumber(String.valueOf(letters));
+                    row2 = 0;
+                    while (formula.charAt(i) != ')' && formula.charAt(i) != ';' && formula.charAt(i) != ',') {
+                        row2 *= 10;
+                        row2 += Integer.parseInt(String.valueOf(formula.charAt(i)));
+                        i++;
+                    }
+                } catch (StringIndexOutOfBoundsException | NumberFormatException e) {
+                    operands.add(Operand.brokenRange(first));
+                    break;
+                }
+                operands.add(Operand.range(first, reference(row2, col2, start2, i), formula.charAt(i)));
+            }
+            else parameter.append(c);
+        }
+        return CompiledFormula.function(input, function, operands, formula.charAt(formula.length() - 1) == ')', references);
+    }
+
+    /**
+     * Compila una operación aritmética, que se evalúa de izquierda a derecha
+     * @return Fórmula compilada de tipo ARITHMETIC
+     */
+    private CompiledFormula compileArithmetic() {
+        ArrayList<Term> terms = new ArrayList<>();
+        for (int i = 1; i < formula.length(); i++) {
+            char c = formula.charAt(i);
+            if (isOperator(c)) terms.add(compileTerm(c, i + 1));
+            else if (i == 1) terms.add(compileTerm((char) 0, 1));
+        }
+        boolean hasOperator = formula.contains("+") || formula.contains("-") || formula.contains("*") || formula.contains("/");
+        return CompiledFormula.arithmetic(input, terms, hasOperator, references);
+    }
+
+    /**
+     * Compila el término de una operación aritmética que empieza en la posición indicada
+     * @param operator Operador que precede al término, 0 si es el primero
+     * @param pos Posición en la que empieza el término
+     * @return Término compilado
+     */
+    private Term compileTerm(char operator, int pos) {
+        if (pos >= formula.length()) return Term.invalid(operator);
+        int end = pos;
+        while (end < formula.length() && !isOperator(formula.charAt(end))) ++end;
+        String term = formula.substring(pos, end);
+        if (!Character.isUpperCase(formula.charAt(pos))) return Term.literal(operator, TypedValue.parse(term));
+        try {
+            Pair p = getReferencePos(term);
+            return Term.reference(operator, reference(p.getX(), p.getY(), pos, end));
+        } catch (StringIndexOutOfBoundsException | NumberFormatException e) {
+            return Term.invalid(operator);
+        }
+    }
+
+    /**
+     * Indica si el carácter es un operador aritmético
+     * @param c Carácter a comprobar
+     * @return true si c es '+', '-', '*' o '/'
+     */
+    private static boolean isOperator(char c) {
+        return c == '+' || c == '-' || c == '*' || c == '/';
+    }
+
+    /**
+     * Recorta el string eliminando posibles espacios
+     * @param function String que se quiere recortar
+     * @param positions Array donde se guarda, para cada carácter del string recortado, su posición en el string original
+     * @return El string recortado
+     */
+    private static String stringTrimer(String function, int[] positions) {
+        StringBuilder result = new StringBuilder();
+        boolean opened = false;
+        for (int i = 0; i < function.length(); i++) {
+            if (function.charAt(i) == '[') opened = true;
+            if (function.charAt(i) == ']') opened = false;
+            if (function.charAt(i) != ' ' || opened) {
+                positions[result.length()] = i;
+                result.append(function.charAt(i));
+            }
+        }
+        return String.valueOf(result);
+    }
+
+}
@@ -18,7 +18,12 @@ public abstract class Function implements CellValueInterface {
     /**
      * Representa el valor de la función guardado (null cuando no sea válido)
      */
-    String value;
+    TypedValue value;
+
+    /**
+     * Representa la fórmula compilada de la función (null si el texto de la fórmula ha cambiado y se debe volver a compilar)
+     */
+    CompiledFormula compiled;
 
 
     //Atributos
@@ -31,21 +36,49 @@ public abstract class Function implements CellValueInterface {
 
     //Getters
     /**
-     * Retorna el input que ha hecho el usuario en una celda
+     * Retorna el input que ha hecho el usuario en una celda, con las referencias escritas según la posición actual de las celdas referenciadas
      * @return String con el input aplicado en la celda
      */
     @Override
     public String getUserInput() {
+        if (this.compiled != null) return this.compiled.getText();
+        return this.formula;
+    }
+
+    /**
+     * Retorna el input que ha hecho el usuario en una celda con las referencias escritas como si se hubieran insertado filas al principio de la hoja
+     * @param rowShift Número de filas insertadas
+     * @return String con el input aplicado en la celda
+     */
+    String getUserInput(int rowShift) {
+        if (this.compiled != null) return this.compiled.getText(rowShift);
         return this.formula;
     }
 
+    /**
+     * Retorna la fórmula compilada de la función
+     * @return Fórmula compilada, null si no hay ninguna guardada
+     */
+    public CompiledFormula getCompiledFormula() {
+        return this.compiled;
+    }
+
     /**
      * Si value no esta guardado, lo computa, en caso contrario devuelve el valor guardado
      * @return String con el resultado
      */
     @Override
     public String tryGetValue() {
-        if (this.value == null) this.value = getValue();
+        return getTypedValue().toString();
+    }
+
+    /**
+     * Si value no esta guardado, lo computa, en caso contrario devuelve el valor guardado
+     * @return Valor tipado con el resultado
+     */
+    @Override
+    public TypedValue getTypedValue() {
+        if (this.value == null) this.value = evaluate();
         return this.value;
     }
 
@@ -60,7 +93,16 @@ public abstract class Function implements CellValueInterface {
      * Retorna el resultado de aplicar la función
      * @return String con el resultado
      */
-    public abstract String getValue();
+    @Override
+    public String getValue() {
+        return getTypedValue().toString();
+    }
+
+    /**
+     * Calcula el resultado de aplicar la función
+     * @return Valor tipado con el resultado
+     */
+    public abstract TypedValue evaluate();
 
     /**
      * Retorna el tipo de celda en String
@@ -89,12 +131,27 @@ public abstract class Function implements CellValueInterface {
     public void setFormula(String f) {
         this.value = null;
         this.formula = f;
+        this.compiled = null;
+    }
+
+    /**
+     * Inserta la fórmula compilada de la función
+     * @param compiled Fórmula compilada a partir del texto de la función
+     */
+    public void setCompiledFormula(CompiledFormula compiled) {
+        this.compiled = compiled;
     }
     /**
      * Inserta el valor del resultado de la función
      * @param s String con el resultado de la función
      */
-    public void setValue(String s){ this.value = s;}
+    public void setValue(String s){ this.value = TypedValue.parse(s);}
+
+    /**
+     * Inserta el valor tipado del resultado de la función, por ejemplo el último valor calculado guardado en un documento
+     * @param value Valor tipado con el resultado de la función
+     */
+    public void setTypedValue(TypedValue value) { this.value = value; }
 
     /**
      * Modifica el valor de la función para que sea nulo
@@ -30,6 +30,7 @@ public class GetFunctionFactory {
         GetFunctionFactory.register("variance", Variance.class);
         GetFunctionFactory.register("replaceText", ReplaceText.class);
         GetFunctionFactory.register("median", Median.class);
+        GetFunctionFactory.register("percentile", Percentile.class);
         GetFunctionFactory.register("dayOfWeek", DayOfWeek.class);
         GetFunctionFactory.register("covariance", Covariance.class);
         GetFunctionFactory.register("elementExtraction", ElementExtraction.class);
@@ -48,6 +49,27 @@ public class GetFunctionFactory {
         }
     }
 
+    /**
+     * Indica si una función está registrada en la factoría
+     * @param functionName String con el nombre de la función
+     * @return true si la función está registrada, false en caso contrario
+     */
+    public static boolean exists(String functionName) {
+        return instances.containsKey(functionName);
+    }
+
+    /**
+     * Retorna el nombre con el que está registrada la clase de una función
+     * @param function Función de la cual se quiere el nombre
+     * @return String con el nombre de la función, null si su clase no está registrada
+     */
+    public static String getName(Function function) {
+        for (Map.Entry<String, Class<? extends Function>> entry : instances.entrySet()) {
+            if (entry.getValue() == function.getClass()) return entry.getKey();
+        }
+        return null;
+    }
+
     /**
      * Retorna una instancia de una función determinada que esté dentro de la factoría
      * @param functionName String con la función de la cual se quiere obtener una instancia
@@ -0,0 +1,277 @@
+package dominio.model;
+
+import dominio.parameter.OrderStatistics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Representa un árbol de orden: un treap con los valores de un rango, donde cada nodo guarda un valor distinto, cuántas veces aparece y
+ * cuántos valores hay en su subárbol. Añadir y quitar un valor y consultar el valor de una posición en orden creciente cuesta O(log n) de media.
+ * Los nodos se guardan en arrays de tipos primitivos; el nodo 0 es el nodo vacío
+ */
+final class OrderStatisticTree implements OrderStatistics {
+
+    /**
+     * Representa el nodo vacío
+     */
+    private static final int NIL = 0;
+
+    // Attributes
+
+    /**
+     * Representa el valor de cada nodo
+     */
+    private double[] key;
+
+    /**
+     * Representa cuántas veces aparece el valor de cada nodo
+     */
+    private int[] count;
+
+    /**
+     * Representa el número de valores del subárbol de cada nodo, contando las repeticiones
+     */
+    private int[] size;
+
+    /**
+     * Representa el hijo izquierdo de cada nodo
+     */
+    private int[] left;
+
+    /**
+     * Representa el hijo derecho de cada nodo
+     */
+    private int[] right;
+
+    /**
+     * Representa la prioridad de cada nodo: ningún nodo tiene más prioridad que su padre
+     */
+    private int[] priority;
+
+    /**
+     * Representa la raíz del árbol
+     */
+    private int root;
+
+    /**
+     * Representa el número de nodos usados, contando el nodo vacío y los que están en la lista de nodos libres
+     */
+    private int used;
+
+    /**
+     * Representa el primer nodo de la lista de nodos libres, encadenados por su hijo derecho
+     */
+    private int free;
+
+    /**
+     * Indica si la última llamada a remove ha encontrado el valor
+     */
+    private boolean removed;
+
+
+    // Constructor
+
+    /**
+     * Crea el árbol con los valores indicados
+     * @param values Valores del árbol, que se ordenan
+     */
+    OrderStatisticTree(double[] values) {
+        Arrays.sort(values);
+        int distinct = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || Double.compare(values[i], values[i - 1]) != 0) ++distinct;
+        }
+        int capacity = Math.max(16, distinct + 1 + distinct / 4);
+        key = new double[capacity];
+        count = new int[capacity];
+        size = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        priority = new int[capacity];
+        priority[NIL] = Integer.MIN_VALUE;
+        used = 1;
+        free = NIL;
+        int[] keys = new int[distinct];
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || Double.compare(values[i], values[i - 1]) != 0) {
+                keys[used - 1] = used;
+                key[used] = values[i];
+                ++used;
+            }
+            ++count[used - 1];
+        }
+        int height = 32 - Integer.numberOfLeadingZeros(distinct);
+        root = build(keys, 0, distinct - 1, 0, height);
+    }
+
+
+    // Methods
+
+    @Override
+    public int size() {
+        return size[root];
+    }
+
+    @Override
+    public double select(int k) {
+        int t = root;
+        while (true) {
+            int before = size[left[t]];
+            if (k < before) t = left[t];
+            else if (k < before + count[t]) return key[t];
+            else {
+                k -= before + count[t];
+                t = right[t];
+            }
+        }
+    }
+
+    /**
+     * Añade un valor al árbol
+     * @param value Valor que se añade
+     */
+    void add(double value) {
+        root = insert(root, value);
+    }
+
+    /**
+     * Quita una aparición de un valor del árbol
+     * @param value Valor que se quita
+     * @return true si el valor estaba en el árbol
+     */
+    boolean remove(double value) {
+        removed = false;
+        root = remove(root, value);
+        return removed;
+    }
+
+    /**
+     * Construye un subárbol equilibrado con los nodos keys[lo..hi], ya ordenados. Las prioridades bajan con la profundidad, con una parte
+     * aleatoria dentro de cada nivel, para que los nodos que se añadan después se coloquen como en un treap aleatorio
+     */
+    private int build(int[] keys, int lo, int hi, int depth, int height) {
+        if (lo > hi) return NIL;
+        int mid = (lo + hi) >>> 1;
+        int t = keys[mid];
+        int band = Integer.MAX_VALUE / (height + 1);
+        priority[t] = (height - depth) * band + ThreadLocalRandom.current().nextInt(band);
+        left[t] = build(keys, lo, mid - 1, depth + 1, height);
+        right[t] = build(keys, mid + 1, hi, depth + 1, height);
+        update(t);
+        return t;
+    }
+
+    private int insert(int t, double value) {
+        if (t == NIL) return newNode(value);
+        int c = Double.compare(value, key[t]);
+        if (c == 0) {
+            ++count[t];
+            ++size[t];
+            return t;
+        }
+        // el hijo se guarda después de la llamada: si crea un nodo, los arrays pueden haber crecido y left o right ya no son los mismos
+        if (c < 0) {
+            int child = insert(left[t], value);
+            left[t] = child;
+            if (priority[child] > priority[t]) t = rotateRight(t);
+        }
+        else {
+            int child = insert(right[t], value);
+            right[t] = child;
+            if (priority[child] > priority[t]) t = rotateLeft(t);
+        }
+        update(t);
+        return t;
+    }
+
+    private int remove(int t, double value) {
+        if (t == NIL) return NIL;
+        int c = Double.compare(value, key[t]);
+        if (c < 0) left[t] = remove(left[t], value);
+        else if (c > 0) right[t] = remove(right[t], value);
+        else {
+            removed = true;
+            if (count[t] > 1) --count[t];
+            else {
+                int merged = merge(left[t], right[t]);
+                right[t] = free;
+                free = t;
+                return merged;
+            }
+        }
+        update(t);
+        return t;
+    }
+
+    /**
+     * Junta dos subárboles en los que todos los valores de a son menores que los de b
+     */
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (priority[a] > priority[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    private int rotateRight(int t) {
+        int l = left[t];
+        left[t] = right[l];
+        right[l] = t;
+        update(t);
+        update(l);
+        return l;
+    }
+
+    private int rotateLeft(int t) {
+        int r = right[t];
+        right[t] = left[r];
+        left[r] = t;
+        update(t);
+        update(r);
+        return r;
+    }
+
+    private void update(int t) {
+        size[t] = size[left[t]] + count[t] + size[right[t]];
+    }
+
+    /**
+     * Crea un nodo con una aparición del valor indicado, reutilizando un nodo libre si hay alguno
+     */
+    private int newNode(double value) {
+        int t;
+        if (free != NIL) {
+            t = free;
+            free = right[t];
+        }
+        else {
+            if (used == key.length) grow();
+            t = used++;
+        }
+        key[t] = value;
+        count[t] = 1;
+        size[t] = 1;
+        left[t] = NIL;
+        right[t] = NIL;
+        priority[t] = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+        return t;
+    }
+
+    private void grow() {
+        int capacity = key.length * 2;
+        key = Arrays.copyOf(key, capacity);
+        count = Arrays.copyOf(count, capacity);
+        size = Arrays.copyOf(size, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        priority = Arrays.copyOf(priority, capacity);
+    }
+
+}
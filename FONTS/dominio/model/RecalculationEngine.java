@@ -0,0 +1,302 @@
+package dominio.model;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Representa el motor de recálculo incremental de una hoja. Tras una modificación marca como sucias todas las celdas que dependen
+ * (directa o indirectamente) de las celdas modificadas, las ordena topológicamente una sola vez y evalúa cada fórmula afectada exactamente una vez.
+ * Si hay muchas celdas sucias, se evalúan por niveles: las celdas de un nivel no dependen unas de otras, así que se evalúan a la vez
+ * en el pool de fork-join y después se aplican sus referencias al grafo en un solo hilo.
+ * Los hilos del pool solo modifican la celda que evalúan y leen el resto de la hoja: las celdas y sus valores, la correspondencia de
+ * filas y columnas (SheetIndex, que no cambia durante el recálculo) y los números de una hoja por columnas, cuyos índices compartidos
+ * están sincronizados. El grafo de dependencias y el conjunto de celdas solo se modifican en el hilo que recalcula, entre niveles
+ */
+public class RecalculationEngine {
+
+    /**
+     * Representa el número mínimo de celdas de un nivel para repartirlo entre varios hilos, y el número de celdas de cada tarea
+     */
+    private static final int GRAIN = 64;
+
+    /**
+     * Representa el número mínimo de celdas sucias para recalcular en paralelo de un motor nuevo
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Representa la evaluación de una parte de un nivel, que se divide en dos mientras tenga más de GRAIN celdas
+     */
+    private static final class LevelTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Sheet sheet;
+        private final ArrayList<Cell> level;
+        private final Sheet.Evaluation[] results;
+        private final int from;
+        private final int to;
+
+        LevelTask(Sheet sheet, ArrayList<Cell> level, Sheet.Evaluation[] results, int from, int to) {
+            this.sheet = sheet;
+            this.level = level;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > GRAIN) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LevelTask(sheet, level, results, from, middle), new LevelTask(sheet, level, results, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    results[i] = sheet.evaluateCell(level.get(i));
+                } catch (ReflectiveOperationException e) {
+                    throw new EvaluationException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Representa un error al evaluar una celda en otro hilo, para volver a lanzarlo en el hilo que recalcula
+     */
+    private static final class EvaluationException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        EvaluationException(ReflectiveOperationException cause) {
+            super(cause);
+        }
+    }
+
+    // Attributes
+
+    /**
+     * Representa la hoja cuyas celdas se recalculan
+     */
+    private final Sheet sheet;
+
+    /**
+     * Representa el número de celdas recalculadas en el último recálculo
+     */
+    private int lastRecalculated;
+
+    /**
+     * Representa el número mínimo de celdas sucias para recalcular en paralelo
+     */
+    private int parallelThreshold;
+
+    /**
+     * Representa el pool donde se evalúan los niveles en paralelo
+     */
+    private ForkJoinPool pool;
+
+
+    // Constructor
+
+    /**
+     * Crea un motor de recálculo para la hoja indicada, que recalcula en paralelo en el pool común a partir de DEFAULT_PARALLEL_THRESHOLD
+     * celdas sucias
+     * @param sheet Hoja cuyas celdas se recalculan
+     */
+    public RecalculationEngine(Sheet sheet) {
+        this.sheet = sheet;
+        this.lastRecalculated = 0;
+        this.parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+
+    // Methods
+
+    /**
+     * Retorna el número mínimo de celdas sucias para recalcular en paralelo
+     * @return int con el número de celdas
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Define el número mínimo de celdas sucias para recalcular en paralelo. Con Integer.MAX_VALUE se recalcula siempre en el hilo que llama
+     * @param threshold Número de celdas, al menos 1
+     */
+    public void setParallelThreshold(int threshold) {
+        this.parallelThreshold = Math.max(1, threshold);
+    }
+
+    /**
+     * Retorna el pool donde se evalúan los niveles en paralelo
+     * @return ForkJoinPool con el pool
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Define el pool donde se evalúan los niveles en paralelo, por defecto el pool común
+     * @param forkJoinPool Pool de fork-join
+     */
+    public void setPool(ForkJoinPool forkJoinPool) {
+        this.pool = forkJoinPool;
+    }
+
+    /**
+     * Retorna el número de celdas recalculadas en el último recálculo
+     * @return int con el número de celdas recalculadas
+     */
+    public int getLastRecalculated() {
+        return this.lastRecalculated;
+    }
+
+    /**
+     * Recalcula todas las celdas que dependen de las celdas modificadas indicadas. Las celdas modificadas no se recalculan,
+     * salvo que a su vez dependan de otra de las celdas modificadas
+     * @param changed Celdas que se han modificado
+     * @return int con el número de celdas recalculadas
+     */
+    public int recalculate(Collection<Cell> changed) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        DependencyGraph graph = sheet.getReferences().getGraph();
+
+        // marcamos las celdas sucias y guardamos sus dependientes antes de que la evaluación modifique el grafo
+        LinkedHashMap<Cell, ArrayList<Cell>> dirty = new LinkedHashMap<>();
+        ArrayDeque<Cell> pending = new ArrayDeque<>();
+        for (Cell cell : changed) {
+            for (Cell dependent : graph.getDependents(cell)) {
+                if (!dirty.containsKey(dependent)) {
+                    dirty.put(dependent, null);
+                    pending.add(dependent);
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            Cell cell = pending.poll();
+            ArrayList<Cell> dependents = graph.getDependents(cell);
+            dirty.put(cell, dependents);
+            for (Cell dependent : dependents) {
+                if (!dirty.containsKey(dependent)) {
+                    dirty.put(dependent, null);
+                    pending.add(dependent);
+                }
+            }
+        }
+
+        // ordenamos topológicamente (Kahn) contando solo los precedentes que también están sucios
+        HashMap<Cell, Integer> inDegree = new HashMap<>();
+        for (Cell cell : dirty.keySet()) inDegree.put(cell, 0);
+        for (ArrayList<Cell> dependents : dirty.values()) {
+            for (Cell dependent : dependents) inDegree.merge(dependent, 1, Integer::sum);
+        }
+        ArrayDeque<Cell> ready = new ArrayDeque<>();
+        for (Cell cell : dirty.keySet()) {
+            if (inDegree.get(cell) == 0) ready.add(cell);
+        }
+
+        int count = 0;
+        if (dirty.size() >= parallelThreshold && pool.getParallelism() > 1) {
+            count = recalculateLevels(dirty, inDegree, new ArrayList<>(ready));
+        }
+        else {
+            while (!ready.isEmpty()) {
+                Cell cell = ready.poll();
+                sheet.recalculateCell(cell);
+                inDegree.remove(cell);
+                ++count;
+                release(cell, dirty, inDegree, ready);
+            }
+        }
+
+        // si quedase algún ciclo, se evalúan igualmente sus celdas una vez
+        for (Cell cell : dirty.keySet()) {
+            if (inDegree.containsKey(cell)) {
+                sheet.recalculateCell(cell);
+                ++count;
+            }
+        }
+
+        this.lastRecalculated = count;
+        return count;
+    }
+
+    /**
+     * Evalúa las celdas sucias por niveles: cada nivel son las celdas cuyos precedentes sucios ya se han evaluado. Los niveles grandes
+     * se evalúan en paralelo sin modificar el grafo y después se aplican sus referencias en orden; los pequeños, en este hilo
+     * @param dirty Celdas sucias con sus dependientes
+     * @param inDegree Número de precedentes sucios sin evaluar de cada celda sucia
+     * @param level Primer nivel, las celdas sin precedentes sucios
+     * @return int con el número de celdas recalculadas
+     */
+    private int recalculateLevels(LinkedHashMap<Cell, ArrayList<Cell>> dirty, HashMap<Cell, Integer> inDegree, ArrayList<Cell> level) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        int count = 0;
+        while (!level.isEmpty()) {
+            if (level.size() < GRAIN) {
+                for (Cell cell : level) sheet.recalculateCell(cell);
+            }
+            else {
+                Sheet.Evaluation[] results = new Sheet.Evaluation[level.size()];
+                try {
+                    pool.invoke(new LevelTask(sheet, level, results, 0, level.size()));
+                } catch (EvaluationException e) {
+                    rethrow((ReflectiveOperationException) e.getCause());
+                }
+                for (int i = 0; i < results.length; i++) sheet.commitCell(level.get(i), results[i]);
+            }
+            count += level.size();
+            ArrayDeque<Cell> next = new ArrayDeque<>();
+            for (Cell cell : level) {
+                inDegree.remove(cell);
+                release(cell, dirty, inDegree, next);
+            }
+            level = new ArrayList<>(next);
+        }
+        return count;
+    }
+
+    /**
+     * Descuenta una celda ya evaluada de sus dependientes sucios y añade a ready los que ya no tienen precedentes sucios sin evaluar
+     * @param cell Celda evaluada
+     * @param dirty Celdas sucias con sus dependientes
+     * @param inDegree Número de precedentes sucios sin evaluar de cada celda sucia
+     * @param ready Celdas que ya se pueden evaluar
+     */
+    private static void release(Cell cell, LinkedHashMap<Cell, ArrayList<Cell>> dirty, HashMap<Cell, Integer> inDegree, ArrayDeque<Cell> ready) {
+        for (Cell dependent : dirty.get(cell)) {
+            Integer degree = inDegree.get(dependent);
+            if (degree != null && degree == 1) ready.add(dependent);
+            if (degree != null) inDegree.put(dependent, degree - 1);
+        }
+    }
+
+    /**
+     * Vuelve a lanzar en este hilo el error de evaluar una celda en otro hilo, con su propio tipo
+     * @param e Error de la evaluación
+     */
+    private static void rethrow(ReflectiveOperationException e) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        if (e instanceof InvocationTargetException) throw (InvocationTargetException) e;
+        if (e instanceof NoSuchMethodException) throw (NoSuchMethodException) e;
+        if (e instanceof InstantiationException) throw (InstantiationException) e;
+        if (e instanceof IllegalAccessException) throw (IllegalAccessException) e;
+        throw new IllegalStateException(e);
+    }
+
+    /**
+     * Recalcula todas las celdas de la hoja que tienen referencias, partiendo de las celdas referenciadas que no referencian a ninguna otra
+     * @return int con el número de celdas recalculadas
+     */
+    public int recalculateAll() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        DependencyGraph graph = sheet.getReferences().getGraph();
+        ArrayList<Cell> roots = new ArrayList<>();
+        for (Cell cell : graph.getReferencedCells()) {
+            if (!graph.hasPrecedents(cell)) roots.add(cell);
+        }
+        return recalculate(roots);
+    }
+
+}
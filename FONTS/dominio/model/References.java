@@ -11,15 +11,9 @@ public class References {
     // Attributes
 
     /**
-     * Representa las celdas referenciadas
+     * Representa el grafo de dependencias entre las celdas: para cada celda guarda las celdas que referencia y las celdas que la referencian
      */
-    private final ArrayList<Cell> keys;
-
-    /**
-     * Representa las celdas que referencian a una celda, de manera que cada ArrayList de celdas que referencian a una celda determinada se encuentra dentro de otro ArrayList,
-     * y cada posición de este ArrayList externo corresponde a cada posición del ArrayList de celdas referenciadas
-     */
-    private final ArrayList<ArrayList<Cell>> values;
+    private final DependencyGraph graph;
 
 
     // Constructor
@@ -28,42 +22,18 @@ public class References {
      * Crea una instancia de referencias en una hoja de cálculo
      */
     public References() {
-        this.keys = new ArrayList<>();
-        this.values = new ArrayList<>();
+        this.graph = new DependencyGraph();
     }
 
 
     // Methods
 
-    // Pre:
-    // Post: devuelve la posicion en la que se encuentra el pair p en keys, si está
-
     /**
-     * Devuelve la posicion en la que se encuentra la celda p en keys, en caso de que no se encuentre devuelve -1
-     * @param p Celda de la que queremos saber el indice en las keys de las referencias
-     * @return int con el indice de la posicion en la que se encuentra la celda p en keys, o -1 si no se encuentra
+     * Retorna el grafo de dependencias sobre el que se guardan las referencias
+     * @return Grafo de dependencias de la hoja
      */
-    private int keyIndex(Cell p) {
-        for (int i = 0; i < keys.size(); i++) {
-            if (keys.get(i).equals(p)) return i;
-        }
-        return -1;
-    }
-
-    // Pre:
-    // Post: devuelve la posicion en la que se encuentra al cell c en los values de la key en la posicion keyIndex de keys, en caso de que no se encuentre devuelve -1
-
-    /**
-     * Devuelve la posicion en la que se encuentra al cell c en los values de la key en la posicion keyIndex de keys, si existe
-     * @param c Celda de la que queremos saber el indice en los values de las referencias
-     * @param keyIndex Indice de los values donde queremos saber si está el par
-     * @return int con el indice de la posicion en la que se encuentra la celda c en keys, o -1 si no se encuentra
-     */
-    private int valueIndex(Cell c, int keyIndex) {
-        for (int i = 0; i < values.get(keyIndex).size(); i++) {
-            if (values.get(keyIndex).get(i).equals(c)) return i;
-        }
-        return -1;
+    public DependencyGraph getGraph() {
+        return this.graph;
     }
 
     /**
@@ -71,7 +41,7 @@ public class References {
      * @return Un ArrayList con las celdas referenciadas
      */
     public ArrayList<Cell> getKeys() {
-        return this.keys;
+        return graph.getReferencedCells();
     }
 
     /**
@@ -79,7 +49,9 @@ public class References {
      * @return Un ArrayList con los ArrayLists de las celdas que referencian a cada celda de las referenciadas
      */
     public ArrayList<ArrayList<Cell>> getValues() {
-        return this.values;
+        ArrayList<ArrayList<Cell>> values = new ArrayList<>();
+        for (Cell key : graph.getReferencedCells()) values.add(graph.getDependents(key));
+        return values;
     }
 
     /**
@@ -88,9 +60,7 @@ public class References {
      * @return ArrayList con las celdas que referencian a la celda indicada
      */
     public ArrayList<Cell> getReferencesToCell(Cell p) {
-        int i = keyIndex(p);
-        if (i != -1) return this.values.get(keyIndex(p));
-        return new ArrayList<>();
+        return graph.getDependents(p);
     }
 
     // Pre:
@@ -102,18 +72,7 @@ public class References {
      * @param cellReferencing Celda referencia
      */
     public void addReference(Cell cellReferenced, Cell cellReferencing) {
-
-        int i = keyIndex(cellReferenced);
-        if (i == -1) {
-            keys.add(cellReferenced);
-            ArrayList<Cell> aux = new ArrayList<>(List.of(cellReferencing));
-            values.add(aux);
-        }
-        else {
-            int j = valueIndex(cellReferencing, i);
-            if (j == -1) values.get(i).add(cellReferencing);
-        }
-
+        graph.addEdge(cellReferenced, cellReferencing);
     }
 
 
@@ -123,19 +82,7 @@ public class References {
      * @param cellReferencing Celda referencia
      */
     public void eraseReference(Cell cellReferenced, Cell cellReferencing) {
-
-        int i = keyIndex(cellReferenced);
-        if (i != -1) {
-            int j = valueIndex(cellReferencing, i);
-            if (j != -1) {
-                values.get(i).remove(j);
-            }
-            if (values.get(i).size() == 0) {
-                keys.remove(i);
-                values.remove(i);
-            }
-        }
-
+        graph.removeEdge(cellReferenced, cellReferencing);
     }
 
     // Pre:
@@ -145,21 +92,7 @@ public class References {
      * @param cellReferencing Celda que referencia
      */
     public void eraseAllReferencesOfACell(Cell cellReferencing) {
-
-        for (int i = 0; i < keys.size(); i++) {
-            int index = valueIndex(cellReferencing, i);
-            if (index != -1) {
-                //int j = valueIndex(cellReferencing, index);
-                values.get(i).remove(index);
-
-                if (values.get(i).size() == 0) {
-                    keys.remove(i);
-                    values.remove(i);
-                    i--;
-                }
-            }
-        }
-
+        graph.removePrecedents(cellReferencing);
     }
 
 
@@ -170,73 +103,26 @@ public class References {
      * @param cellReferenced Celda que es referenciada
      */
     public void eraseCellReferenced(Cell cellReferenced) {
-
-        int i = keyIndex(cellReferenced);
-        if (i != -1) {
-            keys.remove(i);
-            values.remove(i);
-        }
-
+        graph.removeDependents(cellReferenced);
     }
 
 
     /**
-     * Actualiza las referencias cuando la fila indicada es eliminada
-     * @param rowPosition Fila borrada de la hoja de cálculo
+     * Actualiza las referencias cuando una fila va a ser eliminada. Insertar filas no cambia las referencias, que se guardan por identificador físico
+     * @param rowCells Celdas de la fila que se borra de la hoja de cálculo
+     * @return ArrayList con las celdas de otras filas que referenciaban a alguna celda de la fila
      */
-    public void rowDeleted(int rowPosition) {
-
-        // primero borramos las keys y values de la rowPosition
-        for (int i = 0; i < keys.size(); i++) {
-            int x = keys.get(i).getRow();
-            if (x == rowPosition) {
-                keys.remove(i);
-                values.remove(i);
-                i--;
-            }
-            else {
-                for (int j = 0; j < values.get(i).size(); j++) {
-                    int x2 = values.get(i).get(j).getRow();
-                    if (x2 == rowPosition) {
-                        values.get(i).remove(j);
-                        j--;
-                        if (values.get(i).size() == 0) {
-                            keys.remove(i);
-                            values.remove(i);
-                        }
-                    }
-                }
-            }
-        }
-
+    public ArrayList<Cell> rowDeleted(Collection<Cell> rowCells) {
+        return graph.rowDeleted(rowCells);
     }
 
-
     /**
-     * Actualiza las referencias cuando la columna indicada es eliminada
-     * @param colPosition Fila borrada de la hoja de cálculo
+     * Actualiza las referencias cuando una columna va a ser eliminada. Insertar columnas no cambia las referencias, que se guardan por identificador físico
+     * @param columnCells Celdas de la columna que se borra de la hoja de cálculo, incluida su celda de columna si la hoja guarda los números por columnas
+     * @return ArrayList con las celdas de otras columnas que referenciaban a alguna celda de la columna
      */
-    public void columnDeleted(int colPosition) {
-
-        // primero borramos las keys y values de la rowPosition
-        for (int i = 0; i < keys.size(); i++) {
-            int y = keys.get(i).getColumn();
-            if (y == colPosition) {
-                keys.remove(i);
-                values.remove(i);
-                i--;
-            }
-            else {
-                for (int j = 0; j < values.get(i).size(); j++) {
-                    int y2 = values.get(i).get(j).getColumn();
-                    if (y2 == colPosition) {
-                        values.get(i).remove(j);
-                        j--;
-                    }
-                }
-            }
-        }
-
+    public ArrayList<Cell> columnDeleted(Collection<Cell> columnCells) {
+        return graph.columnDeleted(columnCells);
     }
 
     /**
@@ -245,34 +131,18 @@ public class References {
      * @return ArrayList con las celdas a las que hace referencia la celda indicada
      */
     public ArrayList<Cell> getReferencesFromCell(Cell cell) {
-
-        ArrayList<Cell> r = new ArrayList<>();
-        for (int i = 0; i < keys.size(); i++) {
-            for (int j = 0; j < values.get(i).size(); j++) {
-                if (values.get(i).get(j).equals(cell)) {
-                    r.add(keys.get(i));
-                    break;
-                }
-            }
-        }
-        return r;
+        return graph.getPrecedents(cell);
     }
 
     /**
-     * Comprueba si se crea una referencia cíclica (a si misma) entre una celda y otra a la que referencia o alguna de las referencias de esta segunda celda (recursivamente)
+     * Comprueba si se crea una referencia cíclica (a si misma) entre una celda y otra a la que referencia o alguna de las referencias de esta segunda celda (recursivamente).
+     * El recorrido es iterativo y visita cada celda una sola vez; para comprobar varias referencias de la misma celda es mejor usar un único CycleDetector
      * @param original Celda que hace la primera referencia
      * @param reference Celda a la que hace referencia
      * @return true si la celda reference hace una referencia a original, false en caso contrario
      */
     public boolean cyclicReference(Cell original, Cell reference) {
-        ArrayList<Cell> cells = new ArrayList<>(getReferencesFromCell(reference));
-        for (Cell cell : cells) {
-            if (cell == original) return true;
-            else {
-                if (cyclicReference(original, cell)) return true;
-            }
-        }
-        return false;
+        return new CycleDetector(graph, original).createsCycle(reference);
     }
 
 }
@@ -9,6 +9,8 @@ import dominio.auxiliarclasses.Pair;
 import java.lang.reflect.InvocationTargetException;
 import static dominio.auxiliarclasses.ReferenceConverter.*;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 
 /**
@@ -16,6 +18,56 @@ import java.util.*;
  */
 public class Sheet {
 
+    /**
+     * Representa la evaluación de una celda que guarda las referencias de la fórmula en lugar de añadirlas al grafo a medida que se leen
+     */
+    static final class Evaluation {
+
+        /**
+         * Celdas que la celda referenciaba antes de evaluarla
+         */
+        final Set<Cell> known;
+
+        /**
+         * Fila y columna de cada referencia leída, en orden. Una fila -1 indica la celda de columna de la columna
+         */
+        int[] positions = new int[16];
+
+        /**
+         * Número de enteros usados en positions
+         */
+        int size;
+
+        /**
+         * Indica si las referencias leídas son distintas de las que la celda ya tenía
+         */
+        boolean changed;
+
+        Evaluation(Set<Cell> known) {
+            this.known = known;
+        }
+
+        void add(int row, int col) {
+            if (size + 2 > positions.length) positions = Arrays.copyOf(positions, positions.length * 2);
+            positions[size++] = row;
+            positions[size++] = col;
+        }
+
+        /**
+         * Compara las referencias leídas con las que la celda ya tenía
+         */
+        void finish(CellStore store) {
+            HashSet<Cell> read = new HashSet<>();
+            for (int i = 0; i < size && !changed; i += 2) {
+                Cell cell = positions[i] < 0 ? ((ColumnarCellStore) store).findColumnCell(positions[i + 1]) : store.find(positions[i], positions[i + 1]);
+                if (cell == null || !known.contains(cell)) changed = true;
+                else read.add(cell);
+            }
+            if (read.size() != known.size()) changed = true;
+        }
+    }
+
+
     // Attributes
 
     /**
@@ -26,12 +78,12 @@ public class Sheet {
     /**
      * Representa el número máximo de filas que puede tener una hoja
      */
-    private final int maxRow = 255;
+    private final int maxRow = 1048576;
 
     /**
-     * Representa el número máximo de columnas que puede tener una hoja
+     * Representa el número máximo de columnas que puede tener una hoja (hasta la columna XFD)
      */
-    private final int maxColumn = 255;
+    private final int maxColumn = 16384;
 
     /**
      * Representa el tamaño por defecto de una hoja
@@ -39,15 +91,30 @@ public class Sheet {
     private final int sheetSize = 26;
 
     /**
-     * Representa el conjunto de celdas que tiene la hoja
+     * Representa el conjunto de celdas que tiene la hoja. Solo se guardan las celdas que se han escrito o referenciado
+     */
+    private final CellStore cjt_cells;
+
+    /**
+     * Representa el mismo almacén que cjt_cells si la hoja guarda los números por columnas, null si los guarda como celdas
      */
-    private final ArrayList<ArrayList<Cell>> cjt_cells;
+    private final ColumnarCellStore columnar;
 
     /**
      * Representa las referencias que hacen las celdas a otras al aplicar funciones con referencias
      */
     private final References references;
 
+    /**
+     * Representa el motor que recalcula las celdas afectadas por una modificación
+     */
+    private final RecalculationEngine engine;
+
+    /**
+     * Representa la última referencia cíclica encontrada al evaluar una fórmula, por ejemplo "A1 -> B2 -> A1", vacío si no se ha encontrado ninguna
+     */
+    private volatile String lastCycle = "";
+
     // Constructor
 
     /**
@@ -56,9 +123,10 @@ public class Sheet {
      */
     public Sheet(String name)  {
         this.name = name;
-        cjt_cells = new ArrayList<>();
+        cjt_cells = new SparseCellStore(sheetSize, sheetSize);
+        columnar = null;
         references = new References();
-        iniCells(sheetSize, sheetSize);
+        engine = new RecalculationEngine(this);
     }
 
     /**
@@ -66,29 +134,26 @@ public class Sheet {
      * @param name Nombre del documento.
      */
     public Sheet(String name, int rows, int columns) {
-        this.name = name;
-        cjt_cells = new ArrayList<>();
-        references = new References();
-        iniCells(rows,columns);
+        this(name, rows, columns, false);
     }
 
     /**
-     * Inicia la hoja con el número de filas y columnas especificado
-     * @param nRow Número de filas que tendrá la hoja.
-     * @param nCol Número de columnas que tendrá la hoja.
+     * Crea una hoja con el nombre y con el número de filas y columnas especificados, indicando cómo se guardan sus celdas.
+     * Las hojas por columnas guardan los números escritos como valor en arrays de double sin crear sus celdas, lo que ocupa mucha
+     * menos memoria en hojas con muchos datos numéricos, y las fórmulas leen sus rangos directamente de esos arrays
+     * @param name Nombre del documento.
+     * @param rows Número de filas de la hoja
+     * @param columns Número de columnas de la hoja
+     * @param columnar true para guardar los números por columnas, false para guardar cada celda por separado
      */
-    private void iniCells(int nRow, int nCol ) {
-        for (int i = 0; i < nRow; i++) {
-            ArrayList<Cell> aux = new ArrayList<>(nCol);
-            for (int j = 0; j < nCol; j++) {
-                aux.add(new Cell(nRow - i - 1, j));
-            }
-            cjt_cells.add(0, aux);
-        }
+    public Sheet(String name, int rows, int columns, boolean columnar) {
+        this.name = name;
+        this.columnar = columnar ? new ColumnarCellStore(rows, columns) : null;
+        cjt_cells = columnar ? this.columnar : new SparseCellStore(rows, columns);
+        references = new References();
+        engine = new RecalculationEngine(this);
     }
 
-
-
     //Getters
 
     /**
@@ -99,6 +164,22 @@ public class Sheet {
         return this.references;
     }
 
+    /**
+     * Retorna el motor que recalcula las celdas de la hoja, para configurar cuándo y dónde recalcula en paralelo
+     * @return RecalculationEngine de la hoja
+     */
+    public RecalculationEngine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * Retorna la última referencia cíclica encontrada al evaluar una fórmula de la hoja, para mostrarla en el mensaje de error
+     * @return String con el ciclo, por ejemplo "A1 -> B2 -> A1", vacío si no se ha encontrado ninguno
+     */
+    public String getLastCycle() {
+        return this.lastCycle;
+    }
+
     /**
      * Retorna el nombre de la hoja
      * @return Retorna el nombre actual de la hoja
@@ -107,19 +188,65 @@ public class Sheet {
 
     /**
      * Retorna el conjunto de celdas de la hoja de cálculo
-     * @return ArrayList de filas donde cada fila tiene un ArrayLists de celdas que representa las columnas
+     * @return Almacén con las celdas creadas de la hoja
+     */
+    public CellStore getCjt_cells() {return cjt_cells; }
+
+    /**
+     * Retorna el número de filas de la hoja
+     * @return int con el número de filas
+     */
+    public int getNRows() {
+        return cjt_cells.getNRows();
+    }
+
+    /**
+     * Retorna el número de columnas de la hoja
+     * @return int con el número de columnas
      */
-    public ArrayList<ArrayList<Cell>> getCjt_cells() {return cjt_cells; }
+    public int getNColumns() {
+        return cjt_cells.getNColumns();
+    }
 
 
     /**
-     * Retorna la celda de fila y columna indicadas
+     * Retorna la celda de fila y columna indicadas, creándola si todavía estaba vacía
      * @param r Número de fila de la cual se quiere obtener la celda
      * @param c Número de columna de la cual se quiere obtener la celda
      * @return Celda en la posición indicada
      */
     public Cell getCell(int r, int c) {
-        return cjt_cells.get(r).get(c);
+        return cjt_cells.get(r, c);
+    }
+
+    /**
+     * Retorna la celda de columna de una columna de una hoja por columnas, creándola si todavía no existe. Las fórmulas que leen
+     * los números de la columna sin crear sus celdas dependen de ella
+     * @param c Número de columna
+     * @return Celda de columna, que no está en ninguna fila
+     * @throws IllegalStateException Si la hoja no guarda los números por columnas
+     */
+    public Cell getColumnCell(int c) {
+        if (columnar == null) throw new IllegalStateException("La hoja no guarda los números por columnas");
+        return columnar.columnCell(c);
+    }
+
+    /**
+     * Retorna el contenido de la celda de fila y columna indicadas sin crear la celda si está vacía
+     * @param r Número de fila de la cual se quiere obtener el contenido
+     * @param c Número de columna de la cual se quiere obtener el contenido
+     * @return Contenido de la celda, un valor vacío si la celda no existe
+     */
+    public CellValueInterface getCellValue(int r, int c) {
+        return cjt_cells.value(r, c);
+    }
+
+    /**
+     * Indica si la hoja guarda los números por columnas
+     * @return true si los números escritos como valor se guardan en arrays por columnas
+     */
+    public boolean isColumnar() {
+        return this.columnar != null;
     }
 
     /**
@@ -148,7 +275,7 @@ public class Sheet {
      * @param v Valor que se que se quiere insertar en la celda
      */
     public void setCell(int r, int c, String v) {
-        cjt_cells.get(r).get(c).getCellValue().setValue(v);
+        cjt_cells.get(r, c).getCellValue().setValue(v);
     }
 
     /**
@@ -157,7 +284,7 @@ public class Sheet {
      * @param c Número de columna de la cual se quiere modificar la celda
      */
     public void setCell(int r, int c, CellValueInterface cell) {
-        cjt_cells.get(r).get(c).setCellValue(cell);
+        cjt_cells.get(r, c).setCellValue(cell);
     }
 
 
@@ -181,105 +308,164 @@ public class Sheet {
 
 
     // Pre: No hemos alcanzado maxRow rows, a esta entre 0 y el número de rows actual
-    // Post: Añade una fila en la fila a, actualizamos valor row de las celdas y las referencias
+    // Post: Añade una fila en la fila a; las celdas, las referencias y las fórmulas siguen apuntando a las mismas celdas
 
     /**
-     * Inserta una nueva fila vacía en la posición indicada, siempre y cuando no se supere el límite máximo de filas permitidas, actualiza los valores y referencias
+     * Inserta una nueva fila vacía en la posición indicada, siempre y cuando no se supere el límite máximo de filas permitidas.
+     * Las celdas y las referencias se guardan por identificador físico, así que solo cambia la correspondencia entre posiciones e identificadores;
+     * solo se recalculan las fórmulas con un rango que pasa a contener la fila nueva
      * @param a Posición en la que se quiere insertar la nueva fila
      */
     public void addRow(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        int size = cjt_cells.get(0).size();
-        for (int i = a; i < cjt_cells.size(); i++) {
-            for (int j = 0; j < size; j++) {
-                cjt_cells.get(i).get(j).setRow(cjt_cells.get(i).get(j).getRow() + 1);
-            }
-        }
-        ArrayList<Cell> aux = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            aux.add(new Cell(a, i));
-        }
-        cjt_cells.add(a, aux);
+        cjt_cells.insertRow(a);
+        if (a == 0) return;
+        //un rango que pasa a contener la fila nueva ya leía la fila anterior, o una celda de columna si guarda los números por columnas
+        ArrayList<Cell> read = lineCells(a - 1, true);
+        read.addAll(columnCells());
+        recalculateLine(spanningRanges(dependents(read), true, a, false));
+    }
+
 
-        //actualizamos las referencias y los valores
-        updateReferences(1, 1, a);
+    // Pre: rows <= maxRow, columns <= maxColumn
+    // Post: La hoja tiene como mínimo rows filas y columns columnas, actualiza los valores
+
+    /**
+     * Amplía la hoja añadiendo filas y columnas vacías al final hasta tener el tamaño indicado. Como no se desplaza ninguna celda,
+     * no hay que reescribir ninguna referencia y los valores se recalculan una sola vez
+     * @param rows Número mínimo de filas
+     * @param columns Número mínimo de columnas
+     */
+    public void expand(int rows, int columns) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        if (rows <= getNRows() && columns <= getNColumns()) return;
+        cjt_cells.ensureSize(rows, columns);
         updateValues();
     }
 
 
     //Pre: La fila a existe
-    //Post: Fila a eliminada, actualizamos valor row de las celdas y las referencias, actualiza los valores y referencias
+    //Post: Fila a eliminada con sus celdas, las fórmulas que la referenciaban dan #REF!, actualiza las referencias y los valores que dependían de la fila
 
     /**
-     * Borra la fila indicada en caso de que exista, siempre y cuando no sea la única fila de la hoja de cálculo, actualiza los valores y referencias
+     * Borra la fila indicada en caso de que exista, siempre y cuando no sea la única fila de la hoja de cálculo, actualiza los valores y referencias.
+     * Las fórmulas que referenciaban a una celda de la fila pasan a dar #REF!; solo se recalculan esas fórmulas y las que tienen un rango que contenía la fila.
+     * Un rango que acaba en la fila puede no haberla leído, así que se buscan entre todas las fórmulas del grafo, sin recorrer el resto de celdas
      * @param a Número de fila que se quiere borrar
      */
     public void deleteRow(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        //actualizamos las referencias
-        updateReferences(1, 2, a);
-        int size = cjt_cells.get(0).size();
-        references.rowDeleted(a);
-        for (int i = a + 1; i < cjt_cells.size(); i++) {
-            for (int j = 0; j < size; j++) {
-                cjt_cells.get(i).get(j).setRow(cjt_cells.get(i).get(j).getRow() - 1);
-            }
-        }
-
-        cjt_cells.remove(a);
-        //actualizamos los valores
-        updateValues();
-
-
+        ArrayList<Cell> removed = lineCells(a, true);
+        LinkedHashSet<Cell> affected = spanningRanges(references.getGraph().getReferencingCells(), true, a, true);
+        //las fórmulas de la propia fila se borran con ella
+        removed.forEach(affected::remove);
+        affected.addAll(references.rowDeleted(removed));
+        cjt_cells.deleteRow(a);
+        recalculateLine(affected);
     }
 
 
-    //Pre: No se ha alcanzado maxColumn columnas, a esta entre 0 y el número de columnas actual, actualiza los valores y referencias
-    //Post: Añade una columna en la columna a, actualizamos valor col de las celdas y las referencias
+    //Pre: No se ha alcanzado maxColumn columnas, a esta entre 0 y el número de columnas actual
+    //Post: Añade una columna en la columna a; las celdas, las referencias y las fórmulas siguen apuntando a las mismas celdas
 
     /**
-     * Inserta una nueva columna vacía en la posición indicada, siempre y cuando no se supere el límite máximo de columnas permitidas, actualiza los valores y referencias
+     * Inserta una nueva columna vacía en la posición indicada, siempre y cuando no se supere el límite máximo de columnas permitidas.
+     * Las celdas y las referencias se guardan por identificador físico, así que solo cambia la correspondencia entre posiciones e identificadores;
+     * solo se recalculan las fórmulas con un rango que pasa a contener la columna nueva
      * @param a Posición en la que se quiere insertar la nueva columna
      */
     public void addColumn(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-
-        int size = cjt_cells.size();
-        for (int i = a; i < cjt_cells.get(0).size(); i++) {
-            for (int j = 0; j < size; j++) {
-                cjt_cells.get(j).get(i).setColumn(cjt_cells.get(j).get(i).getColumn() + 1);
-            }
-        }
-        for (int i = 0; i < size; i++) {
-            cjt_cells.get(i).add(a, new Cell(i, a));
-        }
-        //actualizamos las referencias y los valores
-        updateReferences(2, 1, a);
-        updateValues();
+        cjt_cells.insertColumn(a);
+        if (a == 0) return;
+        ArrayList<Cell> read = lineCells(a - 1, false);
+        if (columnar != null && columnar.findColumnCell(a - 1) != null) read.add(columnar.findColumnCell(a - 1));
+        recalculateLine(spanningRanges(dependents(read), false, a, false));
     }
 
 
     //Pre: La columna a existe
-    //Post: Columna a eliminada, actualizamos valor col de las celdas y las referencias
+    //Post: Columna a eliminada con sus celdas, las fórmulas que la referenciaban dan #REF!, actualiza las referencias y los valores que dependían de la columna
 
     /**
-     * Borra la columna indicada en caso de que exista, siempre y cuando no sea la única columna de la hoja de cálculo, actualiza los valores y referencias
+     * Borra la columna indicada en caso de que exista, siempre y cuando no sea la única columna de la hoja de cálculo, actualiza los valores y referencias.
+     * Las fórmulas que referenciaban a una celda de la columna pasan a dar #REF!; solo se recalculan esas fórmulas y las que tienen un rango que contenía la columna
      * @param a Número de columna que se quiere borrar
      */
     public void deleteColumn(int a) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        //actualizamos las referencias
-        updateReferences(2, 2, a);
-        int size = cjt_cells.size();
-        references.columnDeleted(a);
-        for (int i = a+1; i < cjt_cells.get(0).size(); i++) {
-            for (int j = 0; j < size; j++) {
-                cjt_cells.get(j).get(i).setColumn(cjt_cells.get(j).get(i).getColumn() - 1);
-            }
+        ArrayList<Cell> removed = lineCells(a, false);
+        if (columnar != null && columnar.findColumnCell(a) != null) removed.add(columnar.findColumnCell(a));
+        LinkedHashSet<Cell> affected = spanningRanges(references.getGraph().getReferencingCells(), false, a, true);
+        removed.forEach(affected::remove);
+        affected.addAll(references.columnDeleted(removed));
+        cjt_cells.deleteColumn(a);
+        recalculateLine(affected);
+    }
+
+    /**
+     * Retorna las celdas guardadas de una fila o una columna, sin crear las que faltan
+     * @param line Posición de la fila o la columna
+     * @param row true si es una fila, false si es una columna
+     * @return ArrayList con las celdas que existen en la línea
+     */
+    private ArrayList<Cell> lineCells(int line, boolean row) {
+        ArrayList<Cell> cells = new ArrayList<>();
+        int n = row ? getNColumns() : getNRows();
+        for (int i = 0; i < n; i++) {
+            Cell cell = row ? cjt_cells.find(line, i) : cjt_cells.find(i, line);
+            if (cell != null) cells.add(cell);
         }
-        //Recorremos todas las rows y borramos la celda a de cada row
-        for (ArrayList<Cell> cjt_cell : cjt_cells) {
-            cjt_cell.remove(a);
+        return cells;
+    }
+
+    /**
+     * Retorna las celdas de columna que existen, vacío si la hoja no guarda los números por columnas
+     * @return ArrayList con las celdas de columna
+     */
+    private ArrayList<Cell> columnCells() {
+        ArrayList<Cell> cells = new ArrayList<>();
+        if (columnar == null) return cells;
+        for (int c = 0; c < getNColumns(); c++) {
+            Cell cell = columnar.findColumnCell(c);
+            if (cell != null) cells.add(cell);
         }
+        return cells;
+    }
 
-        //actualizamos los valores
-        updateValues();
+    /**
+     * Retorna las celdas que referencian a alguna de las celdas indicadas
+     * @param cells Celdas referenciadas
+     * @return Celdas que las referencian, sin repetir
+     */
+    private LinkedHashSet<Cell> dependents(Collection<Cell> cells) {
+        LinkedHashSet<Cell> dependents = new LinkedHashSet<>();
+        for (Cell cell : cells) dependents.addAll(references.getReferencesToCell(cell));
+        return dependents;
+    }
+
+    /**
+     * Busca entre las celdas indicadas las fórmulas con un rango que cubre la línea. Las fórmulas sin compilar se devuelven siempre,
+     * porque no se sabe qué rangos leen
+     * @param formulas Celdas entre las que se buscan los rangos
+     * @param row true si la línea es una fila, false si es una columna
+     * @param line Posición de la línea
+     * @param inclusive true para contar también los rangos que empiezan o acaban en la línea
+     * @return Celdas con una fórmula que cubre la línea, sin repetir
+     */
+    private LinkedHashSet<Cell> spanningRanges(Collection<Cell> formulas, boolean row, int line, boolean inclusive) {
+        LinkedHashSet<Cell> found = new LinkedHashSet<>();
+        for (Cell cell : formulas) {
+            if (!(cell.getCellValue() instanceof Function)) continue;
+            CompiledFormula formula = ((Function) cell.getCellValue()).getCompiledFormula();
+            if (formula == null || (row ? formula.spansRow(line, inclusive) : formula.spansColumn(line, inclusive))) found.add(cell);
+        }
+        return found;
+    }
+
+    /**
+     * Vuelve a evaluar las fórmulas afectadas por insertar o borrar una línea y actualiza las celdas que dependen de ellas
+     * @param affected Celdas cuya fórmula hay que volver a evaluar
+     */
+    private void recalculateLine(Collection<Cell> affected) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        if (affected.isEmpty()) return;
+        for (Cell cell : affected) recalculateCell(cell);
+        recalculate(affected);
     }
 
 
@@ -395,7 +581,7 @@ public class Sheet {
         int n = 0;
         for (int i = firstRow; i < lastRow + 1; i++) {
             for (int j = firstColumn; j < lastColumn + 1; j++) {
-                cjt_cells.get(i).get(j).setCellValue(aux.get(n).getCellValue());    // no deberia cambiar row y col de cjt_cells
+                getCell(i, j).setCellValue(aux.get(n).getCellValue());    // no deberia cambiar row y col de cjt_cells
                 ++n;
             }
         }
@@ -451,426 +637,425 @@ public class Sheet {
     }
 
     /**
-     * Retorna los parámetros de una función aplicada a una celda o indicadores de errores para saber que ha ocurrido
-     * @param input String con la función que se quiere aplicar en una celda
+     * Retorna los parámetros de una función aplicada a una celda o indicadores de errores para saber que ha ocurrido.
+     * Solo lee los valores de las celdas referenciadas: la estructura de la fórmula ya está compilada
+     * @param formula Fórmula compilada que se quiere aplicar en una celda
      * @param cell Celda en la cual se quiere aplicar la función
+     * @param known Celdas que la celda ya referenciaba antes de volver a evaluarla, que no hace falta comprobar si crean un ciclo
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
      * @return ArrayList con los parámetros con los cuales se quiere aplicar la función a la celda
      */
-    private ArrayList<Parameter> parameterConverter(String input, Cell cell) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        ArrayList<Parameter> aux = new ArrayList<>();
-        String function = "nofunction";
-        StringBuilder func = new StringBuilder();
+    private ArrayList<Parameter> parameterConverter(CompiledFormula formula, Cell cell, Set<Cell> known, Evaluation pending) {
+        if (formula.getKind() == CompiledFormula.Kind.ERROR) return errorParameterConverter(formula.getError());
+        CycleDetector cycles = new CycleDetector(references.getGraph(), cell, known);
+        if (formula.getKind() == CompiledFormula.Kind.ARITHMETIC) {
+            try {
+                return arithmeticConverter(formula, cell, cycles, pending);
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                return errorParameterConverter("Ref error");
+            }
+        }
         try {
-            if (input.charAt(0) == '=') {
-                input = stringTrimer(input);
-                if (input.contains("#REF!")) {
-                    return errorParameterConverter("Ref error");
-                } else {
-                    ArrayDoubleP arrayDoublep = new ArrayDoubleP();
-                    boolean functionWritten = false;
-                    StringBuilder parameter = new StringBuilder();
-                    if (Character.isLowerCase(input.charAt(1))) {
-                        boolean correct = true;
-                        for (int i = 1; i < input.length(); i++) {
-                            if (input.charAt(i) != '(' && !functionWritten) func.append(input.charAt(i));
-                            else if (input.charAt(i) == '(') {
-                                function = String.valueOf(func);
-                                functionWritten = true;
-                                StringP functionParameter = new StringP();
-                                functionParameter.addString(function);
-                                aux.add(functionParameter);
-                                try {
-                                    GetFunctionFactory.getInstance(function);
-                                } catch (NullPointerException e) {
-                                    return errorParameterConverter("incorrectfunction");
-                                }
-
-                            } else {
-                                if (input.charAt(i) == '[') {
-                                    i += 1;
-                                    while (i < input.length() && input.charAt(i) != ']') {
-                                        parameter.append(input.charAt(i));
-                                        i++;
-                                    }
-                                    StringP stringp = new StringP();
-                                    stringp.addString(String.valueOf(parameter));
-                                    aux.add(stringp);
-                                    parameter = new StringBuilder();
-                                } else if (input.charAt(i) == ';' || input.charAt(i) == ')') {
-                                    if (parameter.length() == 0) ;      // para evitar error de string
-                                    else {
-                                        try {
-                                            if (arrayDoublep.getArray().size() >= 1) {      // estamos en un arraylist
-                                                arrayDoublep.addDouble(Double.parseDouble(String.valueOf(parameter)));
-                                                aux.add(arrayDoublep);
-                                                arrayDoublep = new ArrayDoubleP();
-                                            } else {
-                                                DoubleP doublep = new DoubleP();
-                                                doublep.addDouble(Double.parseDouble(String.valueOf(parameter)));
-                                                aux.add(doublep);
-                                            }
-                                        } catch (NumberFormatException e) {
-                                            return errorParameterConverter(function + "N");
-                                        }
-                                        parameter = new StringBuilder();
-                                    }
-                                } else if (input.charAt(i) == ' ') {
-                                } else if (input.charAt(i) == ',') {
-                                    try {
-                                        arrayDoublep.addDouble(Double.parseDouble(String.valueOf(parameter)));
-                                        parameter = new StringBuilder();
-                                    } catch (NumberFormatException e) {
-                                        return errorParameterConverter(function + "N");
-                                    }
-                                } else if (Character.isUpperCase(input.charAt(i))) {
-                                    if (parameter.length() != 0) {
-                                        return errorParameterConverter(function + "N");
-                                    }
-                                    StringBuilder referenciaLetter = new StringBuilder();
-                                    int row;
-                                    int col;
-                                    try {
-                                        while (!Character.isDigit(input.charAt(i))) {
-                                            referenciaLetter.append(input.charAt(i));
-                                            i++;
-                                        }
-                                        col = letterToNumber(String.valueOf(referenciaLetter));
-
-                                        row = 0;
-                                        while (input.charAt(i) != ')' && input.charAt(i) != ';' && input.charAt(i) != ',' && input.charAt(i) != ':') {
-                                            row *= 10;
-                                            row += Integer.parseInt(String.valueOf(input.charAt(i)));
-                                            i++;
-                                        }
-                                        if (row < 0 || row >= cjt_cells.size() || col < 0 || col >= cjt_cells.get(0).size() || references.cyclicReference(cell, getCell(row, col)) || getCell(row, col) == cell) {
-                                            return errorParameterConverter(function + "R");
-                                        }
-                                    } catch (StringIndexOutOfBoundsException | NumberFormatException e) {
-                                        return errorParameterConverter(function + "R");
-                                    }
-
-                                    double valorReferencia = 0;
-                                    String valorReferenciaS = "";
-                                    boolean isString = false;
-                                    setReferences(getCell(row, col), cell);
-                                    try {
-                                        valorReferencia = Double.parseDouble(getCell(row, col).getCellValue().getValue()); //get value
-
-                                    } catch (NumberFormatException e) {
-                                        valorReferenciaS = getCell(row, col).getCellValue().getValue();
-                                        isString = true;
-                                    }
-
-                                    if (input.charAt(i) == ',') {
-                                        if (isString) {
-                                            correct = false;
-                                        } else arrayDoublep.addDouble(valorReferencia);
-
-                                    } else if (input.charAt(i) == ';' || input.charAt(i) == ')') {
-                                        if (arrayDoublep.getArray().size() >= 1) {      // estamos en un arraylist
-                                            if (isString) {
-                                                correct = false;
-                                            } else {
-                                                arrayDoublep.addDouble(valorReferencia);
-                                                aux.add(arrayDoublep);
-                                                arrayDoublep = new ArrayDoubleP();
-                                            }
-                                        } else {
-                                            if (!isString) {
-                                                DoubleP doublep = new DoubleP();
-                                                doublep.addDouble(valorReferencia);
-                                                aux.add(doublep);
-                                            } else {
-                                                StringP stringp = new StringP();
-                                                stringp.addString(valorReferenciaS);
-                                                aux.add(stringp);
-                                            }
-                                        }
-                                    } else if (input.charAt(i) == ':') {
-
-                                        i++;
-                                        StringBuilder referenciaLetter2 = new StringBuilder();
-                                        int row2;
-                                        int col2;
-                                        try {
-                                            while (!Character.isDigit(input.charAt(i))) {
-                                                referenciaLetter2.append(input.charAt(i));
-                                                i++;
-                                            }
-                                            col2 = letterToNumber(String.valueOf(referenciaLetter2));
-                                            row2 = 0;
-                                            while (input.charAt(i) != ')' && input.charAt(i) != ';' && input.charAt(i) != ',') {
-                                                row2 *= 10;
-                                                row2 += Integer.parseInt(String.valueOf(input.charAt(i)));
-                                                i++;
-                                            }
-                                            if (row2 < 0 || row2 >= cjt_cells.size() || col2 < 0 || col2 >= cjt_cells.get(0).size() || references.cyclicReference(cell, getCell(row, col)) || getCell(row, col) == cell) {
-                                                return errorParameterConverter(function + "R");
-                                            }
-                                        } catch (StringIndexOutOfBoundsException | NumberFormatException e) {
-                                            return errorParameterConverter(function + "R");
-                                        }
-
-                                        try {
-                                            if (row == row2 && col == col2) {
-                                                DoubleP doublep = new DoubleP();
-                                                setReferences(getCell(row, col), cell);
-                                                double valorReferencia2 = Double.parseDouble(getCell(row, col).getCellValue().getValue());
-                                                doublep.addDouble(valorReferencia2);
-
-                                            } else {
-                                                if (row2 > row || col2 > col) {
-                                                    if (row == row2) {
-                                                        for (int i1 = col; i1 <= col2; i1++) {
-                                                            setReferences(getCell(row, i1), cell);
-                                                            double valorReferencia2 = Double.parseDouble(getCell(row, i1).getCellValue().getValue()); //get value
-                                                            arrayDoublep.addDouble(valorReferencia2);
-                                                        }
-                                                    } else if (col == col2) {
-                                                        for (int i1 = row; i1 <= row2; i1++) {
-                                                            setReferences(getCell(i1, col), cell);
-                                                            double valorReferencia2 = Double.parseDouble(getCell(i1, col).getCellValue().getValue()); //get value
-                                                            arrayDoublep.addDouble(valorReferencia2);
-
-                                                        }
-                                                    } else {
-
-                                                        for (int i1 = row; i1 <= row2; i1++) {
-                                                            for (int j1 = col; j1 <= col2; j1++) {
-                                                                setReferences(getCell(i1, j1), cell);
-                                                                double valorReferencia2 = Double.parseDouble(getCell(i1, j1).getCellValue().getValue()); //get value
-                                                                arrayDoublep.addDouble(valorReferencia2);
-                                                            }
-                                                        }
-                                                    }
-                                                } else {
-                                                    if (row == row2) {
-                                                        for (int i1 = col2; i1 <= col; i1++) {
-                                                            setReferences(getCell(row, i1), cell);
-                                                            double valorReferencia2 = Double.parseDouble(getCell(row, i1).getCellValue().getValue()); //get value
-                                                            arrayDoublep.addDouble(valorReferencia2);
-                                                        }
-                                                    } else if (col == col2) {
-                                                        for (int i1 = row2; i1 <= row; i1++) {
-                                                            setReferences(getCell(i1, col), cell);
-                                                            double valorReferencia2 = Double.parseDouble(getCell(i1, col).getCellValue().getValue()); //get value
-                                                            arrayDoublep.addDouble(valorReferencia2);
-
-                                                        }
-                                                    } else {
-                                                        for (int i1 = row2; i1 <= row; i1++) {
-                                                            for (int j1 = col2; j1 <= col; j1++) {
-                                                                setReferences(getCell(i1, j1), cell);
-                                                                double valorReferencia2 = Double.parseDouble(getCell(i1, j1).getCellValue().getValue()); //get value
-                                                                arrayDoublep.addDouble(valorReferencia2);
-                                                            }
-                                                        }
-                                                    }
-                                                }
-
-                                                if (input.charAt(i) == ',') {
-                                                } else if (input.charAt(i) == ';' || input.charAt(i) == ')') {
-                                                    aux.add(arrayDoublep);
-                                                    arrayDoublep = new ArrayDoubleP();
-                                                }
-                                            }
-                                        } catch (NumberFormatException e) {
-                                            correct = false;
-                                        }
-                                    }
-                                } else {
-                                    parameter.append(input.charAt(i));
-                                }
-                            }
-                        }
-                        if (!correct) {
-                            aux = new ArrayList<>();
-                            StringP functionParameter = new StringP();
-                            functionParameter.addString(function + "R");
-                            aux.add(functionParameter);
+            return functionConverter(formula, cell, cycles, pending);
+        } catch (StringIndexOutOfBoundsException e) {
+            return errorParameterConverter("Ref error");
+        }
+    }
+
+    /**
+     * Retorna los parámetros de una llamada a función aplicada a una celda o indicadores de errores para saber que ha ocurrido
+     * @param formula Fórmula compilada de tipo FUNCTION
+     * @param cell Celda en la cual se quiere aplicar la función
+     * @param cycles Comprobación de referencias cíclicas de la celda
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     * @return ArrayList con los parámetros con los cuales se quiere aplicar la función a la celda
+     */
+    private ArrayList<Parameter> functionConverter(CompiledFormula formula, Cell cell, CycleDetector cycles, Evaluation pending) {
+
+        String function = formula.getFunction();
+        ArrayList<Parameter> aux = new ArrayList<>();
+        ArrayDoubleP arrayDoublep = new ArrayDoubleP();
+        boolean correct = true;
+        for (CompiledFormula.Operand operand : formula.getOperands()) {
+            switch (operand.type) {
+                case ERROR:
+                    return errorParameterConverter(operand.text);
+                case NAME:
+                case TEXT: {
+                    StringP stringp = new StringP();
+                    stringp.addString(operand.text);
+                    aux.add(stringp);
+                    break;
+                }
+                case NUMBER:
+                    if (operand.delimiter == ',') arrayDoublep.addDouble(operand.number);
+                    else if (arrayDoublep.size() >= 1) {      // estamos en un arraylist
+                        arrayDoublep.addDouble(operand.number);
+                        aux.add(arrayDoublep);
+                        arrayDoublep = new ArrayDoubleP();
+                    } else {
+                        DoubleP doublep = new DoubleP();
+                        doublep.addDouble(operand.number);
+                        aux.add(doublep);
+                    }
+                    break;
+                case REF: {
+                    int row = operand.ref.row(), col = operand.ref.col();
+                    if (!validReference(row, col, cell, cycles)) return errorParameterConverter(function + "R");
+                    TypedValue valor = referenceValue(row, col, cell, pending);
+                    double valorReferencia = valor.getNumber();
+                    boolean isString = !valor.isNumber();
+
+                    if (operand.delimiter == ',') {
+                        if (isString) correct = false;
+                        else arrayDoublep.addDouble(valorReferencia);
+                    } else if (arrayDoublep.size() >= 1) {      // estamos en un arraylist
+                        if (isString) correct = false;
+                        else {
+                            arrayDoublep.addDouble(valorReferencia);
+                            aux.add(arrayDoublep);
+                            arrayDoublep = new ArrayDoubleP();
                         }
+                    } else if (!isString) {
+                        DoubleP doublep = new DoubleP();
+                        doublep.addDouble(valorReferencia);
+                        aux.add(doublep);
+                    } else {
+                        StringP stringp = new StringP();
+                        stringp.addString(valor.toString());
+                        aux.add(stringp);
+                    }
+                    break;
+                }
+                case RANGE: {
+                    int row = operand.ref.row(), col = operand.ref.col();
+                    if (!validReference(row, col, cell, cycles)) return errorParameterConverter(function + "R");
+                    TypedValue firstValue = referenceValue(row, col, cell, pending);
+                    if (!operand.validEnd) return errorParameterConverter(function + "R");
+                    int row2 = operand.ref2.row(), col2 = operand.ref2.col();
+                    if (row2 < 0 || row2 >= getNRows() || col2 < 0 || col2 >= getNColumns()) {
+                        return errorParameterConverter(function + "R");
+                    }
+                    if (row == row2 && col == col2) {
+                        if (!firstValue.isNumber()) correct = false;
                     }
                     else {
-                        try {
-                            double res = 0.0;
-                            StringP stringP = new StringP();
-                            boolean isNumber = true;
-                            boolean isOperation = false;
-                            for (int i = 1; i < input.length(); i++) {
-                                if (input.charAt(i) == '+') {
-                                    isOperation = true;
-                                    String nextVal = nextVal(input, i, cell);
-                                    if (nextVal.equals("Error")) {
-                                        aux = new ArrayList<>();
-                                        stringP.addString("Ref error");
-                                        aux.add(stringP);
-                                        return aux;
-                                    } else if (!isNumeric(nextVal)) {
-                                        stringP.addString(nextVal);
-                                        isNumber = false;
-                                        break;
-
-                                    } else {
-                                        res += Double.parseDouble(nextVal);
-                                    }
-                                } else if (input.charAt(i) == '-') {
-                                    isOperation = true;
-                                    String nextVal = nextVal(input, i, cell);
-                                    if (nextVal.equals("Error")) {
-                                        aux = new ArrayList<>();
-                                        stringP.addString("Ref error");
-                                        aux.add(stringP);
-                                        return aux;
-                                    } else if (!isNumeric(nextVal)) {
-                                        stringP.addString(nextVal);
-                                        isNumber = false;
-                                        break;
-                                    } else {
-                                        res -= Double.parseDouble(nextVal);
-                                    }
-
-                                } else if (input.charAt(i) == '*') {
-                                    isOperation = true;
-                                    String nextVal = nextVal(input, i, cell);
-                                    if (nextVal.equals("Error")) {
-                                        aux = new ArrayList<>();
-                                        stringP.addString("Ref error");
-                                        aux.add(stringP);
-                                        return aux;
-                                    } else if (!isNumeric(nextVal)) {
-                                        stringP.addString(nextVal);
-                                        isNumber = false;
-                                        break;
-                                    } else {
-                                        res *= Double.parseDouble(nextVal);
-                                    }
-                                } else if (input.charAt(i) == '/') {
-                                    isOperation = true;
-                                    String nextVal = nextVal(input, i, cell);
-                                    if (nextVal.equals("Error")) {
-                                        aux = new ArrayList<>();
-                                        stringP.addString("Ref error");
-                                        aux.add(stringP);
-                                        return aux;
-                                    } else if (!isNumeric(nextVal)) {
-                                        stringP.addString(nextVal);
-                                        isNumber = false;
-                                        break;
-
-                                    } else {
-                                        res /= Double.parseDouble(nextVal);
-                                    }
-                                } else if (i == 1) {
-                                    String nextVal = nextVal(input, 1, cell);
-                                    if (nextVal.equals("Error")) {
-                                        aux = new ArrayList<>();
-                                        stringP.addString("Ref error");
-                                        aux.add(stringP);
-                                        return aux;
-                                    } else if (!isNumeric(nextVal)) {
-                                        stringP.addString(nextVal);
-                                        isNumber = false;
-                                        if (input.contains("+") || input.contains("-") || input.contains("*") || input.contains("/")) {
-                                            isOperation = true;
-                                        }
-                                        break;
-                                    } else {
-                                        res = Double.parseDouble(nextVal);
-                                    }
-                                }
-                            }
-                            StringP functionParameter = new StringP();
-                            functionParameter.addString("identity");
-                            aux.add(functionParameter);
-                            if(isNumber) {
-                                String resString = Double.toString(res);
-                                stringP.addString(resString);
-                            }
-                            else if (isOperation) {
-                                aux = new ArrayList<>();
-                                stringP.addString("Ref error");
-                                aux.add(stringP);
-                                return aux;
-                            }
-                            aux.add(stringP);
-                            return aux;
-                        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
-                            aux = new ArrayList<>();
-                            StringP stringP = new StringP();
-                            stringP.addString("Ref error");
-                            aux.add(stringP);
-                            return aux;
+                        boolean forward = row2 > row || col2 > col;
+                        int firstRow = forward ? row : row2, lastRow = forward ? row2 : row;
+                        int firstCol = forward ? col : col2, lastCol = forward ? col2 : col;
+                        Cell cyclic = cycles.findInRange(cjt_cells, firstRow, lastRow, firstCol, lastCol);
+                        if (cyclic != null) {
+                            lastCycle = CycleDetector.describe(cycles.cyclePath(cyclic));
+                            return errorParameterConverter(function + "R");
+                        }
+                        boolean numeric = addRange(arrayDoublep, firstRow, lastRow, firstCol, lastCol, cell, pending);
+                        if (!numeric) correct = false;
+                        else if (operand.delimiter != ',') {
+                            aux.add(arrayDoublep);
+                            arrayDoublep = new ArrayDoubleP();
                         }
                     }
+                    break;
                 }
-            } else {
-                StringP stringP = new StringP();
-                stringP.addString(function);
-                aux.add(stringP);
-                stringP = new StringP();
-                stringP.addString(input);
-                aux.add(stringP);
-                return aux;
             }
         }
-        catch(StringIndexOutOfBoundsException e){
-            return errorParameterConverter("Ref error");
+        if (!correct) aux = errorParameterConverter(function + "R");
+        if (aux.size() == 0) aux = errorParameterConverter("incorrectfunction");
+        if (!formula.isClosed() || aux.size() == 1) {
+            if (!function.equals("nofunction")) return errorParameterConverter(function + "N");
+            else return errorParameterConverter("incorrectfunction");
         }
+        return aux;
+    }
 
-
-        if (aux.size() == 0) {
-                StringP falseFunction = new StringP();
-                falseFunction.addString("incorrectfunction");
-                aux.add(falseFunction);
-        }
-        if (input.charAt(input.length() - 1) != ')' || aux.size() == 1) {
-            aux = new ArrayList<>();
-            StringP functionParameter = new StringP();
-            if (!function.equals("nofunction")) {
-                functionParameter.addString(function + "N");
-                aux.add(functionParameter);
+    /**
+     * Añade al array los valores de las celdas de un rango, recorriéndolo por filas, y guarda las referencias a cada una de ellas
+     * @param arrayDoublep Array donde se añaden los valores
+     * @param firstRow Primera fila del rango
+     * @param lastRow Última fila del rango
+     * @param firstCol Primera columna del rango
+     * @param lastCol Última columna del rango
+     * @param cell Celda que referencia al rango
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     * @return true si todas las celdas del rango tienen un valor numérico, false si se ha encontrado alguna que no lo tiene
+     */
+    private boolean addRange(ArrayDoubleP arrayDoublep, int firstRow, int lastRow, int firstCol, int lastCol, Cell cell, Evaluation pending) {
+        if (columnar != null && firstCol <= lastCol) return addColumnarRange(arrayDoublep, firstRow, lastRow, firstCol, lastCol, cell, pending);
+        for (int i1 = firstRow; i1 <= lastRow; i1++) {
+            for (int j1 = firstCol; j1 <= lastCol; j1++) {
+                TypedValue valor = referenceValue(i1, j1, cell, pending);
+                if (!valor.isNumber()) return false;
+                arrayDoublep.addDouble(valor.getNumber());
             }
+        }
+        return true;
+    }
+
+    /**
+     * Añade al array los valores de un rango de una hoja por columnas sin leerlos, si todas las celdas del rango tienen un valor numérico:
+     * los estadísticos de los números sin celda salen del árbol de cada columna y solo se leen una a una las celdas del rango, que se
+     * referencian por filas, y después las celdas de columna de las columnas con algún número sin celda. Los rangos de una columna
+     * pueden además dar su árbol de orden. Si alguna posición del rango no es numérica, el rango se recorre entero como antes, para que
+     * la fórmula guarde las mismas referencias
+     * @param arrayDoublep Array donde se añaden los valores
+     * @param firstRow Primera fila del rango
+     * @param lastRow Última fila del rango
+     * @param firstCol Primera columna del rango
+     * @param lastCol Última columna del rango
+     * @param cell Celda que referencia al rango
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     * @return true si todas las celdas del rango tienen un valor numérico, false si se ha encontrado alguna que no lo tiene
+     */
+    private boolean addColumnarRange(ArrayDoubleP arrayDoublep, int firstRow, int lastRow, int firstCol, int lastCol, Cell cell, Evaluation pending) {
+        Statistics statistics = new Statistics();
+        boolean[] read = new boolean[lastCol - firstCol + 1];
+        ArrayList<Integer> cellRows = new ArrayList<>();
+        ArrayList<Pair> cellPositions = new ArrayList<>();
+        boolean numeric = true;
+        for (int j1 = firstCol; numeric && j1 <= lastCol; j1++) {
+            cellRows.clear();
+            Statistics column = columnar.summarize(j1, firstRow, lastRow, cellRows);
+            if (column == null) numeric = false;
             else {
-                functionParameter.addString("incorrectfunction");
-                aux.add(functionParameter);
+                statistics.merge(column);
+                read[j1 - firstCol] = column.getCount() > 0;
+                for (int i1 : cellRows) {
+                    if (!cjt_cells.typedValue(i1, j1).isNumber()) numeric = false;
+                    cellPositions.add(new Pair(i1, j1));
+                }
             }
-            return aux;
         }
-        return aux;
+        if (!numeric) {
+            if (firstCol == lastCol) return scanColumnRange(arrayDoublep, firstRow, lastRow, firstCol, cell, pending);
+            return scanColumnarRange(arrayDoublep, firstRow, lastRow, firstCol, lastCol, cell, pending);
+        }
+        if (firstCol < lastCol) cellPositions.sort(Comparator.comparingInt(Pair::getX).thenComparingInt(Pair::getY));
+        double[] cellValues = new double[cellPositions.size()];
+        for (int k = 0; k < cellValues.length; k++) {
+            Pair position = cellPositions.get(k);
+            cellValues[k] = referenceValue(position.getX(), position.getY(), cell, pending).getNumber();
+            statistics.add(cellValues[k]);
+        }
+        for (int j1 = firstCol; j1 <= lastCol; j1++) {
+            if (read[j1 - firstCol]) columnReference(j1, cell, pending);
+        }
+        // los valores se leen al pedirlos, que puede ser después de insertar o borrar líneas, así que el rango se guarda por identificadores
+        SheetIndex index = cjt_cells.getIndex();
+        int[] ids = {index.physicalRow(firstRow), index.physicalRow(lastRow), index.physicalColumn(firstCol), index.physicalColumn(lastCol)};
+        if (firstCol < lastCol) arrayDoublep.addRange(statistics, out -> readNumbers(ids, out));
+        else {
+            // el rango de una columna puede tener árbol de orden, que se actualiza con los valores de sus celdas
+            int[] rowIds = new int[cellRows.size()];
+            for (int k = 0; k < rowIds.length; k++) rowIds[k] = index.physicalRow(cellRows.get(k));
+            arrayDoublep.addRange(statistics, out -> readNumbers(ids, out), () -> orderStatistics(ids, rowIds, cellValues));
+        }
+        return true;
+    }
 
+    /**
+     * Lee los valores de un rango guardado por los identificadores de sus extremos. Si se ha borrado un extremo no se lee nada: la fórmula
+     * que lo lee ya está pendiente de volver a evaluarse
+     * @param ids Identificadores de la primera y la última fila y de la primera y la última columna
+     * @param out Destino de los valores
+     */
+    private void readNumbers(int[] ids, DoubleConsumer out) {
+        SheetIndex index = cjt_cells.getIndex();
+        int firstRow = index.logicalRow(ids[0]), lastRow = index.logicalRow(ids[1]);
+        int firstCol = index.logicalColumn(ids[2]), lastCol = index.logicalColumn(ids[3]);
+        if (firstRow < 0 || lastRow < 0 || firstCol < 0 || lastCol < 0) return;
+        columnar.readNumbers(firstRow, lastRow, firstCol, lastCol, out);
+    }
 
+    /**
+     * Retorna el árbol de orden de un rango de una columna guardado por identificadores, como readNumbers
+     * @param ids Identificadores de los extremos del rango
+     * @param rowIds Identificadores de las filas del rango que tienen celda
+     * @param cellValues Valores de esas celdas
+     * @return Árbol de orden del rango, null si no tiene o si se ha borrado alguna de sus filas
+     */
+    private OrderStatistics orderStatistics(int[] ids, int[] rowIds, double[] cellValues) {
+        SheetIndex index = cjt_cells.getIndex();
+        int firstRow = index.logicalRow(ids[0]), lastRow = index.logicalRow(ids[1]), col = index.logicalColumn(ids[2]);
+        if (firstRow < 0 || lastRow < 0 || col < 0) return null;
+        int[] rows = new int[rowIds.length];
+        for (int k = 0; k < rows.length; k++) {
+            rows[k] = index.logicalRow(rowIds[k]);
+            if (rows[k] < 0) return null;
+        }
+        return columnar.orderStatistics(col, firstRow, lastRow, rows, cellValues);
     }
 
-    private String nextVal(String input, int pos, Cell cell) {
-        StringBuilder sB = new StringBuilder();
-        if(pos != 1) ++pos;
-        if(Character.isUpperCase(input.charAt(pos))) {
-            int iAux = pos;
-            while(pos < input.length() && input.charAt(pos) != '+' && input.charAt(pos) != '-' && input.charAt(pos) != '*' && input.charAt(pos) != '/') ++pos;
-            String ref = input.substring(iAux, pos);
-            Pair pos1 = getReferencePos(ref);
-            if (pos1.getX() < 0 || pos1.getX() >= cjt_cells.size() || pos1.getY() < 0 || pos1.getY() >= cjt_cells.get(0).size() ||  references.cyclicReference(cell, getCell(pos1.getX(), pos1.getY())) || getCell(pos1.getX(), pos1.getY()) == cell) {
-                return "Error";
+    /**
+     * Añade al array los valores de un rango de una sola columna de una hoja por columnas. Los números sin celda se leen seguidos
+     * de los arrays de la columna y en lugar de referenciar cada celda se referencia la celda de columna
+     * @param arrayDoublep Array donde se añaden los valores
+     * @param firstRow Primera fila del rango
+     * @param lastRow Última fila del rango
+     * @param col Columna del rango
+     * @param cell Celda que referencia al rango
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     * @return true si todas las celdas del rango tienen un valor numérico, false si se ha encontrado alguna que no lo tiene
+     */
+    private boolean scanColumnRange(ArrayDoubleP arrayDoublep, int firstRow, int lastRow, int col, Cell cell, Evaluation pending) {
+        boolean read = false;
+        boolean numeric = true;
+        int i = firstRow;
+        while (numeric && i <= lastRow) {
+            int n = columnar.readColumn(col, i, lastRow, arrayDoublep::addDouble);
+            if (n > 0) {
+                read = true;
+                i += n;
+            }
+            else if (cjt_cells.find(i, col) != null) {
+                TypedValue valor = referenceValue(i, col, cell, pending);
+                if (!valor.isNumber()) numeric = false;
+                else arrayDoublep.addDouble(valor.getNumber());
+                ++i;
+            }
+            else {
+                // una celda vacía también depende de la columna: si se escribe, la fórmula se vuelve a evaluar
+                read = true;
+                numeric = false;
             }
-            setReferences(getCell(pos1.getX(), pos1.getY()), cell);
-            return getCell(pos1.getX(), pos1.getY()).getCellValue().getValue();
         }
-        else {
-            while (pos < input.length() && input.charAt(pos) != '+' && input.charAt(pos) != '-' && input.charAt(pos) != '*' && input.charAt(pos) != '/') {
-                sB.append(input.charAt(pos));
-                ++pos;
+        if (read) columnReference(col, cell, pending);
+        return numeric;
+    }
+
+    /**
+     * Añade al array los valores de un rango de varias columnas de una hoja por columnas, recorriéndolo por filas. Los números sin celda
+     * y las celdas vacías no se referencian una a una: se referencia la celda de columna de sus columnas
+     * @param arrayDoublep Array donde se añaden los valores
+     * @param firstRow Primera fila del rango
+     * @param lastRow Última fila del rango
+     * @param firstCol Primera columna del rango
+     * @param lastCol Última columna del rango
+     * @param cell Celda que referencia al rango
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     * @return true si todas las celdas del rango tienen un valor numérico, false si se ha encontrado alguna que no lo tiene
+     */
+    private boolean scanColumnarRange(ArrayDoubleP arrayDoublep, int firstRow, int lastRow, int firstCol, int lastCol, Cell cell, Evaluation pending) {
+        boolean[] read = new boolean[lastCol - firstCol + 1];
+        boolean numeric = true;
+        for (int i1 = firstRow; numeric && i1 <= lastRow; i1++) {
+            for (int j1 = firstCol; numeric && j1 <= lastCol; j1++) {
+                if (cjt_cells.find(i1, j1) != null) {
+                    TypedValue valor = referenceValue(i1, j1, cell, pending);
+                    if (!valor.isNumber()) numeric = false;
+                    else arrayDoublep.addDouble(valor.getNumber());
+                }
+                else {
+                    read[j1 - firstCol] = true;
+                    if (!columnar.hasNumber(i1, j1)) numeric = false;
+                    else arrayDoublep.addDouble(columnar.getNumber(i1, j1));
+                }
             }
         }
-        return sB.toString();
+        for (int j1 = firstCol; j1 <= lastCol; j1++) {
+            if (read[j1 - firstCol]) columnReference(j1, cell, pending);
+        }
+        return numeric;
     }
 
-    private boolean isNumeric(String str) {
-        if (str == null) {
-            return false;
+    /**
+     * Guarda la referencia de una celda a la celda de columna de una columna de una hoja por columnas
+     * @param col Columna
+     * @param cell Celda que hace la referencia
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     */
+    private void columnReference(int col, Cell cell, Evaluation pending) {
+        if (pending == null) setReferences(columnar.columnCell(col), cell);
+        else pending.add(-1, col);
+    }
+
+    /**
+     * Guarda la referencia de una celda a otra y retorna el valor tipado de la celda referenciada, sin pasar por su texto.
+     * Si la evaluación guarda las referencias al acabar, no modifica ni el grafo ni las celdas de la hoja
+     * @param row Fila de la celda referenciada
+     * @param col Columna de la celda referenciada
+     * @param cell Celda que hace la referencia
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     * @return Valor tipado de la celda referenciada
+     */
+    private TypedValue referenceValue(int row, int col, Cell cell, Evaluation pending) {
+        if (pending == null) {
+            setReferences(getCell(row, col), cell);
+            return getCell(row, col).getCellValue().getTypedValue();
         }
-        try {
-            double d = Double.parseDouble(str);
-        } catch (NumberFormatException nfe) {
+        pending.add(row, col);
+        return cjt_cells.typedValue(row, col);
+    }
+
+    /**
+     * Retorna los parámetros de una operación aritmética aplicada a una celda, que se evalúa de izquierda a derecha como una función identity
+     * @param formula Fórmula compilada de tipo ARITHMETIC
+     * @param cell Celda en la cual se quiere aplicar la operación
+     * @param cycles Comprobación de referencias cíclicas de la celda
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     * @return ArrayList con los parámetros de la función identity, o el error "Ref error"
+     */
+    private ArrayList<Parameter> arithmeticConverter(CompiledFormula formula, Cell cell, CycleDetector cycles, Evaluation pending) {
+        double res = 0.0;
+        StringP stringP = new StringP();
+        boolean isNumber = true;
+        boolean isOperation = false;
+        for (CompiledFormula.Term term : formula.getTerms()) {
+            if (term.operator != 0) isOperation = true;
+            if (!term.valid) return errorParameterConverter("Ref error");
+            TypedValue nextVal;
+            if (term.ref != null) {
+                int row = term.ref.row(), col = term.ref.col();
+                if (!validReference(row, col, cell, cycles)) return errorParameterConverter("Ref error");
+                nextVal = referenceValue(row, col, cell, pending);
+            }
+            else nextVal = term.literal;
+
+            if (!nextVal.isNumber()) {
+                if (nextVal.toString().equals("Error")) return errorParameterConverter("Ref error");
+                stringP.addString(nextVal.toString());
+                isNumber = false;
+                if (term.operator == 0 && formula.hasOperator()) isOperation = true;
+                break;
+            }
+            double value = nextVal.getNumber();
+            switch (term.operator) {
+                case '+': res += value; break;
+                case '-': res -= value; break;
+                case '*': res *= value; break;
+                case '/': res /= value; break;
+                default: res = value;
+            }
+        }
+        if (!isNumber && isOperation) return errorParameterConverter("Ref error");
+        ArrayList<Parameter> aux = new ArrayList<>();
+        StringP functionParameter = new StringP();
+        functionParameter.addString("identity");
+        aux.add(functionParameter);
+        if (isNumber) {
+            DoubleP result = new DoubleP();
+            result.addDouble(res);
+            aux.add(result);
+        }
+        else aux.add(stringP);
+        return aux;
+    }
+
+    /**
+     * Comprueba que una referencia hecha desde una celda es válida: está dentro de la hoja, no es la propia celda y no crea una referencia cíclica.
+     * Si crea un ciclo, lo guarda como la última referencia cíclica encontrada
+     * @param row Fila referenciada
+     * @param col Columna referenciada
+     * @param cell Celda que hace la referencia
+     * @param cycles Comprobación de referencias cíclicas de la celda
+     * @return true si la referencia es válida, false en caso contrario
+     */
+    private boolean validReference(int row, int col, Cell cell, CycleDetector cycles) {
+        if (row < 0 || row >= getNRows() || col < 0 || col >= getNColumns()) return false;
+        // una celda que todavía no existe no tiene dependientes, así que no puede crear un ciclo
+        Cell referenced = cjt_cells.find(row, col);
+        if (referenced == null) return true;
+        if (referenced == cell || cycles.createsCycle(referenced)) {
+            lastCycle = CycleDetector.describe(cycles.cyclePath(referenced));
             return false;
         }
         return true;
@@ -892,81 +1077,103 @@ public class Sheet {
             CellValue errorRef = new CellValue("#ERROR");
             cell.setCellValue(errorRef);
         }
-        else {
-            ArrayList<Parameter> parameters = parameterConverter(input, cell);
-            if (parameters.get(0).getString().equals("nofunction")) {
-                CellValue output = new CellValue(parameters.get(1).getString());
-                cell.setCellValue(output);
+        else if (input.charAt(0) != '=') {
+            CellValue output = new CellValue(input);
+            cell.setCellValue(output);
+        }
+        else executeFormula(FormulaCompiler.compile(input, cjt_cells.getIndex()), cell, Collections.emptySet(), null);
+
+
+    }
+
+    /**
+     * Ejecuta en la celda indicada una fórmula ya compilada, igual que executeInput con el texto de la fórmula
+     * @param formula Fórmula compilada que se quiere aplicar en una celda
+     * @param cell Celda en la cual se quiere aplicar la fórmula
+     */
+    void executeInput(CompiledFormula formula, Cell cell) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        executeFormula(formula, cell, Collections.emptySet(), null);
+    }
+
+    /**
+     * Evalúa una fórmula compilada en la celda indicada y guarda la fórmula compilada en la función resultante para poder recalcularla sin volver a compilarla
+     * @param formula Fórmula compilada que se quiere aplicar en una celda
+     * @param cell Celda en la cual se quiere aplicar la fórmula
+     * @param known Celdas que la celda ya referenciaba antes de volver a evaluarla, vacío si la fórmula es nueva
+     * @param pending Referencias de la evaluación si se guardan al acabar, null si se guardan a medida que se leen
+     */
+    private void executeFormula(CompiledFormula formula, Cell cell, Set<Cell> known, Evaluation pending) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        String input = formula.getSource();
+        ArrayList<Parameter> parameters = parameterConverter(formula, cell, known, pending);
+        if (parameters.get(0).getString().equals("incorrectfunction")) {
+            CellValue output = new CellValue("#NAME?");
+            cell.setCellValue(output);
+            dropReferences(cell, pending);
+        }
+        else if (parameters.size() == 1) {
+            if (parameters.get(0).getString().equals("Ref error")) {
+                CellValue errorRef = new CellValue("#REF!");
+                cell.setCellValue(errorRef);
+                dropReferences(cell, pending);
             }
-            else if (parameters.get(0).getString().equals("incorrectfunction")) {
-                CellValue output = new CellValue("#NAME?");
-                cell.setCellValue(output);
+            else {
+                String functionN = parameters.get(0).getString();
+                String functionS = functionN.substring(0, functionN.length() - 1);
+                Function function = GetFunctionFactory.getInstance(functionS);
+                function.setFormula(input);
+                function.setCompiledFormula(formula);
+                if (functionN.charAt(functionN.length() - 1) == 'R') function.setValue("#REF!");
+                else function.setValue("#NAME?");
+                cell.setCellValue(function);
             }
-            else if (parameters.size() == 1) {
-                if (parameters.get(0).getString().equals("Ref error")) {
-                    CellValue errorRef = new CellValue("#REF!");
-                    cell.setCellValue(errorRef);
-                }
-                else {
-                    String functionN = parameters.get(0).getString();
-                    String functionS = functionN.substring(0, functionN.length() - 1);
-                    Function function = GetFunctionFactory.getInstance(functionS);
-                    function.setFormula(input);
-                    if (functionN.charAt(functionN.length() - 1) == 'R') function.setValue("#REF!");
-                    else function.setValue("#NAME?");
-                    cell.setCellValue(function);
-                }
+        }
+        else {
+            Function function = GetFunctionFactory.getInstance(parameters.get(0).getString());
+            //mas parametros de los necesarios
+            if (parameters.size() == function.getNParameters() + 1 ) {
+                function.setParameter(parameters);
+                function.setFormula(input);
+                function.setCompiledFormula(formula);
+                cell.setCellValue(function);
             }
             else {
-                Function function = GetFunctionFactory.getInstance(parameters.get(0).getString());
-                //mas parametros de los necesarios
-                if (parameters.size() == function.getNParameters() + 1 ) {
-                    function.setParameter(parameters);
-                    function.setFormula(input);
-                    cell.setCellValue(function);
-                }
-                else {
-                    function.setFormula(input);
-                    function.setValue("#NAME?");
-                    cell.setCellValue(function);
-                }
+                function.setFormula(input);
+                function.setCompiledFormula(formula);
+                function.setValue("#NAME?");
+                cell.setCellValue(function);
             }
         }
+    }
 
 
+    /**
+     * Quita las referencias que ha leído una fórmula que se ha sustituido por un valor de error, que ya no depende de ninguna celda
+     * @param cell Celda evaluada
+     * @param pending Evaluación en la que se guardan las referencias, null si se aplican directamente al grafo
+     */
+    private void dropReferences(Cell cell, Evaluation pending) {
+        if (pending == null) references.eraseAllReferencesOfACell(cell);
+        else pending.size = 0;
     }
 
 
+    /**
+     * Rellena las celdas indicadas a partir del input de la primera: si es una fórmula, se compila una sola vez y en cada celda
+     * se evalúa con las referencias desplazadas tantas filas o columnas como separan la celda de la primera, actualiza los valores
+     * @param cells ArrayList con las celdas a rellenar, empezando por la celda que contiene el input
+     * @param input String con el input de la primera celda
+     */
     public void calculateDerivateData(ArrayList<Cell> cells, String input) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
         Cell inicio = cells.get(0);
         Cell end = cells.get(cells.size() - 1);
-        String aux;
         if (!(inicio.getRow() > end.getRow() && inicio.getColumn() > inicio.getColumn() || inicio.getRow() < end.getRow() && inicio.getColumn() < inicio.getColumn())) {
-            if (inicio.getRow() > end.getRow()) {
-                for (int i = 1; i < cells.size(); i++) {
-                    executeInput(input, cells.get(i));
-                    aux = derivateDataRef(references.getReferencesFromCell(cells.get(i)), input, 1, -1);
-                    executeInput(aux, cells.get(i));
-                }
-            } else if (inicio.getRow() < end.getRow()) {
-                for (int i = 1; i < cells.size(); i++) {
-                    executeInput(input, cells.get(i));
-                    aux = derivateDataRef(references.getReferencesFromCell(cells.get(i)), input, 1, i);
-                    executeInput(aux, cells.get(i));
-                }
-            } else if (inicio.getColumn() > end.getColumn()) {
-                for (int i = 1; i < cells.size(); i++) {
-                    executeInput(input, cells.get(i));
-                    aux = derivateDataRef(references.getReferencesFromCell(cells.get(i)), input, 2, -1);
-                    executeInput(aux, cells.get(i));
-                }
-            } else {
-                for (int i = 1; i < cells.size(); i++) {
-                    executeInput(input, cells.get(i));
-                    aux = derivateDataRef(references.getReferencesFromCell(cells.get(i)), input, 2, 1);
-                    executeInput(aux, cells.get(i));
-                }
-
+            CompiledFormula formula = null;
+            if (input.length() > 1 && input.charAt(0) == '=') formula = FormulaCompiler.compile(input, cjt_cells.getIndex());
+            for (int i = 1; i < cells.size(); i++) {
+                Cell cell = cells.get(i);
+                references.eraseAllReferencesOfACell(cell);
+                if (formula == null) executeInput(input, cell);
+                else executeFormula(formula.shift(cell.getRow() - inicio.getRow(), cell.getColumn() - inicio.getColumn()), cell, Collections.emptySet(), null);
             }
             updateValues();
         }
@@ -974,165 +1181,137 @@ public class Sheet {
     }
 
 
-        //identifier == 1 row, else col
-         private String derivateDataRef(ArrayList<Cell> references,String input, int identifier, int num) {
-             int actual = 0;
-             int auxact;
-             StringBuilder newFormula = new StringBuilder();
-             for (int k = 0; k < references.size(); k++) {
-                 String refOld;
-                 String ref;
-                 int row;
-                 String col;
-                 col = number2Letter(references.get(k).getColumn());
-                 row = references.get(k).getRow();
-                 if (identifier == 1) {
-                    refOld = col + row;
-                    ref = col + (row + num);
-                 }
-                 else {
-                 refOld = col + row;
-                 ref = (col + num) + row;
-                 }
-                 auxact = actual;
-                 actual = input.indexOf(refOld, actual) + refOld.length();
-                 String auxFunc = input.substring(auxact, actual);
-                 String replauxFunc = auxFunc.replaceAll("\\b" + refOld + "\\b", ref);
-                 newFormula.append(replauxFunc);
-             }
-             String auxFunc = input.substring(actual);
-             newFormula.append(auxFunc);
-             return String.valueOf(newFormula);
+    /**
+     * Vuelve a evaluar la fórmula de una celda: borra sus referencias y evalúa de nuevo su fórmula compilada, o el input del usuario si no está compilada.
+     * Como el grafo de dependencias no tiene ciclos, volver a referenciar las celdas que ya referenciaba no puede crear uno, así que solo se comprueban las referencias nuevas
+     * @param cell Celda que se quiere recalcular
+     */
+    void recalculateCell(Cell cell) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        HashSet<Cell> known = new HashSet<>(references.getGraph().getPrecedents(cell));
+        references.eraseAllReferencesOfACell(cell);
+        cell.getCellValue().setNull();
+        CellValueInterface value = cell.getCellValue();
+        if (value instanceof Function && ((Function) value).getCompiledFormula() != null) executeFormula(((Function) value).getCompiledFormula(), cell, known, null);
+        else executeInput(value.getUserInput(), cell);
     }
 
+    /**
+     * Vuelve a evaluar la fórmula de una celda como recalculateCell, pero sin modificar el grafo de dependencias ni crear celdas:
+     * las referencias que hace la fórmula se guardan en la evaluación y se aplican después con commitCell. Solo modifica la propia celda,
+     * así que se pueden evaluar a la vez celdas que no dependen unas de otras
+     * @param cell Celda que se quiere recalcular
+     * @return Evaluación con las referencias de la celda
+     */
+    Evaluation evaluateCell(Cell cell) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        Evaluation evaluation = new Evaluation(new HashSet<>(references.getGraph().getPrecedents(cell)));
+        cell.getCellValue().setNull();
+        CellValueInterface value = cell.getCellValue();
+        String input = value.getUserInput();
+        CompiledFormula formula = value instanceof Function ? ((Function) value).getCompiledFormula() : null;
+        if (formula == null && input.length() > 1 && input.charAt(0) == '=') formula = FormulaCompiler.compile(input, cjt_cells.getIndex());
+        if (formula != null) executeFormula(formula, cell, evaluation.known, evaluation);
+        else executeInput(input, cell);
+        // el valor se calcula aquí para que los dependientes solo lo lean
+        cell.getCellValue().getTypedValue();
+        evaluation.finish(cjt_cells);
+        return evaluation;
+    }
 
     /**
-     * Recorta el string eliminando posibles espacios
-     * @param function String que se quiere recortar
-     * @return El string recortado
+     * Aplica al grafo de dependencias las referencias de una evaluación hecha con evaluateCell, si son distintas de las que la celda ya tenía
+     * @param cell Celda evaluada
+     * @param evaluation Evaluación de la celda
      */
-    private static String stringTrimer(String function) {
-        StringBuilder result = new StringBuilder();
-        boolean opened = false;
-        for (int i = 0; i < function.length(); i++) {
-            if (function.charAt(i) == '[') opened = true;
-            if (function.charAt(i) == ']') opened = false;
-            if (function.charAt(i) == ' ') {
-                if (opened) result.append(function.charAt(i));
-            } else result.append(function.charAt(i));
+    void commitCell(Cell cell, Evaluation evaluation) {
+        if (!evaluation.changed) return;
+        references.eraseAllReferencesOfACell(cell);
+        for (int i = 0; i < evaluation.size; i += 2) {
+            int row = evaluation.positions[i], col = evaluation.positions[i + 1];
+            setReferences(row < 0 ? columnar.columnCell(col) : getCell(row, col), cell);
         }
-        return String.valueOf(result);
     }
 
     /**
-     * Actualiza los valores cuando se modifica una celda, para cada celda que referenciaba a updated, se actualizan sus valores
-     * @param updated Celda que se ha actualizado
+     * Actualiza los valores de todas las celdas que dependen de las celdas modificadas, evaluando cada fórmula afectada una sola vez y en orden topológico
+     * @param changed Celdas que se han modificado
+     * @return int con el número de celdas recalculadas
      */
-    public void updateRecursiveValues(Cell updated) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        ArrayList<Cell> refs = new ArrayList<>(references.getReferencesToCell(updated));
+    public int recalculate(Collection<Cell> changed) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        int recalculated = engine.recalculate(withColumnCells(changed));
+        if (columnar != null) releaseNumbers(changed);
+        return recalculated;
+    }
 
-        for (int i = 0; i < refs.size(); i++) {
-            references.eraseAllReferencesOfACell(refs.get(i));
-            refs.get(i).getCellValue().setNull();
-            executeInput(refs.get(i).getCellValue().getUserInput(), refs.get(i));
-            updateRecursiveValues(refs.get(i));
+    /**
+     * Devuelve a su columna los números de las celdas modificadas que no forman parte del grafo de dependencias, para que los rangos
+     * que las incluyen se puedan seguir resumiendo con el árbol de la columna
+     * @param changed Celdas que se han modificado
+     */
+    private void releaseNumbers(Collection<Cell> changed) {
+        DependencyGraph graph = references.getGraph();
+        for (Cell cell : changed) {
+            if (!graph.contains(cell)) columnar.release(cell);
         }
+    }
 
+    /**
+     * Actualiza los valores cuando se modifica una celda, para cada celda que referenciaba a updated (directa o indirectamente), se actualizan sus valores
+     * @param updated Celda que se ha actualizado
+     * @return int con el número de celdas recalculadas
+     */
+    public int updateRecursiveValues(Cell updated) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        return engine.recalculate(withColumnCells(List.of(updated)));
     }
 
     /**
-     * Actualiza los valores de todas las celdas de la hoja. Para eso cogemos las celdas que son referenciadas y llamamos a updateRecursiveValues en las celdas padre
+     * Añade a las celdas modificadas las celdas de columna de sus columnas, de las que dependen las fórmulas que leen la columna
+     * sin referenciar cada celda
+     * @param changed Celdas que se han modificado
+     * @return Celdas modificadas con las celdas de columna, las mismas celdas si la hoja no guarda los números por columnas
      */
-    public void updateValues() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        ArrayList<Cell> keys =  new ArrayList<>(references.getKeys());
-        for (int i = 0; i < keys.size(); i++) {
-            //si es referencia padre
-            if (references.getReferencesFromCell(keys.get(i)).size() == 0) {
-                updateRecursiveValues(keys.get(i));
-            }
+    private Collection<Cell> withColumnCells(Collection<Cell> changed) {
+        if (columnar == null) return changed;
+        LinkedHashSet<Cell> all = new LinkedHashSet<>(changed);
+        for (Cell cell : changed) {
+            int col = cell.getColumn();
+            Cell columnCell = col < 0 ? null : columnar.findColumnCell(col);
+            if (columnCell != null) all.add(columnCell);
         }
-
+        return all;
     }
-    /**
-     * Actualiza las formulas de las celdas que tienen referencias cuando añadimos o eliminamos una fila o columna.
-     * @param identifier Indica si la operación es de añadir/eliminar una fila o una columna, 1 para fila, cualquier otro número columna
-     * @param identifier2 Indica si la operación es de añadir/eliminar, 1 para añadir, cualquier otro número para eliminar
-     */
-    //identifier 1 indica si es row o column, identifier2 indica si se ha añadido o eliminado, a indica donde
-    public void updateReferences(int identifier, int identifier2, int a) {
-        for (int i = 0; i < cjt_cells.size(); i++) {
-            for (int j = 0; j < cjt_cells.get(i).size(); j++) {
-                if (cjt_cells.get(i).get(j).getCellValue().getType().equals("function") && !cjt_cells.get(i).get(j).getCellValue().getUserInput().contains("[")) {
-                    ArrayList<Cell> auxR = references.getReferencesFromCell(cjt_cells.get(i).get(j));
-                    int actual = 0;
-                    int auxact;
-                    StringBuilder newFormula = new StringBuilder();
-                    int rc;
-                    for (int k = 0; k < auxR.size(); k++) {
-                        String refOld;
-                        String ref;
-                        int row;
-                        String col;
-                        if (identifier == 1) rc = auxR.get(k).getRow();
-                        else rc = auxR.get(k).getColumn();
-                        if (rc >= a) {
-                            if (identifier2 != 1 && rc == a) {
-                                col = number2Letter(auxR.get(k).getColumn());
-                                row = auxR.get(k).getRow();
-                                refOld = col + row;
-                                ref = "#REF!";
-                            } else {
-                                col = number2Letter(auxR.get(k).getColumn());
-                                row = auxR.get(k).getRow();
-                                if (identifier == 1) {
-                                    if (identifier2 == 1) {
-                                        if (row != 0) refOld = col + (row - 1);
-                                        else refOld = col + row;
-                                        ref = col + row;
-                                    } else {
-                                        refOld = col + row;
-                                        if (row > 0) ref = col + (row - 1);
-                                        else ref = col + row;
-                                    }
-                                } else {
-                                    String oldCol;
-                                    if (identifier2 == 1) {
-                                        col = number2Letter(rc);
-                                        if (rc == 0) oldCol = col;
-                                        else oldCol = number2Letter(rc - 1);
-                                    } else {
-                                        oldCol = number2Letter(rc);
-                                        if (rc == 0) col = oldCol;
-                                        else col = number2Letter(rc - 1);
-                                    }
-                                    row = auxR.get(k).getRow();
-                                    refOld = oldCol + row;
-                                    ref = col + row;
-                                }
-                            }
-                            auxact = actual;
-                            actual = cjt_cells.get(i).get(j).getCellValue().getUserInput().indexOf(refOld, actual) + refOld.length();
-                            String auxFunc = cjt_cells.get(i).get(j).getCellValue().getUserInput().substring(auxact, actual);
-                            String replauxFunc = auxFunc.replaceAll("\\b" + refOld + "\\b", ref);
-                            newFormula.append(replauxFunc);
-                            if (ref.equals("#REF!")) break;
-                        }
 
-                    }
-                    String auxFunc = cjt_cells.get(i).get(j).getCellValue().getUserInput().substring(actual);
-                    newFormula.append(auxFunc);
-                    if (String.valueOf(newFormula).contains("=#REF!")) {
-                        cjt_cells.get(i).get(j).getCellValue().setFormula("#REF!");
-                        cjt_cells.get(i).get(j).getCellValue().setValue("#REF!");
-                    }
-                    else cjt_cells.get(i).get(j).getCellValue().setFormula(String.valueOf(newFormula));
-                }
+    /**
+     * Actualiza los valores de todas las celdas de la hoja. Para eso cogemos las celdas que son referenciadas y que no referencian a ninguna otra y recalculamos todas las celdas que dependen de ellas
+     * @return int con el número de celdas recalculadas
+     */
+    public int updateValues() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        return engine.recalculateAll();
+    }
 
+    /**
+     * Recorre la hoja por filas sin modificarla y entrega cada fila al destino indicado, con un campo por columna. Solo se visitan
+     * las celdas guardadas, así que el coste es el de escribir las filas
+     * @param rowShift Número de filas que se suman a las referencias de las fórmulas, 1 para escribirlas con la primera fila como la fila 1
+     * @param formulas Indica si se entrega el input de las celdas (con las fórmulas) o su valor calculado
+     * @param sink Destino de las filas, que recibe cada fila con las celdas vacías como ""
+     */
+    public void exportRows(int rowShift, boolean formulas, Consumer<ArrayList<String>> sink) {
+        int nColumns = getNColumns();
+        ArrayList<Cell> cells = cjt_cells.cells();
+        int next = 0;
+        for (int r = 0; r < getNRows(); r++) {
+            ArrayList<String> line = new ArrayList<>(Collections.nCopies(nColumns, ""));
+            while (next < cells.size() && cells.get(next).getRow() == r) {
+                Cell cell = cells.get(next++);
+                CellValueInterface value = cell.getCellValue();
+                if (!formulas) line.set(cell.getColumn(), value.tryGetValue());
+                else if (value instanceof Function) line.set(cell.getColumn(), ((Function) value).getUserInput(rowShift));
+                else line.set(cell.getColumn(), value.getUserInput());
             }
+            sink.accept(line);
         }
     }
 
-
     /**
      * Convierte un array de pairs a un array de celdas cuyas posiciones son las mismas que habia en el array de pairs siempre y cuando existan en la hoja
      * @param pairs Array con las posiciones de las celdas
@@ -1144,7 +1323,7 @@ public class Sheet {
         for (Pair pair : pairs) {
             int r = pair.getX();
             int c = pair.getY();
-            if (r < 0 || r > getCjt_cells().size() || c < 0 || c > getCjt_cells().get(0).size()) throw new MyException("Cell does not exist");
+            if (r < 0 || r > getNRows() || c < 0 || c > getNColumns()) throw new MyException("Cell does not exist");
             Cell aux = getCell(r, c);
             cells.add(aux);
         }
@@ -0,0 +1,431 @@
+package dominio.model;
+
+import java.util.*;
+
+/**
+ * Representa la correspondencia entre las posiciones lógicas (las que ve el usuario) y los identificadores físicos de las filas y columnas de una hoja.
+ * Las celdas, el grafo de dependencias y las referencias de las fórmulas se guardan por identificador físico, que no cambia mientras la fila
+ * o columna exista, así que insertar o borrar una fila o columna solo modifica esta correspondencia.
+ * Mientras no se inserta ni borra nada, cada posición es su propio identificador. Después, cada eje guarda sus identificadores en bloques
+ * de como mucho 2 * BLOCK posiciones, con la posición inicial de cada bloque: pasar de posición a identificador es una búsqueda binaria
+ * entre los bloques, pasar de identificador a posición es O(1), e insertar o borrar es O(BLOCK + número de bloques), unas mil operaciones
+ * con un millón de filas.
+ * Los identificadores de las filas y columnas borradas se vuelven a usar. Cada identificador tiene una generación que cambia al borrarlo,
+ * de manera que una referencia a una fila borrada sigue siendo inválida aunque su identificador pase a otra fila.
+ * Las consultas no modifican nada, así que se pueden hacer desde varios hilos a la vez mientras nadie inserte, borre ni añada filas o columnas
+ */
+public class SheetIndex {
+
+    /**
+     * Representa el número de posiciones con el que se crean los bloques, que se dividen en dos al llegar al doble
+     */
+    private static final int BLOCK = 1024;
+
+    /**
+     * Representa un tramo de posiciones consecutivas de un eje con sus identificadores físicos
+     */
+    private static final class Block {
+
+        /**
+         * Representa los identificadores de las posiciones del bloque, en orden
+         */
+        final int[] ids = new int[2 * BLOCK];
+
+        /**
+         * Representa el número de posiciones del bloque
+         */
+        int size;
+
+        /**
+         * Representa el número del bloque en el eje
+         */
+        int number;
+    }
+
+    /**
+     * Representa la correspondencia de un solo eje (filas o columnas)
+     */
+    private static final class Axis {
+
+        /**
+         * Indica si la posición lógica y el identificador físico coinciden (no se ha insertado ni borrado nada todavía)
+         */
+        boolean identity = true;
+
+        /**
+         * Representa el número de posiciones del eje
+         */
+        int size;
+
+        /**
+         * Representa el número de identificadores usados alguna vez, todos menores que nextId
+         */
+        int nextId;
+
+        /**
+         * Representa los bloques del eje en orden y la posición lógica de la primera posición de cada uno (solo si identity es false)
+         */
+        Block[] blocks;
+        int[] starts;
+        int nBlocks;
+
+        /**
+         * Representa el bloque de cada identificador, null si no se usa, y su posición dentro del bloque (solo si identity es false)
+         */
+        Block[] blockOf;
+        int[] offsetOf;
+
+        /**
+         * Representa la generación de cada identificador, que cambia cada vez que se borra, null si todavía no se ha borrado ninguno
+         */
+        int[] generation;
+
+        /**
+         * Representa los identificadores borrados que se pueden volver a usar
+         */
+        int[] free = new int[0];
+        int nFree;
+
+        Axis(int size) {
+            this.size = size;
+            this.nextId = size;
+        }
+
+        int toPhysical(int pos) {
+            if (identity) return pos;
+            if (pos == size) throw new IndexOutOfBoundsException("Index " + pos + " out of bounds for length " + size);
+            int b = blockAt(pos);
+            return blocks[b].ids[pos - starts[b]];
+        }
+
+        int toLogical(int id) {
+            if (identity) return id >= 0 && id < size ? id : -1;
+            if (id < 0 || id >= nextId || blockOf[id] == null) return -1;
+            return starts[blockOf[id].number] + offsetOf[id];
+        }
+
+        int generation(int id) {
+            return generation == null || id < 0 || id >= generation.length ? 0 : generation[id];
+        }
+
+        /**
+         * Retorna el bloque que contiene la posición indicada, la posición siguiente a la última si es el tamaño del eje
+         */
+        int blockAt(int pos) {
+            if (pos < 0 || pos > size) throw new IndexOutOfBoundsException("Index " + pos + " out of bounds for length " + size);
+            int lo = 0, hi = nBlocks - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (starts[mid] <= pos) lo = mid;
+                else hi = mid - 1;
+            }
+            return lo;
+        }
+
+        /**
+         * Deja de usar la correspondencia identidad, repartiendo las posiciones en bloques de BLOCK posiciones
+         */
+        void materialize() {
+            if (!identity) return;
+            blockOf = new Block[Math.max(16, nextId + nextId / 2)];
+            offsetOf = new int[blockOf.length];
+            int n = Math.max(1, (size + BLOCK - 1) / BLOCK);
+            blocks = new Block[n + n / 2 + 1];
+            starts = new int[blocks.length];
+            nBlocks = 0;
+            for (int first = 0; first < size || nBlocks == 0; first += BLOCK) {
+                Block block = newBlock(nBlocks, first);
+                for (int id = first; id < Math.min(size, first + BLOCK); id++) place(block, block.size++, id);
+            }
+            identity = false;
+        }
+
+        /**
+         * Añade un bloque vacío en la posición indicada de la lista de bloques
+         */
+        Block newBlock(int number, int start) {
+            if (nBlocks == blocks.length) {
+                blocks = Arrays.copyOf(blocks, nBlocks * 2);
+                starts = Arrays.copyOf(starts, nBlocks * 2);
+            }
+            System.arraycopy(blocks, number, blocks, number + 1, nBlocks - number);
+            System.arraycopy(starts, number, starts, number + 1, nBlocks - number);
+            Block block = new Block();
+            blocks[number] = block;
+            starts[number] = start;
+            ++nBlocks;
+            for (int b = number; b < nBlocks; b++) blocks[b].number = b;
+            return block;
+        }
+
+        /**
+         * Quita un bloque vacío de la lista de bloques
+         */
+        void removeBlock(int number) {
+            System.arraycopy(blocks, number + 1, blocks, number, nBlocks - number - 1);
+            System.arraycopy(starts, number + 1, starts, number, nBlocks - number - 1);
+            blocks[--nBlocks] = null;
+            for (int b = number; b < nBlocks; b++) blocks[b].number = b;
+        }
+
+        /**
+         * Guarda un identificador en una posición de un bloque
+         */
+        void place(Block block, int offset, int id) {
+            block.ids[offset] = id;
+            blockOf[id] = block;
+            offsetOf[id] = offset;
+        }
+
+        /**
+         * Retorna un identificador libre, reutilizando el último que se ha borrado si hay alguno
+         */
+        int allocate() {
+            if (nFree > 0) return free[--nFree];
+            int id = nextId++;
+            if (id == blockOf.length) {
+                blockOf = Arrays.copyOf(blockOf, id + id / 2 + 1);
+                offsetOf = Arrays.copyOf(offsetOf, blockOf.length);
+            }
+            return id;
+        }
+
+        /**
+         * Marca un identificador borrado como libre y cambia su generación, para que las referencias que lo usaban sigan siendo inválidas
+         */
+        void release(int id) {
+            blockOf[id] = null;
+            if (generation == null) generation = new int[blockOf.length];
+            else if (generation.length <= id) generation = Arrays.copyOf(generation, blockOf.length);
+            ++generation[id];
+            if (nFree == free.length) free = Arrays.copyOf(free, Math.max(16, nFree * 2));
+            free[nFree++] = id;
+        }
+
+        void insert(int pos) {
+            materialize();
+            int b = blockAt(pos);
+            Block block = blocks[b];
+            int offset = pos - starts[b];
+            int id = allocate();
+            System.arraycopy(block.ids, offset, block.ids, offset + 1, block.size - offset);
+            ++block.size;
+            place(block, offset, id);
+            for (int i = offset + 1; i < block.size; i++) offsetOf[block.ids[i]] = i;
+            for (int i = b + 1; i < nBlocks; i++) ++starts[i];
+            ++size;
+            if (block.size == block.ids.length) split(b);
+        }
+
+        int delete(int pos) {
+            materialize();
+            if (pos < 0 || pos >= size) throw new IndexOutOfBoundsException("Index " + pos + " out of bounds for length " + size);
+            int b = blockAt(pos);
+            Block block = blocks[b];
+            int offset = pos - starts[b];
+            int id = block.ids[offset];
+            System.arraycopy(block.ids, offset + 1, block.ids, offset, block.size - offset - 1);
+            --block.size;
+            for (int i = offset; i < block.size; i++) offsetOf[block.ids[i]] = i;
+            for (int i = b + 1; i < nBlocks; i++) --starts[i];
+            --size;
+            release(id);
+            if (block.size == 0 && nBlocks > 1) removeBlock(b);
+            else if (b + 1 < nBlocks && block.size + blocks[b + 1].size <= BLOCK) merge(b);
+            else if (b > 0 && blocks[b - 1].size + block.size <= BLOCK) merge(b - 1);
+            return id;
+        }
+
+        /**
+         * Divide un bloque lleno en dos bloques de BLOCK posiciones
+         */
+        void split(int b) {
+            Block block = blocks[b];
+            Block next = newBlock(b + 1, starts[b] + BLOCK);
+            for (int i = BLOCK; i < block.size; i++) place(next, next.size++, block.ids[i]);
+            block.size = BLOCK;
+        }
+
+        /**
+         * Junta un bloque con el siguiente
+         */
+        void merge(int b) {
+            Block block = blocks[b];
+            Block next = blocks[b + 1];
+            for (int i = 0; i < next.size; i++) place(block, block.size++, next.ids[i]);
+            removeBlock(b + 1);
+        }
+
+        void ensureSize(int n) {
+            if (n <= size) return;
+            if (identity && nextId == size) {
+                size = n;
+                nextId = n;
+                return;
+            }
+            materialize();
+            while (size < n) insert(size);
+        }
+    }
+
+    // Attributes
+
+    /**
+     * Representa la correspondencia de las filas
+     */
+    private final Axis rows;
+
+    /**
+     * Representa la correspondencia de las columnas
+     */
+    private final Axis columns;
+
+    /**
+     * Representa el número de inserciones y borrados hechos, para saber si el texto de una fórmula se tiene que volver a generar
+     */
+    private int version;
+
+
+    // Constructor
+
+    /**
+     * Crea la correspondencia de una hoja con el número de filas y columnas indicado, donde cada posición es su propio identificador
+     * @param nRows Número de filas de la hoja
+     * @param nColumns Número de columnas de la hoja
+     */
+    public SheetIndex(int nRows, int nColumns) {
+        this.rows = new Axis(nRows);
+        this.columns = new Axis(nColumns);
+        this.version = 0;
+    }
+
+
+    // Methods
+
+    /**
+     * Retorna el número de filas de la hoja
+     * @return int con el número de filas
+     */
+    public int getNRows() {
+        return rows.size;
+    }
+
+    /**
+     * Retorna el número de columnas de la hoja
+     * @return int con el número de columnas
+     */
+    public int getNColumns() {
+        return columns.size;
+    }
+
+    /**
+     * Retorna el número de inserciones y borrados de filas y columnas hechos en la hoja
+     * @return int que cambia cada vez que se desplaza alguna fila o columna
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Retorna el identificador físico de una fila
+     * @param row Posición lógica de la fila, dentro de la hoja
+     * @return int con el identificador de la fila
+     */
+    public int physicalRow(int row) {
+        return rows.toPhysical(row);
+    }
+
+    /**
+     * Retorna el identificador físico de una columna
+     * @param col Posición lógica de la columna, dentro de la hoja
+     * @return int con el identificador de la columna
+     */
+    public int physicalColumn(int col) {
+        return columns.toPhysical(col);
+    }
+
+    /**
+     * Retorna la posición lógica actual de una fila
+     * @param id Identificador físico de la fila
+     * @return int con la posición de la fila, -1 si se ha borrado
+     */
+    public int logicalRow(int id) {
+        return rows.toLogical(id);
+    }
+
+    /**
+     * Retorna la posición lógica actual de una columna
+     * @param id Identificador físico de la columna
+     * @return int con la posición de la columna, -1 si se ha borrado
+     */
+    public int logicalColumn(int id) {
+        return columns.toLogical(id);
+    }
+
+    /**
+     * Retorna la generación de un identificador de fila, que cambia cada vez que se borra una fila con ese identificador
+     * @param id Identificador físico de la fila
+     * @return int con la generación
+     */
+    public int rowGeneration(int id) {
+        return rows.generation(id);
+    }
+
+    /**
+     * Retorna la generación de un identificador de columna, que cambia cada vez que se borra una columna con ese identificador
+     * @param id Identificador físico de la columna
+     * @return int con la generación
+     */
+    public int columnGeneration(int id) {
+        return columns.generation(id);
+    }
+
+    /**
+     * Inserta una fila en la posición indicada, con un identificador libre (nuevo o de una fila borrada)
+     * @param row Posición de la nueva fila
+     */
+    public void insertRow(int row) {
+        rows.insert(row);
+        ++version;
+    }
+
+    /**
+     * Borra la fila de la posición indicada
+     * @param row Posición de la fila
+     * @return int con el identificador de la fila borrada
+     */
+    public int deleteRow(int row) {
+        ++version;
+        return rows.delete(row);
+    }
+
+    /**
+     * Inserta una columna en la posición indicada, con un identificador libre (nuevo o de una columna borrada)
+     * @param col Posición de la nueva columna
+     */
+    public void insertColumn(int col) {
+        columns.insert(col);
+        ++version;
+    }
+
+    /**
+     * Borra la columna de la posición indicada
+     * @param col Posición de la columna
+     * @return int con el identificador de la columna borrada
+     */
+    public int deleteColumn(int col) {
+        ++version;
+        return columns.delete(col);
+    }
+
+    /**
+     * Añade filas y columnas al final hasta tener el tamaño indicado, sin desplazar ninguna de las que ya existen
+     * @param nRows Número mínimo de filas
+     * @param nColumns Número mínimo de columnas
+     */
+    public void ensureSize(int nRows, int nColumns) {
+        rows.ensureSize(nRows);
+        columns.ensureSize(nColumns);
+    }
+
+}
@@ -0,0 +1,174 @@
+package dominio.model;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+
+/**
+ * Representa la carga masiva de celdas en una hoja a medida que se leen de un documento. Los valores se escriben directamente en el almacén
+ * de celdas, ampliando la hoja cuando hace falta, y las fórmulas se guardan para compilarlas y evaluarlas todas juntas al acabar,
+ * cuando ya están escritas todas las celdas a las que pueden referenciar, con un solo recálculo de la hoja
+ */
+public class SheetLoader {
+
+    // Attributes
+
+    /**
+     * Representa la hoja donde se cargan las celdas
+     */
+    private final Sheet sheet;
+
+    /**
+     * Representa el almacén de celdas de la hoja
+     */
+    private final CellStore store;
+
+    /**
+     * Representa las celdas cuyo input es una fórmula y todavía no se han evaluado
+     */
+    private final ArrayList<Cell> pendingCells;
+
+    /**
+     * Representa el input de cada celda de pendingCells, en el mismo orden
+     */
+    private final ArrayList<String> pendingInputs;
+
+    /**
+     * Representa el número de celdas que no se han cargado por estar fuera de los límites de la hoja
+     */
+    private int skipped;
+
+
+    // Constructor
+
+    /**
+     * Crea la carga de celdas de la hoja indicada
+     * @param sheet Hoja donde se cargarán las celdas
+     */
+    public SheetLoader(Sheet sheet) {
+        this.sheet = sheet;
+        this.store = sheet.getCjt_cells();
+        this.pendingCells = new ArrayList<>();
+        this.pendingInputs = new ArrayList<>();
+        this.skipped = 0;
+    }
+
+
+    // Methods
+
+    /**
+     * Retorna el número de celdas que no se han cargado por estar fuera de los límites de la hoja
+     * @return int con el número de celdas descartadas
+     */
+    public int getSkipped() {
+        return this.skipped;
+    }
+
+    // Pre: input no es vacío
+    // Post: la celda tiene el valor indicado, o queda pendiente de evaluar si es una fórmula
+
+    /**
+     * Carga el input de una celda. Si es un valor se escribe directamente en la celda; si es una fórmula se evalúa al llamar a finish
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @param input Input de la celda
+     */
+    public void put(int row, int col, String input) {
+        if (row >= sheet.getMaxRow() || col >= sheet.getMaxColumn()) {
+            ++skipped;
+            return;
+        }
+        if (row >= store.getNRows() || col >= store.getNColumns()) {
+            store.ensureSize(Math.max(row + 1, store.getNRows()), Math.max(col + 1, store.getNColumns()));
+        }
+        if (input.length() > 1 && input.charAt(0) == '=') {
+            pendingCells.add(store.get(row, col));
+            pendingInputs.add(input);
+        }
+        else if (input.equals("=")) store.put(row, col, "#ERROR");
+        else store.put(row, col, input);
+    }
+
+    /**
+     * Compila y evalúa todas las fórmulas pendientes y recalcula la hoja una sola vez. Cada fórmula se evalúa después de las fórmulas
+     * pendientes que lee, aunque estén más adelante en el documento. Una fórmula que no se puede evaluar queda como "#ERROR"
+     * @return int con el número de celdas recalculadas
+     */
+    public int finish() throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        int n = pendingCells.size();
+        CompiledFormula[] formulas = new CompiledFormula[n];
+        // fórmulas que todavía no se han empezado a evaluar, por columna y fila
+        HashMap<Integer, TreeMap<Integer, Integer>> waiting = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Cell cell = pendingCells.get(i);
+            try {
+                formulas[i] = FormulaCompiler.compile(pendingInputs.get(i), store.getIndex());
+                waiting.computeIfAbsent(cell.getColumn(), k -> new TreeMap<>()).put(cell.getRow(), i);
+            } catch (InputMismatchException | NumberFormatException e) {
+                cell.setCellValue(new CellValue("#ERROR"));
+            }
+        }
+        // recorrido en profundidad sin recursión: i para empezar la fórmula i, ~i para evaluarla cuando ya se han evaluado las que lee
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (formulas[i] == null) continue;
+            stack.push(i);
+            while (!stack.isEmpty()) {
+                int top = stack.pop();
+                if (top < 0) {
+                    evaluate(~top, formulas[~top]);
+                    continue;
+                }
+                Cell cell = pendingCells.get(top);
+                if (waiting.get(cell.getColumn()).remove(cell.getRow()) == null) continue;
+                stack.push(~top);
+                pushReads(formulas[top], waiting, stack);
+            }
+        }
+        pendingCells.clear();
+        pendingInputs.clear();
+        return sheet.updateValues();
+    }
+
+    /**
+     * Evalúa una fórmula pendiente en su celda
+     * @param i Índice de la fórmula en pendingCells
+     * @param formula Fórmula compilada
+     */
+    private void evaluate(int i, CompiledFormula formula) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        Cell cell = pendingCells.get(i);
+        try {
+            sheet.executeInput(formula, cell);
+        } catch (InputMismatchException | NumberFormatException e) {
+            cell.setCellValue(new CellValue("#ERROR"));
+        }
+    }
+
+    /**
+     * Añade a la pila las fórmulas pendientes que todavía no se han empezado y que lee una fórmula, por referencia o dentro de un rango
+     * @param formula Fórmula compilada
+     * @param waiting Fórmulas que todavía no se han empezado, por columna y fila
+     * @param stack Pila del recorrido
+     */
+    private static void pushReads(CompiledFormula formula, HashMap<Integer, TreeMap<Integer, Integer>> waiting, ArrayDeque<Integer> stack) {
+        for (CompiledFormula.Term term : formula.getTerms()) {
+            if (term.ref != null) pushRange(term.ref, term.ref, waiting, stack);
+        }
+        for (CompiledFormula.Operand op : formula.getOperands()) {
+            if ((op.type == CompiledFormula.Operand.Type.REF || op.type == CompiledFormula.Operand.Type.RANGE) && op.ref2 != null) {
+                pushRange(op.ref, op.ref2, waiting, stack);
+            }
+        }
+    }
+
+    private static void pushRange(CompiledFormula.Reference a, CompiledFormula.Reference b, HashMap<Integer, TreeMap<Integer, Integer>> waiting, ArrayDeque<Integer> stack) {
+        if (!a.isValid() || !b.isValid()) return;
+        int r1 = Math.min(a.row(), b.row()), r2 = Math.max(a.row(), b.row());
+        int c1 = Math.min(a.col(), b.col()), c2 = Math.max(a.col(), b.col());
+        for (int c = c1; c <= c2; c++) {
+            TreeMap<Integer, Integer> column = waiting.get(c);
+            if (column == null) continue;
+            for (int i : column.subMap(r1, true, r2, true).values()) stack.push(i);
+        }
+    }
+
+}
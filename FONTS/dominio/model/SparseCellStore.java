@@ -0,0 +1,267 @@
+package dominio.model;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static dominio.auxiliarclasses.ReferenceConverter.*;
+
+/**
+ * Representa un almacén disperso de celdas: solo guarda las celdas que se han creado, en una tabla hash de direccionamiento abierto
+ * indexada por los identificadores físicos (fila, columna) empaquetados en un long. Las celdas vacías no ocupan memoria hasta que se escriben,
+ * así que la memoria es proporcional al número de celdas ocupadas y no al tamaño de la hoja. Como los identificadores físicos no cambian,
+ * insertar una fila o columna no mueve ninguna celda, y borrarla solo quita las celdas de esa fila o columna
+ */
+public class SparseCellStore implements CellStore {
+
+    // Attributes
+
+    /**
+     * Representa una posición libre de la tabla (ningún identificador de fila es negativo)
+     */
+    private static final long FREE = Long.MIN_VALUE;
+
+    /**
+     * Representa la capacidad inicial de la tabla, siempre una potencia de dos
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Representa los identificadores físicos empaquetados de las celdas guardadas
+     */
+    private long[] keys;
+
+    /**
+     * Representa las celdas guardadas, en la misma posición de la tabla que su clave
+     */
+    private Cell[] values;
+
+    /**
+     * Representa el número de celdas guardadas
+     */
+    private int size;
+
+    /**
+     * Representa la correspondencia entre las posiciones de la hoja y los identificadores físicos de sus filas y columnas
+     */
+    private final SheetIndex index;
+
+
+    // Constructor
+
+    /**
+     * Crea un almacén vacío para una hoja con el número de filas y columnas indicado
+     * @param nRows Número de filas de la hoja
+     * @param nColumns Número de columnas de la hoja
+     */
+    public SparseCellStore(int nRows, int nColumns) {
+        this.index = new SheetIndex(nRows, nColumns);
+        this.keys = new long[INITIAL_CAPACITY];
+        Arrays.fill(this.keys, FREE);
+        this.values = new Cell[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+
+    // Methods
+
+    @Override
+    public int getNRows() {
+        return index.getNRows();
+    }
+
+    @Override
+    public int getNColumns() {
+        return index.getNColumns();
+    }
+
+    @Override
+    public SheetIndex getIndex() {
+        return this.index;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Cell get(int row, int col) {
+        checkBounds(row, col);
+        int rowId = index.physicalRow(row);
+        int colId = index.physicalColumn(col);
+        long key = packPosition(rowId, colId);
+        int i = indexOf(key);
+        if (keys[i] == key) return values[i];
+        Cell cell = new Cell(index, rowId, colId);
+        insert(key, cell);
+        return cell;
+    }
+
+    @Override
+    public Cell find(int row, int col) {
+        checkBounds(row, col);
+        long key = packPosition(index.physicalRow(row), index.physicalColumn(col));
+        int i = indexOf(key);
+        return keys[i] == key ? values[i] : null;
+    }
+
+    /**
+     * Quita del almacén la celda de la posición indicada, moviendo hacia atrás las celdas que la seguían en la tabla
+     * @param row Fila de la celda
+     * @param col Columna de la celda
+     * @return Celda quitada, null si la posición no tenía celda
+     * @throws IndexOutOfBoundsException Si la posición está fuera de la hoja
+     */
+    public Cell remove(int row, int col) {
+        checkBounds(row, col);
+        return remove(packPosition(index.physicalRow(row), index.physicalColumn(col)));
+    }
+
+    /**
+     * Quita del almacén la celda con la clave indicada, moviendo hacia atrás las celdas que la seguían en la tabla
+     * @param key Posición empaquetada de la celda
+     * @return Celda quitada, null si la clave no tenía celda
+     */
+    private Cell remove(long key) {
+        int i = indexOf(key);
+        if (keys[i] != key) return null;
+        Cell cell = values[i];
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == FREE) break;
+            int home = hash(keys[j]) & mask;
+            // la celda de j se queda si su posición ideal está entre el hueco y j
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (stays) continue;
+            keys[i] = keys[j];
+            values[i] = values[j];
+            i = j;
+        }
+        keys[i] = FREE;
+        values[i] = null;
+        --size;
+        return cell;
+    }
+
+    @Override
+    public ArrayList<Cell> cells() {
+        ArrayList<Cell> cells = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) cells.add(values[i]);
+        }
+        cells.sort(Comparator.comparingInt(Cell::getRow).thenComparingInt(Cell::getColumn));
+        return cells;
+    }
+
+    @Override
+    public void ensureSize(int nRows, int nColumns) {
+        index.ensureSize(nRows, nColumns);
+    }
+
+    @Override
+    public void insertRow(int row) {
+        index.insertRow(row);
+    }
+
+    @Override
+    public void deleteRow(int row) {
+        int id = index.deleteRow(row);
+        //la fila solo puede tener una celda por columna, así que se buscan directamente en vez de recorrer toda la tabla
+        for (int col = 0; col < getNColumns() && size > 0; col++) remove(packPosition(id, index.physicalColumn(col)));
+    }
+
+    @Override
+    public void insertColumn(int col) {
+        index.insertColumn(col);
+    }
+
+    @Override
+    public void deleteColumn(int col) {
+        int id = index.deleteColumn(col);
+        removeIf(cell -> cell.getColumnId() == id);
+    }
+
+    /**
+     * Comprueba que la posición está dentro de la hoja
+     * @param row Fila de la posición
+     * @param col Columna de la posición
+     * @throws IndexOutOfBoundsException Si la posición está fuera de la hoja
+     */
+    private void checkBounds(int row, int col) {
+        if (row < 0 || row >= getNRows()) throw new IndexOutOfBoundsException("Index " + row + " out of bounds for length " + getNRows());
+        if (col < 0 || col >= getNColumns()) throw new IndexOutOfBoundsException("Index " + col + " out of bounds for length " + getNColumns());
+    }
+
+    /**
+     * Retorna la posición de la tabla donde está la clave indicada, o la posición libre donde se debería insertar
+     * @param key Posición empaquetada de la celda
+     * @return int con la posición de la tabla
+     */
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != FREE && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    /**
+     * Mezcla los bits de la clave para repartir las posiciones por la tabla
+     * @param key Posición empaquetada de la celda
+     * @return int con el hash de la clave
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Inserta una celda que no está en la tabla, ampliando la tabla si está llena en más de la mitad
+     * @param key Posición empaquetada de la celda
+     * @param cell Celda a insertar
+     */
+    private void insert(long key, Cell cell) {
+        if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+        int i = indexOf(key);
+        keys[i] = key;
+        values[i] = cell;
+        ++size;
+    }
+
+    /**
+     * Cambia la capacidad de la tabla y vuelve a colocar todas las celdas
+     * @param capacity Nueva capacidad, potencia de dos
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Cell[] oldValues = values;
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new Cell[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int j = indexOf(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Quita de la tabla todas las celdas que cumplen la condición
+     * @param condition Condición que tienen que cumplir las celdas a quitar
+     */
+    private void removeIf(Predicate<Cell> condition) {
+        ArrayList<Cell> kept = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE && !condition.test(values[i])) kept.add(values[i]);
+        }
+        if (kept.size() == size) return;
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+        for (Cell cell : kept) insert(packPosition(cell.getRowId(), cell.getColumnId()), cell);
+    }
+
+}
@@ -0,0 +1,213 @@
+package dominio.model;
+
+/**
+ * Representa el valor tipado de una celda: un número, un texto, un booleano, un error o una celda vacía.
+ * Los números se guardan como double, y su texto solo se genera cuando se muestra o se exporta el valor
+ */
+public final class TypedValue {
+
+    /**
+     * Representa los tipos de valor que puede tener una celda
+     */
+    public enum Type { NUMBER, TEXT, BOOLEAN, ERROR, EMPTY }
+
+    /**
+     * Representa el valor de una celda vacía
+     */
+    public static final TypedValue EMPTY = new TypedValue(Type.EMPTY, 0, "", false);
+
+    /**
+     * Representa el valor booleano cierto
+     */
+    public static final TypedValue TRUE = new TypedValue(Type.BOOLEAN, 1, "TRUE", false);
+
+    /**
+     * Representa el valor booleano falso
+     */
+    public static final TypedValue FALSE = new TypedValue(Type.BOOLEAN, 0, "FALSE", false);
+
+    // Attributes
+
+    /**
+     * Representa el tipo del valor
+     */
+    private final Type type;
+
+    /**
+     * Representa el valor numérico (1 o 0 para los booleanos)
+     */
+    private final double number;
+
+    /**
+     * Representa el texto del valor tal y como se muestra (null mientras no se haya generado el de un número)
+     */
+    private String text;
+
+    /**
+     * Indica si el número se muestra como un entero
+     */
+    private final boolean integral;
+
+
+    // Constructor
+
+    private TypedValue(Type type, double number, String text, boolean integral) {
+        this.type = type;
+        this.number = number;
+        this.text = text;
+        this.integral = integral;
+    }
+
+    /**
+     * Crea un valor numérico, que se muestra igual que String.valueOf(double)
+     * @param number Número del valor
+     * @return Valor de tipo NUMBER
+     */
+    public static TypedValue number(double number) {
+        return new TypedValue(Type.NUMBER, number, null, false);
+    }
+
+    /**
+     * Crea un valor numérico que se muestra con el texto indicado
+     * @param number Número del valor
+     * @param text Texto con el que se muestra el número
+     * @return Valor de tipo NUMBER
+     */
+    public static TypedValue number(double number, String text) {
+        return new TypedValue(Type.NUMBER, number, text, false);
+    }
+
+    /**
+     * Crea un valor numérico entero, que se muestra sin decimales
+     * @param number Número entero del valor
+     * @return Valor de tipo NUMBER
+     */
+    public static TypedValue integer(long number) {
+        return new TypedValue(Type.NUMBER, number, null, true);
+    }
+
+    /**
+     * Crea un valor de texto
+     * @param text Texto del valor
+     * @return Valor de tipo TEXT
+     */
+    public static TypedValue text(String text) {
+        return new TypedValue(Type.TEXT, 0, text, false);
+    }
+
+    /**
+     * Retorna el valor booleano indicado
+     * @param b Booleano del valor
+     * @return Valor de tipo BOOLEAN
+     */
+    public static TypedValue bool(boolean b) {
+        return b ? TRUE : FALSE;
+    }
+
+    /**
+     * Crea un valor de error
+     * @param code Código del error ("#REF!", "#NAME?", "#ERROR")
+     * @return Valor de tipo ERROR
+     */
+    public static TypedValue error(String code) {
+        return new TypedValue(Type.ERROR, 0, code, false);
+    }
+
+    /**
+     * Clasifica un texto escrito por el usuario o producido por una función. Es un número si Double.parseDouble lo acepta,
+     * y en ese caso se sigue mostrando con el mismo texto
+     * @param s Texto que se quiere clasificar
+     * @return Valor tipado del texto
+     */
+    public static TypedValue parse(String s) {
+        if (s == null || s.isEmpty()) return EMPTY;
+        if (s.equals("#REF!") || s.equals("#NAME?") || s.equals("#ERROR")) return error(s);
+        try {
+            return number(Double.parseDouble(s), s);
+        } catch (NumberFormatException e) {
+            return text(s);
+        }
+    }
+
+    /**
+     * Indica si un texto es un entero que se vuelve a escribir igual con Long.toString y que cabe exactamente en un double
+     * @param s Texto a comprobar
+     * @return true si es un entero así
+     */
+    public static boolean isCanonicalInteger(String s) {
+        int n = s.length();
+        if (n == 0 || n > 16) return false;
+        int start = s.charAt(0) == '-' ? 1 : 0;
+        if (start == n) return false;
+        if (s.charAt(start) == '0' && (n > start + 1 || start == 1)) return false;
+        for (int i = start; i < n; i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') return false;
+        }
+        return Math.abs(Long.parseLong(s)) <= (1L << 53);
+    }
+
+    /**
+     * Indica si un texto es un número que se vuelve a escribir igual con String.valueOf(double)
+     * @param s Texto a comprobar
+     * @return true si es un número así
+     */
+    public static boolean isCanonicalNumber(String s) {
+        if (s.isEmpty() || s.indexOf('.') < 0) return false;
+        char last = s.charAt(s.length() - 1);
+        if (last < '0' || last > '9') return false;
+        try {
+            return String.valueOf(Double.parseDouble(s)).equals(s);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el tipo del valor
+     * @return Tipo del valor
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Indica si el valor es un número
+     * @return true si el valor es de tipo NUMBER
+     */
+    public boolean isNumber() {
+        return this.type == Type.NUMBER;
+    }
+
+    /**
+     * Indica si el valor es un error
+     * @return true si el valor es de tipo ERROR
+     */
+    public boolean isError() {
+        return this.type == Type.ERROR;
+    }
+
+    /**
+     * Retorna el valor numérico, sin pasar por su texto
+     * @return double con el número (1 o 0 para los booleanos, 0 para el resto de tipos)
+     */
+    public double getNumber() {
+        return this.number;
+    }
+
+    /**
+     * Retorna el texto con el que se muestra el valor, generándolo la primera vez en el caso de los números
+     * @return String con el valor
+     */
+    @Override
+    public String toString() {
+        if (this.text == null) {
+            if (this.integral) this.text = String.valueOf((long) this.number);
+            else this.text = String.valueOf(this.number);
+        }
+        return this.text;
+    }
+
+}
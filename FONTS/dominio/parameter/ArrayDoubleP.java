@@ -1,9 +1,13 @@
 package dominio.parameter;
 
 import java.util.ArrayList;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Supplier;
 
 /**
- * Representa un parámetro de tipo array de Doubles
+ * Representa un parámetro de tipo array de Doubles. Además de los valores guarda sus estadísticos, y los valores de un rango
+ * del que ya se conocen los estadísticos no se leen hasta que alguna función pide el array
  */
 public class ArrayDoubleP extends Parameter {
 
@@ -12,6 +16,26 @@ public class ArrayDoubleP extends Parameter {
      */
     private final ArrayList<Double> a = new ArrayList<>();
 
+    /**
+     * Representa los estadísticos de todos los valores del parámetro, también los de los rangos que todavía no se han leído
+     */
+    private final Statistics statistics = new Statistics();
+
+    /**
+     * Representa los rangos que todavía no se han leído: cada uno escribe sus valores en orden en el destino que recibe
+     */
+    private ArrayList<Consumer<DoubleConsumer>> ranges;
+
+    /**
+     * Representa la posición de a donde van los valores de cada rango de ranges, en el mismo orden
+     */
+    private ArrayList<Integer> positions;
+
+    /**
+     * Representa el índice de orden del rango, si el parámetro es solo un rango que tiene uno; null en caso contrario
+     */
+    private Supplier<OrderStatistics> order;
+
     /**
      * Añade el double indicado al parámetro
      * @param a Double que se quiere añadir al ArrayList
@@ -19,16 +43,110 @@ public class ArrayDoubleP extends Parameter {
     @Override
     public void addDouble(double a) {
         this.a.add(a);
+        statistics.add(a);
+        order = null;
+    }
+
+    /**
+     * Añade los valores de un rango sin leerlos: solo se leen si se pide el array
+     * @param rangeStatistics Estadísticos de los valores del rango
+     * @param values Escribe en orden los valores del rango en el destino que recibe
+     */
+    public void addRange(Statistics rangeStatistics, Consumer<DoubleConsumer> values) {
+        if (ranges == null) {
+            ranges = new ArrayList<>();
+            positions = new ArrayList<>();
+        }
+        ranges.add(values);
+        positions.add(a.size());
+        statistics.merge(rangeStatistics);
+        order = null;
+    }
+
+    /**
+     * Añade los valores de un rango sin leerlos, igual que addRange, junto con el índice de orden que tiene el rango. El índice solo se usa
+     * si el parámetro no tiene ningún otro valor
+     * @param rangeStatistics Estadísticos de los valores del rango
+     * @param values Escribe en orden los valores del rango en el destino que recibe
+     * @param rangeOrder Retorna el índice de orden del rango, o null si el rango todavía no tiene
+     */
+    public void addRange(Statistics rangeStatistics, Consumer<DoubleConsumer> values, Supplier<OrderStatistics> rangeOrder) {
+        boolean alone = size() == 0;
+        addRange(rangeStatistics, values);
+        if (alone) order = rangeOrder;
     }
 
     /**
-     * Retrona el parámetro
+     * Retorna el número de valores del parámetro
+     * @return int con el número de valores
+     */
+    public int size() {
+        return statistics.getCount();
+    }
+
+    /**
+     * Retrona el parámetro, leyendo antes los valores de los rangos que todavía no se han leído
      * @return Array del parámetro
      */
     @Override
     public ArrayList<Double> getArray() {
+        if (ranges != null) {
+            ArrayList<Double> added = new ArrayList<>(a);
+            a.clear();
+            a.ensureCapacity(statistics.getCount());
+            int next = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                while (next < positions.get(i)) a.add(added.get(next++));
+                ranges.get(i).accept(a::add);
+            }
+            while (next < added.size()) a.add(added.get(next++));
+            ranges = null;
+            positions = null;
+        }
         return a;
     }
 
+    /**
+     * Retorna una copia de los valores del parámetro en un array de double, sin leer en el array del parámetro los rangos que todavía
+     * no se han leído
+     * @return double[] con los valores, en el mismo orden que getArray
+     */
+    @Override
+    public double[] getValues() {
+        double[] values = new double[size()];
+        if (ranges == null) {
+            for (int i = 0; i < values.length; i++) values[i] = a.get(i);
+            return values;
+        }
+        int[] next = {0};
+        int added = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            while (added < positions.get(i)) values[next[0]++] = a.get(added++);
+            ranges.get(i).accept(value -> values[next[0]++] = value);
+        }
+        while (added < a.size()) values[next[0]++] = a.get(added++);
+        return values;
+    }
+
+    /**
+     * Retorna los valores del parámetro para consultarlos por posición en orden creciente: el índice de orden del rango si el parámetro
+     * es un rango que lo tiene, o una copia de los valores con quickselect
+     * @return Valores consultables por posición
+     */
+    @Override
+    public OrderStatistics getOrderStatistics() {
+        OrderStatistics rangeOrder = order != null ? order.get() : null;
+        return rangeOrder != null ? rangeOrder : new QuickSelect(getValues());
+    }
+
+    /**
+     * Retorna los estadísticos de los valores del parámetro
+     * @return Estadísticos de los valores
+     */
+    @Override
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
 
 }
@@ -0,0 +1,150 @@
+package dominio.parameter;
+
+/**
+ * Representa los estadísticos de un conjunto de parejas de valores (x, y): los estadísticos de cada variable y la suma de los productos
+ * de sus desviaciones respecto a sus medias (co-momento). Con una sola pasada por los valores se tienen las medias, las varianzas, la
+ * covarianza y la correlación de Pearson, y como en Statistics se pueden juntar los estadísticos de dos tramos sin volver a leerlos
+ */
+public final class CoStatistics {
+
+    // Attributes
+
+    /**
+     * Representa los estadísticos de los valores x
+     */
+    private final Statistics x;
+
+    /**
+     * Representa los estadísticos de los valores y
+     */
+    private final Statistics y;
+
+    /**
+     * Representa la suma de los productos de las desviaciones de x e y respecto a sus medias
+     */
+    private double comoment;
+
+
+    // Constructor
+
+    /**
+     * Crea los estadísticos de un conjunto vacío
+     */
+    public CoStatistics() {
+        this.x = new Statistics();
+        this.y = new Statistics();
+        this.comoment = 0.0;
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el número de parejas
+     * @return int con el número de parejas
+     */
+    public int getCount() {
+        return this.x.getCount();
+    }
+
+    /**
+     * Retorna los estadísticos de los valores x
+     * @return Estadísticos de x
+     */
+    public Statistics getX() {
+        return this.x;
+    }
+
+    /**
+     * Retorna los estadísticos de los valores y
+     * @return Estadísticos de y
+     */
+    public Statistics getY() {
+        return this.y;
+    }
+
+    /**
+     * Retorna la suma de los productos de las desviaciones de x e y respecto a sus medias
+     * @return double con el co-momento
+     */
+    public double getComoment() {
+        return this.comoment;
+    }
+
+    /**
+     * Retorna la covarianza poblacional de x e y
+     * @return double con la covarianza, NaN si no hay ninguna pareja
+     */
+    public double getCovariance() {
+        return this.comoment / getCount();
+    }
+
+    /**
+     * Retorna el coeficiente de correlación de Pearson de x e y
+     * @return double con el coeficiente, NaN si alguna de las dos variables no varía
+     */
+    public double getCorrelation() {
+        return this.comoment / Math.sqrt(this.x.getM2() * this.y.getM2());
+    }
+
+
+    // Methods
+
+    /**
+     * Añade una pareja de valores al conjunto
+     * @param valueX Valor x
+     * @param valueY Valor y
+     */
+    public void add(double valueX, double valueY) {
+        double deltaX = this.x.getCount() == 0 ? 0.0 : valueX - this.x.getMean();
+        this.x.add(valueX);
+        this.y.add(valueY);
+        this.comoment += deltaX * (valueY - this.y.getMean());
+    }
+
+    // Pre: 0 <= from <= to <= valuesX.length, valuesY.length
+
+    /**
+     * Añade al conjunto las parejas de un tramo de dos arrays, en una sola pasada. Los tramos se pueden acumular por separado,
+     * incluso en paralelo, y juntar después con merge
+     * @param valuesX Array de valores x
+     * @param valuesY Array de valores y, en el mismo orden
+     * @param from Primera posición del tramo
+     * @param to Posición siguiente a la última del tramo
+     */
+    public void addAll(double[] valuesX, double[] valuesY, int from, int to) {
+        for (int i = from; i < to; i++) add(valuesX[i], valuesY[i]);
+    }
+
+    /**
+     * Añade al conjunto todas las parejas de otro conjunto
+     * @param other Estadísticos del otro conjunto
+     */
+    public void merge(CoStatistics other) {
+        int count = getCount(), otherCount = other.getCount();
+        if (otherCount == 0) return;
+        if (count > 0) {
+            double deltaX = other.x.getMean() - this.x.getMean();
+            double deltaY = other.y.getMean() - this.y.getMean();
+            this.comoment += other.comoment + deltaX * deltaY * ((double) count * otherCount / ((double) count + otherCount));
+        }
+        else this.comoment = other.comoment;
+        this.x.merge(other.x);
+        this.y.merge(other.y);
+    }
+
+    // Pre: valuesX.length == valuesY.length
+
+    /**
+     * Retorna los estadísticos de las parejas de dos arrays, calculados en una sola pasada
+     * @param valuesX Array de valores x
+     * @param valuesY Array de valores y, en el mismo orden
+     * @return Estadísticos de las parejas
+     */
+    public static CoStatistics of(double[] valuesX, double[] valuesY) {
+        CoStatistics statistics = new CoStatistics();
+        statistics.addAll(valuesX, valuesY, 0, valuesX.length);
+        return statistics;
+    }
+
+}
@@ -0,0 +1,52 @@
+package dominio.parameter;
+
+/**
+ * Interfaz que representa un conjunto de valores que se puede consultar por su posición en orden creciente, sin tener que ordenarlo entero.
+ * Los valores se ordenan como Double.compare, igual que al ordenar una lista de Double
+ */
+public interface OrderStatistics {
+
+    /**
+     * Retorna el número de valores
+     * @return int con el número de valores
+     */
+    int size();
+
+    // Pre: 0 <= k < size()
+
+    /**
+     * Retorna el valor que ocupa la posición k si se ordenan los valores de menor a mayor
+     * @param k Posición, empezando por 0
+     * @return double con el valor
+     */
+    double select(int k);
+
+    // Pre: size() > 0
+
+    /**
+     * Retorna la mediana de los valores: el valor central, o la media de los dos centrales si hay un número par de valores
+     * @return double con la mediana
+     */
+    default double median() {
+        int n = size();
+        if (n % 2 == 1) return select((n + 1) / 2 - 1);
+        return (select(n / 2 - 1) + select(n / 2)) / 2;
+    }
+
+    // Pre: size() > 0, 0 <= p <= 1
+
+    /**
+     * Retorna el percentil p de los valores, interpolando linealmente entre los dos valores más cercanos: el 0 es el mínimo,
+     * el 1 el máximo y el 0.5 la mediana
+     * @param p Percentil, entre 0 y 1
+     * @return double con el percentil
+     */
+    default double percentile(double p) {
+        double h = (size() - 1) * p;
+        int k = (int) Math.floor(h);
+        double low = select(k);
+        if (k + 1 >= size() || h == k) return low;
+        return low + (h - k) * (select(k + 1) - low);
+    }
+
+}
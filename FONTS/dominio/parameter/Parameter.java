@@ -39,6 +39,14 @@ public abstract class Parameter{
         return null;
     }
 
+    /**
+     * Devuelve una copia de los valores de un vector de doubles en un array de tipos primitivos
+     * @return Valores del parámetro, null si el parámetro no es un vector
+     */
+    public double[] getValues() {
+        return null;
+    }
+
     /**
      * Devuelve un double
      * @return Double añadido como parámetro
@@ -47,4 +55,20 @@ public abstract class Parameter{
         return null;
     }
 
+    /**
+     * Devuelve los estadísticos de un vector de doubles
+     * @return Estadísticos de los valores del parámetro, null si el parámetro no es un vector
+     */
+    public Statistics getStatistics() {
+        return null;
+    }
+
+    /**
+     * Devuelve los valores de un vector de doubles para consultarlos por posición en orden creciente
+     * @return Valores del parámetro, null si el parámetro no es un vector
+     */
+    public OrderStatistics getOrderStatistics() {
+        return null;
+    }
+
 }
@@ -0,0 +1,68 @@
+package dominio.parameter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Representa un conjunto de valores que se consulta por posición con quickselect: cada consulta coloca el valor pedido en su posición
+ * final particionando solo la parte del array donde está, en O(n) de media, sin ordenar el resto. El array se va reordenando con las
+ * consultas, así que las siguientes son más rápidas
+ */
+public class QuickSelect implements OrderStatistics {
+
+    // Attributes
+
+    /**
+     * Representa los valores, que solo usa esta clase
+     */
+    private final double[] values;
+
+
+    // Constructor
+
+    /**
+     * Crea el conjunto con los valores indicados
+     * @param values Valores del conjunto, que pasan a ser de esta clase y se reordenan
+     */
+    public QuickSelect(double[] values) {
+        this.values = values;
+    }
+
+
+    // Methods
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public double select(int k) {
+        int lo = 0, hi = values.length - 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (lo < hi) {
+            double pivot = values[lo + random.nextInt(hi - lo + 1)];
+            // partición en tres tramos: menores que el pivote, iguales y mayores
+            int lt = lo, i = lo, gt = hi;
+            while (i <= gt) {
+                int c = Double.compare(values[i], pivot);
+                if (c < 0) swap(lt++, i++);
+                else if (c > 0) swap(i, gt--);
+                else i++;
+            }
+            if (k < lt) hi = lt - 1;
+            else if (k > gt) lo = gt + 1;
+            else return pivot;
+        }
+        return values[k];
+    }
+
+    /**
+     * Intercambia dos posiciones del array
+     */
+    private void swap(int i, int j) {
+        double t = values[i];
+        values[i] = values[j];
+        values[j] = t;
+    }
+
+}
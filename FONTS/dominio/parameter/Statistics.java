@@ -0,0 +1,147 @@
+package dominio.parameter;
+
+/**
+ * Representa los estadísticos de un conjunto de valores: cuántos hay, su suma y la suma de los cuadrados de sus desviaciones respecto
+ * a la media (M2). Se pueden ir añadiendo valores uno a uno o juntar los estadísticos de dos conjuntos sin volver a leer sus valores,
+ * y la varianza se calcula a partir de M2 en lugar de la suma de cuadrados, que pierde precisión cuando la media es grande
+ */
+public final class Statistics {
+
+    // Attributes
+
+    /**
+     * Representa el número de valores
+     */
+    private int count;
+
+    /**
+     * Representa la suma de los valores
+     */
+    private double sum;
+
+    /**
+     * Representa la suma de los cuadrados de las desviaciones de los valores respecto a su media
+     */
+    private double m2;
+
+
+    // Constructor
+
+    /**
+     * Crea los estadísticos de un conjunto vacío
+     */
+    public Statistics() {
+        this.count = 0;
+        this.sum = 0.0;
+        this.m2 = 0.0;
+    }
+
+
+    // Getters
+
+    /**
+     * Retorna el número de valores
+     * @return int con el número de valores
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Retorna la suma de los valores
+     * @return double con la suma
+     */
+    public double getSum() {
+        return this.sum;
+    }
+
+    /**
+     * Retorna la media de los valores
+     * @return double con la media, NaN si no hay ningún valor
+     */
+    public double getMean() {
+        return this.sum / this.count;
+    }
+
+    /**
+     * Retorna la suma de los cuadrados de las desviaciones de los valores respecto a su media
+     * @return double con M2
+     */
+    public double getM2() {
+        return this.m2;
+    }
+
+
+    // Methods
+
+    /**
+     * Añade un valor al conjunto
+     * @param value Valor que se añade
+     */
+    public void add(double value) {
+        if (count == 0) {
+            count = 1;
+            sum = value;
+            m2 = 0.0;
+            return;
+        }
+        double delta = value - sum / count;
+        ++count;
+        sum += value;
+        m2 += delta * (value - sum / count);
+    }
+
+    // Pre: 0 <= from <= to <= values.length
+
+    /**
+     * Añade al conjunto los valores de un tramo de un array, en una sola pasada. Los tramos de un array se pueden acumular por separado,
+     * incluso en paralelo, y juntar después con merge
+     * @param values Array de valores
+     * @param from Primera posición del tramo
+     * @param to Posición siguiente a la última del tramo
+     */
+    public void addAll(double[] values, int from, int to) {
+        for (int i = from; i < to; i++) add(values[i]);
+    }
+
+    /**
+     * Retorna los estadísticos de los valores de un array, calculados en una sola pasada
+     * @param values Array de valores
+     * @return Estadísticos de los valores
+     */
+    public static Statistics of(double[] values) {
+        Statistics statistics = new Statistics();
+        statistics.addAll(values, 0, values.length);
+        return statistics;
+    }
+
+    /**
+     * Añade al conjunto todos los valores de otro conjunto
+     * @param other Estadísticos del otro conjunto
+     */
+    public void merge(Statistics other) {
+        merge(other.count, other.sum, other.m2);
+    }
+
+    /**
+     * Añade al conjunto todos los valores de otro conjunto, dado por sus estadísticos
+     * @param count Número de valores del otro conjunto
+     * @param sum Suma de los valores del otro conjunto
+     * @param m2 M2 del otro conjunto
+     */
+    public void merge(int count, double sum, double m2) {
+        if (count == 0) return;
+        if (this.count == 0) {
+            this.count = count;
+            this.sum = sum;
+            this.m2 = m2;
+            return;
+        }
+        double delta = sum / count - this.sum / this.count;
+        double total = (double) this.count + count;
+        this.m2 += m2 + delta * delta * ((double) this.count * count / total);
+        this.sum += sum;
+        this.count += count;
+    }
+
+}
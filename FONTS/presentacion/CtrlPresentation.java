@@ -2,11 +2,15 @@ package presentacion;
 
 import dominio.auxiliarclasses.MyException;
 import dominio.auxiliarclasses.Pair;
+import datos.controlador.SaveListener;
 import dominio.controlador.CtrlDominio;
 
+import javax.swing.*;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Representa el controlador de presentación que comunica las interacciones del usuario con la capa de dominio
@@ -14,6 +18,11 @@ import java.util.ArrayList;
 
 public class CtrlPresentation {
 
+    /**
+     * Minutos entre dos autoguardados del documento
+     */
+    private static final long AUTOSAVE_MINUTES = 5;
+
     /**
      * Controlador de dominio
      */
@@ -30,6 +39,7 @@ public class CtrlPresentation {
 
         this.ctrlDominio = new CtrlDominio();
         this.mainView = new ExcelFrame(this);
+        this.ctrlDominio.startAutosave(AUTOSAVE_MINUTES, TimeUnit.MINUTES, () -> SwingUtilities.invokeLater(mainView::autosave));
 
     }
 
@@ -259,11 +269,51 @@ public class CtrlPresentation {
     }
 
     /**
-     * Guarda el documento actual
+     * Guarda el documento actual en segundo plano. El progreso y el resultado se muestran en la barra de estado de la ventana principal
      * @param path Dirección donde se guardará el documento
+     * @param saved Acción que se hace en el hilo de la interfaz cuando el documento se ha guardado, no se hace si el guardado falla
+     */
+    public void saveDocument(String path, Runnable saved) {
+        String name = new File(path).getName();
+        mainView.setStatus("Saving " + name + "...");
+        ctrlDominio.saveDataAsync(path, new SaveListener() {
+            @Override
+            public void progress(String path, int done, int total) {
+                int percent = total == 0 ? 100 : (int) (100L * done / total);
+                SwingUtilities.invokeLater(() -> mainView.setStatus("Saving " + name + "... " + percent + "%"));
+            }
+
+            @Override
+            public void finished(String path, IOException error) {
+                SwingUtilities.invokeLater(() -> {
+                    if (error == null) {
+                        mainView.setStatus("Saved " + name);
+                        saved.run();
+                    }
+                    else {
+                        mainView.setStatus("Could not save " + name);
+                        JOptionPane.showMessageDialog(mainView.getMainWindow(), "Could not save " + name + ": " + error.getMessage(), "Excel", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Guarda una copia de recuperación del documento actual en segundo plano, sin modificar el documento guardado por el usuario
+     * @param path Dirección donde se guardará la copia, con el formato nativo
+     */
+    public void autosaveDocument(String path) {
+        String name = new File(path).getName();
+        ctrlDominio.saveCopyAsync(path, (p, error) -> SwingUtilities.invokeLater(() ->
+                mainView.setStatus(error == null ? "Autosaved " + name : "Could not autosave " + name)));
+    }
+
+    /**
+     * Desactiva el autoguardado del documento actual
      */
-    public void saveDocument(String path) throws InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
-        ctrlDominio.saveData(path);
+    public void stopAutosave() {
+        ctrlDominio.stopAutosave();
     }
 
     /**
@@ -87,6 +87,18 @@ public class ExcelFrame implements ActionListener {
      * Booleano que indica si los cambios en el documento actual han sido guardados o no
      */
     private boolean save;
+    /**
+     * Número de veces que se ha modificado el documento actual, para saber si un guardado terminado incluye los últimos cambios
+     */
+    private int changes;
+    /**
+     * Booleano que indica si la copia de recuperación del documento actual tiene los últimos cambios
+     */
+    private boolean autosaved;
+    /**
+     * Barra de estado donde se muestra el progreso de los guardados
+     */
+    private JLabel statusBar;
     /**
      * Entero que indica qué hoja de cálculo está enfocada para realizar operaciones
      */
@@ -127,6 +139,7 @@ public class ExcelFrame implements ActionListener {
 
         // Documento no guardado
         save = true;
+        autosaved = true;
         sheetFocused = 0;
 
         // Inicializamos el documento
@@ -140,6 +153,11 @@ public class ExcelFrame implements ActionListener {
         // Añadimos el documento a la window
         mainWindow.add(documentComponent.getDocument(), BorderLayout.CENTER);
 
+        // Barra de estado
+        statusBar = new JLabel(" ");
+        statusBar.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        mainWindow.add(statusBar, BorderLayout.SOUTH);
+
     }
 
 
@@ -218,9 +236,31 @@ public class ExcelFrame implements ActionListener {
         mainWindow.add(documentComponent.getDocument(), BorderLayout.CENTER);
         documentComponent.setFocus(sheetFocused);
         save = false;
+        autosaved = false;
+        changes++;
         makeVisible();
     }
 
+    /**
+     * Muestra un mensaje en la barra de estado
+     * @param text Mensaje a mostrar
+     */
+    public void setStatus(String text) {
+        statusBar.setText(text);
+    }
+
+    /**
+     * Guarda una copia de recuperación del documento si tiene cambios que no se han guardado. La copia se guarda con el formato nativo
+     * al lado del fichero actual, o en la carpeta temporal si el documento todavía no se ha guardado
+     */
+    public void autosave() {
+        if (save || autosaved || !mainWindow.isDisplayable()) return;
+        File copy = actualFile != null ? new File(actualFile.getAbsolutePath() + ".autosave.prop")
+                                       : new File(System.getProperty("java.io.tmpdir"), "Excel.autosave.prop");
+        ctrlPresentation.autosaveDocument(copy.getAbsolutePath());
+        autosaved = true;
+    }
+
     /**
      * Establece la hoja de cálculo indicada como la hoja de cálculo que se está enfocando a la hora de hacer operaciones
      * @param index Integer con el índice de la hoja de cálculo dentro del documento en la que se están aplicando las operaciones
@@ -260,6 +300,7 @@ public class ExcelFrame implements ActionListener {
                     this.save = true;
 
                 }
+                this.ctrlPresentation.stopAutosave();
                 this.mainWindow.setVisible(false);
                 this.mainWindow.dispose();
                 CtrlPresentation ctrlPresentation = null;
@@ -273,6 +314,7 @@ public class ExcelFrame implements ActionListener {
             }
 
             else {
+                this.ctrlPresentation.stopAutosave();
                 this.mainWindow.setVisible(false);
                 this.mainWindow.dispose();
                 CtrlPresentation ctrlPresentation = null;
@@ -304,7 +346,10 @@ public class ExcelFrame implements ActionListener {
                 actualFile = new File(fileChooser.getSelectedFile().getAbsolutePath());
                 try {
                     ctrlPresentation.loadDocument(actualFile.getAbsolutePath());
-                } catch (MyException | IOException | InvocationTargetException | NoSuchMethodException | InstantiationException | IllegalAccessException ex) {
+                } catch (MyException ex) {
+                    // el documento se ha cargado, pero sin algunos de sus cambios
+                    JOptionPane.showMessageDialog(mainWindow, ex.getMessage(), "Excel", JOptionPane.WARNING_MESSAGE);
+                } catch (IOException | InvocationTargetException | NoSuchMethodException | InstantiationException | IllegalAccessException ex) {
                     ex.printStackTrace();
                 }
                 try {
@@ -319,13 +364,12 @@ public class ExcelFrame implements ActionListener {
             int response = fileChooser.showSaveDialog(null);    // seleccionar file para guardar
             if (response == JFileChooser.APPROVE_OPTION) {
                 actualFile = new File(fileChooser.getSelectedFile().getAbsolutePath());
-                try {
-                    ctrlPresentation.saveDocument(actualFile.getAbsolutePath());
-                } catch (InvocationTargetException | NoSuchMethodException | InstantiationException | IllegalAccessException ex) {
-                    ex.printStackTrace();
-                }
+                //el documento solo queda guardado cuando acaba el guardado, si no se ha vuelto a modificar mientras tanto
+                int saving = changes;
+                ctrlPresentation.saveDocument(actualFile.getAbsolutePath(), () -> {
+                    if (changes == saving) save = true;
+                });
             }
-            this.save = true;
         }
 
         else if (e.getSource() == sortBlock) {
@@ -0,0 +1,167 @@
+package datos.documents;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba los lectores de csv con un archivo generado al azar del que se conocen todas las celdas: campos entre quotes con separadores,
+ * quotes dobladas y saltos de línea, quotes en medio de un campo sin quotes, texto con caracteres de varios bytes, líneas acabadas en
+ * "\n" y en "\r\n" y marca de orden de bytes al principio
+ */
+class CsvReaderTest {
+
+    /**
+     * Representa el tamaño de los trozos de DocumentParallelCSV
+     */
+    private static final int CHUNK = 8 << 20;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * La lectura por bloques de 64 KB da las mismas celdas, aunque los bloques corten los campos y los saltos de línea por cualquier sitio
+     */
+    @Test
+    void blocksMatchWrittenCells() throws IOException {
+        Path file = dir.resolve("datos.csv");
+        List<String> expected = write(file, 1 << 20, 1 << 16, 4000, new Random(3));
+        assertCells(expected, read(new DocumentCSV(), file));
+    }
+
+    /**
+     * La lectura proyectando el archivo en memoria da las mismas celdas, y loadFile las coloca en su fila y columna
+     */
+    @Test
+    void mappedMatchesWrittenCells() throws IOException {
+        Path file = dir.resolve("datos.csv");
+        List<String> expected = write(file, 1 << 20, 1 << 16, 4000, new Random(4));
+        DocumentMappedCSV document = new DocumentMappedCSV();
+        assertCells(expected, read(document, file));
+        List<List<String>> sheet = document.loadFile(file.toString()).get(0);
+        for (String cell : expected) {
+            int comma = cell.indexOf(','), space = cell.indexOf(' ');
+            int row = Integer.parseInt(cell.substring(0, comma)), col = Integer.parseInt(cell.substring(comma + 1, space));
+            assertEquals(cell.substring(space + 1), sheet.get(row).get(col), cell);
+        }
+    }
+
+    /**
+     * La lectura en paralelo da las mismas celdas que se han escrito aunque los cortes entre trozos caigan dentro de campos entre quotes
+     * que contienen saltos de línea, separadores y quotes
+     */
+    @Test
+    void parallelChunksMatchWrittenCells() throws IOException {
+        Path file = dir.resolve("datos.csv");
+        List<String> expected = write(file, 2 * CHUNK + CHUNK / 2, CHUNK, 4000, new Random(5));
+        assertCells(expected, read(new DocumentParallelCSV(), file));
+    }
+
+    /**
+     * Un campo entre quotes más largo que un trozo hace que el trozo entero esté dentro de quotes: la fila sigue en el trozo siguiente
+     */
+    @Test
+    void chunkInsideQuotedField() throws IOException {
+        Path file = dir.resolve("datos.csv");
+        List<String> expected = write(file, 2 * CHUNK + (1 << 20), CHUNK, CHUNK + (1 << 20), new Random(6));
+        assertCells(expected, read(new DocumentParallelCSV(), file));
+    }
+
+    /**
+     * Un archivo más pequeño que un trozo se lee de una vez
+     */
+    @Test
+    void parallelSingleChunk() throws IOException {
+        Path file = dir.resolve("datos.csv");
+        List<String> expected = write(file, 1 << 20, 1 << 16, 4000, new Random(7));
+        assertCells(expected, read(new DocumentParallelCSV(), file));
+    }
+
+    /**
+     * Escribe un archivo csv de al menos size bytes y retorna sus celdas no vacías. Un poco antes de cada múltiplo de boundary se escribe
+     * un campo largo entre quotes cuyo contenido parece un trozo de csv, para que el corte caiga dentro de él
+     * @param file Archivo
+     * @param size Tamaño mínimo del archivo
+     * @param boundary Distancia entre los cortes cerca de los que se escribe un campo largo
+     * @param trapLength Longitud mínima de los campos largos
+     * @param random Generador de los campos
+     * @return List con cada celda no vacía como "fila,columna valor", en el orden del archivo
+     */
+    private static List<String> write(Path file, long size, long boundary, int trapLength, Random random) throws IOException {
+        List<String> expected = new ArrayList<>();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            out.write(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+            long written = 3;
+            long next = boundary;
+            for (int row = 0; written < size; row++) {
+                boolean trap = written + 2000 > next;
+                int cols = 1 + random.nextInt(6);
+                StringBuilder line = new StringBuilder();
+                for (int col = 0; col < cols; col++) {
+                    if (col > 0) line.append(',');
+                    String value = trap && col == 0 ? trap(trapLength, random) : value(random);
+                    line.append(encode(value, random));
+                    if (!value.isEmpty()) expected.add(row + "," + col + " " + value);
+                }
+                line.append(random.nextBoolean() ? "\r\n" : "\n");
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                out.write(bytes);
+                written += bytes.length;
+                while (next < written + 2000) next += boundary;
+            }
+        }
+        return expected;
+    }
+
+    private static String value(Random random) {
+        switch (random.nextInt(9)) {
+            case 0: return "";
+            case 1: return String.valueOf(random.nextInt(100000) / 8.0);
+            case 2: return "txt" + random.nextInt(1000);
+            case 3: return "ñandú " + random.nextInt(10) + " €";
+            case 4: return "a,b," + random.nextInt(10);
+            case 5: return "di \"hola\"";
+            case 6: return "línea 1\r\nlínea 2\nfin";
+            case 7: return "ab\"c";
+            default: return "=A" + (1 + random.nextInt(50)) + "+B1";
+        }
+    }
+
+    private static String trap(int length, Random random) {
+        StringBuilder value = new StringBuilder();
+        while (value.length() < length) value.append("x,\"y").append(random.nextInt(10)).append(random.nextBoolean() ? "\"\n" : "\r\n,\"");
+        return value.toString();
+    }
+
+    /**
+     * Escribe un campo entre quotes si hace falta o, a veces, aunque no haga falta
+     */
+    private static String encode(String value, Random random) {
+        boolean quote = value.startsWith("\"") || value.indexOf(',') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote && random.nextInt(4) > 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static List<String> read(DocumentCSV document, Path file) throws IOException {
+        List<String> cells = new ArrayList<>();
+        document.streamFile(file.toString(), (row, col, value) -> cells.add(row + "," + col + " " + value));
+        return cells;
+    }
+
+    private static void assertCells(List<String> expected, List<String> actual) {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) assertEquals(expected.get(i), actual.get(i), "celda " + i);
+        assertEquals(expected.size(), actual.size());
+    }
+
+}
@@ -0,0 +1,106 @@
+package datos.documents;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que lo que escribe DocumentCSV con cada formato se vuelve a leer igual
+ */
+class CsvWriterTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Con cada separador, quote y salto de línea, leer el archivo escrito da las mismas celdas no vacías, aunque los campos contengan
+     * el separador, la quote o saltos de línea y alguno no quepa en el buffer del escritor
+     */
+    @Test
+    void roundTripEveryDialect() throws IOException {
+        CsvDialect[] dialects = {
+            CsvDialect.DEFAULT,
+            new CsvDialect(',', '"', "\r\n"),
+            new CsvDialect(';', '\'', "\n"),
+            new CsvDialect('\t', '"', "\r\n")
+        };
+        for (int d = 0; d < dialects.length; d++) {
+            CsvDialect dialect = dialects[d];
+            List<ArrayList<String>> sheet = sheet(new Random(d));
+            Path file = dir.resolve("datos" + d + ".csv");
+            DocumentCSV document = new DocumentCSV();
+            document.setDialect(dialect);
+            List<List<ArrayList<String>>> data = new ArrayList<>();
+            data.add(sheet);
+            document.writeFile(file.toString(), data);
+            assertEquals(cells(sheet), read(file, dialect), "formato " + d);
+        }
+    }
+
+    /**
+     * Si se guardan varias hojas, cada una va a su archivo con el nombre de la hoja, sin los caracteres que no pueden ir en un nombre de archivo
+     */
+    @Test
+    void oneFilePerSheet() throws IOException {
+        List<List<ArrayList<String>>> data = new ArrayList<>();
+        data.add(sheet(new Random(10)));
+        data.add(sheet(new Random(11)));
+        ArrayList<String> names = new ArrayList<>();
+        names.add("Hoja 1");
+        names.add("Datos");
+        DocumentCSV document = new DocumentCSV();
+        document.setNames(names);
+        document.writeFile(dir.resolve("libro.csv").toString(), data);
+        assertEquals(cells(data.get(0)), read(dir.resolve("libro_Hoja_1.csv"), CsvDialect.DEFAULT));
+        assertEquals(cells(data.get(1)), read(dir.resolve("libro_Datos.csv"), CsvDialect.DEFAULT));
+        assertFalse(Files.exists(dir.resolve("libro.csv")));
+    }
+
+    /**
+     * Genera una hoja con filas de distinta longitud y campos vacíos, con separadores, quotes, saltos de línea y un campo de 100 KB
+     */
+    private static List<ArrayList<String>> sheet(Random random) {
+        String[] values = {"", "12.5", "=A1+B2", "a,b", "a;b", "a\tb", "di \"hola\"", "\"al principio", "it's", "'x'", "línea 1\nlínea 2",
+            "fin\r\n", "ñandú €", " espacios "};
+        List<ArrayList<String>> sheet = new ArrayList<>();
+        for (int r = 0; r < 3000; r++) {
+            ArrayList<String> row = new ArrayList<>();
+            int cols = random.nextInt(7);
+            for (int c = 0; c < cols; c++) row.add(values[random.nextInt(values.length)] + (random.nextBoolean() ? "" : r));
+            sheet.add(row);
+        }
+        StringBuilder big = new StringBuilder();
+        while (big.length() < 100000) big.append("\"x\",;'\n");
+        sheet.get(1500).add(big.toString());
+        return sheet;
+    }
+
+    private static List<String> cells(List<ArrayList<String>> sheet) {
+        List<String> cells = new ArrayList<>();
+        for (int r = 0; r < sheet.size(); r++) {
+            for (int c = 0; c < sheet.get(r).size(); c++) {
+                if (!sheet.get(r).get(c).isEmpty()) cells.add(r + "," + c + " " + sheet.get(r).get(c));
+            }
+        }
+        return cells;
+    }
+
+    private static List<String> read(Path file, CsvDialect dialect) throws IOException {
+        List<String> cells = new ArrayList<>();
+        CsvParser parser = new CsvParser(dialect.getSeparator(), dialect.getQuote(), (row, col, value) -> cells.add(row + "," + col + " " + value));
+        byte[] bytes = Files.readAllBytes(file);
+        parser.feed(ByteBuffer.wrap(bytes), 0, bytes.length);
+        parser.finish();
+        return cells;
+    }
+
+}
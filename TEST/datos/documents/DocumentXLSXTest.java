@@ -0,0 +1,151 @@
+package datos.documents;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que lo que guarda DocumentXLSX con un SXSSFWorkbook se vuelve a leer igual con la lectura por eventos, y que cada celda
+ * se guarda con su tipo
+ */
+class DocumentXLSXTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Los textos que parecen números pero no se leerían igual (ceros a la izquierda o al final, exponente, más de 15 cifras, "-0")
+     * se guardan como texto, y todas las celdas se vuelven a leer igual que se han escrito, en su hoja
+     */
+    @Test
+    void roundTripEverySheet() throws IOException {
+        String path = dir.resolve("libro.xlsx").toString();
+        List<List<ArrayList<String>>> data = new ArrayList<>();
+        data.add(sheet(0));
+        data.add(sheet(1));
+        DocumentXLSX document = new DocumentXLSX();
+        document.setNames(new ArrayList<>(Arrays.asList("Hoja 1", "Datos")));
+        document.setRowWindow(10);
+        document.writeFile(path, data);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < data.size(); i++) {
+            expected.add(i == 0 ? "Hoja 1" : "Datos");
+            List<ArrayList<String>> sheet = data.get(i);
+            for (int r = 0; r < sheet.size(); r++) {
+                for (int c = 0; c < sheet.get(r).size(); c++) {
+                    if (!sheet.get(r).get(c).isEmpty()) expected.add(r + "," + c + " " + sheet.get(r).get(c));
+                }
+            }
+        }
+        List<String> actual = new ArrayList<>();
+        new DocumentXLSX().streamFile(path, new CellConsumer() {
+            @Override
+            public void startSheet(String name) {
+                actual.add(name);
+            }
+
+            @Override
+            public void accept(int row, int col, String value) {
+                actual.add(row + "," + col + " " + value);
+            }
+        });
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Un documento escrito por otro programa se lee con textos compartidos, booleanos, números con formato, números con más de 15 cifras
+     * redondeados como en Excel, fórmulas y celdas fuera de las 26 primeras filas y columnas, en cada hoja
+     */
+    @Test
+    void readsForeignWorkbook() throws IOException {
+        String path = dir.resolve("otro.xlsx").toString();
+        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+            Sheet first = wb.createSheet("Primera");
+            first.createRow(0).createCell(0).setCellValue("compartido");
+            first.getRow(0).createCell(1).setCellValue(true);
+            first.getRow(0).createCell(2).setCellValue(0.1 + 0.2);
+            CellStyle twoDecimals = wb.createCellStyle();
+            twoDecimals.setDataFormat(wb.createDataFormat().getFormat("0.00"));
+            first.createRow(3).createCell(0).setCellValue(3.14159);
+            first.getRow(3).getCell(0).setCellStyle(twoDecimals);
+            first.getRow(3).createCell(1).setCellFormula("A4*2");
+            first.createRow(40).createCell(30).setCellValue("compartido");
+            wb.createSheet("Segunda").createRow(1).createCell(1).setCellValue(-2.5);
+            try (OutputStream out = new FileOutputStream(path)) {
+                wb.write(out);
+            }
+        }
+        List<String> actual = new ArrayList<>();
+        new DocumentXLSX().streamFile(path, new CellConsumer() {
+            @Override
+            public void startSheet(String name) {
+                actual.add(name);
+            }
+
+            @Override
+            public void accept(int row, int col, String value) {
+                actual.add(row + "," + col + " " + value);
+            }
+        });
+        assertEquals(List.of("Primera", "0,0 compartido", "0,1 TRUE", "0,2 0.3", "3,0 3.14", "3,1 =A4*2", "40,30 compartido",
+            "Segunda", "1,1 -2.5"), actual);
+    }
+
+    /**
+     * Los números que se leen igual se guardan como celdas numéricas, las fórmulas que Excel entiende como fórmulas y el resto como texto
+     */
+    @Test
+    void cellTypes() throws IOException {
+        String path = dir.resolve("tipos.xlsx").toString();
+        ArrayList<String> line = new ArrayList<>(Arrays.asList("12", "-3.25", "0.5", "123456789012345", "007", "1.50", "1e5", "-0",
+            "1234567890123456", ".5", "5.", "=A1+B1", "=SUM(A1:A3)", "texto", "=", "=A1+"));
+        CellType[] types = {CellType.NUMERIC, CellType.NUMERIC, CellType.NUMERIC, CellType.NUMERIC, CellType.STRING, CellType.STRING,
+            CellType.STRING, CellType.STRING, CellType.STRING, CellType.STRING, CellType.STRING, CellType.FORMULA, CellType.FORMULA,
+            CellType.STRING, CellType.STRING, CellType.STRING};
+        List<List<ArrayList<String>>> data = new ArrayList<>();
+        data.add(new ArrayList<>(List.of(line)));
+        DocumentXLSX document = new DocumentXLSX();
+        document.setNames(new ArrayList<>(List.of("Tipos")));
+        document.writeFile(path, data);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new FileInputStream(path))) {
+            Sheet sheet = wb.getSheetAt(0);
+            for (int c = 0; c < line.size(); c++) assertEquals(types[c], sheet.getRow(0).getCell(c).getCellType(), line.get(c));
+        }
+        List<List<List<String>>> loaded = new DocumentXLSX().loadFile(path);
+        assertEquals(1, loaded.size());
+        assertEquals(26, loaded.get(0).size());
+        assertEquals("Tipos", loaded.get(0).get(0).get(0));
+        assertEquals(line, loaded.get(0).get(0).subList(1, line.size() + 1));
+    }
+
+    /**
+     * Genera una hoja de 300 filas con números, textos, fórmulas y celdas vacías
+     */
+    private static List<ArrayList<String>> sheet(int seed) {
+        String[] values = {"", "42", "-7.5", "0.125", "007", "texto", "ñandú €", "=A1+B1", "=SUM(A1:A3)", "1e3", "TRUE"};
+        List<ArrayList<String>> sheet = new ArrayList<>();
+        for (int r = 0; r < 300; r++) {
+            ArrayList<String> row = new ArrayList<>();
+            for (int c = 0; c < (r + seed) % 5; c++) row.add(values[(r * 7 + c * 3 + seed) % values.length]);
+            sheet.add(row);
+        }
+        return sheet;
+    }
+
+}
@@ -0,0 +1,184 @@
+package datos.documents;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que el diario de ediciones conserva los registros sincronizados y descarta los finales a medio escribir y los diarios
+ * que no corresponden al documento
+ */
+class EditJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private String snapshot;
+
+    private String journal;
+
+    @BeforeEach
+    void createSnapshot() throws IOException {
+        snapshot = dir.resolve("doc.prop").toString();
+        journal = dir.resolve("doc.prop.journal").toString();
+        Files.write(dir.resolve("doc.prop"), new byte[]{1, 2, 3});
+    }
+
+    /**
+     * Los registros sincronizados se leen igual al volver a abrir el diario, y se pueden seguir añadiendo registros detrás
+     */
+    @Test
+    void appendSyncReopen() throws IOException {
+        try (EditJournal j = EditJournal.open(journal, snapshot)) {
+            j.append((byte) 1, new int[]{0, 1, 2, 3}, "=mean(A1:A3)");
+            j.append((byte) 14, new int[]{0, 0}, "Hoja ñ");
+            j.sync();
+            j.append((byte) 2, new int[]{0, 5});
+        }
+        List<EditJournal.Record> records = EditJournal.readRecords(journal, snapshot);
+        assertEquals(2, records.size());
+        assertRecord(records.get(0), 1, new int[]{0, 1, 2, 3}, "=mean(A1:A3)");
+        assertRecord(records.get(1), 14, new int[]{0, 0}, "Hoja ñ");
+
+        try (EditJournal j = EditJournal.open(journal, snapshot)) {
+            j.append((byte) 3, new int[]{0, 7});
+            j.sync();
+        }
+        records = EditJournal.readRecords(journal, snapshot);
+        assertEquals(3, records.size());
+        assertRecord(records.get(2), 3, new int[]{0, 7});
+    }
+
+    /**
+     * Un registro cortado a medio escribir se descarta, y al abrir el diario se trunca para que los registros nuevos queden detrás
+     * de los completos
+     */
+    @Test
+    void tornTailIsTruncated() throws IOException {
+        writeTwoRecords();
+        long full = Files.size(Path.of(journal));
+        try (EditJournal j = EditJournal.open(journal, snapshot)) {
+            j.append((byte) 4, new int[]{0, 9}, "cortado");
+            j.sync();
+        }
+        for (long cut = full + 1; cut < Files.size(Path.of(journal)); cut++) {
+            Path torn = dir.resolve("torn.journal");
+            byte[] bytes = Files.readAllBytes(Path.of(journal));
+            Files.write(torn, Arrays.copyOf(bytes, (int) cut));
+            assertEquals(2, EditJournal.readRecords(torn.toString(), snapshot).size(), "cortado en " + cut);
+        }
+        truncate(journal, Files.size(Path.of(journal)) - 3);
+        reopenAndAppend(2);
+    }
+
+    /**
+     * Un final lleno de ceros, como el que deja un sistema de archivos que ha reservado el espacio sin llegar a escribirlo, se descarta
+     * aunque su CRC coincida
+     */
+    @Test
+    void zeroPaddedTailIsTruncated() throws IOException {
+        writeTwoRecords();
+        Files.write(Path.of(journal), new byte[64], StandardOpenOption.APPEND);
+        assertEquals(2, EditJournal.readRecords(journal, snapshot).size());
+        reopenAndAppend(2);
+    }
+
+    /**
+     * Una longitud imposible, negativa o más grande que el archivo, acaba el diario sin leer fuera del archivo
+     */
+    @Test
+    void garbageLengthEndsJournal() throws IOException {
+        writeTwoRecords();
+        Files.write(Path.of(journal), new byte[]{(byte) 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+        assertEquals(2, EditJournal.readRecords(journal, snapshot).size());
+        truncate(journal, Files.size(Path.of(journal)) - 9);
+        Files.write(Path.of(journal), new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFE, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+        assertEquals(2, EditJournal.readRecords(journal, snapshot).size());
+        reopenAndAppend(2);
+    }
+
+    /**
+     * Después de rebase el diario corresponde al documento nuevo: solo conserva los registros posteriores a la marca, y si el documento
+     * cambia sin volver a hacer rebase la cabecera ya no coincide y el diario se descarta
+     */
+    @Test
+    void headerMismatchAfterRebase() throws IOException {
+        try (EditJournal j = EditJournal.open(journal, snapshot)) {
+            j.append((byte) 1, new int[]{0, 1, 1, 1}, "incluido");
+            int mark = j.mark();
+            j.append((byte) 1, new int[]{0, 1, 2, 2}, "posterior");
+            Files.write(Path.of(snapshot), new byte[]{1, 2, 3, 4, 5, 6});
+            j.rebase(snapshot, mark);
+            j.sync();
+        }
+        List<EditJournal.Record> records = EditJournal.readRecords(journal, snapshot);
+        assertEquals(1, records.size());
+        assertRecord(records.get(0), 1, new int[]{0, 1, 2, 2}, "posterior");
+
+        Files.write(Path.of(snapshot), new byte[]{9, 9, 9, 9, 9, 9, 9});
+        assertTrue(EditJournal.readRecords(journal, snapshot).isEmpty());
+
+        Files.write(Path.of(snapshot), new byte[]{1, 2, 3, 4, 5, 6});
+        Files.setLastModifiedTime(Path.of(snapshot), FileTime.fromMillis(Files.getLastModifiedTime(Path.of(snapshot)).toMillis() + 5000));
+        assertTrue(EditJournal.readRecords(journal, snapshot).isEmpty());
+        try (EditJournal j = EditJournal.open(journal, snapshot)) {
+            assertEquals(Files.size(Path.of(snapshot)), j.getSnapshotSize());
+        }
+        assertTrue(EditJournal.readRecords(journal, snapshot).isEmpty());
+    }
+
+    /**
+     * Un diario sin archivo guarda los registros en memoria y no se puede sincronizar hasta que se hace rebase
+     */
+    @Test
+    void syncWithoutFileFails() throws IOException {
+        EditJournal j = new EditJournal(journal);
+        j.append((byte) 2, new int[]{0, 1});
+        assertFalse(j.isOpen());
+        assertThrows(IOException.class, j::sync);
+        j.rebase(snapshot, 0);
+        j.sync();
+        j.close();
+        assertEquals(1, EditJournal.readRecords(journal, snapshot).size());
+    }
+
+    private void writeTwoRecords() throws IOException {
+        try (EditJournal j = EditJournal.open(journal, snapshot)) {
+            j.append((byte) 1, new int[]{0, 1, 1, 1}, "1");
+            j.append((byte) 1, new int[]{0, 1, 2, 2}, "2");
+            j.sync();
+        }
+    }
+
+    private void reopenAndAppend(int before) throws IOException {
+        try (EditJournal j = EditJournal.open(journal, snapshot)) {
+            j.append((byte) 2, new int[]{0, 3});
+            j.sync();
+        }
+        List<EditJournal.Record> records = EditJournal.readRecords(journal, snapshot);
+        assertEquals(before + 1, records.size());
+        assertRecord(records.get(before), 2, new int[]{0, 3});
+    }
+
+    private static void truncate(String path, long size) throws IOException {
+        byte[] bytes = Files.readAllBytes(Path.of(path));
+        Files.write(Path.of(path), Arrays.copyOf(bytes, (int) size));
+    }
+
+    private static void assertRecord(EditJournal.Record record, int op, int[] ints, String... texts) {
+        assertEquals(op, record.getOp());
+        assertArrayEquals(ints, record.getInts());
+        assertArrayEquals(texts, record.getTexts());
+    }
+
+}
@@ -0,0 +1,81 @@
+package dominio.controlador;
+
+import dominio.auxiliarclasses.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que cargar un csv escribe cada fila del documento en la fila siguiente de la hoja y evalúa las fórmulas al acabar,
+ * cuando ya están cargadas las celdas a las que referencian
+ */
+class CsvImportTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Las fórmulas que referencian filas posteriores del documento dan el mismo valor que si se hubieran escrito después, y la hoja
+     * crece hasta la última fila del documento
+     */
+    @Test
+    void formulasSeeLaterRows() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        csv.append("1,2,=A3+B1\r\n");
+        csv.append("\"x,y\",\"varias\nlíneas\",=A1+A3\r\n");
+        csv.append("4,5,=C1*2\n");
+        for (int r = 4; r < 300; r++) csv.append("=A").append(r + 1).append("-1\n");
+        csv.append("300");
+        Path file = dir.resolve("datos.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        CtrlDominio cd = new CtrlDominio();
+        cd.loadData(file.toString());
+        assertEquals(301, cd.getNRows());
+        assertEquals("6.0", cd.getValue(1, 2));
+        assertEquals("x,y", cd.getValue(2, 0));
+        assertEquals("varias\nlíneas", cd.getValue(2, 1));
+        assertEquals("5.0", cd.getValue(2, 2));
+        assertEquals("12.0", cd.getValue(3, 2));
+        assertEquals("4.0", cd.getValue(4, 0));
+        assertEquals("300", cd.getValue(300, 0));
+    }
+
+    /**
+     * Un csv exportado con las fórmulas se vuelve a cargar con los mismos valores; como al cargar cualquier csv, cada fila del archivo
+     * va a la fila siguiente de la hoja y las referencias se desplazan con ella
+     */
+    @Test
+    void exportedFormulasLoadBack() throws Exception {
+        CtrlDominio cd = new CtrlDominio();
+        cd.addSheet("Datos", 12, 4);
+        for (int r = 1; r <= 8; r++) {
+            cd.modifyCells(cells(r, 0), String.valueOf(r * 3 % 7));
+            cd.modifyCells(cells(r, 1), r % 2 == 0 ? "a,\"b\"" : "línea\n" + r);
+        }
+        cd.modifyCells(cells(1, 2), "=sum(A1:A8)");
+        cd.modifyCells(cells(2, 2), "=A2*C1");
+        cd.modifyCells(cells(9, 3), "=mean(A3:A6)");
+        String path = dir.resolve("exportada.csv").toString();
+        cd.exportCsv(path, ',', '"', "\r\n", true, false);
+
+        CtrlDominio loaded = new CtrlDominio();
+        loaded.loadData(path);
+        for (int r = 0; r <= 9; r++) {
+            for (int c = 0; c < 4; c++) assertEquals(cd.getValue(r, c), loaded.getValue(r + 1, c), "celda " + r + "," + c);
+        }
+    }
+
+    private static ArrayList<Pair> cells(int row, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        cells.add(new Pair(row, column));
+        return cells;
+    }
+
+}
@@ -0,0 +1,123 @@
+package dominio.controlador;
+
+import datos.controlador.CtrlPersistencia;
+import datos.documents.EditJournal;
+import dominio.auxiliarclasses.MyException;
+import dominio.auxiliarclasses.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que un documento nativo guardado con diario se carga igual que estaba, repitiendo las operaciones del diario
+ */
+class DocumentJournalTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Hace cada operación que se guarda en el diario después de guardar el documento entero, guarda solo el diario y comprueba que el
+     * documento cargado es igual que el editado
+     */
+    @Test
+    void replayRepeatsEveryOperation() throws Exception {
+        String path = dir.resolve("doc.prop").toString();
+        CtrlDominio cd = new CtrlDominio();
+        for (int r = 1; r <= 6; r++) {
+            cd.modifyCells(cells(r, 0), String.valueOf(r * 3 % 7));
+            cd.modifyCells(cells(r, 1), String.valueOf(r * 1.5));
+            cd.modifyCells(cells(r, 2), "t" + r % 3);
+        }
+        cd.modifyCells(cells(1, 3), "=mean(A1:A6)");
+        cd.modifyCells(cells(2, 3), "=B2");
+        cd.saveData(path);
+
+        cd.modifyCells(cells(3, 3), "=covariance(A1:A6;B1:B6)");
+        cd.addRow(2);
+        cd.addColumn(1);
+        cd.deleteRow(5);
+        cd.deleteColumn(4);
+        cd.deleteContBloq(cells(6, 0));
+        cd.moveContBloq(cells(1, 2), cells(8, 2));
+        cd.copyContBloq(cells(2, 0), cells(9, 0));
+        cd.sortContBloq(column(1, 5, 2), 2);
+        cd.replaceContBloq(column(1, 7, 3), "t1", "x");
+        cd.calculateDerivateData(column(1, 4, 5), "=A1+C1");
+        cd.addSheet("Otra");
+        cd.modifyCells(cells(0, 0), "=1+2");
+        cd.addSheet("Pequeña", 5, 4);
+        cd.modifyCells(cells(2, 2), "7");
+        cd.renameSheet(1, "Renombrada");
+        cd.deleteSheet(1);
+        cd.saveData(path);
+
+        List<EditJournal.Record> records = EditJournal.readRecords(CtrlPersistencia.journalPath(path), path);
+        assertEquals(17, records.size());
+        for (byte op = 1; op <= 14; op++) {
+            byte expected = op;
+            assertTrue(records.stream().anyMatch(record -> record.getOp() == expected), "falta la operación " + op);
+        }
+
+        CtrlDominio loaded = new CtrlDominio();
+        loaded.loadData(path);
+        assertEquals(dump(cd), dump(loaded));
+    }
+
+    /**
+     * Si una operación del diario no se puede repetir, el documento se carga con las anteriores y se avisa de cuántas se han perdido
+     */
+    @Test
+    void failedRecordIsReported() throws Exception {
+        String path = dir.resolve("doc.prop").toString();
+        CtrlDominio cd = new CtrlDominio();
+        cd.modifyCells(cells(1, 0), "5");
+        cd.saveData(path);
+        cd.modifyCells(cells(2, 0), "=A1*2");
+        cd.renameSheet(0, "Hoja");
+        cd.getJournal().getJournal().append((byte) 14, new int[]{-1, 7}, "No existe");
+        cd.modifyCells(cells(3, 0), "perdido");
+        cd.saveData(path);
+
+        CtrlDominio loaded = new CtrlDominio();
+        MyException e = assertThrows(MyException.class, () -> loaded.loadData(path));
+        assertTrue(e.getMessage().contains("last 2 of 4"), e.getMessage());
+        assertEquals("Hoja", loaded.getSheetName());
+        assertEquals("10.0", loaded.getValue(2, 0));
+        assertEquals("", loaded.getInput(3, 0));
+        //el diario que no se ha podido repetir entero no se sigue usando, el siguiente guardado es del documento entero
+        assertTrue(loaded.getJournal().needsCompaction());
+    }
+
+    private static ArrayList<Pair> cells(int row, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        cells.add(new Pair(row, column));
+        return cells;
+    }
+
+    private static ArrayList<Pair> column(int first, int last, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        for (int r = first; r <= last; r++) cells.add(new Pair(r, column));
+        return cells;
+    }
+
+    private static List<String> dump(CtrlDominio cd) throws MyException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < cd.getNSheets(); i++) {
+            cd.selectSheet(i);
+            lines.add(cd.getSheetName() + " " + cd.getNRows() + "x" + cd.getNColumns());
+            for (int r = 0; r < cd.getNRows(); r++) {
+                for (int c = 0; c < cd.getNColumns(); c++) {
+                    lines.add(r + "," + c + " " + cd.getInput(r, c) + " -> " + cd.getValue(r, c));
+                }
+            }
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,99 @@
+package dominio.controlador;
+
+import dominio.auxiliarclasses.MyException;
+import dominio.auxiliarclasses.Pair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que un documento guardado con el formato nativo (prop) se carga con los mismos inputs, valores y referencias
+ */
+class DocumentNativeTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Todas las celdas de todas las hojas se cargan con el mismo input y el mismo valor, y al modificar después las mismas celdas en los
+     * dos documentos los valores siguen siendo iguales, así que las referencias guardadas son las mismas que tenía el documento
+     */
+    @Test
+    void roundTripKeepsValuesAndReferences() throws Exception {
+        String path = dir.resolve("doc.prop").toString();
+        CtrlDominio cd = new CtrlDominio();
+        fill(cd);
+        cd.addSheet("Columnas", 30, 6, true);
+        fill(cd);
+        cd.addSheet("Vacía", 5, 3);
+        cd.selectSheet(0);
+        cd.saveData(path);
+
+        CtrlDominio loaded = new CtrlDominio();
+        loaded.loadData(path);
+        assertEquals(dump(cd), dump(loaded));
+
+        for (CtrlDominio doc : List.of(cd, loaded)) {
+            for (int i = 0; i < 2; i++) {
+                doc.selectSheet(i);
+                doc.modifyCells(cells(1, 0), "100");
+                doc.modifyCells(cells(14, 0), "4");
+                doc.modifyCells(cells(7, 1), "-3");
+                doc.modifyCells(cells(15, 0), "texto");
+            }
+        }
+        assertEquals(dump(cd), dump(loaded));
+    }
+
+    /**
+     * Rellena la hoja actual con números, textos que parecen números, fórmulas con referencias y rangos, fórmulas encadenadas,
+     * fórmulas con errores y celdas vacías
+     */
+    private static void fill(CtrlDominio cd) throws Exception {
+        for (int r = 1; r <= 12; r++) {
+            cd.modifyCells(cells(r, 0), String.valueOf(r * 5 % 11));
+            cd.modifyCells(cells(r, 1), String.valueOf(r * 0.25 - 1));
+        }
+        cd.modifyCells(cells(13, 0), "007");
+        cd.modifyCells(cells(13, 1), "1.50");
+        cd.modifyCells(cells(14, 0), "hola, \"mundo\"");
+        cd.modifyCells(cells(1, 2), "=A1+B1");
+        cd.modifyCells(cells(2, 2), "=C1*2");
+        cd.modifyCells(cells(3, 2), "=absolute(B2)");
+        cd.modifyCells(cells(4, 2), "=mean(A1:B12)");
+        cd.modifyCells(cells(5, 2), "=median(A1:A12)");
+        cd.modifyCells(cells(6, 2), "=covariance(A1:A12;B1:B12)");
+        cd.modifyCells(cells(7, 2), "=pearson(A1:A12;B1:B12)");
+        cd.modifyCells(cells(8, 2), "=floor(B3)");
+        cd.modifyCells(cells(9, 2), "=noexiste(A1)");
+        cd.modifyCells(cells(10, 2), "=A14+1");
+        cd.modifyCells(cells(11, 2), "=Z999");
+        cd.modifyCells(cells(1, 3), "=C3+C4");
+    }
+
+    private static ArrayList<Pair> cells(int row, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        cells.add(new Pair(row, column));
+        return cells;
+    }
+
+    private static List<String> dump(CtrlDominio cd) throws MyException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < cd.getNSheets(); i++) {
+            cd.selectSheet(i);
+            lines.add(cd.getSheetName() + " " + cd.getNRows() + "x" + cd.getNColumns());
+            for (int r = 0; r < cd.getNRows(); r++) {
+                for (int c = 0; c < cd.getNColumns(); c++) {
+                    lines.add(r + "," + c + " " + cd.getInput(r, c) + " -> " + cd.getValue(r, c));
+                }
+            }
+        }
+        return lines;
+    }
+
+}
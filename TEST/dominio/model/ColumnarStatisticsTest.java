@@ -0,0 +1,163 @@
+package dominio.model;
+
+import dominio.auxiliarclasses.Pair;
+import dominio.controlador.CtrlDominio;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba las hojas que guardan los números por columnas contra las hojas que guardan cada celda
+ */
+class ColumnarStatisticsTest {
+
+    private static final int ROWS = 200;
+
+    private static final int COLUMNS = 4;
+
+    /**
+     * Hace las mismas modificaciones, inserciones y borrados al azar en una hoja por columnas y en una hoja de celdas, y después
+     * de cada una compara el input y el valor de todas las celdas
+     */
+    @Test
+    void columnarValuesMatchSparse() throws Exception {
+        Random random = new Random(22);
+        CtrlDominio sparse = new CtrlDominio();
+        CtrlDominio columnar = new CtrlDominio();
+        sparse.addSheet("Datos", ROWS, COLUMNS, false);
+        columnar.addSheet("Datos", ROWS, COLUMNS, true);
+        for (int step = 0; step < 400; step++) {
+            int op = random.nextInt(10);
+            int row = random.nextInt(sparse.getNRows());
+            int col = random.nextInt(COLUMNS);
+            String input = input(random, sparse.getNRows());
+            for (CtrlDominio cd : List.of(sparse, columnar)) {
+                if (op == 0) cd.addRow(row);
+                else if (op == 1 && cd.getNRows() > 20) cd.deleteRow(row);
+                else if (op == 2) cd.deleteContBloq(cells(row, col));
+                else cd.modifyCells(cells(row, col), input);
+            }
+            assertEquals(values(sparse), values(columnar), "después de la operación " + step);
+        }
+    }
+
+    /**
+     * Pone fórmulas de media, mediana, varianza y desviación estándar con rangos que cortan los bloques de filas por cualquier sitio en
+     * una hoja por columnas, hace modificaciones, borrados de celdas e inserciones y borrados de filas al azar, y después de cada uno
+     * compara el valor de cada fórmula con el que sale de recorrer las celdas del rango
+     */
+    @Test
+    void rangeStatisticsMatchNaive() throws Exception {
+        Random random = new Random(23);
+        CtrlDominio cd = new CtrlDominio();
+        cd.addSheet("Datos", 600, 7, true);
+        for (int r = 1; r < 600; r++) {
+            cd.modifyCells(cells(r, 0), String.valueOf(random.nextInt(1000) / 8.0 - 50));
+            cd.modifyCells(cells(r, 1), String.valueOf(random.nextInt(200) - 60));
+        }
+        String[] functions = {"mean", "median", "variance([sample];", "variance([population];", "standard([sample];", "standard([population];"};
+        for (int f = 1; f <= 12; f++) {
+            int first = 13 + random.nextInt(300), last = first + 1 + random.nextInt(280);
+            String function = functions[(f - 1) % functions.length];
+            String columns = f % 4 == 0 ? "B" : "A";
+            String range = "A" + first + ":" + columns + last;
+            cd.modifyCells(cells(f, 6), "=" + (function.endsWith(";") ? function + range : function + "(" + range) + ")");
+        }
+        assertStatistics(cd);
+        for (int step = 0; step < 150; step++) {
+            int op = random.nextInt(8);
+            int row = 13 + random.nextInt(cd.getNRows() - 13);
+            int col = random.nextInt(2);
+            if (op == 0) {
+                cd.addRow(row);
+                cd.modifyCells(cells(row, 0), String.valueOf(random.nextInt(100)));
+                cd.modifyCells(cells(row, 1), String.valueOf(random.nextInt(100)));
+            }
+            else if (op == 1) cd.deleteRow(row);
+            else if (op == 2) {
+                cd.deleteContBloq(cells(row, col));
+                assertStatistics(cd);
+                cd.modifyCells(cells(row, col), String.valueOf(random.nextInt(100)));
+            }
+            else if (op == 3) cd.modifyCells(cells(row, col), "=" + random.nextInt(50) + "*2");
+            else cd.modifyCells(cells(row, col), String.valueOf(random.nextInt(4000) / 16.0 - 100));
+            assertStatistics(cd);
+        }
+    }
+
+    /**
+     * Compara el valor de cada fórmula de la columna G con el que sale de recorrer las celdas de su rango; si el rango tiene alguna celda
+     * vacía la fórmula da #NAME?. Las fórmulas cuyo rango se ha borrado no se comprueban
+     */
+    private static void assertStatistics(CtrlDominio cd) throws Exception {
+        Pattern pattern = Pattern.compile("=(\\w+)\\((?:\\[(\\w+)\\];)?([A-Z])(\\d+):([A-Z])(\\d+)\\)");
+        for (int f = 1; f <= 12; f++) {
+            Matcher m = pattern.matcher(cd.getInput(f, 6));
+            if (!m.matches()) continue;
+            ArrayList<Double> values = new ArrayList<>();
+            boolean empty = false;
+            for (int r = Integer.parseInt(m.group(4)); r <= Integer.parseInt(m.group(6)); r++) {
+                for (int c = m.group(3).charAt(0) - 'A'; c <= m.group(5).charAt(0) - 'A'; c++) {
+                    String value = cd.getValue(r, c);
+                    if (value.isEmpty()) empty = true;
+                    else values.add(Double.parseDouble(value));
+                }
+            }
+            if (empty) {
+                assertEquals("#NAME?", cd.getValue(f, 6), cd.getInput(f, 6));
+                continue;
+            }
+            double expected = naive(m.group(1), m.group(2), values);
+            double actual = Double.parseDouble(cd.getValue(f, 6));
+            assertEquals(expected, actual, 1e-9 * Math.max(1, Math.abs(expected)), cd.getInput(f, 6));
+        }
+    }
+
+    private static double naive(String function, String type, ArrayList<Double> values) {
+        int n = values.size();
+        double mean = 0;
+        for (double v : values) mean += v;
+        mean /= n;
+        if (function.equals("mean")) return mean;
+        if (function.equals("median")) {
+            Collections.sort(values);
+            return n % 2 == 1 ? values.get(n / 2) : (values.get(n / 2 - 1) + values.get(n / 2)) / 2;
+        }
+        double m2 = 0;
+        for (double v : values) m2 += (v - mean) * (v - mean);
+        double variance = m2 / (type.equals("sample") ? n - 1 : n);
+        return function.equals("variance") ? variance : Math.sqrt(variance);
+    }
+
+    private static String input(Random random, int rows) {
+        switch (random.nextInt(6)) {
+            case 0: return "texto" + random.nextInt(5);
+            case 1: return "007";
+            case 2: return "=A" + (1 + random.nextInt(rows - 1)) + "*2";
+            case 3: return String.valueOf(random.nextInt(2000) / 16.0 - 40);
+            default: return String.valueOf(random.nextInt(100) - 30);
+        }
+    }
+
+    private static ArrayList<Pair> cells(int row, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        cells.add(new Pair(row, column));
+        return cells;
+    }
+
+    private static List<String> values(CtrlDominio cd) throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int r = 0; r < cd.getNRows(); r++) {
+            for (int c = 0; c < cd.getNColumns(); c++) values.add(r + "," + c + " " + cd.getInput(r, c) + " -> " + cd.getValue(r, c));
+        }
+        return values;
+    }
+
+}
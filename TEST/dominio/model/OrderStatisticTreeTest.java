@@ -0,0 +1,54 @@
+package dominio.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Comprueba el árbol de orden contra una lista ordenada con los mismos valores
+ */
+class OrderStatisticTreeTest {
+
+    /**
+     * Añade y quita valores al azar, con muchos repetidos, empezando por un árbol pequeño para que los arrays tengan que crecer varias
+     * veces, y después de cada cambio compara el tamaño y los valores de algunas posiciones con la lista ordenada
+     */
+    @Test
+    void randomAddAndRemoveMatchSortedList() {
+        Random random = new Random(24);
+        for (int round = 0; round < 20; round++) {
+            int initial = random.nextInt(8);
+            double[] values = new double[initial];
+            ArrayList<Double> sorted = new ArrayList<>();
+            for (int i = 0; i < initial; i++) {
+                values[i] = random.nextInt(50);
+                sorted.add(values[i]);
+            }
+            OrderStatisticTree tree = new OrderStatisticTree(values);
+            for (int step = 0; step < 2000; step++) {
+                double value = random.nextInt(step < 1000 ? 1000 : 50);
+                if (sorted.isEmpty() || random.nextInt(3) > 0) {
+                    tree.add(value);
+                    sorted.add(value);
+                }
+                else {
+                    assertEquals(sorted.remove((Double) value), tree.remove(value));
+                }
+                Collections.sort(sorted);
+                assertEquals(sorted.size(), tree.size());
+                if (!sorted.isEmpty()) {
+                    assertEquals(sorted.get(0), tree.select(0));
+                    assertEquals(sorted.get(sorted.size() - 1), tree.select(sorted.size() - 1));
+                    int k = random.nextInt(sorted.size());
+                    assertEquals(sorted.get(k), tree.select(k));
+                }
+            }
+            for (int k = 0; k < sorted.size(); k++) assertEquals(sorted.get(k), tree.select(k));
+        }
+    }
+
+}
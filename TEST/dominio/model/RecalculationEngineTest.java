@@ -0,0 +1,93 @@
+package dominio.model;
+
+import dominio.auxiliarclasses.Pair;
+import dominio.controlador.CtrlDominio;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que el recálculo por niveles en paralelo da los mismos valores que el recálculo en un solo hilo
+ */
+class RecalculationEngineTest {
+
+    private static final int ROWS = 1500;
+
+    /**
+     * Cada motor tiene su propia configuración, que empieza con los valores por defecto
+     */
+    @Test
+    void settingsArePerEngine() {
+        RecalculationEngine a = new Sheet("A").getEngine();
+        RecalculationEngine b = new Sheet("B").getEngine();
+        a.setParallelThreshold(10);
+        a.setPool(new ForkJoinPool(2));
+        assertEquals(10, a.getParallelThreshold());
+        assertEquals(RecalculationEngine.DEFAULT_PARALLEL_THRESHOLD, b.getParallelThreshold());
+        assertSame(ForkJoinPool.commonPool(), b.getPool());
+        a.setParallelThreshold(0);
+        assertEquals(1, a.getParallelThreshold());
+    }
+
+    /**
+     * Con más celdas sucias que el umbral, las dos hojas recalculan las mismas celdas y llegan a los mismos valores, también con
+     * referencias cíclicas, errores y celdas que dependen de celdas del mismo nivel anterior
+     */
+    @Test
+    void parallelMatchesSerialAboveThreshold() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CtrlDominio serial = build();
+            CtrlDominio parallel = build();
+            serial.getSheetAct().getEngine().setParallelThreshold(Integer.MAX_VALUE);
+            parallel.getSheetAct().getEngine().setParallelThreshold(ROWS);
+            parallel.getSheetAct().getEngine().setPool(pool);
+
+            for (String input : new String[]{"7", "-2.5", "=E25"}) {
+                serial.modifyCells(cells(1, 0), input);
+                parallel.modifyCells(cells(1, 0), input);
+                int recalculated = parallel.getSheetAct().getEngine().getLastRecalculated();
+                assertTrue(recalculated >= ROWS, "solo se han recalculado " + recalculated + " celdas después de escribir " + input);
+                assertEquals(recalculated, serial.getSheetAct().getEngine().getLastRecalculated());
+                assertEquals(values(serial), values(parallel), "después de escribir " + input);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static CtrlDominio build() throws Exception {
+        CtrlDominio cd = new CtrlDominio();
+        cd.addSheet("Datos", ROWS + 2, 6);
+        cd.modifyCells(cells(1, 0), "1");
+        for (int r = 1; r <= ROWS; r++) {
+            String row = String.valueOf(r);
+            if (r > 1) cd.modifyCells(cells(r, 0), String.valueOf(r % 17 - 8));
+            cd.modifyCells(cells(r, 1), "=A" + row + "*2+A1");
+            cd.modifyCells(cells(r, 2), r > 1 ? "=C" + (r - 1) + "+B" + row : "=B1");
+            if (r % 10 == 0) cd.modifyCells(cells(r, 3), "=mean(B1:B" + row + ";C" + (r / 2) + ":C" + row + ")");
+            if (r % 25 == 0) cd.modifyCells(cells(r, 4), "=pearson(A1:A" + row + ";B1:B" + row + ")");
+        }
+        cd.modifyCells(cells(3, 5), "=E3+A1");
+        return cd;
+    }
+
+    private static ArrayList<Pair> cells(int row, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        cells.add(new Pair(row, column));
+        return cells;
+    }
+
+    private static List<String> values(CtrlDominio cd) throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int r = 0; r < cd.getNRows(); r++) {
+            for (int c = 0; c < cd.getNColumns(); c++) values.add(r + "," + c + " " + cd.getValue(r, c));
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,80 @@
+package dominio.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba el índice de filas y columnas contra una lista con los identificadores de cada posición
+ */
+class SheetIndexTest {
+
+    /**
+     * Inserta y borra filas al azar, muchas seguidas en la misma zona para que los bloques se dividan y se junten, y compara las dos
+     * correspondencias con la lista. Los identificadores que se reutilizan cambian de generación
+     */
+    @Test
+    void randomInsertAndDeleteMatchList() {
+        Random random = new Random(7);
+        SheetIndex index = new SheetIndex(3000, 4);
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) ids.add(index.physicalRow(i));
+        HashSet<Integer> deleted = new HashSet<>();
+        int zone = 0;
+        for (int step = 0; step < 30000; step++) {
+            if (step % 2000 == 0) zone = random.nextInt(ids.size() + 1);
+            int pos = Math.min(ids.size(), Math.max(0, zone + random.nextInt(64) - 32));
+            boolean insert = ids.size() < 100 || (step / 5000 % 2 == 0 ? random.nextInt(4) > 0 : random.nextInt(4) == 0);
+            if (insert) {
+                index.insertRow(pos);
+                int id = index.physicalRow(pos);
+                assertFalse(ids.contains(id), "identificador repetido " + id);
+                if (deleted.remove(id)) assertTrue(index.rowGeneration(id) > 0);
+                ids.add(pos, id);
+            }
+            else if (pos < ids.size()) {
+                int generation = index.rowGeneration(ids.get(pos));
+                int id = index.deleteRow(pos);
+                assertEquals(ids.remove(pos), (Integer) id);
+                assertEquals(-1, index.logicalRow(id));
+                assertEquals(generation + 1, index.rowGeneration(id));
+                deleted.add(id);
+            }
+            if (step % 1000 == 0) assertMatches(ids, index);
+        }
+        assertMatches(ids, index);
+    }
+
+    /**
+     * Mientras no se inserta ni se borra ninguna línea, la posición es el identificador; al ampliar después de editar, las posiciones
+     * nuevas van al final
+     */
+    @Test
+    void identityUntilFirstEdit() {
+        SheetIndex index = new SheetIndex(10, 3);
+        index.ensureSize(20, 3);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, index.physicalRow(i));
+            assertEquals(i, index.logicalRow(i));
+        }
+        assertEquals(-1, index.logicalRow(20));
+        index.deleteColumn(0);
+        index.ensureSize(20, 5);
+        assertEquals(5, index.getNColumns());
+        for (int c = 0; c < 5; c++) assertEquals(c, index.logicalColumn(index.physicalColumn(c)));
+        assertThrows(IndexOutOfBoundsException.class, () -> index.physicalColumn(5));
+    }
+
+    private static void assertMatches(ArrayList<Integer> ids, SheetIndex index) {
+        assertEquals(ids.size(), index.getNRows());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals((int) ids.get(i), index.physicalRow(i), "posición " + i);
+            assertEquals(i, index.logicalRow(ids.get(i)), "identificador " + ids.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package dominio.model;
+
+import dominio.auxiliarclasses.Pair;
+import dominio.controlador.CtrlDominio;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba que insertar y borrar filas y columnas deja los mismos valores que recalcular la hoja entera
+ */
+class SheetStructureTest {
+
+    private static final int ROWS = 30;
+
+    private static final int COLUMNS = 6;
+
+    /**
+     * Una referencia a una fila borrada sigue dando #REF! aunque el identificador de la fila se vuelva a usar para una fila nueva
+     */
+    @Test
+    void deletedRowStaysBrokenAfterReuse() throws Exception {
+        CtrlDominio cd = new CtrlDominio();
+        cd.addSheet("Datos", 10, 3);
+        cd.modifyCells(cells(3, 0), "4");
+        cd.modifyCells(cells(0, 1), "=A3*2");
+        assertEquals("8.0", cd.getValue(0, 1));
+        cd.deleteRow(3);
+        assertEquals("#REF!", cd.getValue(0, 1));
+        cd.addRow(3);
+        cd.modifyCells(cells(3, 0), "5");
+        assertEquals("#REF!", cd.getValue(0, 1));
+    }
+
+    @Test
+    void sparseEditsMatchFullRecalculation() throws Exception {
+        randomEdits(false);
+    }
+
+    @Test
+    void columnarEditsMatchFullRecalculation() throws Exception {
+        randomEdits(true);
+    }
+
+    /**
+     * Hace inserciones y borrados al azar en una hoja con referencias, rangos y agregados, y después de cada uno compara los valores
+     * con los que da recalcular toda la hoja
+     */
+    private static void randomEdits(boolean columnar) throws Exception {
+        Random random = new Random(columnar ? 11 : 5);
+        CtrlDominio cd = new CtrlDominio();
+        cd.addSheet("Datos", ROWS, COLUMNS, columnar);
+        for (int r = 0; r < ROWS - 5; r++) {
+            cd.modifyCells(cells(r, 0), String.valueOf(random.nextInt(20)));
+            cd.modifyCells(cells(r, 1), String.valueOf(random.nextInt(9) - 4));
+            if (r > 0 && r % 3 == 0) cd.modifyCells(cells(r, 2), "=A" + r + "+B" + (r + 1));
+        }
+        cd.modifyCells(cells(0, 3), "=sum(A1:A20)");
+        cd.modifyCells(cells(1, 3), "=mean(A3:B12)");
+        cd.modifyCells(cells(2, 3), "=max(B5:B25)");
+        cd.modifyCells(cells(3, 3), "=covariance(A1:A15;B1:B15)");
+        cd.modifyCells(cells(4, 3), "=D1+D2");
+        cd.modifyCells(cells(5, 3), "=sum(A2:C4)");
+        cd.modifyCells(cells(0, 4), "=median(A1:A25)");
+        cd.modifyCells(cells(1, 4), "=E1*2");
+
+        for (int step = 0; step < 60; step++) {
+            int op = random.nextInt(4);
+            String edit = op + " " + step;
+            if (op == 0) cd.addRow(random.nextInt(cd.getNRows() + 1));
+            else if (op == 1 && cd.getNRows() > 10) cd.deleteRow(random.nextInt(cd.getNRows()));
+            else if (op == 2 && cd.getNColumns() < COLUMNS + 3) cd.addColumn(random.nextInt(cd.getNColumns() + 1));
+            else if (op == 3 && cd.getNColumns() > 4) cd.deleteColumn(random.nextInt(cd.getNColumns()));
+            else cd.modifyCells(cells(random.nextInt(cd.getNRows()), random.nextInt(2)), String.valueOf(random.nextInt(30)));
+            List<String> incremental = values(cd);
+            cd.getSheetAct().updateValues();
+            assertEquals(values(cd), incremental, "después de la operación " + edit);
+        }
+    }
+
+    private static ArrayList<Pair> cells(int row, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        cells.add(new Pair(row, column));
+        return cells;
+    }
+
+    private static List<String> values(CtrlDominio cd) throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int r = 0; r < cd.getNRows(); r++) {
+            for (int c = 0; c < cd.getNColumns(); c++) values.add(r + "," + c + " " + cd.getValue(r, c));
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,175 @@
+package dominio.parameter;
+
+import dominio.auxiliarclasses.Pair;
+import dominio.controlador.CtrlDominio;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comprueba la covarianza y la correlación de Pearson calculadas en una sola pasada con el co-momento contra el cálculo de dos pasadas:
+ * primero las medias y después la suma de los productos de las desviaciones
+ */
+class CoStatisticsTest {
+
+    /**
+     * Añadir las parejas de una en una, por tramos o juntando los tramos con merge da lo mismo que el cálculo de dos pasadas, también con
+     * valores muy grandes respecto a su dispersión, que es donde falla la fórmula de la suma de los productos menos el producto de las sumas.
+     * Con valores de 1e8 y 1e9 ya no son exactas ni las desviaciones de las dos pasadas, así que la tolerancia relativa pasa de 1e-9 a 1e-6
+     */
+    @Test
+    void onePassMatchesTwoPass() {
+        Random random = new Random(17);
+        for (int round = 0; round < 200; round++) {
+            int n = 2 + random.nextInt(round < 100 ? 20 : 5000);
+            double offsetX = round % 2 == 0 ? 0 : 1e9, offsetY = round % 3 == 0 ? 0 : -1e8;
+            double tolerance = offsetX == 0 && offsetY == 0 ? 1e-9 : 1e-6;
+            double[] x = new double[n], y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = offsetX + random.nextGaussian() * 3;
+                y[i] = offsetY + (round % 4 == 0 ? -1 : 1) * x[i] / 2 + random.nextGaussian();
+            }
+
+            CoStatistics single = new CoStatistics();
+            for (int i = 0; i < n; i++) single.add(x[i], y[i]);
+            assertMatches(x, y, single, tolerance, "add " + round);
+            assertMatches(x, y, CoStatistics.of(x, y), tolerance, "of " + round);
+
+            CoStatistics merged = new CoStatistics();
+            for (int from = 0; from < n; ) {
+                int to = Math.min(n, from + random.nextInt(n / 3 + 2));
+                CoStatistics part = new CoStatistics();
+                part.addAll(x, y, from, to);
+                merged.merge(part);
+                from = to;
+            }
+            assertMatches(x, y, merged, tolerance, "merge " + round);
+        }
+    }
+
+    /**
+     * Juntar un conjunto vacío no cambia nada, y juntar un conjunto con uno vacío da el mismo conjunto
+     */
+    @Test
+    void mergeWithEmpty() {
+        double[] x = {1, 2, 4, 8}, y = {3, 1, 4, 1};
+        CoStatistics statistics = CoStatistics.of(x, y);
+        statistics.merge(new CoStatistics());
+        assertMatches(x, y, statistics, 1e-9, "vacío a la derecha");
+        CoStatistics empty = new CoStatistics();
+        empty.merge(CoStatistics.of(x, y));
+        assertMatches(x, y, empty, 1e-9, "vacío a la izquierda");
+        assertEquals(0, new CoStatistics().getCount());
+        assertTrue(Double.isNaN(new CoStatistics().getCovariance()));
+        assertTrue(Double.isNaN(CoStatistics.of(new double[]{5, 5, 5}, y.clone()).getCorrelation()));
+    }
+
+    @Test
+    void sparseFormulasMatchTwoPass() throws Exception {
+        randomEdits(false);
+    }
+
+    @Test
+    void columnarFormulasMatchTwoPass() throws Exception {
+        randomEdits(true);
+    }
+
+    /**
+     * Escribe fórmulas covariance y pearson con rangos al azar y, después de cada edición al azar de las filas de datos, compara sus valores
+     * con el cálculo de dos pasadas sobre las celdas del rango
+     */
+    private static void randomEdits(boolean columnar) throws Exception {
+        Random random = new Random(columnar ? 23 : 19);
+        CtrlDominio cd = new CtrlDominio();
+        cd.addSheet("Datos", 300, 4, columnar);
+        for (int r = 1; r < 300; r++) {
+            cd.modifyCells(cells(r, 0), String.valueOf(random.nextInt(1000) / 8.0 + 5000));
+            cd.modifyCells(cells(r, 1), String.valueOf(random.nextInt(200) - 60));
+        }
+        for (int f = 1; f <= 8; f++) {
+            int first = 9 + random.nextInt(150), last = first + 1 + random.nextInt(130);
+            String function = f % 2 == 0 ? "pearson" : "covariance";
+            cd.modifyCells(cells(f, 3), "=" + function + "(A" + first + ":A" + last + ";B" + first + ":B" + last + ")");
+        }
+        assertFormulas(cd);
+        for (int step = 0; step < 120; step++) {
+            int op = random.nextInt(6);
+            int row = 9 + random.nextInt(cd.getNRows() - 9);
+            if (op == 0) {
+                cd.addRow(row);
+                cd.modifyCells(cells(row, 0), String.valueOf(random.nextInt(100)));
+                cd.modifyCells(cells(row, 1), String.valueOf(random.nextInt(100)));
+            }
+            else if (op == 1) cd.deleteRow(row);
+            else cd.modifyCells(cells(row, random.nextInt(2)), String.valueOf(random.nextInt(4000) / 16.0 - 100));
+            assertFormulas(cd);
+        }
+    }
+
+    /**
+     * Compara el valor de cada fórmula de la columna D con el cálculo de dos pasadas sobre su rango; pearson da #NAME? si alguna de las
+     * dos columnas no varía. Las fórmulas cuyo rango se ha borrado no se comprueban
+     */
+    private static void assertFormulas(CtrlDominio cd) throws Exception {
+        Pattern pattern = Pattern.compile("=(\\w+)\\(A(\\d+):A(\\d+);B(\\d+):B(\\d+)\\)");
+        for (int f = 1; f <= 8; f++) {
+            Matcher m = pattern.matcher(cd.getInput(f, 3));
+            if (!m.matches()) continue;
+            int first = Integer.parseInt(m.group(2)), last = Integer.parseInt(m.group(3));
+            double[] x = new double[last - first + 1], y = new double[last - first + 1];
+            for (int r = first; r <= last; r++) {
+                x[r - first] = Double.parseDouble(cd.getValue(r, 0));
+                y[r - first] = Double.parseDouble(cd.getValue(r, 1));
+            }
+            double[] expected = twoPass(x, y);
+            String value = cd.getValue(f, 3);
+            if (m.group(1).equals("covariance")) {
+                assertEquals(expected[0], Double.parseDouble(value), 1e-9 * Math.max(1, Math.abs(expected[0])), cd.getInput(f, 3));
+            }
+            else if (Double.isNaN(expected[1])) assertEquals("#NAME?", value, cd.getInput(f, 3));
+            else assertEquals(expected[1], Double.parseDouble(value), 1e-9, cd.getInput(f, 3));
+        }
+    }
+
+    private static void assertMatches(double[] x, double[] y, CoStatistics statistics, double tolerance, String message) {
+        double[] expected = twoPass(x, y);
+        assertEquals(x.length, statistics.getCount(), message);
+        assertEquals(expected[0], statistics.getCovariance(), tolerance * Math.max(1, Math.abs(expected[0])), message);
+        assertEquals(expected[1], statistics.getCorrelation(), tolerance, message);
+    }
+
+    /**
+     * Retorna la covarianza poblacional y la correlación de Pearson calculadas en dos pasadas; la correlación es NaN si alguna de las
+     * dos variables no varía
+     */
+    private static double[] twoPass(double[] x, double[] y) {
+        int n = x.length;
+        double meanX = 0, meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += x[i];
+            meanY += y[i];
+        }
+        meanX /= n;
+        meanY /= n;
+        double sxy = 0, sxx = 0, syy = 0;
+        for (int i = 0; i < n; i++) {
+            sxy += (x[i] - meanX) * (y[i] - meanY);
+            sxx += (x[i] - meanX) * (x[i] - meanX);
+            syy += (y[i] - meanY) * (y[i] - meanY);
+        }
+        double correlation = sxx == 0 || syy == 0 ? Double.NaN : sxy / Math.sqrt(sxx * syy);
+        return new double[]{sxy / n, correlation};
+    }
+
+    private static ArrayList<Pair> cells(int row, int column) {
+        ArrayList<Pair> cells = new ArrayList<>();
+        cells.add(new Pair(row, column));
+        return cells;
+    }
+
+}